@@ -64,6 +64,42 @@ public interface Activator extends XmlPersistable {
 	 */
 	public double[][][] nextSequence(double[][][] stimuli);
 
+	/**
+	 * Same as {@link #next(double[])} but puts the output in the given array rather than allocating a new one, so
+	 * that the network may be activated repeatedly without allocating memory.
+	 * 
+	 * @param stimuli The input values.
+	 * @param output Array to put the output values in, must have length at least {@link #getOutputCount()}.
+	 */
+	public void next(double[] stimuli, double[] output);
+
+	/**
+	 * Same as {@link #nextSequence(double[][])} but puts the output in the given arrays rather than allocating new
+	 * ones.
+	 * 
+	 * @param stimuli The sequence of input arrays.
+	 * @param output Arrays to put the sequence of output values in, with dimensions [stimuli.length][output count].
+	 */
+	public void nextSequence(double[][] stimuli, double[][] output);
+
+	/**
+	 * Same as {@link #next(double[][])} but puts the output in the given array rather than allocating a new one.
+	 * 
+	 * @param stimuli The input values.
+	 * @param output Array to put the output values in, with the dimensions given by {@link #getOutputDimension()} (in
+	 *            the order [y][x]).
+	 */
+	public void next(double[][] stimuli, double[][] output);
+
+	/**
+	 * Same as {@link #nextSequence(double[][][])} but puts the output in the given arrays rather than allocating new
+	 * ones.
+	 * 
+	 * @param stimuli The sequence of input arrays.
+	 * @param output Arrays to put the sequence of output values in, with dimensions [stimuli.length][y][x].
+	 */
+	public void nextSequence(double[][][] stimuli, double[][][] output);
+
 	/**
 	 * @return String XML representation of object.
 	 */
@@ -21,10 +21,12 @@ package com.anji.integration;
 
 import java.awt.Graphics2D;
 import java.util.Arrays;
+import java.util.List;
 
 import com.anji.nn.AnjiNet;
 import com.anji.nn.Neuron;
 import com.anji.nn.Pattern;
+import com.ojcoleman.ahni.nn.ActivationCycleStatistics;
 import com.ojcoleman.ahni.util.ArrayUtil;
 
 /**
@@ -40,6 +42,13 @@ public class AnjiActivator implements Activator {
 
 	private int numCycles = 1;
 
+	private double convergenceEpsilon = 0;
+
+	private ActivationCycleStatistics cycleStatistics;
+
+	// The neuron values at the end of the previous cycle, used to detect convergence.
+	private double[] previousValues;
+
 	private int outputDimension;
 
 	private double minResponseValue;
@@ -78,11 +87,22 @@ public class AnjiActivator implements Activator {
 	}
 
 	public double[] next(double[] newInputValues) {
+		double[] result = new double[outputDimension];
+		next(newInputValues, result);
+		return result;
+	}
+
+	public void next(double[] newInputValues, double[] result) {
 		assert !Double.isNaN(ArrayUtil.sum(newInputValues)) : "input array contains NaN: " + Arrays.toString(newInputValues);
 		
 		if (newInputValues != null)
 			inputPattern.setValues(newInputValues);
 
+		if (convergenceEpsilon > 0 && net.isRecurrent()) {
+			nextUntilConverged(result);
+			return;
+		}
+
 		// step through network activations for recurrent network
 		for (int cycle = 0; cycle < numCycles - 1; ++cycle) {
 			net.step();
@@ -95,7 +115,6 @@ public class AnjiActivator implements Activator {
 
 		// last step, get results
 		net.step();
-		double[] result = new double[outputDimension];
 		for (int idx = 0; idx < outputDimension; ++idx) {
 			Neuron n = net.getOutputNeuron(idx);
 			result[idx] = n.getValue();
@@ -105,8 +124,40 @@ public class AnjiActivator implements Activator {
 		}
 		
 		//assert !Double.isNaN(ArrayUtil.sum(result)) : "result array contains NaN: " + Arrays.toString(result);
-		
-		return result;
+	}
+
+	/**
+	 * Perform activation cycles until the maximum change in the value of any neuron is less than the convergence
+	 * epsilon, or numCycles cycles have been performed.
+	 */
+	private void nextUntilConverged(double[] result) {
+		List<Neuron> neurons = net.getAllNeurons();
+		if (previousValues == null) {
+			previousValues = new double[neurons.size()];
+		}
+		int cycle = 0;
+		double maxChange;
+		do {
+			net.step();
+			net.fullyActivate();
+			cycle++;
+			maxChange = 0;
+			for (int i = 0; i < previousValues.length; i++) {
+				double value = neurons.get(i).getValue();
+				double change = Math.abs(value - previousValues[i]);
+				if (change > maxChange) {
+					maxChange = change;
+				}
+				previousValues[i] = value;
+			}
+		} while (cycle < numCycles && maxChange >= convergenceEpsilon);
+
+		for (int idx = 0; idx < outputDimension; ++idx) {
+			result[idx] = net.getOutputNeuron(idx).getValue();
+		}
+		if (cycleStatistics != null) {
+			cycleStatistics.record(cycle);
+		}
 	}
 
 	public double[][] nextSequence(double[][] newInputValues) {
@@ -117,14 +168,28 @@ public class AnjiActivator implements Activator {
 		return result;
 	}
 
+	public void nextSequence(double[][] newInputValues, double[][] result) {
+		for (int i = 0; i < newInputValues.length; ++i) {
+			next(newInputValues[i], result[i]);
+		}
+	}
+
 	public double[][] next(double[][] stimuli) {
 		throw new IllegalArgumentException("AnjiActivator can only accept one dimensional input patterns");
 	}
 
+	public void next(double[][] stimuli, double[][] output) {
+		throw new IllegalArgumentException("AnjiActivator can only accept one dimensional input patterns");
+	}
+
 	public double[][][] nextSequence(double[][][] stimuli) {
 		throw new IllegalArgumentException("AnjiActivator can only accept one dimensional input patterns");
 	}
 
+	public void nextSequence(double[][][] stimuli, double[][][] output) {
+		throw new IllegalArgumentException("AnjiActivator can only accept one dimensional input patterns");
+	}
+
 	/**
 	 * @param array glue between double arrays and neuron connections.
 	 */
@@ -137,6 +202,9 @@ public class AnjiActivator implements Activator {
 	 */
 	public void reset() {
 		net.reset();
+		if (previousValues != null) {
+			Arrays.fill(previousValues, 0);
+		}
 	}
 
 	/**
@@ -178,6 +246,42 @@ public class AnjiActivator implements Activator {
 		return new int[] { inputPattern.getDimension() };
 	}
 
+	/**
+	 * @return the number of activation cycles performed for each input pattern.
+	 */
+	public int getNumCycles() {
+		return numCycles;
+	}
+
+	/**
+	 * Enable or disable convergence detection for recurrent networks. When enabled, activation cycles stop once the
+	 * maximum change in the value of any neuron over a cycle is less than the given epsilon, or after
+	 * {@link #getNumCycles()} cycles, whichever comes first. Has no effect on feed-forward networks.
+	 *
+	 * @param epsilon The convergence threshold, or 0 to always perform {@link #getNumCycles()} cycles.
+	 * @param statistics If not null, the number of cycles performed for each input pattern is recorded here.
+	 */
+	public void setConvergence(double epsilon, ActivationCycleStatistics statistics) {
+		convergenceEpsilon = epsilon;
+		cycleStatistics = statistics;
+	}
+
+	/**
+	 * @return the convergence threshold, or 0 if convergence detection is disabled.
+	 * @see #setConvergence(double, ActivationCycleStatistics)
+	 */
+	public double getConvergenceEpsilon() {
+		return convergenceEpsilon;
+	}
+
+	/**
+	 * @return the statistics the number of activation cycles are recorded in, or null if none.
+	 * @see #setConvergence(double, ActivationCycleStatistics)
+	 */
+	public ActivationCycleStatistics getCycleStatistics() {
+		return cycleStatistics;
+	}
+
 	/**
 	 * @return dimension of output pattern
 	 */
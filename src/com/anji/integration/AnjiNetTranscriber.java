@@ -30,8 +30,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.SortedSet;
 
 import org.apache.log4j.Logger;
+import org.jgapcustomised.Allele;
 import org.jgapcustomised.Chromosome;
 
 import com.anji.neat.ConnectionAllele;
@@ -46,6 +48,7 @@ import com.anji.nn.RecurrencyPolicy;
 import com.anji.nn.activationfunction.ActivationFunctionFactory;
 import com.anji.util.Configurable;
 import com.anji.util.Properties;
+import com.ojcoleman.ahni.nn.ActivationCycleStatistics;
 
 /**
  * The purpose of this class is to construct a neural net object (<code>AnjiNet</code>) from a chromosome.
@@ -55,14 +58,35 @@ import com.anji.util.Properties;
  * @see com.anji.nn.AnjiNet
  * @author Philip Tucker
  */
-public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configurable {
+public class AnjiNetTranscriber implements Transcriber<Activator>, Configurable {
 	/**
 	 * # recurrent cycles properties key
 	 */
 	public final static String RECURRENT_CYCLES_KEY = "recurrent.cycles";
 
+	/**
+	 * If greater than 0, recurrent networks stop performing activation cycles for an input pattern once the maximum
+	 * change in the value of any neuron over a cycle is less than this value (the number of cycles given by
+	 * {@link #RECURRENT_CYCLES_KEY} is still the maximum). A histogram of the number of cycles performed is logged for
+	 * each generation. Default is 0 (disabled).
+	 */
+	public final static String RECURRENT_CONVERGENCE_KEY = "recurrent.convergence.epsilon";
+
+	/**
+	 * Whether to compile transcribed networks to a {@link CompiledActivator}, which uses flat arrays for the neuron
+	 * values and connections and produces output identical to that of an {@link AnjiActivator}. Networks that can not
+	 * be compiled are returned as an {@link AnjiActivator}. Default is true.
+	 */
+	public final static String COMPILE_KEY = "ann.transcriber.anji.compile";
+
 	private int recurrentCycles;
 
+	private double convergenceEpsilon;
+
+	private ActivationCycleStatistics cycleStatistics;
+
+	private boolean compile = true;
+
 	private final static Logger logger = Logger.getLogger(AnjiNetTranscriber.class);
 
 	private RecurrencyPolicy recurrencyPolicy = RecurrencyPolicy.BEST_GUESS;
@@ -89,21 +113,35 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 	public void init(Properties props) {
 		recurrencyPolicy = RecurrencyPolicy.load(props);
 		recurrentCycles = props.getIntProperty(RECURRENT_CYCLES_KEY, 1);
+		convergenceEpsilon = props.getDoubleProperty(RECURRENT_CONVERGENCE_KEY, 0);
+		if (convergenceEpsilon > 0) {
+			cycleStatistics = ActivationCycleStatistics.create(props, getClass().getSimpleName());
+		}
+		compile = props.getBooleanProperty(COMPILE_KEY, compile);
+		ActivationFunctionFactory.getInstance().setFastMath(props.getBooleanProperty(ActivationFunctionFactory.FAST_MATH_KEY, false));
 	}
 
 	/**
 	 * @see Transcriber#transcribe(Chromosome)
 	 */
-	public AnjiActivator transcribe(Chromosome genotype) throws TranscriberException {
-		return new AnjiActivator(newAnjiNet(genotype), recurrentCycles);
+	public Activator transcribe(Chromosome genotype) throws TranscriberException {
+		AnjiActivator activator = new AnjiActivator(newAnjiNet(genotype), recurrentCycles);
+		activator.setConvergence(convergenceEpsilon, cycleStatistics);
+		if (compile) {
+			CompiledActivator compiled = CompiledActivator.compile(activator);
+			if (compiled != null) {
+				return compiled;
+			}
+		}
+		return activator;
 	}
 
 	/**
 	 * @see Transcriber#transcribe(Chromosome, Activator) Note: this method has been added to conform with the
 	 *      Transcriber interface, but does not use the substrate argument for performance gains.
 	 */
-	public AnjiActivator transcribe(Chromosome genotype, AnjiActivator substrate) throws TranscriberException {
-		return new AnjiActivator(newAnjiNet(genotype), recurrentCycles);
+	public Activator transcribe(Chromosome genotype, Activator substrate) throws TranscriberException {
+		return transcribe(genotype);
 	}
 
 	/**
@@ -114,12 +152,14 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 	 * @throws TranscriberException
 	 */
 	public AnjiNet newAnjiNet(Chromosome genotype) throws TranscriberException {
-		if (genotype.getAlleles().isEmpty()) throw new IllegalArgumentException("Genotype has no alleles...");
+		// Retain the alleles, the Chromosome may create a new set for every call to getAlleles().
+		SortedSet<Allele> alleles = genotype.getAlleles();
+		if (alleles.isEmpty()) throw new IllegalArgumentException("Genotype has no alleles...");
 
 		Map<Long, Neuron> allNeurons = new HashMap<Long, Neuron>();
 
 		// input neurons
-		SortedMap<Long, NeuronAllele> inNeuronAlleles = NeatChromosomeUtility.getNeuronMap(genotype.getAlleles(), NeuronType.INPUT);
+		SortedMap<Long, NeuronAllele> inNeuronAlleles = NeatChromosomeUtility.getNeuronMap(alleles, NeuronType.INPUT);
 		if (inNeuronAlleles.isEmpty()) throw new IllegalArgumentException("An AnjiNet must have at least one input neuron.");
 		List<Neuron> inNeurons = new ArrayList<Neuron>();
 		for (NeuronAllele neuronAllele : inNeuronAlleles.values()) {
@@ -130,7 +170,7 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 		}
 
 		// output neurons
-		SortedMap<Long, NeuronAllele> outNeuronAlleles = NeatChromosomeUtility.getNeuronMap(genotype.getAlleles(), NeuronType.OUTPUT);
+		SortedMap<Long, NeuronAllele> outNeuronAlleles = NeatChromosomeUtility.getNeuronMap(alleles, NeuronType.OUTPUT);
 		if (outNeuronAlleles.isEmpty()) throw new IllegalArgumentException("An AnjiNet must have at least one output neuron.");
 		List<Neuron> outNeurons = new ArrayList<Neuron>();
 		for (NeuronAllele neuronAllele : outNeuronAlleles.values()) {
@@ -141,7 +181,7 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 		}
 
 		// hidden neurons
-		SortedMap<Long, NeuronAllele> hiddenNeuronAlleles = NeatChromosomeUtility.getNeuronMap(genotype.getAlleles(), NeuronType.HIDDEN);
+		SortedMap<Long, NeuronAllele> hiddenNeuronAlleles = NeatChromosomeUtility.getNeuronMap(alleles, NeuronType.HIDDEN);
 		for (NeuronAllele neuronAllele : hiddenNeuronAlleles.values()) {
 			Neuron n = new Neuron(ActivationFunctionFactory.valueOf(neuronAllele.getActivationType()), neuronAllele.getBias());
 			n.setId(neuronAllele.getInnovationId().longValue());
@@ -163,7 +203,7 @@ public class AnjiNetTranscriber implements Transcriber<AnjiActivator>, Configura
 		// RecurrencyPolicy.BEST_GUESS - any connection where the source neuron is in the same or
 		// later (i.e., nearer output layer) as the destination is a CacheNeuronConnection
 		List<CacheNeuronConnection> recurrentConns = new ArrayList<CacheNeuronConnection>();
-		List<ConnectionAllele> remainingConnAlleles = NeatChromosomeUtility.getConnectionList(genotype.getAlleles());
+		List<ConnectionAllele> remainingConnAlleles = NeatChromosomeUtility.getConnectionList(alleles);
 		Set<Long> currentNeuronInnovationIds = new HashSet<Long>(outNeuronAlleles.keySet());
 		Set<Long> traversedNeuronInnovationIds = new HashSet<Long>(currentNeuronInnovationIds);
 		Set<Long> nextNeuronInnovationIds = new HashSet<Long>();
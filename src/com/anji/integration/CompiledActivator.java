@@ -0,0 +1,204 @@
+package com.anji.integration;
+
+import java.awt.Graphics2D;
+
+import com.anji.nn.AnjiNet;
+import com.anji.nn.CompiledNet;
+
+/**
+ * Activator for a {@link CompiledNet}. Produces output identical to that of the {@link AnjiActivator} it was compiled
+ * from, which is retained to provide the name, string and XML representations of the network. Both feed-forward and
+ * recurrent networks are supported. No memory is allocated when activating the network with
+ * {@link #next(double[], double[])}.
+ *
+ * @author Oliver Coleman
+ */
+public class CompiledActivator implements Activator {
+	private CompiledNet net;
+	private AnjiActivator source;
+	private double[] input;
+
+	/**
+	 * Create a CompiledActivator for the given AnjiActivator.
+	 *
+	 * @param source The AnjiActivator to compile.
+	 * @return A CompiledActivator, or null if the network of the given AnjiActivator can not be compiled (for example
+	 *         if it contains an unsupported type of connection).
+	 * @see CompiledNet#compile(AnjiNet)
+	 */
+	public static CompiledActivator compile(AnjiActivator source) {
+		CompiledNet net = CompiledNet.compile(source.getAnjiNet());
+		return net != null ? new CompiledActivator(net, source) : null;
+	}
+
+	private CompiledActivator(CompiledNet net, AnjiActivator source) {
+		this.net = net;
+		this.source = source;
+		input = new double[net.getInputCount()];
+	}
+
+	@Override
+	public double[] next() {
+		return next(input);
+	}
+
+	@Override
+	public double[] next(double[] stimuli) {
+		double[] output = new double[net.getOutputCount()];
+		next(stimuli, output);
+		return output;
+	}
+
+	@Override
+	public void next(double[] stimuli, double[] output) {
+		if (stimuli.length != input.length)
+			throw new IllegalArgumentException("can not change array dimension");
+		input = stimuli;
+		if (source.getConvergenceEpsilon() > 0) {
+			int cycles = net.activate(stimuli, output, source.getNumCycles(), source.getConvergenceEpsilon());
+			if (source.getCycleStatistics() != null && net.isRecurrent()) {
+				source.getCycleStatistics().record(cycles);
+			}
+		} else {
+			net.activate(stimuli, output, source.getNumCycles());
+		}
+	}
+
+	@Override
+	public double[][] nextSequence(double[][] stimuli) {
+		double[][] result = new double[stimuli.length][];
+		for (int i = 0; i < stimuli.length; ++i) {
+			result[i] = next(stimuli[i]);
+		}
+		return result;
+	}
+
+	@Override
+	public void nextSequence(double[][] stimuli, double[][] output) {
+		for (int i = 0; i < stimuli.length; ++i) {
+			next(stimuli[i], output[i]);
+		}
+	}
+
+	@Override
+	public double[][] next(double[][] stimuli) {
+		throw new IllegalArgumentException("CompiledActivator can only accept one dimensional input patterns");
+	}
+
+	@Override
+	public void next(double[][] stimuli, double[][] output) {
+		throw new IllegalArgumentException("CompiledActivator can only accept one dimensional input patterns");
+	}
+
+	@Override
+	public double[][][] nextSequence(double[][][] stimuli) {
+		throw new IllegalArgumentException("CompiledActivator can only accept one dimensional input patterns");
+	}
+
+	@Override
+	public void nextSequence(double[][][] stimuli, double[][][] output) {
+		throw new IllegalArgumentException("CompiledActivator can only accept one dimensional input patterns");
+	}
+
+	@Override
+	public void reset() {
+		net.reset();
+	}
+
+	/**
+	 * Create a copy of this activator that shares the compiled program but has its own working memory, so that it can
+	 * be used concurrently with this activator.
+	 *
+	 * @see CompiledNet#copy()
+	 */
+	public CompiledActivator copy() {
+		return new CompiledActivator(net.copy(), source);
+	}
+
+	/**
+	 * @return The compiled network.
+	 */
+	public CompiledNet getCompiledNet() {
+		return net;
+	}
+
+	/**
+	 * @return The AnjiActivator this activator was compiled from.
+	 */
+	public AnjiActivator getSource() {
+		return source;
+	}
+
+	@Override
+	public String toXml() {
+		return source.toXml();
+	}
+
+	@Override
+	public String toString() {
+		return source.toString();
+	}
+
+	@Override
+	public String getName() {
+		return source.getName();
+	}
+
+	public void setName(String name) {
+		source.setName(name);
+	}
+
+	@Override
+	public String getXmlRootTag() {
+		return source.getXmlRootTag();
+	}
+
+	@Override
+	public String getXmld() {
+		return source.getXmld();
+	}
+
+	@Override
+	public double getMinResponse() {
+		return source.getMinResponse();
+	}
+
+	@Override
+	public double getMaxResponse() {
+		return source.getMaxResponse();
+	}
+
+	@Override
+	public int[] getInputDimension() {
+		return new int[] { net.getInputCount() };
+	}
+
+	@Override
+	public int[] getOutputDimension() {
+		return new int[] { net.getOutputCount() };
+	}
+
+	@Override
+	public int getInputCount() {
+		return net.getInputCount();
+	}
+
+	@Override
+	public int getOutputCount() {
+		return net.getOutputCount();
+	}
+
+	@Override
+	public boolean render(Graphics2D g, int width, int height, int neuronSize) {
+		return false;
+	}
+
+	@Override
+	public void dispose() {
+	}
+
+	@Override
+	public boolean isRecurrent() {
+		return net.isRecurrent();
+	}
+}
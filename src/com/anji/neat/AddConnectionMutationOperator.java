@@ -145,6 +145,9 @@ public class AddConnectionMutationOperator extends MutationOperatorMultiple impl
 		HashSet<Long> rejectedConnIds = new HashSet<Long>();
 		HashSet<Long> neuronsWithBiasAdded = new HashSet<Long>();
 		boolean bvi = config.biasViaInput();
+		// If innovations are only recorded for the current generation then an existing connection between the same
+		// neurons may have a different ID to the new one.
+		boolean checkEndpoints = config.getInnovationRegistry().isGenerationScoped();
 
 		for (int i = 0; i < numConnectionsToAdd; ++i) {
 			Allele newAllele = null;
@@ -166,7 +169,7 @@ public class AddConnectionMutationOperator extends MutationOperatorMultiple impl
 					src = neuronList.get(srcIdx);
 					
 					newAllele = config.newConnectionAllele(src.getInnovationId(), dest.getInnovationId());
-					if (conns.containsKey(newAllele.getInnovationId()) || rejectedConnIds.contains(newAllele.getInnovationId())) {
+					if (conns.containsKey(newAllele.getInnovationId()) || rejectedConnIds.contains(newAllele.getInnovationId()) || (checkEndpoints && NeatChromosomeUtility.neuronsAreDirectlyConnected(src.getInnovationId(), dest.getInnovationId(), conns.values()))) {
 						newAllele = null;
 					}
 					else {
@@ -131,7 +131,18 @@ public class ConnectionAllele extends Allele {
 		if (!(otherAllele instanceof ConnectionAllele))
 			return false;
 		ConnectionAllele other = (ConnectionAllele) otherAllele;
-		return getSrcNeuronId() == other.getSrcNeuronId() && getDestNeuronId() == other.getDestNeuronId() && weight == other.weight;
+		return getSrcNeuronId().equals(other.getSrcNeuronId()) && getDestNeuronId().equals(other.getDestNeuronId()) && weight == other.weight;
+	}
+
+	@Override
+	public long contentHash() {
+		long h = mixHash(super.contentHash(), getSrcNeuronId());
+		return mixHash(h, getDestNeuronId());
+	}
+
+	@Override
+	public boolean isDescribedByValue() {
+		return getClass() == ConnectionAllele.class;
 	}
 
 	/**
@@ -19,6 +19,7 @@
  */
 package com.anji.neat;
 
+import org.jgapcustomised.Allele;
 import org.jgapcustomised.Gene;
 
 /**
@@ -76,4 +77,14 @@ public class ConnectionGene extends Gene {
 	public Long getSrcNeuronId() {
 		return srcNeuronId;
 	}
+
+	/**
+	 * @return a new {@link ConnectionAllele} of this gene with the given weight.
+	 */
+	@Override
+	public Allele newAllele(double value) {
+		ConnectionAllele allele = new ConnectionAllele(this);
+		allele.setWeight(value);
+		return allele;
+	}
 }
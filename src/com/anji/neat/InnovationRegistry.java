@@ -0,0 +1,314 @@
+package com.anji.neat;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.Priority;
+import org.jgapcustomised.Configuration;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import com.anji.util.Properties;
+import com.ojcoleman.ahni.util.ConcurrentLongPairLongMap;
+
+/**
+ * <p>
+ * Records the innovation IDs given to the genes created by structural mutations, so that the same structural
+ * innovation made in different individuals is given the same innovation ID: a hidden neuron replacing a given
+ * connection, or a connection between a given pair of neurons. New innovation IDs are allocated with
+ * {@link Configuration#nextInnovationId()}.
+ * </p>
+ * <p>
+ * The innovations are stored in {@link ConcurrentLongPairLongMap}s, so the registry may be used concurrently without
+ * locking and requires little memory per innovation. By default innovations are recorded for the whole run. If
+ * {@link #SCOPE_KEY} is set to "generation" then the registry is cleared at the start of each generation (see
+ * {@link #startGeneration()}), so that, as in the original NEAT, innovations are only given the same ID if they occur
+ * in the same generation and the registry does not grow over the run. In this case individuals may end up with
+ * equivalent genes with different IDs, for example via crossover.
+ * </p>
+ * <p>
+ * If {@link #FILE_KEY} is set the registry is stored in, and loaded from, the given file as a compact binary snapshot
+ * (see {@link #writeSnapshot(DataOutput)}). A file in the XML format written by the NeatIdMap class this registry
+ * replaces is imported, and then replaced by a snapshot when the registry is stored.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class InnovationRegistry {
+	private static final Logger logger = Logger.getLogger(InnovationRegistry.class);
+
+	/**
+	 * The file to store the registry in, optional.
+	 */
+	public final static String FILE_KEY = "neat.id.file";
+
+	/**
+	 * The scope over which innovations are recorded, either "run" or "generation". Default is "run".
+	 */
+	public final static String SCOPE_KEY = "neat.id.scope";
+
+	private static final int SNAPSHOT_MAGIC = 0x4E494452;
+	private static final int SNAPSHOT_VERSION = 1;
+	// The root tag of the XML format written by NeatIdMap.
+	private static final String LEGACY_XML_TAG = "neat_id_map";
+
+	private final Configuration config;
+	// Keyed by the ID of the replaced connection (and 0).
+	private final ConcurrentLongPairLongMap neuronIds = new ConcurrentLongPairLongMap();
+	// Keyed by the IDs of the source and destination neurons.
+	private final ConcurrentLongPairLongMap connectionIds = new ConcurrentLongPairLongMap();
+	private final String fileName;
+	private final boolean generationScope;
+
+	/**
+	 * @param props The properties to configure the registry with.
+	 * @param config The configuration used to allocate new innovation IDs.
+	 */
+	public InnovationRegistry(Properties props, Configuration config) {
+		this.config = config;
+		fileName = props.getProperty(FILE_KEY, null);
+		String scope = props.getProperty(SCOPE_KEY, "run").trim().toLowerCase();
+		if (!scope.equals("run") && !scope.equals("generation")) {
+			throw new IllegalArgumentException("Invalid value for " + SCOPE_KEY + ": " + scope + ", must be \"run\" or \"generation\".");
+		}
+		generationScope = scope.equals("generation");
+	}
+
+	/**
+	 * @return The ID of the neuron replacing the given connection, or {@link ConcurrentLongPairLongMap#NO_VALUE} if
+	 *         there is none.
+	 */
+	public long findNeuronId(long connectionId) {
+		return neuronIds.get(connectionId, 0);
+	}
+
+	/**
+	 * @return The ID of the connection between the given neurons, or {@link ConcurrentLongPairLongMap#NO_VALUE} if
+	 *         there is none.
+	 */
+	public long findConnectionId(long srcNeuronId, long destNeuronId) {
+		return connectionIds.get(srcNeuronId, destNeuronId);
+	}
+
+	/**
+	 * @return The ID of the neuron replacing the given connection, allocating and recording a new ID if there is none.
+	 */
+	public long getNeuronId(long connectionId) {
+		long id = neuronIds.get(connectionId, 0);
+		if (id == ConcurrentLongPairLongMap.NO_VALUE) {
+			id = config.nextInnovationId();
+			// If another thread recorded an ID first then use that one.
+			long existing = neuronIds.putIfAbsent(connectionId, 0, id);
+			if (existing != ConcurrentLongPairLongMap.NO_VALUE) {
+				id = existing;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * @return The ID of the connection between the given neurons, allocating and recording a new ID if there is none.
+	 */
+	public long getConnectionId(long srcNeuronId, long destNeuronId) {
+		long id = connectionIds.get(srcNeuronId, destNeuronId);
+		if (id == ConcurrentLongPairLongMap.NO_VALUE) {
+			id = config.nextInnovationId();
+			// If another thread recorded an ID first then use that one.
+			long existing = connectionIds.putIfAbsent(srcNeuronId, destNeuronId, id);
+			if (existing != ConcurrentLongPairLongMap.NO_VALUE) {
+				id = existing;
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * @return true iff innovations are only recorded for the current generation.
+	 */
+	public boolean isGenerationScoped() {
+		return generationScope;
+	}
+
+	/**
+	 * Called at the start of the genetic operators of each generation, clears the registry if innovations are only
+	 * recorded for the current generation.
+	 */
+	public void startGeneration() {
+		if (generationScope) {
+			clear();
+		}
+	}
+
+	/**
+	 * Removes all recorded innovations.
+	 */
+	public void clear() {
+		neuronIds.clear();
+		connectionIds.clear();
+	}
+
+	/**
+	 * Writes a snapshot of the registry to the given output: a header followed by the neuron and connection
+	 * innovations as primitive longs. Should not be called while innovations are being recorded.
+	 */
+	public void writeSnapshot(DataOutput out) throws IOException {
+		out.writeInt(SNAPSHOT_MAGIC);
+		out.writeInt(SNAPSHOT_VERSION);
+		neuronIds.write(out);
+		connectionIds.write(out);
+	}
+
+	/**
+	 * Adds the innovations in a snapshot written by {@link #writeSnapshot(DataOutput)} to the registry.
+	 *
+	 * @throws IOException If the input is not a snapshot of a registry.
+	 */
+	public void readSnapshot(DataInput in) throws IOException {
+		if (in.readInt() != SNAPSHOT_MAGIC) {
+			throw new IOException("Not an innovation registry snapshot.");
+		}
+		int version = in.readInt();
+		if (version != SNAPSHOT_VERSION) {
+			throw new IOException("Unsupported innovation registry snapshot version: " + version);
+		}
+		neuronIds.read(in);
+		connectionIds.read(in);
+	}
+
+	/**
+	 * @return A snapshot of the registry, see {@link #writeSnapshot(DataOutput)}.
+	 */
+	public byte[] toSnapshot() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataOutputStream out = new DataOutputStream(bytes);
+			writeSnapshot(out);
+			out.flush();
+		} catch (IOException e) {
+			// Not thrown by ByteArrayOutputStream.
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Adds the innovations in the XML format written by the NeatIdMap class this registry replaces to the registry.
+	 *
+	 * @throws IOException If the input is not a valid NEAT ID map.
+	 */
+	public void readLegacyXml(InputStream in) throws IOException {
+		Document doc;
+		try {
+			doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(in);
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e);
+		} catch (SAXException e) {
+			throw new IOException("Not a NEAT ID map: " + e.getMessage(), e);
+		}
+		Node node = doc.getFirstChild();
+		if (!LEGACY_XML_TAG.equals(node.getNodeName())) {
+			throw new IOException("Not a NEAT ID map, root tag is " + node.getNodeName());
+		}
+		NodeList maps = node.getChildNodes();
+		for (int i = 0; i < maps.getLength(); i++) {
+			NodeList children = maps.item(i).getChildNodes();
+			for (int j = 0; j < children.getLength(); j++) {
+				Node child = children.item(j);
+				if ("neuron".equals(child.getNodeName())) {
+					neuronIds.putIfAbsent(getLongAttribute(child, "connection_id"), 0, getLongAttribute(child, "id"));
+				} else if ("connection".equals(child.getNodeName())) {
+					connectionIds.putIfAbsent(getLongAttribute(child, "src_neuron_id"), getLongAttribute(child, "dest_neuron_id"), getLongAttribute(child, "id"));
+				}
+			}
+		}
+	}
+
+	private static long getLongAttribute(Node node, String name) throws IOException {
+		Node attr = node.getAttributes() != null ? node.getAttributes().getNamedItem(name) : null;
+		if (attr == null) {
+			throw new IOException("Invalid NEAT ID map, " + node.getNodeName() + " element missing " + name + " attribute.");
+		}
+		try {
+			return Long.parseLong(attr.getNodeValue());
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid NEAT ID map, " + node.getNodeName() + " element has invalid " + name + " attribute: " + attr.getNodeValue());
+		}
+	}
+
+	/**
+	 * Loads the registry from the file specified by {@link #FILE_KEY}, if any. The file may contain a snapshot (see
+	 * {@link #writeSnapshot(DataOutput)}) or a NEAT ID map in the legacy XML format (see
+	 * {@link #readLegacyXml(InputStream)}). If the file does not exist then the registry is left empty.
+	 *
+	 * @throws IOException If the file exists but could not be read, so that it is not overwritten by {@link #store()}.
+	 */
+	public void load() throws IOException {
+		if (fileName != null && new File(fileName).exists()) {
+			BufferedInputStream in = null;
+			try {
+				in = new BufferedInputStream(new FileInputStream(fileName));
+				in.mark(4);
+				int magic = new DataInputStream(in).readInt();
+				in.reset();
+				if (magic == SNAPSHOT_MAGIC) {
+					readSnapshot(new DataInputStream(in));
+				} else {
+					readLegacyXml(in);
+					logger.info("Imported innovation IDs from NEAT ID map " + fileName + ", it will be replaced with a snapshot of the registry when the registry is stored.");
+				}
+			} catch (IOException e) {
+				clear();
+				throw new IOException("Could not load innovation IDs from " + fileName + ": " + e.getMessage(), e);
+			} finally {
+				if (in != null) {
+					in.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stores the registry in the file specified by {@link #FILE_KEY}, if any.
+	 *
+	 * @return true iff the registry was stored.
+	 */
+	public boolean store() throws IOException {
+		if (fileName != null) {
+			DataOutputStream out = null;
+			try {
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+				writeSnapshot(out);
+				out.flush();
+				return true;
+			} finally {
+				if (out != null) {
+					out.close();
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Logs the number of recorded innovations.
+	 */
+	public void log(Logger aLogger, Priority pri) {
+		aLogger.log(pri, "Innovation registry contains " + neuronIds.size() + " neuron and " + connectionIds.size() + " connection innovations.");
+	}
+}
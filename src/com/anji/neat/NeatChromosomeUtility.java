@@ -368,6 +368,21 @@ public class NeatChromosomeUtility {
 		return false;
 	}
 	
+	/**
+	 * @param srcNeuronId
+	 * @param destNeuronId
+	 * @param connAlleles <code>Collection</code> contains <code>ConnectionAllele</code> objects
+	 * @return true if <code>connAlleles</code> contains a connection directly from <code>srcNeuronId</code> to
+	 *         <code>destNeuronId</code>
+	 */
+	public static boolean neuronsAreDirectlyConnected(Long srcNeuronId, Long destNeuronId, Collection<ConnectionAllele> connAlleles) {
+		for (ConnectionAllele connAllele : connAlleles) {
+			if (connAllele.getSrcNeuronId().equals(srcNeuronId) && connAllele.getDestNeuronId().equals(destNeuronId))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * @param config
 	 * @param src
@@ -20,10 +20,14 @@
 package com.anji.neat;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.SortedSet;
 
 import org.apache.log4j.Logger;
 import org.apache.log4j.Priority;
+import org.jgapcustomised.Allele;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.ChromosomeMaterial;
 import org.jgapcustomised.Configuration;
@@ -31,6 +35,8 @@ import org.jgapcustomised.IdFactory;
 import org.jgapcustomised.InvalidConfigurationException;
 import org.jgapcustomised.NaturalSelector;
 import org.jgapcustomised.event.EventManager;
+import org.jgapcustomised.event.GeneticEvent;
+import org.jgapcustomised.event.GeneticEventListener;
 import org.jgapcustomised.impl.CloneReproductionOperator;
 import org.jgapcustomised.impl.WeightedRouletteSelector;
 
@@ -40,6 +46,7 @@ import com.anji.util.Configurable;
 import com.anji.util.Properties;
 import com.anji.util.Randomizer;
 import com.ojcoleman.ahni.util.ArrayUtil;
+import com.ojcoleman.ahni.util.ConcurrentLongPairLongMap;
 
 /**
  * Extension of JGAP configuration with NEAT-specific features added.
@@ -226,9 +233,13 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	protected String hiddenActivationType;
 	protected String[] hiddenActivationTypeRandomAllowed;
 	protected double[] hiddenActivationTypeRandomDistribution;
-	private NeatIdMap neatIdMap;
+	private InnovationRegistry innovationRegistry;
 	RecurrencyPolicy recurrencyPolicy;
 	
+	// The innovations made by each offspring, and the offspring being mutated by each thread, during concurrent mutation.
+	private transient OffspringInnovations[] offspringInnovations;
+	private transient ThreadLocal<OffspringInnovations> currentOffspringInnovations;
+	
 	/**
 	 * Initialize mutation operators.
 	 * 
@@ -295,6 +306,13 @@ public class NeatConfiguration extends Configuration implements Configurable {
 		Randomizer r = (Randomizer) props.singletonObjectProperty(Randomizer.class);
 		setRandomGenerator(r.getRand());
 		setEventManager(new EventManager());
+		getEventManager().addEventListener(GeneticEvent.GENOTYPE_START_GENETIC_OPERATORS_EVENT, new GeneticEventListener() {
+			public void geneticEventFired(GeneticEvent event) {
+				if (innovationRegistry != null) {
+					innovationRegistry.startGeneration();
+				}
+			}
+		});
 
 		// id persistence
 		String s = props.getProperty(ID_FACTORY_KEY, null);
@@ -468,7 +486,9 @@ public class NeatConfiguration extends Configuration implements Configurable {
 		} else {
 			funcType = hiddenActivationType;
 		}		
-		return newNeuronAllele(type, nextInnovationId(), funcType, 0);
+		OffspringInnovations innovations = getCurrentOffspringInnovations();
+		Long id = innovations != null ? innovations.add(OffspringInnovations.NEURON, 0, 0) : nextInnovationId();
+		return newNeuronAllele(type, id, funcType, 0);
 	}
 
 	/**
@@ -480,10 +500,20 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	 * @return NeuronAllele
 	 */
 	public NeuronAllele newNeuronAllele(Long connectionId) {
-		Long id = neatIdMap.findNeuronId(connectionId);
-		if (id == null) {
-			id = nextInnovationId();
-			neatIdMap.putNeuronId(connectionId, id);
+		Long id;
+		OffspringInnovations innovations = getCurrentOffspringInnovations();
+		if (innovations != null) {
+			// The registry is not modified during concurrent mutation, new innovations are recorded for the offspring.
+			long existing = innovationRegistry.findNeuronId(connectionId);
+			id = existing != ConcurrentLongPairLongMap.NO_VALUE ? existing : null;
+			if (id == null) {
+				id = innovations.findNeuronId(connectionId);
+				if (id == null) {
+					id = innovations.add(OffspringInnovations.SPLIT_NEURON, connectionId, 0);
+				}
+			}
+		} else {
+			id = innovationRegistry.getNeuronId(connectionId);
 		}
 		return newNeuronAllele(NeuronType.HIDDEN, id, hiddenActivationType, 0);
 	}
@@ -525,16 +555,104 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	 * @return ConnectionAllele
 	 */
 	public ConnectionAllele newConnectionAllele(Long srcNeuronId, Long destNeuronId, double weight) {
-		Long id = neatIdMap.findConnectionId(srcNeuronId, destNeuronId);
-		if (id == null) {
-			id = nextInnovationId();
-			neatIdMap.putConnectionId(srcNeuronId, destNeuronId, id);
+		Long id;
+		OffspringInnovations innovations = getCurrentOffspringInnovations();
+		if (innovations != null) {
+			// The registry is not modified during concurrent mutation, new innovations are recorded for the offspring.
+			long existing = innovationRegistry.findConnectionId(srcNeuronId, destNeuronId);
+			id = existing != ConcurrentLongPairLongMap.NO_VALUE ? existing : null;
+			if (id == null) {
+				id = innovations.findConnectionId(srcNeuronId, destNeuronId);
+				if (id == null) {
+					id = innovations.add(OffspringInnovations.CONNECTION, srcNeuronId, destNeuronId);
+				}
+			}
+		} else {
+			id = innovationRegistry.getConnectionId(srcNeuronId, destNeuronId);
 		}
 		ConnectionGene gene = new ConnectionGene(id, srcNeuronId, destNeuronId);
 		ConnectionAllele allele = new ConnectionAllele(gene);
 		allele.setWeight(weight);
 		return allele;
 	}
+	
+	private OffspringInnovations getCurrentOffspringInnovations() {
+		return currentOffspringInnovations != null ? currentOffspringInnovations.get() : null;
+	}
+	
+	/**
+	 * Prepares to record the innovations made by each offspring, see {@link OffspringInnovations}.
+	 */
+	@Override
+	public void startConcurrentMutation(int offspringCount) {
+		offspringInnovations = new OffspringInnovations[offspringCount];
+		currentOffspringInnovations = new ThreadLocal<OffspringInnovations>();
+	}
+	
+	@Override
+	public void startOffspringMutation(int index) {
+		offspringInnovations[index] = new OffspringInnovations();
+		currentOffspringInnovations.set(offspringInnovations[index]);
+	}
+	
+	@Override
+	public void finishOffspringMutation(int index) {
+		currentOffspringInnovations.remove();
+	}
+	
+	/**
+	 * Assigns innovation IDs to the innovations made by each offspring, in offspring order, and replaces the
+	 * provisional IDs in the offspring with them. Innovations equivalent to one made by an earlier offspring, in this
+	 * or a previous generation, are given the same ID.
+	 */
+	@Override
+	public void finishConcurrentMutation(List<ChromosomeMaterial> offspring) {
+		currentOffspringInnovations = null;
+		for (int i = 0; i < offspringInnovations.length; i++) {
+			OffspringInnovations innovations = offspringInnovations[i];
+			if (innovations == null || innovations.size() == 0) {
+				continue;
+			}
+			
+			// Innovations may only refer to provisional IDs of innovations made before them, so resolving in order
+			// means the referenced IDs have already been resolved.
+			long[] ids = new long[innovations.size()];
+			for (int j = 0; j < ids.length; j++) {
+				long[] innovation = innovations.get(j);
+				if (innovation[0] == OffspringInnovations.NEURON) {
+					ids[j] = nextInnovationId();
+				} else if (innovation[0] == OffspringInnovations.SPLIT_NEURON) {
+					ids[j] = innovationRegistry.getNeuronId(resolve(innovation[1], ids));
+				} else {
+					ids[j] = innovationRegistry.getConnectionId(resolve(innovation[1], ids), resolve(innovation[2], ids));
+				}
+			}
+			
+			SortedSet<Allele> alleles = offspring.get(i).getAlleles();
+			List<Allele> provisional = new ArrayList<Allele>();
+			List<Allele> resolved = new ArrayList<Allele>();
+			for (Allele allele : alleles) {
+				if (allele instanceof NeuronAllele && OffspringInnovations.isProvisional(allele.getInnovationId())) {
+					NeuronAllele neuron = (NeuronAllele) allele;
+					provisional.add(neuron);
+					resolved.add(new NeuronAllele(new NeuronGene(neuron.getType(), resolve(neuron.getInnovationId(), ids), neuron.getActivationType()), neuron.getBias()));
+				} else if (allele instanceof ConnectionAllele && OffspringInnovations.isProvisional(allele.getInnovationId())) {
+					ConnectionAllele connection = (ConnectionAllele) allele;
+					provisional.add(connection);
+					ConnectionAllele newConnection = new ConnectionAllele(new ConnectionGene(resolve(connection.getInnovationId(), ids), resolve(connection.getSrcNeuronId(), ids), resolve(connection.getDestNeuronId(), ids)));
+					newConnection.setWeight(connection.getWeight());
+					resolved.add(newConnection);
+				}
+			}
+			alleles.removeAll(provisional);
+			alleles.addAll(resolved);
+		}
+		offspringInnovations = null;
+	}
+	
+	private static Long resolve(long id, long[] ids) {
+		return OffspringInnovations.isProvisional(id) ? ids[(int) (id - OffspringInnovations.PROVISIONAL_ID_BASE)] : id;
+	}
 
 
 	/**
@@ -580,12 +698,12 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	 * @throws InvalidConfigurationException
 	 */
 	public void load() throws InvalidConfigurationException {
-		if (neatIdMap == null) {
-			neatIdMap = new NeatIdMap(props);
+		if (innovationRegistry == null) {
+			innovationRegistry = new InnovationRegistry(props, this);
 			try {
-				neatIdMap.load();
+				innovationRegistry.load();
 			} catch (IOException e) {
-				String msg = "error loading ID map";
+				String msg = "error loading innovation registry";
 				logger.error(msg, e);
 				throw new InvalidConfigurationException(msg);
 			}
@@ -602,11 +720,9 @@ public class NeatConfiguration extends Configuration implements Configurable {
 
 		try {
 			getIdFactory().store();
-			if (neatIdMap.store()) {
-				neatIdMap = null;
-			}
+			innovationRegistry.store();
 		} catch (IOException e) {
-			String msg = "error storing ID map";
+			String msg = "error storing innovation registry";
 			logger.error(msg, e);
 			throw new InvalidConfigurationException(msg);
 		}
@@ -619,7 +735,14 @@ public class NeatConfiguration extends Configuration implements Configurable {
 	 * @param pri priority
 	 */
 	public void logIdMaps(Logger aLogger, Priority pri) {
-		neatIdMap.log(aLogger, pri);
+		innovationRegistry.log(aLogger, pri);
+	}
+
+	/**
+	 * @return the registry of the innovation IDs given to structural innovations
+	 */
+	public InnovationRegistry getInnovationRegistry() {
+		return innovationRegistry;
 	}
 
 	public RecurrencyPolicy getRecurrencyPolicy() {
@@ -47,9 +47,15 @@ public class NeatCrossoverReproductionOperator extends CrossoverReproductionOper
 			child.setSecondaryParentId(parent2.getId());
 
 			// Values (eg weights) for genes are mixture of those from both parents (where the non-dominant parent has a matching gene).
+			// The alleles of both parents are sorted by innovation ID, so matching alleles are found by merging them.
+			Iterator<Allele> itrP2 = parent2.getAlleles().iterator();
+			Allele allele2 = itrP2.hasNext() ? itrP2.next() : null;
 			for (Allele allele1 : child.getAlleles()) {
-				Allele allele2 = parent2.findMatchingGene(allele1);
-				if (allele2 != null) { // if rec chrom has allele with same id
+				long id1 = allele1.getInnovationId();
+				while (allele2 != null && allele2.getInnovationId() < id1) {
+					allele2 = itrP2.hasNext() ? itrP2.next() : null;
+				}
+				if (allele2 != null && allele2.getInnovationId() == id1) { // if rec chrom has allele with same id
 					int valueSwitch = config.getRandomGenerator().nextInt(3);
 					// valueSwitch == 0 means we use parent1 allele value, nothing to do.
 					if (valueSwitch == 1) {
@@ -69,8 +75,8 @@ public class NeatCrossoverReproductionOperator extends CrossoverReproductionOper
 			SortedSet<Allele> childAlleles = new TreeSet<Allele>();
 			ChromosomeMaterial m1 = parent1.getMaterial();
 			ChromosomeMaterial m2 = parent2.getMaterial();
-			Iterator<Allele> itrP1 = m1.getAlleles().iterator();
-			Iterator<Allele> itrP2 = m2.getAlleles().iterator();
+			Iterator<Allele> itrP1 = m1.readAlleles().iterator();
+			Iterator<Allele> itrP2 = m2.readAlleles().iterator();
 			Allele allele1 = itrP1.next();
 			Allele allele2 = itrP2.next();
 			List<ConnectionAllele> addedConns = new ArrayList<ConnectionAllele>(Math.max(parent1.size(), parent2.size()));
@@ -84,7 +90,7 @@ public class NeatCrossoverReproductionOperator extends CrossoverReproductionOper
 					childAllele = allele1.getInnovationId() <= allele2.getInnovationId() ? allele1.cloneAllele() : allele2.cloneAllele();
 					
 					// If both parents have this allele, allow using value from one or the other or a blended value.
-					if (allele1.getInnovationId() == allele2.getInnovationId()) {
+					if (allele1.getInnovationId().equals(allele2.getInnovationId())) {
 						int valueSwitch = config.getRandomGenerator().nextInt(3);
 						// valueSwitch == 0 means we use parent1 allele value, nothing to do.
 						if (valueSwitch == 1) {
@@ -99,7 +105,7 @@ public class NeatCrossoverReproductionOperator extends CrossoverReproductionOper
 					}
 					
 					// If both chromosomes have this allele, iterate to next on both.
-					if (allele1.getInnovationId() == allele2.getInnovationId()) {
+					if (allele1.getInnovationId().equals(allele2.getInnovationId())) {
 						allele1 = itrP1.hasNext() ? itrP1.next() : null;
 						allele2 = itrP2.hasNext() ? itrP2.next() : null;
 					}
@@ -129,6 +129,17 @@ public class NeuronAllele extends Allele {
 		return getType().equals(other.getType()) && getActivationType().equals(other.getActivationType()) && bias == other.bias;
 	}
 
+	@Override
+	public long contentHash() {
+		long h = mixHash(super.contentHash(), getType().toString().hashCode());
+		return mixHash(h, getActivationType().hashCode());
+	}
+
+	@Override
+	public boolean isDescribedByValue() {
+		return getClass() == NeuronAllele.class;
+	}
+
 	/**
 	 * Gets the bias value.
 	 */
@@ -19,6 +19,7 @@
  */
 package com.anji.neat;
 
+import org.jgapcustomised.Allele;
 import org.jgapcustomised.Gene;
 
 import com.anji.nn.activationfunction.ActivationFunction;
@@ -89,4 +90,12 @@ public class NeuronGene extends Gene {
 	String getActivationType() {
 		return activationType;
 	}
+
+	/**
+	 * @return a new {@link NeuronAllele} of this gene with the given bias.
+	 */
+	@Override
+	public Allele newAllele(double value) {
+		return new NeuronAllele(this, value);
+	}
 }
@@ -0,0 +1,96 @@
+package com.anji.neat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the innovations (new neuron and connection genes) made while mutating a single offspring when offspring are
+ * mutated concurrently (see {@link org.jgapcustomised.Genotype#PARALLEL_OFFSPRING_KEY}). New innovations are given
+ * provisional innovation IDs, starting at {@link #PROVISIONAL_ID_BASE}, which depend only on the order in which the
+ * offspring made them. Once all offspring have been mutated, {@link NeatConfiguration} replaces the provisional IDs
+ * with real innovation IDs, processing the offspring in index order, so that the IDs assigned do not depend on the
+ * order in which the offspring were mutated.
+ *
+ * @author Oliver Coleman
+ */
+class OffspringInnovations {
+	/**
+	 * Provisional innovation IDs are this value plus the index of the innovation. This is far above any real innovation
+	 * ID, so genes with provisional IDs sort after existing genes, as new genes with real IDs would.
+	 */
+	static final long PROVISIONAL_ID_BASE = 1L << 62;
+
+	/**
+	 * A new hidden neuron not associated with a connection.
+	 */
+	static final int NEURON = 0;
+
+	/**
+	 * A new hidden neuron replacing a connection.
+	 */
+	static final int SPLIT_NEURON = 1;
+
+	/**
+	 * A new connection between two neurons.
+	 */
+	static final int CONNECTION = 2;
+
+	// Each element is {type, first key, second key}, where the keys are the connection ID for split neurons and the
+	// source and destination neuron IDs for connections. The index of an element is its provisional ID minus the base.
+	private final List<long[]> innovations = new ArrayList<long[]>();
+
+	/**
+	 * @return true iff the given innovation ID is a provisional ID.
+	 */
+	static boolean isProvisional(long id) {
+		return id >= PROVISIONAL_ID_BASE;
+	}
+
+	/**
+	 * @return The provisional ID of the neuron replacing the given connection, or null if there is none.
+	 */
+	Long findNeuronId(long connectionId) {
+		return find(SPLIT_NEURON, connectionId, 0);
+	}
+
+	/**
+	 * @return The provisional ID of the connection between the given neurons, or null if there is none.
+	 */
+	Long findConnectionId(long srcNeuronId, long destNeuronId) {
+		return find(CONNECTION, srcNeuronId, destNeuronId);
+	}
+
+	/**
+	 * @return A provisional ID for a new innovation of the given type and keys.
+	 */
+	long add(int type, long key1, long key2) {
+		innovations.add(new long[] { type, key1, key2 });
+		return PROVISIONAL_ID_BASE + innovations.size() - 1;
+	}
+
+	/**
+	 * @return The number of innovations recorded.
+	 */
+	int size() {
+		return innovations.size();
+	}
+
+	/**
+	 * @return The innovation with the given index, as an array containing the type and the two keys. The returned array
+	 *         must not be modified.
+	 */
+	long[] get(int index) {
+		return innovations.get(index);
+	}
+
+	private Long find(int type, long key1, long key2) {
+		// Offspring make few innovations in a generation, so a linear search is fine.
+		for (int i = 0; i < innovations.size(); i++) {
+			long[] innovation = innovations.get(i);
+			if (innovation[0] == type && innovation[1] == key1 && innovation[2] == key2) {
+				return PROVISIONAL_ID_BASE + i;
+			}
+		}
+		return null;
+	}
+}
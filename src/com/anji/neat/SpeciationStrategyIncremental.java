@@ -0,0 +1,210 @@
+package com.anji.neat;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.Genotype;
+import org.jgapcustomised.SpeciationParms;
+import org.jgapcustomised.SpeciationStrategy;
+import org.jgapcustomised.Species;
+
+import com.anji.util.Configurable;
+import com.anji.util.Properties;
+import com.ojcoleman.ahni.util.Parallel;
+import com.ojcoleman.ahni.util.Parallel.Operation;
+
+/**
+ * <p>
+ * A speciation strategy that avoids re-speciating the entire population every generation. Genomes that survived from
+ * the previous generation keep their species, and only genomes that do not have a species (newly created offspring)
+ * are placed, each into the species whose representative it is closest to. The species representatives are not
+ * changed when placing genomes.
+ * </p>
+ * <p>
+ * Periodically, and whenever the species have drifted too far from their representatives, the population is
+ * speciated from scratch by another strategy, specified by {@link #FULL_STRATEGY_CLASS_KEY}. The drift is measured as
+ * the mean distance from each genome to the representative of its species, relative to the mean distance immediately
+ * after the most recent full speciation. Select this strategy by setting {@link Genotype#SPECIATION_STRATEGY_CLASS_KEY}
+ * to <code>com.anji.neat.SpeciationStrategyIncremental</code>.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class SpeciationStrategyIncremental implements SpeciationStrategy, Configurable {
+	private static Logger logger = Logger.getLogger(SpeciationStrategyIncremental.class);
+
+	/**
+	 * The class of the speciation strategy used to periodically speciate the entire population. Default is
+	 * {@link SpeciationStrategyKMeans}.
+	 */
+	public static final String FULL_STRATEGY_CLASS_KEY = "speciation.incremental.full.class";
+
+	/**
+	 * The number of generations between full speciations of the population. Default is 10.
+	 */
+	public static final String FULL_PERIOD_KEY = "speciation.incremental.period";
+
+	/**
+	 * A full speciation is performed when the mean distance from each genome to the representative of its species
+	 * exceeds this factor multiplied by the mean distance immediately after the previous full speciation (if that was
+	 * not zero). Set to 0 to disable. Default is 1.5.
+	 */
+	public static final String MAX_DRIFT_KEY = "speciation.incremental.drift";
+
+	private SpeciationStrategy fullStrategy;
+	private int fullPeriod;
+	private double maxDrift;
+
+	private int lastFullGeneration = -1;
+	private double referenceDistance;
+
+	@Override
+	public void init(Properties props) throws Exception {
+		Class<?> fullStrategyClass = props.getClassProperty(FULL_STRATEGY_CLASS_KEY, SpeciationStrategyKMeans.class);
+		fullStrategy = (SpeciationStrategy) props.newObjectProperty(fullStrategyClass);
+		fullPeriod = props.getIntProperty(FULL_PERIOD_KEY, 10);
+		maxDrift = props.getDoubleProperty(MAX_DRIFT_KEY, 1.5);
+	}
+
+	@Override
+	public synchronized void respeciate(List<Chromosome> genomeList, List<Species> speciesList, Genotype genotype) {
+		fullStrategy.respeciate(genomeList, speciesList, genotype);
+		fullSpeciationPerformed(genomeList, speciesList, genotype);
+	}
+
+	@Override
+	public synchronized void speciate(final List<Chromosome> genomeList, final List<Species> speciesList, Genotype genotype) {
+		final SpeciationParms specParms = genotype.getConfiguration().getSpeciationParms();
+
+		// Record the fittest of each species before its membership changes, as SpeciationStrategyOriginal does.
+		for (Species species : speciesList) {
+			species.setPreviousBestPerforming(species.getBestPerforming());
+		}
+
+		if (lastFullGeneration == -1 || speciesList.isEmpty() || genotype.getGeneration() - lastFullGeneration >= fullPeriod) {
+			fullSpeciation(genomeList, speciesList, genotype);
+			return;
+		}
+
+		// Remove genomes no longer in the population from their species, and determine which genomes need placing.
+		Set<Chromosome> population = new HashSet<Chromosome>(genomeList);
+		Set<Species> currentSpecies = new HashSet<Species>(speciesList);
+		for (Species species : speciesList) {
+			for (Chromosome c : new ArrayList<Chromosome>(species.getChromosomes())) {
+				if (!population.contains(c)) {
+					species.remove(c);
+				}
+			}
+		}
+		List<Chromosome> toPlace = new ArrayList<Chromosome>();
+		for (Chromosome c : genomeList) {
+			if (c.getSpecie() == null || !currentSpecies.contains(c.getSpecie())) {
+				c.resetSpecie();
+				toPlace.add(c);
+			}
+		}
+
+		// Find the closest species for each new genome in parallel, then add them in order so that the order of
+		// genomes within species, and so the results of later operations, does not depend on thread scheduling.
+		final Map<Chromosome, Species> closest = new ConcurrentHashMap<Chromosome, Species>();
+		Parallel.foreach(toPlace, 0, new Operation<Chromosome>() {
+			@Override
+			public void perform(Chromosome genome) {
+				closest.put(genome, findClosestSpecies(genome, speciesList, specParms));
+			}
+		});
+		for (Chromosome genome : toPlace) {
+			closest.get(genome).add(genome);
+		}
+
+		// Remove any empty species.
+		for (Species species : new ArrayList<Species>(speciesList)) {
+			if (species.isEmpty()) {
+				species.originalSize = 0;
+				speciesList.remove(species);
+			}
+		}
+
+		double distance = meanDistance(genomeList, specParms);
+		// If the reference distance is zero (eg every species contained only genomes identical to its representative)
+		// then any change would count as drift.
+		if (maxDrift > 0 && referenceDistance > 0 && distance > referenceDistance * maxDrift) {
+			logger.debug("Species drift (mean distance to representative " + distance + " versus " + referenceDistance + " after last full speciation) exceeds threshold, performing full speciation.");
+			fullSpeciation(genomeList, speciesList, genotype);
+		}
+	}
+
+	private void fullSpeciation(List<Chromosome> genomeList, List<Species> speciesList, Genotype genotype) {
+		SpeciationParms specParms = genotype.getConfiguration().getSpeciationParms();
+		if (!speciesList.isEmpty() && speciesList.size() < specParms.getSpeciationTarget()) {
+			// Species removed because they became empty in incremental generations are replaced with new species
+			// represented by the genomes furthest from their species representative, so that strategies which
+			// maintain a fixed number of species, such as SpeciationStrategyKMeans, do not start again from scratch.
+			Set<Species> currentSpecies = new HashSet<Species>(speciesList);
+			List<Chromosome> outliers = new ArrayList<Chromosome>();
+			final Map<Chromosome, Double> distances = new HashMap<Chromosome, Double>();
+			for (Chromosome genome : genomeList) {
+				if (genome.getSpecie() != null && currentSpecies.contains(genome.getSpecie())) {
+					outliers.add(genome);
+					distances.put(genome, genome.getSpecie().getDistance(genome, specParms, Double.POSITIVE_INFINITY));
+				}
+			}
+			Collections.sort(outliers, new Comparator<Chromosome>() {
+				@Override
+				public int compare(Chromosome c1, Chromosome c2) {
+					// Furthest first.
+					return Double.compare(distances.get(c2), distances.get(c1));
+				}
+			});
+			for (int i = 0; i < outliers.size() && speciesList.size() < specParms.getSpeciationTarget(); i++) {
+				if (outliers.get(i).getSpecie().size() > 1) {
+					speciesList.add(new Species(specParms, outliers.get(i).getMaterial()));
+				}
+			}
+		}
+		fullStrategy.speciate(genomeList, speciesList, genotype);
+		fullSpeciationPerformed(genomeList, speciesList, genotype);
+	}
+
+	private void fullSpeciationPerformed(List<Chromosome> genomeList, List<Species> speciesList, Genotype genotype) {
+		lastFullGeneration = genotype.getGeneration();
+		referenceDistance = meanDistance(genomeList, genotype.getConfiguration().getSpeciationParms());
+	}
+
+	/**
+	 * Find the species that a genome is closest to.
+	 */
+	private Species findClosestSpecies(Chromosome genome, List<Species> speciesList, SpeciationParms speciationParms) {
+		Species closestSpecies = null;
+		double closestDistance = Double.MAX_VALUE;
+		for (Species species : speciesList) {
+			// Distances greater than the closest so far need not be calculated exactly.
+			double distance = species.getDistance(genome, speciationParms, closestDistance);
+			if (distance < closestDistance) {
+				closestDistance = distance;
+				closestSpecies = species;
+			}
+		}
+		return closestSpecies;
+	}
+
+	private double meanDistance(List<Chromosome> genomeList, SpeciationParms speciationParms) {
+		if (genomeList.isEmpty()) {
+			return 0;
+		}
+		double total = 0;
+		for (Chromosome genome : genomeList) {
+			total += genome.getSpecie().getDistance(genome, speciationParms, Double.POSITIVE_INFINITY);
+		}
+		return total / genomeList.size();
+	}
+}
@@ -4,16 +4,16 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.log4j.Logger;
-import org.jgapcustomised.Allele;
 import org.jgapcustomised.Chromosome;
 import org.jgapcustomised.ChromosomeMaterial;
 import org.jgapcustomised.Configuration;
@@ -44,13 +44,30 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	 */
 	static final String MULTI_THREADED = "speciation.kmeans.multithreaded";
 	
+	/**
+	 * Whether to use bounds on the distances between genomes and species centroids derived from the (relaxed) triangle
+	 * inequality to skip distance calculations that can not change the species a genome is assigned to, after Hamerly's
+	 * accelerated k-means algorithm. The species assignments are identical to those produced without the bounds. The
+	 * bounds are only used when mismatched genes are counted rather than their values summed (see
+	 * {@link NeatConfiguration#CHROM_COMPAT_MISMATCH_USE_VALUES}), compatibility distances are not normalised and the
+	 * excess and disjoint coefficients are greater than zero; they are most effective when the common gene coefficient
+	 * multiplied by the range of allele values is not much more than twice the excess and disjoint coefficients. Default
+	 * is false.
+	 */
+	static final String ACCELERATED = "speciation.kmeans.accelerated";
+	
 	static final int MAX_KMEANS_LOOPS = 5;
 	
 	private boolean multiThreaded = true;
 	
+	private boolean accelerated = false;
+	
+	private boolean loggedBoundsUnavailable = false;
+	
 	@Override
 	public void init(Properties props) throws Exception {
 		multiThreaded = props.getBooleanProperty(MULTI_THREADED, true);
+		accelerated = props.getBooleanProperty(ACCELERATED, false);
 	}
 	
 	@Override
@@ -89,13 +106,19 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		
 		// Update the centroid of each species. If we're adding offspring this means that old genomes
 		// have been removed from the population and therefore the centroids are out-of-date.
-		calculateSpecieCentroids(speciesList);
+		calculateSpecieCentroids(speciesList, null);
+		
+		final KMeansBounds bounds = accelerated ? KMeansBounds.create(genomeList, speciesList, specParms) : null;
+		if (accelerated && bounds == null && !loggedBoundsUnavailable) {
+			logger.warn(ACCELERATED + " is enabled but the bounds can not be used with the compatibility distance parameters (" + NeatConfiguration.CHROM_COMPAT_MISMATCH_USE_VALUES + " and " + NeatConfiguration.CHROM_COMPAT_NORMALISE_KEY + " must be false and the excess and disjoint coefficients greater than zero), searching all species for every genome.");
+			loggedBoundsUnavailable = true;
+		}
 		
 		// Allocate each genome to the species it is closest to.
 		Parallel.foreach(genomeList, 0, new Operation<Chromosome>() {
 			@Override
 			public void perform(Chromosome genome) {
-				Species closestSpecies = findClosestSpecies(genome, speciesList, specParms);
+				Species closestSpecies = bounds != null ? bounds.findClosestSpecies(genome, speciesList) : findClosestSpecies(genome, speciesList, specParms);
 				closestSpecies.addOrMoveFromCurrentSpecies(genome);
 			}
 		});
@@ -103,14 +126,18 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		assert testSpeciationIntegrity(genomeList, speciesList);
 		
 		// Recalculate each species centroid now that they contain additional genomes.
-		calculateSpecieCentroids(speciesList);
+		calculateSpecieCentroids(speciesList, bounds);
 		
 		//double initialDistance = calculateAverageDistance(genomeList, specParms);
 		
 		// Perform the main k-means loop until convergence.
-		speciateUntilConvergence(genomeList, speciesList, specParms);
+		speciateUntilConvergence(genomeList, speciesList, specParms, bounds);
 		
 		//System.err.println(initialDistance + "  ->  " + calculateAverageDistance(genomeList, specParms)); 
+		
+		if (bounds != null && logger.isDebugEnabled()) {
+			logger.debug("Accelerated k-means speciation (relaxation factor " + bounds.relaxation + ") skipped the search for the closest species for " + bounds.skipped + " of " + bounds.searches + " genome placements.");
+		}
 	}
 
 	// / <summary>
@@ -119,7 +146,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	// / therefore we require the additional max loops threshold exit strategy - the clusters should be pretty
 	// / stable and well defined after a few loops even if the the algorithm hasn't converged completely.
 	// / </summary>
-	private synchronized void speciateUntilConvergence(final List<Chromosome> genomeList, final List<Species> speciesList, final SpeciationParms speciationParms) {
+	private synchronized void speciateUntilConvergence(final List<Chromosome> genomeList, final List<Species> speciesList, final SpeciationParms speciationParms, final KMeansBounds bounds) {
 		List<Species> emptySpeciesList = Collections.synchronizedList(new ArrayList<Species>());
 		for (Species species : speciesList) {
 			if (species.isEmpty()) {
@@ -141,13 +168,17 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 			reallocationsOccurred = false;
 			
 			assert testSpeciationIntegrity(genomeList, speciesList);
+			
+			if (bounds != null) {
+				bounds.calculateSeparation(speciesList);
+			}
 
 			// Loop over genomes. For each one find the species it is closest to; if it is not the species
 			// it is currently in then reallocate it.
 			Parallel.foreach(genomeList, 0, new Operation<Chromosome>() {
 				@Override
 				public void perform(Chromosome genome) {
-					Species closestSpecies = findClosestSpecies(genome, speciesList, speciationParms);
+					Species closestSpecies = bounds != null ? bounds.findClosestSpecies(genome, speciesList) : findClosestSpecies(genome, speciesList, speciationParms);
 					if (!genome.getSpecie().equals(closestSpecies)) {
 						// Track which species have been modified.
 						speciesMod.add(genome.getSpecie());
@@ -171,7 +202,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 			}
 			
 			// Recalculate centroid for all affected species.
-			calculateSpecieCentroids(speciesMod);
+			calculateSpecieCentroids(speciesMod, bounds);
 			
 			assert testSpeciationIntegrity(genomeList, speciesList);
 			
@@ -211,13 +242,16 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 						speciesMod.add(sourceSpecies);
 						
 						emptySpecies.moveFromCurrentSpecies(genome);
+						if (bounds != null) {
+							bounds.reset(genome);
+						}
 						
 						assert testSpeciationIntegrity(genomeList, speciesList);
 					}
 				}
 				
 				// Recalculate centroid for all affected species.
-				calculateSpecieCentroids(speciesMod);
+				calculateSpecieCentroids(speciesMod, bounds);
 				
 				assert testSpeciationIntegrity(genomeList, speciesList);
 				
@@ -242,7 +276,17 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		}
 	}
 	
-	private void calculateSpecieCentroids(Collection<Species> speciesList) {
+	private void calculateSpecieCentroids(Collection<Species> speciesList, KMeansBounds bounds) {
+		// Record the previous centroids so the bounds can be updated by the distance they move.
+		final Map<Species, ChromosomeMaterial> previous = bounds != null ? new HashMap<Species, ChromosomeMaterial>() : null;
+		if (bounds != null) {
+			for (Species species : speciesList) {
+				if (!species.isEmpty()) {
+					previous.put(species, species.getRepresentative());
+				}
+			}
+		}
+		
 		Parallel.foreach(speciesList, 0, new Operation<Species>() {
 			@Override
 			public void perform(Species species) {
@@ -251,6 +295,10 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 				}
 			}
 		});
+		
+		if (bounds != null) {
+			bounds.centroidsMoved(previous);
+		}
 	}
 	
 	// / <summary>
@@ -294,55 +342,9 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 	private ChromosomeMaterial calculateCentroid(List<ChromosomeMaterial> coordList) {
 		assert !coordList.isEmpty() : "coordList can't be empty when calculating its centroid.";
 		
-		// Special case - one item in list, it *is* the centroid.
-		if (1 == coordList.size()) {
-			return coordList.get(0);
-		}
-
-		// Each coordinate element has an ID. Here we calculate the total for each ID across all CoordinateVectors,
-		// then divide the totals by the number of CoordinateVectors to get the average for each ID. That is, we
-		// calculate the component-wise mean.
-		//
-		// Coord elements within a CoordinateVector must be sorted by ID, therefore we use a SortedDictionary here
-		// when building the centroid coordinate to eliminate the need to sort elements later.
-		//
-		// We use SortedDictionary and not SortedList for performance. SortedList is fastest for insertion
-		// only if the inserts are in order (sorted). However, this is generally not the case here because although
-		// coordinate IDs are sorted within the source CoordinateVectors, not all IDs exist within all CoordinateVectors
-		// therefore a low ID may be presented to coordElemTotals after a higher ID.
-		TreeMap<Allele, double[]> coordElemTotals = new TreeMap<Allele, double[]>();
-
-		// Loop over coords.
-		for (ChromosomeMaterial coord : coordList) {
-			// Loop over each element within the current coord.
-			for (Allele coordElem : coord.getAlleles()) {
-				// If the ID has previously been encountered then add the current element value to it, otherwise
-				// add a new double[1] to hold the value.
-				// Note that we wrap the double value in an object so that we do not have to re-insert values
-				// to increment them. In tests this approach was about 40% faster (including GC overhead).
-				double[] doubleWrapper = coordElemTotals.get(coordElem);
-				if (doubleWrapper != null) {
-					doubleWrapper[0] += coordElem.getValue();
-				} else {
-					coordElemTotals.put(coordElem.cloneAllele(), new double[] { coordElem.getValue() });
-				}
-			}
-		}
-
-		// Put the unique coord elems from coordElemTotals into a list, dividing each element's value
-		// by the total number of coords as we go.
-		double coordCountReciprocol = 1.0 / coordList.size();
-		ArrayList<Allele> centroidElem = new ArrayList<Allele>(coordElemTotals.size());
-		for (Map.Entry<Allele, double[]> coordElem : coordElemTotals.entrySet()) { // For speed we multiply by
-																					// reciprocol instead of dividing by
-																					// coordCount.
-			Allele allele = coordElem.getKey();
-			allele.setValue(coordElem.getValue()[0] * coordCountReciprocol);
-			centroidElem.add(allele);
-		}
-
-		// Use the new list of elements to construct a centroid CoordinateVector.
-		ChromosomeMaterial m = new ChromosomeMaterial(centroidElem);
+		// The component-wise mean. The totals for each innovation ID are accumulated in primitive arrays indexed by the 
+		// sorted innovation IDs rather than a sorted map of Allele objects to boxed totals.
+		ChromosomeMaterial m = ChromosomeMaterial.mean(coordList);
 		//System.err.println("\n" + coordList);
 		//System.err.println("----\n" + m);
 		return m;
@@ -372,7 +374,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		GenomeDistancePair[] genomeDistanceArr = new GenomeDistancePair[genomeList.size()];
 		for (int i = 0; i < genomeList.size(); i++) {
 			Chromosome genome = genomeList.get(i);
-			double distance = genome.getMaterial().distance(genome.getSpecie().getRepresentative(), speciationParms);
+			double distance = genome.getSpecie().getDistance(genome, speciationParms, Double.POSITIVE_INFINITY);
 			genomeDistanceArr[i] = new GenomeDistancePair(distance, genome);
 		}
 
@@ -391,7 +393,8 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 
 		// Find closest species.
 		for (Species species : speciesList) {
-			double distance = genome.getMaterial().distance(species.getRepresentative(), speciationParms);
+			// Distances greater than the closest so far need not be calculated exactly.
+			double distance = species.getDistance(genome, speciationParms, closestDistance);
 			// All else being equal keep genome in same species. 
 			if (distance < closestDistance || (distance == closestDistance && genome.getSpecie() != null && genome.getSpecie().equals(species))) {
 				closestDistance = distance;
@@ -405,7 +408,7 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		double totalDistance = 0;
 		for (int i = 0; i < genomeList.size(); i++) {
 			Chromosome genome = genomeList.get(i);
-			double distance = genome.getMaterial().distance(genome.getSpecie().getRepresentative(), speciationParms);
+			double distance = genome.getSpecie().getDistance(genome, speciationParms, Double.POSITIVE_INFINITY);
 			totalDistance += distance;
 		}
 		return totalDistance / genomeList.size();
@@ -447,6 +450,194 @@ public class SpeciationStrategyKMeans implements SpeciationStrategy, Configurabl
 		return true;
 	}
 
+	/**
+	 * Bounds on the distances between genomes and species centroids which allow the search for the closest species to
+	 * be skipped for most genomes in later iterations of the k-means loop, after Hamerly's algorithm (G. Hamerly,
+	 * "Making k-means even faster", SIAM International Conference on Data Mining, 2010). For each genome an upper bound
+	 * on the distance to the centroid of its species and a lower bound on the distance to every other centroid are
+	 * maintained, and loosened by the distance each centroid moves when it is recalculated. If the upper bound is less
+	 * than the lower bound, or less than half the distance from the centroid of the genome's species to the nearest
+	 * other centroid, then the genome's species is strictly the closest and so the genome stays in it.
+	 * <p>
+	 * The compatibility distance does not in general satisfy the triangle inequality, but when mismatched genes are
+	 * counted and distances are not normalised it satisfies d(a, b) <= r (d(a, c) + d(c, b)) for a relaxation factor
+	 * r >= 1 determined by the compatibility coefficients and the range of allele values, see
+	 * {@link #create(List, List, SpeciationParms)}. The bounds are calculated using this relaxed form. A small
+	 * relative margin is applied to the bounds to allow for rounding error, so the species assignments are identical
+	 * to those found by searching all species for every genome.
+	 * </p>
+	 */
+	private static class KMeansBounds {
+		private static final double MARGIN = 1e-9;
+		
+		private final SpeciationParms parms;
+		private final double relaxation;
+		// Upper bound to the centroid of the genome's species and lower bound to other centroids, for each genome.
+		private final Map<Chromosome, double[]> genomeBounds;
+		// Distance from each species centroid to the nearest other centroid.
+		private final Map<Species, Double> separation = new HashMap<Species, Double>();
+		private final AtomicLong searches = new AtomicLong(), skipped = new AtomicLong();
+		
+		/**
+		 * Returns the bounds for the given genomes and species, or null if the compatibility distance with the given
+		 * parameters does not satisfy a relaxed triangle inequality. Considering the contribution of each gene to the
+		 * distances between any three genomes or centroids a, b and c, a gene present in a and b but not c contributes
+		 * at most cc * R to d(a, b) and at least 2 * min(ce, cd) to d(a, c) + d(c, b), where ce, cd and cc are the
+		 * excess, disjoint and common coefficients and R is the range of allele values (including zero as the values of
+		 * centroids are means in which missing alleles count as zero); a gene present in a but not in b contributes at
+		 * most max(ce, cd) to d(a, b) and at least min(ce, cd) to d(a, c) or d(c, b); and the contributions of genes
+		 * present in all three satisfy the triangle inequality. So the relaxation factor is max(1, max(ce, cd) /
+		 * min(ce, cd), cc * R / (2 * min(ce, cd))).
+		 */
+		public static KMeansBounds create(List<Chromosome> genomeList, List<Species> speciesList, SpeciationParms parms) {
+			if (parms.specieCompatMismatchUseValues() || parms.specieCompatNormalise()) {
+				return null;
+			}
+			double minMismatchCoeff = Math.min(parms.getSpecieCompatExcessCoeff(), parms.getSpecieCompatDisjointCoeff());
+			double maxMismatchCoeff = Math.max(parms.getSpecieCompatExcessCoeff(), parms.getSpecieCompatDisjointCoeff());
+			double commonCoeff = parms.getSpecieCompatCommonCoeff();
+			if (!(minMismatchCoeff > 0) || !(commonCoeff >= 0)) {
+				return null;
+			}
+			
+			double min = 0, max = 0;
+			for (Chromosome genome : genomeList) {
+				double[] range = genome.getMaterial().getValueRange();
+				if (range != null) {
+					min = Math.min(min, range[0]);
+					max = Math.max(max, range[1]);
+				}
+			}
+			for (Species species : speciesList) {
+				double[] range = species.getRepresentative().getValueRange();
+				if (range != null) {
+					min = Math.min(min, range[0]);
+					max = Math.max(max, range[1]);
+				}
+			}
+			double valueRange = (max - min) * (1 + MARGIN);
+			double relaxation = Math.max(1, Math.max(maxMismatchCoeff / minMismatchCoeff, commonCoeff * valueRange / (2 * minMismatchCoeff))) * (1 + MARGIN);
+			if (Double.isNaN(relaxation) || Double.isInfinite(relaxation)) {
+				return null;
+			}
+			return new KMeansBounds(genomeList, parms, relaxation);
+		}
+		
+		private KMeansBounds(List<Chromosome> genomeList, SpeciationParms parms, double relaxation) {
+			this.parms = parms;
+			this.relaxation = relaxation;
+			// The map is only modified here so that it may be read by multiple threads.
+			genomeBounds = new HashMap<Chromosome, double[]>(genomeList.size() * 2);
+			for (Chromosome genome : genomeList) {
+				genomeBounds.put(genome, new double[] { Double.POSITIVE_INFINITY, 0 });
+			}
+		}
+		
+		/**
+		 * Calculates the distance from each species centroid to the nearest other centroid. Must be called when
+		 * centroids have changed and before {@link #findClosestSpecies(Chromosome, List)}.
+		 */
+		public void calculateSeparation(List<Species> speciesList) {
+			int count = speciesList.size();
+			double[] nearest = new double[count];
+			Arrays.fill(nearest, Double.MAX_VALUE);
+			for (int i = 0; i < count; i++) {
+				ChromosomeMaterial centroid = speciesList.get(i).getRepresentative();
+				for (int j = i + 1; j < count; j++) {
+					// Only distances less than the nearest found so far for either species need be exact.
+					double distance = centroid.distance(speciesList.get(j).getRepresentative(), parms, Math.max(nearest[i], nearest[j]));
+					if (distance < nearest[i]) nearest[i] = distance;
+					if (distance < nearest[j]) nearest[j] = distance;
+				}
+			}
+			separation.clear();
+			for (int i = 0; i < count; i++) {
+				separation.put(speciesList.get(i), nearest[i]);
+			}
+		}
+		
+		/**
+		 * Find the species that a genome is closest to, as for
+		 * {@link SpeciationStrategyKMeans#findClosestSpecies(Chromosome, List, SpeciationParms)}, and update the bounds
+		 * for the genome.
+		 */
+		public Species findClosestSpecies(Chromosome genome, List<Species> speciesList) {
+			searches.incrementAndGet();
+			double[] bounds = genomeBounds.get(genome);
+			Species current = genome.getSpecie();
+			if (current != null && separation.containsKey(current)) {
+				double limit = Math.max(separation.get(current) / (2 * relaxation), bounds[1]) * (1 - MARGIN);
+				if (bounds[0] < limit) {
+					skipped.incrementAndGet();
+					return current;
+				}
+				// Tighten the upper bound and test again.
+				bounds[0] = current.getDistance(genome, parms, Double.POSITIVE_INFINITY) * (1 + MARGIN);
+				if (bounds[0] < limit) {
+					skipped.incrementAndGet();
+					return current;
+				}
+			}
+			
+			Species closestSpecies = null;
+			double closestDistance = Double.MAX_VALUE, secondDistance = Double.MAX_VALUE;
+			for (Species species : speciesList) {
+				// Distances greater than the second closest so far need not be calculated exactly.
+				double distance = species.getDistance(genome, parms, secondDistance);
+				// All else being equal keep genome in same species. 
+				if (distance < closestDistance || (distance == closestDistance && current != null && current.equals(species))) {
+					secondDistance = closestDistance;
+					closestDistance = distance;
+					closestSpecies = species;
+				} else if (distance < secondDistance) {
+					secondDistance = distance;
+				}
+			}
+			bounds[0] = closestDistance * (1 + MARGIN);
+			bounds[1] = secondDistance * (1 - MARGIN);
+			return closestSpecies;
+		}
+		
+		/**
+		 * Update the bounds after the centroids of the given species have been recalculated.
+		 * 
+		 * @param previous The previous centroid of each species whose centroid was recalculated.
+		 */
+		public void centroidsMoved(Map<Species, ChromosomeMaterial> previous) {
+			Map<Species, Double> drift = new HashMap<Species, Double>();
+			double maxDrift = 0;
+			for (Map.Entry<Species, ChromosomeMaterial> entry : previous.entrySet()) {
+				double d = entry.getKey().getRepresentative().distance(entry.getValue(), parms) * (1 + MARGIN);
+				if (d > 0) {
+					drift.put(entry.getKey(), d);
+					maxDrift = Math.max(maxDrift, d);
+				}
+			}
+			if (maxDrift == 0) {
+				return;
+			}
+			// The separation is no longer valid.
+			separation.clear();
+			for (Map.Entry<Chromosome, double[]> entry : genomeBounds.entrySet()) {
+				double[] bounds = entry.getValue();
+				Double d = drift.get(entry.getKey().getSpecie());
+				if (d != null) {
+					bounds[0] = relaxation * (bounds[0] + d) * (1 + MARGIN);
+				}
+				bounds[1] = (bounds[1] / relaxation) * (1 - MARGIN) - maxDrift;
+			}
+		}
+		
+		/**
+		 * Discard the bounds for the given genome, for example because it has been moved to another species.
+		 */
+		public void reset(Chromosome genome) {
+			double[] bounds = genomeBounds.get(genome);
+			bounds[0] = Double.POSITIVE_INFINITY;
+			bounds[1] = 0;
+		}
+	}
+
 	private class GenomeDistancePair implements Comparable<GenomeDistancePair> {
 		double _distance;
 		Chromosome _genome;
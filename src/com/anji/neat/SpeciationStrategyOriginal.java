@@ -7,7 +7,6 @@ import java.util.List;
 import org.apache.log4j.Logger;
 import org.jgapcustomised.Chromosome;
 import org.jgapcustomised.ChromosomeFitnessComparator;
-import org.jgapcustomised.ChromosomeMaterial;
 import org.jgapcustomised.Configuration;
 import org.jgapcustomised.Genotype;
 import org.jgapcustomised.SpeciationParms;
@@ -50,7 +49,7 @@ public class SpeciationStrategyOriginal implements SpeciationStrategy {
 			if (chrom.getSpecie() == null) {
 				boolean added = false;
 				for	(Species species : speciesList) {
-					if (match(species, chrom.getMaterial(), specParms)) {
+					if (match(species, chrom, specParms)) {
 						chrom.setSpecie(species);
 						added = true;
 						break;
@@ -107,7 +106,8 @@ public class SpeciationStrategyOriginal implements SpeciationStrategy {
 	 * @return boolean true iff compatibility difference between <code>aChromosome</code? and representative is less
 	 *         than speciation threshold
 	 */
-	private boolean match(Species species, ChromosomeMaterial chromosome, SpeciationParms speciationParms) {
-		return (species.getRepresentative().distance(chromosome, speciationParms) < speciationParms.getSpeciationThreshold());
+	private boolean match(Species species, Chromosome chromosome, SpeciationParms speciationParms) {
+		double threshold = speciationParms.getSpeciationThreshold();
+		return (species.getDistance(chromosome, speciationParms, threshold) < threshold);
 	}
 }
@@ -0,0 +1,737 @@
+package com.anji.nn;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.anji.nn.activationfunction.AbsoluteActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunction;
+import com.anji.nn.activationfunction.ActivationFunctionNonIntegrating;
+import com.anji.nn.activationfunction.BipolarSigmoidActivationFunction;
+import com.anji.nn.activationfunction.ClampedLinearActivationFunction;
+import com.anji.nn.activationfunction.CosineActivationFunction;
+import com.anji.nn.activationfunction.GaussianActivationFunction;
+import com.anji.nn.activationfunction.LinearActivationFunction;
+import com.anji.nn.activationfunction.NegatedLinearActivationFunction;
+import com.anji.nn.activationfunction.RampActivationFunction;
+import com.anji.nn.activationfunction.SigmoidActivationFunction;
+import com.anji.nn.activationfunction.SignedClampedLinearActivationFunction;
+import com.anji.nn.activationfunction.SignedStepActivationFunction;
+import com.anji.nn.activationfunction.SineActivationFunction;
+import com.anji.nn.activationfunction.SteepSigmoidActivationFunction;
+import com.anji.nn.activationfunction.StepActivationFunction;
+import com.anji.nn.activationfunction.TanhActivationFunction;
+
+/**
+ * A flat, array-based version of an {@link AnjiNet}. The neurons that the outputs depend on are sorted topologically
+ * and stored as a "program" of primitive arrays: each neuron has a bias, an activation function opcode and a range of
+ * incoming connections (source slot and weight). Evaluating the network is then a single pass over these arrays,
+ * avoiding the recursive {@link Neuron#getValue()} calls, dirty flag checks and {@link Connection#read()} indirections
+ * of the object graph.
+ * <p>
+ * The order of summation and the activation function computations are exactly the same as those performed by
+ * {@link Neuron#getValue()}, so the output is bit-for-bit identical to that of an {@link AnjiNet} activated with
+ * {@link com.anji.integration.AnjiActivator}.
+ * </p>
+ * <p>
+ * Recurrent networks (networks containing {@link CacheNeuronConnection}s) are also supported, see
+ * {@link #compile(AnjiNet)}. The cached value of each recurrent connection is held in an extra slot of the values array,
+ * so that it is read by the neurons in the same way as the value of any other source. The state of the network is
+ * updated in the same order as {@link AnjiNet#step()}, {@link AnjiNet#fullyActivate()} and {@link Neuron#getValue()},
+ * including the lazy evaluation that occurs in the first step after the network is reset.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, each thread should use its own instance (see {@link #copy()}).
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class CompiledNet {
+	/**
+	 * Opcode for activation functions that don't have a dedicated opcode, the function is applied via
+	 * {@link ActivationFunction#apply(double)}.
+	 */
+	public static final byte OP_FUNCTION = 0;
+	/**
+	 * Opcode for {@link ActivationFunctionNonIntegrating} functions.
+	 */
+	public static final byte OP_NON_INTEGRATING = 1;
+	public static final byte OP_LINEAR = 2;
+	public static final byte OP_NEGATED_LINEAR = 3;
+	public static final byte OP_SIGMOID = 4;
+	public static final byte OP_STEEP_SIGMOID = 5;
+	public static final byte OP_BIPOLAR_SIGMOID = 6;
+	public static final byte OP_TANH = 7;
+	public static final byte OP_GAUSSIAN = 8;
+	public static final byte OP_SINE = 9;
+	public static final byte OP_COSINE = 10;
+	public static final byte OP_ABSOLUTE = 11;
+	public static final byte OP_STEP = 12;
+	public static final byte OP_SIGNED_STEP = 13;
+	public static final byte OP_CLAMPED_LINEAR = 14;
+	public static final byte OP_SIGNED_CLAMPED_LINEAR = 15;
+	public static final byte OP_RAMP = 16;
+
+	private static final Map<Class<? extends ActivationFunction>, Byte> opcodes = new HashMap<Class<? extends ActivationFunction>, Byte>();
+	static {
+		opcodes.put(LinearActivationFunction.class, OP_LINEAR);
+		opcodes.put(NegatedLinearActivationFunction.class, OP_NEGATED_LINEAR);
+		opcodes.put(SigmoidActivationFunction.class, OP_SIGMOID);
+		opcodes.put(SteepSigmoidActivationFunction.class, OP_STEEP_SIGMOID);
+		opcodes.put(BipolarSigmoidActivationFunction.class, OP_BIPOLAR_SIGMOID);
+		opcodes.put(TanhActivationFunction.class, OP_TANH);
+		opcodes.put(GaussianActivationFunction.class, OP_GAUSSIAN);
+		opcodes.put(SineActivationFunction.class, OP_SINE);
+		opcodes.put(CosineActivationFunction.class, OP_COSINE);
+		opcodes.put(AbsoluteActivationFunction.class, OP_ABSOLUTE);
+		opcodes.put(StepActivationFunction.class, OP_STEP);
+		opcodes.put(SignedStepActivationFunction.class, OP_SIGNED_STEP);
+		opcodes.put(ClampedLinearActivationFunction.class, OP_CLAMPED_LINEAR);
+		opcodes.put(SignedClampedLinearActivationFunction.class, OP_SIGNED_CLAMPED_LINEAR);
+		opcodes.put(RampActivationFunction.class, OP_RAMP);
+	}
+
+	/**
+	 * Number of network inputs. The first inputCount slots of {@link #values} hold the current input values, the
+	 * remaining slots hold the neuron values in the order they're computed.
+	 */
+	private final int inputCount;
+	private final int neuronCount;
+	private final byte[] op;
+	private final ActivationFunction[] func;
+	private final double[] bias;
+	/**
+	 * The incoming connections for neuron i are at indices [connStart[i], connStart[i+1]) in {@link #connSource} and
+	 * {@link #connWeight}.
+	 */
+	private final int[] connStart;
+	/**
+	 * Index into {@link #values} of the source of each connection.
+	 */
+	private final int[] connSource;
+	private final double[] connWeight;
+	/**
+	 * Index into {@link #values} of each output.
+	 */
+	private final int[] outputSlot;
+	/**
+	 * Input buffers for neurons with non-integrating activation functions (null for other neurons).
+	 */
+	private final double[][] nonIntegratingInput;
+	/**
+	 * The number of recurrent ({@link CacheNeuronConnection}) connections. The cached value of recurrent connection r is
+	 * held in slot inputCount + neuronCount + r of {@link #values}.
+	 */
+	private final int recurrentCount;
+	/**
+	 * Index into {@link #values} of the source neuron of each recurrent connection.
+	 */
+	private final int[] recurrentSource;
+	private final double[] recurrentWeight;
+	/**
+	 * The (topologically sorted) neurons that the source neuron of recurrent connection r depends on via non-recurrent
+	 * connections, including the source neuron itself, are at indices [recurrentDependsStart[r],
+	 * recurrentDependsStart[r+1]) in {@link #recurrentDepends}. Used to emulate the lazy evaluation of neurons in the
+	 * first step after a reset.
+	 */
+	private final int[] recurrentDependsStart;
+	private final int[] recurrentDepends;
+	/**
+	 * True if the network has been reset and not yet activated, in which case no neuron values have been computed.
+	 */
+	private boolean fresh = true;
+	/**
+	 * Which neurons have been computed during the first step after a reset.
+	 */
+	private final boolean[] computed;
+	private final double[] values;
+	/**
+	 * The neuron values before the current cycle, used by {@link #activate(double[], double[], int, double)}. Allocated
+	 * when first required.
+	 */
+	private double[] previous;
+	/**
+	 * Working memory for {@link #activate(double[][], double[][], int)}, allocated when first required.
+	 */
+	private double[][] batchValues;
+	private int batchCapacity;
+
+	private CompiledNet(int inputCount, int neuronCount, byte[] op, ActivationFunction[] func, double[] bias, int[] connStart, int[] connSource, double[] connWeight, int[] outputSlot) {
+		this(inputCount, neuronCount, op, func, bias, connStart, connSource, connWeight, outputSlot, new int[0], new double[0], new int[1], new int[0]);
+	}
+
+	private CompiledNet(int inputCount, int neuronCount, byte[] op, ActivationFunction[] func, double[] bias, int[] connStart, int[] connSource, double[] connWeight, int[] outputSlot, int[] recurrentSource, double[] recurrentWeight, int[] recurrentDependsStart, int[] recurrentDepends) {
+		this.inputCount = inputCount;
+		this.neuronCount = neuronCount;
+		this.op = op;
+		this.func = func;
+		this.bias = bias;
+		this.connStart = connStart;
+		this.connSource = connSource;
+		this.connWeight = connWeight;
+		this.outputSlot = outputSlot;
+		nonIntegratingInput = new double[neuronCount][];
+		for (int n = 0; n < neuronCount; n++) {
+			if (op[n] == OP_NON_INTEGRATING) {
+				nonIntegratingInput[n] = new double[connStart[n + 1] - connStart[n]];
+			}
+		}
+		this.recurrentCount = recurrentSource.length;
+		this.recurrentSource = recurrentSource;
+		this.recurrentWeight = recurrentWeight;
+		this.recurrentDependsStart = recurrentDependsStart;
+		this.recurrentDepends = recurrentDepends;
+		computed = recurrentCount > 0 ? new boolean[neuronCount] : null;
+		values = new double[inputCount + neuronCount + recurrentCount];
+	}
+
+	/**
+	 * Create a copy of this network that shares the (immutable) program but has its own working memory, so that it can
+	 * be used concurrently with this network.
+	 */
+	public CompiledNet copy() {
+		return new CompiledNet(inputCount, neuronCount, op, func, bias, connStart, connSource, connWeight, outputSlot, recurrentSource, recurrentWeight, recurrentDependsStart, recurrentDepends);
+	}
+
+	/**
+	 * Compile the given network, which may be feed-forward or recurrent. Feed-forward networks are compiled with
+	 * {@link #compileFeedForward(AnjiNet)}. For recurrent networks all neurons are included, as all neurons are
+	 * activated by {@link com.anji.integration.AnjiActivator}. The input neurons of the given network must have been
+	 * connected to an input {@link Pattern} (as is done by {@link com.anji.integration.AnjiActivator}).
+	 *
+	 * @param net The network to compile.
+	 * @return The compiled network, or null if the network contains a cycle of non-recurrent connections or a type of
+	 *         {@link Connection} that is not supported.
+	 */
+	public static CompiledNet compile(AnjiNet net) {
+		if (!net.isRecurrent()) {
+			return compileFeedForward(net);
+		}
+
+		// Sort all the neurons topologically with respect to the non-recurrent connections.
+		List<Neuron> order = new ArrayList<Neuron>();
+		Map<Neuron, Integer> state = new HashMap<Neuron, Integer>();
+		int inputCount = net.getInputDimension();
+		List<Neuron> allNeurons = net.getAllNeurons();
+		for (Neuron neuron : allNeurons) {
+			if (!sort(neuron, order, state)) {
+				return null;
+			}
+		}
+		// Neurons not in the network's list of neurons would not be activated by AnjiNet.fullyActivate().
+		if (order.size() != allNeurons.size()) {
+			return null;
+		}
+
+		int neuronCount = order.size();
+		Map<Neuron, Integer> slot = new HashMap<Neuron, Integer>();
+		int connCount = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			slot.put(order.get(n), inputCount + n);
+			connCount += order.get(n).getIncomingConns().size();
+		}
+		List<CacheNeuronConnection> recurrentConns = new ArrayList<CacheNeuronConnection>(net.getRecurrentConns());
+		Map<Connection, Integer> recurrentSlot = new HashMap<Connection, Integer>();
+		int recurrentCount = recurrentConns.size();
+		int[] recurrentSource = new int[recurrentCount];
+		double[] recurrentWeight = new double[recurrentCount];
+		for (int r = 0; r < recurrentCount; r++) {
+			CacheNeuronConnection rc = recurrentConns.get(r);
+			Integer source = slot.get(rc.getIncomingNode());
+			if (source == null) {
+				return null;
+			}
+			recurrentSlot.put(rc, inputCount + neuronCount + r);
+			recurrentSource[r] = source;
+			recurrentWeight[r] = rc.getWeight();
+		}
+
+		byte[] op = new byte[neuronCount];
+		ActivationFunction[] func = new ActivationFunction[neuronCount];
+		double[] bias = new double[neuronCount];
+		int[] connStart = new int[neuronCount + 1];
+		int[] connSource = new int[connCount];
+		double[] connWeight = new double[connCount];
+		int c = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			Neuron neuron = order.get(n);
+			func[n] = neuron.getFunc();
+			op[n] = getOpcode(func[n]);
+			bias[n] = neuron.getBias();
+			connStart[n] = c;
+			for (Connection conn : neuron.getIncomingConns()) {
+				if (conn instanceof Pattern.PatternConnection) {
+					int idx = ((Pattern.PatternConnection) conn).getIdx();
+					if (idx >= inputCount) {
+						return null;
+					}
+					// Multiplying by 1 does not alter the input value.
+					connSource[c] = idx;
+					connWeight[c] = 1;
+				} else if (conn instanceof CacheNeuronConnection) {
+					// The cached value is already multiplied by the weight.
+					Integer r = recurrentSlot.get(conn);
+					if (r == null) {
+						return null;
+					}
+					connSource[c] = r;
+					connWeight[c] = 1;
+				} else {
+					NeuronConnection nc = (NeuronConnection) conn;
+					connSource[c] = slot.get(nc.getIncomingNode());
+					connWeight[c] = nc.getWeight();
+				}
+				c++;
+			}
+		}
+		connStart[neuronCount] = c;
+
+		// Determine the neurons each recurrent connection source depends on.
+		int[] recurrentDependsStart = new int[recurrentCount + 1];
+		List<Integer> depends = new ArrayList<Integer>();
+		boolean[] marked = new boolean[neuronCount];
+		for (int r = 0; r < recurrentCount; r++) {
+			recurrentDependsStart[r] = depends.size();
+			Arrays.fill(marked, false);
+			markDependencies(recurrentSource[r] - inputCount, inputCount, neuronCount, connStart, connSource, marked);
+			for (int n = 0; n < neuronCount; n++) {
+				if (marked[n]) {
+					depends.add(n);
+				}
+			}
+		}
+		recurrentDependsStart[recurrentCount] = depends.size();
+		int[] recurrentDepends = new int[depends.size()];
+		for (int i = 0; i < recurrentDepends.length; i++) {
+			recurrentDepends[i] = depends.get(i);
+		}
+
+		int[] outputSlot = new int[net.getOutputDimension()];
+		for (int o = 0; o < outputSlot.length; o++) {
+			outputSlot[o] = slot.get(net.getOutputNeuron(o));
+		}
+
+		return new CompiledNet(inputCount, neuronCount, op, func, bias, connStart, connSource, connWeight, outputSlot, recurrentSource, recurrentWeight, recurrentDependsStart, recurrentDepends);
+	}
+
+	/**
+	 * Mark the given neuron and the neurons it depends on via non-recurrent connections.
+	 */
+	private static void markDependencies(int n, int inputCount, int neuronCount, int[] connStart, int[] connSource, boolean[] marked) {
+		if (marked[n]) {
+			return;
+		}
+		marked[n] = true;
+		for (int c = connStart[n]; c < connStart[n + 1]; c++) {
+			int source = connSource[c] - inputCount;
+			// Skip network inputs and recurrent connections.
+			if (source >= 0 && source < neuronCount) {
+				markDependencies(source, inputCount, neuronCount, connStart, connSource, marked);
+			}
+		}
+	}
+
+	/**
+	 * Compile the given feed-forward network. Only the neurons that the outputs depend on are included. The input
+	 * neurons of the given network must have been connected to an input {@link Pattern} (as is done by
+	 * {@link com.anji.integration.AnjiActivator}).
+	 *
+	 * @param net The network to compile.
+	 * @return The compiled network, or null if the network contains recurrent connections, a cycle or a type of
+	 *         {@link Connection} that is not supported.
+	 */
+	public static CompiledNet compileFeedForward(AnjiNet net) {
+		if (net.isRecurrent()) {
+			return null;
+		}
+
+		// Sort the neurons the outputs depend on topologically, and determine the number of inputs.
+		List<Neuron> order = new ArrayList<Neuron>();
+		Map<Neuron, Integer> state = new HashMap<Neuron, Integer>();
+		int inputCount = net.getInputDimension();
+		for (int o = 0; o < net.getOutputDimension(); o++) {
+			if (!sort(net.getOutputNeuron(o), order, state)) {
+				return null;
+			}
+		}
+
+		int neuronCount = order.size();
+		Map<Neuron, Integer> slot = new HashMap<Neuron, Integer>();
+		int connCount = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			slot.put(order.get(n), inputCount + n);
+			connCount += order.get(n).getIncomingConns().size();
+		}
+
+		byte[] op = new byte[neuronCount];
+		ActivationFunction[] func = new ActivationFunction[neuronCount];
+		double[] bias = new double[neuronCount];
+		int[] connStart = new int[neuronCount + 1];
+		int[] connSource = new int[connCount];
+		double[] connWeight = new double[connCount];
+		int c = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			Neuron neuron = order.get(n);
+			func[n] = neuron.getFunc();
+			op[n] = getOpcode(func[n]);
+			bias[n] = neuron.getBias();
+			connStart[n] = c;
+			for (Connection conn : neuron.getIncomingConns()) {
+				if (conn instanceof Pattern.PatternConnection) {
+					int idx = ((Pattern.PatternConnection) conn).getIdx();
+					if (idx >= inputCount) {
+						return null;
+					}
+					// Multiplying by 1 does not alter the input value.
+					connSource[c] = idx;
+					connWeight[c] = 1;
+				} else {
+					NeuronConnection nc = (NeuronConnection) conn;
+					connSource[c] = slot.get(nc.getIncomingNode());
+					connWeight[c] = nc.getWeight();
+				}
+				c++;
+			}
+		}
+		connStart[neuronCount] = c;
+
+		int[] outputSlot = new int[net.getOutputDimension()];
+		for (int o = 0; o < outputSlot.length; o++) {
+			outputSlot[o] = slot.get(net.getOutputNeuron(o));
+		}
+
+		return new CompiledNet(inputCount, neuronCount, op, func, bias, connStart, connSource, connWeight, outputSlot);
+	}
+
+	/**
+	 * Depth-first post-order traversal from the given neuron over its incoming connections.
+	 *
+	 * @return false if a cycle or unsupported connection type was found.
+	 */
+	private static boolean sort(Neuron neuron, List<Neuron> order, Map<Neuron, Integer> state) {
+		Integer s = state.get(neuron);
+		if (s != null) {
+			// 1 = visiting (cycle), 2 = done.
+			return s == 2;
+		}
+		state.put(neuron, 1);
+		for (Connection conn : neuron.getIncomingConns()) {
+			if (conn instanceof Pattern.PatternConnection) {
+				continue;
+			}
+			if (conn.getClass() == CacheNeuronConnection.class) {
+				// Recurrent connections read the value cached in the previous step and so do not impose an order.
+				continue;
+			}
+			if (conn.getClass() != NeuronConnection.class) {
+				return false;
+			}
+			if (!sort(((NeuronConnection) conn).getIncomingNode(), order, state)) {
+				return false;
+			}
+		}
+		state.put(neuron, 2);
+		order.add(neuron);
+		return true;
+	}
+
+	private static byte getOpcode(ActivationFunction f) {
+		if (f instanceof ActivationFunctionNonIntegrating) {
+			return OP_NON_INTEGRATING;
+		}
+		// Match on the exact class so that sub-classes which override apply() use the generic opcode.
+		Byte code = opcodes.get(f.getClass());
+		return code != null ? code : OP_FUNCTION;
+	}
+
+	/**
+	 * Activate the network. For a recurrent network this performs one activation cycle, equivalent to
+	 * {@link #activate(double[], double[], int)} with one cycle.
+	 *
+	 * @param input The input values, must have length equal to {@link #getInputCount()}.
+	 * @param output Array to put the output values in, must have length at least {@link #getOutputCount()}.
+	 */
+	public void activate(double[] input, double[] output) {
+		activate(input, output, 1);
+	}
+
+	/**
+	 * Activate the network for the given number of cycles, equivalent to
+	 * {@link com.anji.integration.AnjiActivator#next(double[])} with the given number of recurrent cycles. For
+	 * feed-forward networks the number of cycles makes no difference to the output.
+	 *
+	 * @param input The input values, must have length equal to {@link #getInputCount()}.
+	 * @param output Array to put the output values in, must have length at least {@link #getOutputCount()}.
+	 * @param cycles The number of activation cycles to perform.
+	 */
+	public void activate(double[] input, double[] output, int cycles) {
+		final double[] values = this.values;
+		System.arraycopy(input, 0, values, 0, inputCount);
+		if (recurrentCount == 0) {
+			for (int n = 0; n < neuronCount; n++) {
+				compute(n);
+			}
+		} else {
+			for (int cycle = 0; cycle < cycles; cycle++) {
+				step();
+				for (int n = 0; n < neuronCount; n++) {
+					compute(n);
+				}
+			}
+		}
+		for (int o = 0; o < outputSlot.length; o++) {
+			output[o] = values[outputSlot[o]];
+		}
+	}
+
+	/**
+	 * Activate the network for up to the given number of cycles, stopping once the maximum change in the value of any
+	 * neuron over a cycle is less than the given epsilon. Equivalent to
+	 * {@link com.anji.integration.AnjiActivator#next(double[], double[])} with convergence detection enabled. For
+	 * feed-forward networks one cycle is always performed.
+	 *
+	 * @param input The input values, must have length equal to {@link #getInputCount()}.
+	 * @param output Array to put the output values in, must have length at least {@link #getOutputCount()}.
+	 * @param cycles The maximum number of activation cycles to perform.
+	 * @param epsilon The convergence threshold.
+	 * @return The number of activation cycles performed.
+	 */
+	public int activate(double[] input, double[] output, int cycles, double epsilon) {
+		if (recurrentCount == 0) {
+			activate(input, output, 1);
+			return 1;
+		}
+		final double[] values = this.values;
+		if (previous == null) {
+			previous = new double[neuronCount];
+		}
+		System.arraycopy(input, 0, values, 0, inputCount);
+		int cycle = 0;
+		double maxChange;
+		do {
+			System.arraycopy(values, inputCount, previous, 0, neuronCount);
+			step();
+			maxChange = 0;
+			for (int n = 0; n < neuronCount; n++) {
+				compute(n);
+				double change = Math.abs(values[inputCount + n] - previous[n]);
+				if (change > maxChange) {
+					maxChange = change;
+				}
+			}
+			cycle++;
+		} while (cycle < cycles && maxChange >= epsilon);
+		for (int o = 0; o < outputSlot.length; o++) {
+			output[o] = values[outputSlot[o]];
+		}
+		return cycle;
+	}
+
+	/**
+	 * Update the cached values of the recurrent connections, as in {@link AnjiNet#step()}. If the network has just been
+	 * reset then the source neurons of the recurrent connections are computed as required, reading the cached values as
+	 * they are updated, as occurs with the lazy evaluation in {@link Neuron#getValue()}.
+	 */
+	private void step() {
+		final double[] values = this.values;
+		final int cacheStart = inputCount + neuronCount;
+		if (fresh) {
+			Arrays.fill(computed, false);
+			for (int r = 0; r < recurrentCount; r++) {
+				for (int d = recurrentDependsStart[r]; d < recurrentDependsStart[r + 1]; d++) {
+					int n = recurrentDepends[d];
+					if (!computed[n]) {
+						compute(n);
+						computed[n] = true;
+					}
+				}
+				values[cacheStart + r] = Math.min(Math.max(recurrentWeight[r] * values[recurrentSource[r]], -Float.MAX_VALUE), Float.MAX_VALUE);
+			}
+			fresh = false;
+		} else {
+			for (int r = 0; r < recurrentCount; r++) {
+				values[cacheStart + r] = Math.min(Math.max(recurrentWeight[r] * values[recurrentSource[r]], -Float.MAX_VALUE), Float.MAX_VALUE);
+			}
+		}
+	}
+
+	/**
+	 * Compute the value of neuron n from the current values of its sources.
+	 */
+	private void compute(int n) {
+		final double[] values = this.values;
+		final int start = connStart[n];
+		final int end = connStart[n + 1];
+		if (op[n] == OP_NON_INTEGRATING) {
+			double[] in = nonIntegratingInput[n];
+			for (int c = start; c < end; c++) {
+				in[c - start] = connWeight[c] * values[connSource[c]];
+			}
+			values[inputCount + n] = ((ActivationFunctionNonIntegrating) func[n]).apply(in, bias[n]);
+			return;
+		}
+		double sum = bias[n];
+		for (int c = start; c < end; c++) {
+			sum += connWeight[c] * values[connSource[c]];
+		}
+		values[inputCount + n] = apply(n, sum);
+	}
+
+	/**
+	 * Clear the state of the network (the cached values of the recurrent connections and the neuron values), as in
+	 * {@link AnjiNet#reset()}. Has no effect on feed-forward networks.
+	 */
+	public void reset() {
+		Arrays.fill(values, inputCount, values.length, 0);
+		fresh = true;
+	}
+
+	/**
+	 * @return true if the network contains recurrent connections.
+	 */
+	public boolean isRecurrent() {
+		return recurrentCount > 0;
+	}
+
+	/**
+	 * Activate the network for a batch of input patterns given in structure-of-arrays form. The result for each
+	 * pattern is identical to that produced by {@link #activate(double[], double[])}, but as each neuron is computed
+	 * for all patterns in turn the inner loops run over contiguous arrays.
+	 *
+	 * @param input The input values, input[i][p] is the value of input i for pattern p.
+	 * @param output Arrays to put the output values in, output[o][p] is set to the value of output o for pattern p.
+	 * @param count The number of patterns.
+	 * @throws IllegalStateException if the network is recurrent.
+	 */
+	public void activate(double[][] input, double[][] output, int count) {
+		if (recurrentCount > 0) {
+			throw new IllegalStateException("Batch activation is not supported for recurrent networks.");
+		}
+		if (batchValues == null || batchCapacity < count) {
+			batchCapacity = count;
+			batchValues = new double[inputCount + neuronCount][];
+			for (int s = inputCount; s < batchValues.length; s++) {
+				batchValues[s] = new double[count];
+			}
+		}
+		final double[][] values = batchValues;
+		for (int i = 0; i < inputCount; i++) {
+			values[i] = input[i];
+		}
+		for (int n = 0, s = inputCount; n < neuronCount; n++, s++) {
+			final int start = connStart[n];
+			final int end = connStart[n + 1];
+			final double[] sum = values[s];
+			if (op[n] == OP_NON_INTEGRATING) {
+				double[] in = nonIntegratingInput[n];
+				ActivationFunctionNonIntegrating f = (ActivationFunctionNonIntegrating) func[n];
+				for (int p = 0; p < count; p++) {
+					for (int c = start; c < end; c++) {
+						in[c - start] = connWeight[c] * values[connSource[c]][p];
+					}
+					sum[p] = f.apply(in, bias[n]);
+				}
+				continue;
+			}
+			final double b = bias[n];
+			for (int p = 0; p < count; p++) {
+				sum[p] = b;
+			}
+			for (int c = start; c < end; c++) {
+				final double w = connWeight[c];
+				final double[] source = values[connSource[c]];
+				for (int p = 0; p < count; p++) {
+					sum[p] += w * source[p];
+				}
+			}
+			final byte code = op[n];
+			final ActivationFunction f = func[n];
+			for (int p = 0; p < count; p++) {
+				sum[p] = apply(code, f, sum[p]);
+			}
+		}
+		for (int o = 0; o < outputSlot.length; o++) {
+			System.arraycopy(values[outputSlot[o]], 0, output[o], 0, count);
+		}
+	}
+
+	/**
+	 * Apply the activation function for the given neuron. The computations must match those in the corresponding
+	 * {@link ActivationFunction} classes exactly.
+	 */
+	private double apply(int n, double input) {
+		return apply(op[n], func[n], input);
+	}
+
+	/**
+	 * Apply the activation function with the given opcode. The computations must match those in the corresponding
+	 * {@link ActivationFunction} classes exactly.
+	 */
+	private static double apply(byte op, ActivationFunction func, double input) {
+		switch (op) {
+		case OP_LINEAR:
+			return input;
+		case OP_NEGATED_LINEAR:
+			return -input;
+		case OP_SIGMOID:
+			return 1.0 / (1.0 + Math.exp(-input));
+		case OP_STEEP_SIGMOID:
+			return 1.0 / (1.0 + Math.exp(-(input * SteepSigmoidActivationFunction.SLOPE)));
+		case OP_BIPOLAR_SIGMOID:
+			return 2.0 / (1.0 + Math.exp(-(input * BipolarSigmoidActivationFunction.SLOPE))) - 1.0;
+		case OP_TANH:
+			return (-1 + (2 / (1 + Math.exp(-2 * (input)))));
+		case OP_GAUSSIAN:
+			return Math.exp(-(input * input * GaussianActivationFunction.SLOPE));
+		case OP_SINE:
+			return Math.sin(input);
+		case OP_COSINE:
+			return Math.cos(input);
+		case OP_ABSOLUTE:
+			return Math.abs(input);
+		case OP_STEP:
+			return (input <= 0) ? 0 : 1;
+		case OP_SIGNED_STEP:
+			return (input <= 0) ? -1 : 1;
+		case OP_CLAMPED_LINEAR:
+			return input <= 0 ? 0 : (input >= 1 ? 1 : input);
+		case OP_SIGNED_CLAMPED_LINEAR:
+			return input <= -1.0d ? -1 : (input >= 1.0f ? 1 : input);
+		case OP_RAMP:
+			return input < 0 ? 0 : input;
+		default:
+			return func.apply(input);
+		}
+	}
+
+	/**
+	 * @return The number of inputs.
+	 */
+	public int getInputCount() {
+		return inputCount;
+	}
+
+	/**
+	 * @return The number of outputs.
+	 */
+	public int getOutputCount() {
+		return outputSlot.length;
+	}
+
+	/**
+	 * @return The number of neurons that are computed during activation (excludes neurons that the outputs do not
+	 *         depend on).
+	 */
+	public int getNeuronCount() {
+		return neuronCount;
+	}
+
+	/**
+	 * @return The number of connections that are computed during activation.
+	 */
+	public int getConnectionCount() {
+		return connSource.length;
+	}
+}
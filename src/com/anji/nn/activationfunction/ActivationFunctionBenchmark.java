@@ -0,0 +1,96 @@
+package com.anji.nn.activationfunction;
+
+import java.text.DecimalFormat;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * <p>
+ * Reports the accuracy and speed of the fast approximations of the activation functions (see
+ * {@link ActivationFunctionFactory#setFastMath(boolean)}) compared to the exact functions. For each function the
+ * maximum and mean absolute error are measured over a dense, regular sampling of inputs extending well beyond the range
+ * covered by the approximation, and the time per call is measured for both implementations over random inputs.
+ * </p>
+ * <p>
+ * Usage: <code>java com.anji.nn.activationfunction.ActivationFunctionBenchmark [samples [calls]]</code>, where samples
+ * is the number of inputs to measure the error at (default 10000000) and calls is the number of calls to time for each
+ * function (default 10000000).
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class ActivationFunctionBenchmark {
+	private static final DecimalFormat nfError = new DecimalFormat("0.00E0");
+	private static final DecimalFormat nfTime = new DecimalFormat("0.00");
+
+	// The results of the timed calls are accumulated here to prevent the calls being optimised away.
+	private static volatile double sink;
+
+	/**
+	 * Run the benchmark and print the report to standard out.
+	 */
+	public static void main(String[] args) {
+		int samples = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+		int calls = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+
+		Map<String, ActivationFunction> fast = ActivationFunctionFactory.getInstance().createFastActivationFunctions();
+
+		System.out.println("function          max error   mean error   exact ns/call   fast ns/call   speed-up");
+		for (Map.Entry<String, ActivationFunction> entry : fast.entrySet()) {
+			ActivationFunction f = entry.getValue();
+			ActivationFunction e = ((InterpolatedActivationFunction) f).getExact();
+
+			// Sample well beyond the range of the table to include the error from saturation or period reduction.
+			double range = 64;
+			double maxError = 0, sumError = 0;
+			for (int i = 0; i < samples; i++) {
+				double x = -range + 2 * range * i / (samples - 1);
+				double error = Math.abs(f.apply(x) - e.apply(x));
+				maxError = Math.max(maxError, error);
+				sumError += error;
+			}
+
+			// Inputs typical of network activations.
+			Random random = new Random(0);
+			double[] inputs = new double[1 << 16];
+			for (int i = 0; i < inputs.length; i++) {
+				inputs[i] = random.nextGaussian() * 3;
+			}
+			double exactTime = time(e, inputs, calls);
+			double fastTime = time(f, inputs, calls);
+
+			System.out.println(pad(entry.getKey(), 18) + pad(nfError.format(maxError), 12) + pad(nfError.format(sumError / samples), 13) + pad(nfTime.format(exactTime), 16) + pad(nfTime.format(fastTime), 15) + nfTime.format(exactTime / fastTime));
+		}
+	}
+
+	/**
+	 * @return The average time per call of the given function, in nanoseconds, after a warm-up.
+	 */
+	private static double time(ActivationFunction f, double[] inputs, int calls) {
+		for (int rep = 0; rep < 2; rep++) {
+			sink += run(f, inputs, calls / 10);
+		}
+		long start = System.nanoTime();
+		double sum = run(f, inputs, calls);
+		long elapsed = System.nanoTime() - start;
+		sink += sum;
+		return (double) elapsed / calls;
+	}
+
+	private static double run(ActivationFunction f, double[] inputs, int calls) {
+		double sum = 0;
+		int mask = inputs.length - 1;
+		for (int i = 0; i < calls; i++) {
+			sum += f.apply(inputs[i & mask]);
+		}
+		return sum;
+	}
+
+	private static String pad(String s, int width) {
+		StringBuilder sb = new StringBuilder(s);
+		while (sb.length() < width) {
+			sb.append(' ');
+		}
+		return sb.toString();
+	}
+}
@@ -28,9 +28,20 @@ import java.util.Map;
  * @author Philip Tucker
  */
 public class ActivationFunctionFactory {
+	/**
+	 * Properties key to enable fast approximations of the sigmoid, tanh, Gaussian, sine and cosine type activation
+	 * functions, see {@link #setFastMath(boolean)}. Default is false.
+	 */
+	public final static String FAST_MATH_KEY = "ann.activation.fastmath";
 
 	private Map<String, ActivationFunction> activationFunctions = new HashMap<String, ActivationFunction>();
 
+	private Map<String, ActivationFunction> exactActivationFunctions;
+
+	private Map<String, ActivationFunction> fastActivationFunctions;
+
+	private boolean fastMath = false;
+
 	private static ActivationFunctionFactory instance = null;
 
 	/**
@@ -67,6 +78,69 @@ public class ActivationFunctionFactory {
 		activationFunctions.put(SqrtActivationFunction.NAME, new SqrtActivationFunction());
 		activationFunctions.put(SqrtAndLinearActivationFunction.NAME, new SqrtAndLinearActivationFunction());
 		activationFunctions.put(PowerActivationFunction.NAME, new PowerActivationFunction());
+		exactActivationFunctions = new HashMap<String, ActivationFunction>(activationFunctions);
+	}
+
+	/**
+	 * Enable or disable fast approximations of the activation functions that use {@link Math#exp(double)},
+	 * {@link Math#sin(double)} or {@link Math#cos(double)}. When enabled, the sigmoid, sigmoid-steep, sigmoid-bipolar,
+	 * tanh, tanh-cubic, gaussian, sine and cosine functions returned by this factory are replaced by
+	 * {@link InterpolatedActivationFunction}s. The maximum absolute errors, as reported by
+	 * {@link ActivationFunctionBenchmark}, are:
+	 * <ul>
+	 * <li>sigmoid: 1.9E-7</li>
+	 * <li>sigmoid-steep: 2.8E-7</li>
+	 * <li>sigmoid-bipolar, tanh: 3.7E-7</li>
+	 * <li>tanh-cubic: 3.0E-7</li>
+	 * <li>gaussian: 9.6E-7</li>
+	 * <li>sine, cosine: 4.8E-7</li>
+	 * </ul>
+	 * The benchmark also reports the time per call of the exact and approximate functions. This only affects networks created after the mode is changed. Networks compiled to a
+	 * {@link com.anji.nn.CompiledNet} use the approximations too.
+	 *
+	 * @param fast true to use the approximations, false to use the exact functions.
+	 */
+	public synchronized void setFastMath(boolean fast) {
+		if (fast == fastMath)
+			return;
+		if (fast) {
+			if (fastActivationFunctions == null) {
+				fastActivationFunctions = createFastActivationFunctions();
+			}
+			activationFunctions.putAll(fastActivationFunctions);
+		} else {
+			activationFunctions.putAll(exactActivationFunctions);
+		}
+		fastMath = fast;
+	}
+
+	/**
+	 * @return true iff fast approximations of the activation functions are in use, see {@link #setFastMath(boolean)}.
+	 */
+	public boolean isFastMath() {
+		return fastMath;
+	}
+
+	/**
+	 * Create the fast approximations of the exact functions, keyed by function name.
+	 */
+	Map<String, ActivationFunction> createFastActivationFunctions() {
+		Map<String, ActivationFunction> exact = exactActivationFunctions;
+		Map<String, ActivationFunction> fast = new HashMap<String, ActivationFunction>();
+		// The ranges are chosen so that the exact functions are within 1e-8 of their limits outside them.
+		putFast(fast, exact.get(SigmoidActivationFunction.NAME), 20, 256);
+		putFast(fast, exact.get(SteepSigmoidActivationFunction.NAME), 4, 1024);
+		putFast(fast, exact.get(BipolarSigmoidActivationFunction.NAME), 10, 512);
+		putFast(fast, exact.get(TanhActivationFunction.NAME), 10, 512);
+		putFast(fast, exact.get(TanhCubicActivationFunction.NAME), 3, 1024);
+		putFast(fast, exact.get(GaussianActivationFunction.NAME), 5, 512);
+		fast.put(SineActivationFunction.NAME, new InterpolatedActivationFunction(exact.get(SineActivationFunction.NAME), 0, 2 * Math.PI, 512, true));
+		fast.put(CosineActivationFunction.NAME, new InterpolatedActivationFunction(exact.get(CosineActivationFunction.NAME), 0, 2 * Math.PI, 512, true));
+		return fast;
+	}
+
+	private static void putFast(Map<String, ActivationFunction> fast, ActivationFunction exact, double range, int samplesPerUnit) {
+		fast.put(exact.toString(), new InterpolatedActivationFunction(exact, -range, range, samplesPerUnit, false));
 	}
 
 	/**
@@ -0,0 +1,108 @@
+package com.anji.nn.activationfunction;
+
+/**
+ * <p>
+ * Approximates another activation function by linear interpolation in a table of its values sampled at regular
+ * intervals, avoiding calls to {@link Math#exp(double)}, {@link Math#sin(double)} and similar for every activation.
+ * Used in place of the exact functions when {@link ActivationFunctionFactory#FAST_MATH_KEY} is enabled.
+ * </p>
+ * <p>
+ * The table covers a fixed input range. Outside this range the function is either treated as saturated (the value at
+ * the nearest end of the range is returned) or as periodic (the input is reduced to the range). The error of linear
+ * interpolation with sample interval h is at most h<sup>2</sup>/8 times the maximum magnitude of the second derivative
+ * of the function; the maximum absolute errors measured by {@link ActivationFunctionBenchmark} are given in
+ * {@link ActivationFunctionFactory#setFastMath(boolean)}. NaN inputs produce NaN.
+ * </p>
+ * <p>
+ * The approximation is identified by the name of the function it approximates (see {@link #toString()}), so
+ * persisted networks and genomes are unaffected by its use.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class InterpolatedActivationFunction implements ActivationFunction {
+	private final ActivationFunction exact;
+	private final double min, max;
+	private final boolean periodic;
+	private final double scale;
+	private final double[] table;
+
+	/**
+	 * Create an approximation of the given function.
+	 *
+	 * @param exact The function to approximate.
+	 * @param min The lower end of the input range covered by the table.
+	 * @param max The upper end of the input range covered by the table.
+	 * @param samplesPerUnit The number of samples per unit of input.
+	 * @param periodic If true then the function is assumed to be periodic with period max - min, otherwise it is
+	 *            assumed to be constant outside [min, max].
+	 */
+	public InterpolatedActivationFunction(ActivationFunction exact, double min, double max, int samplesPerUnit, boolean periodic) {
+		this.exact = exact;
+		this.min = min;
+		this.max = max;
+		this.periodic = periodic;
+		int intervals = (int) Math.ceil((max - min) * samplesPerUnit);
+		scale = intervals / (max - min);
+		// One extra entry so that interpolation at the upper end of the range does not need a bounds check.
+		table = new double[intervals + 2];
+		for (int i = 0; i <= intervals; i++) {
+			table[i] = exact.apply(min + i / scale);
+		}
+		table[intervals + 1] = table[intervals];
+		if (periodic) {
+			// Make the ends agree exactly so that the result is continuous across period boundaries.
+			table[intervals] = table[0];
+			table[intervals + 1] = table[1];
+		}
+	}
+
+	@Override
+	public double apply(double input) {
+		double x;
+		if (periodic) {
+			double period = max - min;
+			double r = input - min;
+			x = (r - period * Math.floor(r / period)) * scale;
+		} else {
+			if (input <= min)
+				return table[0];
+			if (input >= max)
+				return table[table.length - 2];
+			x = (input - min) * scale;
+		}
+		int i = (int) x;
+		double f = x - i;
+		return table[i] + (table[i + 1] - table[i]) * f;
+	}
+
+	/**
+	 * @return The exact function this function approximates.
+	 */
+	public ActivationFunction getExact() {
+		return exact;
+	}
+
+	@Override
+	public double getMaxValue() {
+		return exact.getMaxValue();
+	}
+
+	@Override
+	public double getMinValue() {
+		return exact.getMinValue();
+	}
+
+	@Override
+	public long cost() {
+		return 42;
+	}
+
+	/**
+	 * @return The name of the function this function approximates.
+	 */
+	@Override
+	public String toString() {
+		return exact.toString();
+	}
+}
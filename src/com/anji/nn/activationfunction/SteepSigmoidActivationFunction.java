@@ -25,7 +25,7 @@ package com.anji.nn.activationfunction;
  * @author Philip Tucker
  */
 public class SteepSigmoidActivationFunction implements ActivationFunction {
-	private final static double SLOPE = 4.9;
+	public final static double SLOPE = 4.9;
 
 	/**
 	 * identifying string
@@ -379,7 +379,7 @@ public class Properties extends java.util.Properties {
 	 * Retrieve an array of int values from a comma-separated list.
 	 */
 	public int[] getIntArrayProperty(String key, int[] defaultVal) {
-		String value = getProperty(key, defaultVal == null ? null : java.util.Arrays.toString(defaultVal));
+		String value = getProperty(key, defaultVal == null ? null : java.util.Arrays.toString(defaultVal).replaceAll("[\\[\\]]", ""));
 		if (value == null)
 			return defaultVal;
 		return getIntArrayFromString(value);
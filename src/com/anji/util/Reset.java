@@ -32,8 +32,8 @@ import java.util.List;
 import java.util.Set;
 
 import com.anji.Copyright;
+import com.anji.neat.InnovationRegistry;
 import com.anji.neat.NeatConfiguration;
-import com.anji.neat.NeatIdMap;
 import com.anji.persistence.Persistence;
 
 /**
@@ -119,7 +119,7 @@ public class Reset {
 
 		// Neat id map
 		if (deleteAll || userResponse("Delete ID map?")) {
-			String fileName = props.getProperty(NeatIdMap.NEAT_ID_MAP_FILE_KEY, null);
+			String fileName = props.getProperty(InnovationRegistry.FILE_KEY, null);
 			if (fileName != null && fileName.length() > 0)
 				fileNamesToDelete.add(fileName);
 		}
@@ -138,6 +138,13 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	 * The default port for minion instances.
 	 */
 	public static final String MINION_DEFAULT_PORT = "minion.default_port";
+	
+	/**
+	 * Property key prefix for the {@link EvaluationEngine} to use to distribute transcription and evaluation over local
+	 * threads, for example <em>fitness.engine.class=com.ojcoleman.ahni.evaluation.WorkStealingEvaluationEngine</em>. If
+	 * not specified then a fixed gang of {@link Evaluator} threads pulling Chromosomes from a shared iterator is used.
+	 */
+	public static final String ENGINE_KEY = "fitness.engine";
 
 	
 	protected Properties props;
@@ -145,6 +152,16 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	protected int numThreads;
 	protected int evaluatorsFinishedCount;
 	protected Evaluator[] evaluators;
+	/**
+	 * The evaluation engine in use, or null if the default {@link Evaluator} threads are used.
+	 * @see #ENGINE_KEY
+	 */
+	protected EvaluationEngine engine;
+	/**
+	 * The cache of evaluation results, or null if caching is disabled.
+	 * @see FitnessCache#SIZE_KEY
+	 */
+	protected FitnessCache fitnessCache;
 	protected Iterator<Chromosome> chromosomesIterator;
 	protected int logChampPerGens = -1;
 	protected BulkFitnessFunctionMT[] multiFitnessFunctions;
@@ -233,12 +250,17 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		if (maxThreads > 0 && numThreads > maxThreads)
 			numThreads = maxThreads;
 		
-		EvaluatorGroup eg = new EvaluatorGroup(this.getClass().getSimpleName() + " evaluators");
-		logger.info("Using " + numThreads + " threads for transcription and evaluation.");
-		evaluators = new Evaluator[numThreads];
-		for (int i = 0; i < numThreads; i++) {
-			evaluators[i] = new Evaluator(i, eg);
-			evaluators[i].start();
+		if (props.containsKey(ENGINE_KEY + ".class")) {
+			engine = (EvaluationEngine) props.newObjectProperty(ENGINE_KEY);
+			logger.info("Using " + engine.getClass().getSimpleName() + " with " + numThreads + " threads for transcription and evaluation.");
+		} else {
+			EvaluatorGroup eg = new EvaluatorGroup(this.getClass().getSimpleName() + " evaluators");
+			logger.info("Using " + numThreads + " threads for transcription and evaluation.");
+			evaluators = new Evaluator[numThreads];
+			for (int i = 0; i < numThreads; i++) {
+				evaluators[i] = new Evaluator(i, eg);
+				evaluators[i].start();
+			}
 		}
 		
 		String[] minionHosts = props.getStringArrayProperty(MINION_HOSTS, null);
@@ -391,6 +413,8 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 
 		forcePerfFitness = props.getBooleanProperty(FORCE_PERF_FITNESS, false);
+		
+		fitnessCache = FitnessCache.create(props);
 	}
 	
 	/**
@@ -519,6 +543,30 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		return false;
 	}
 
+	/**
+	 * Returns true iff {@link #fitnessValuesStable()} returns true for this and all secondary fitness functions.
+	 */
+	protected boolean allFitnessValuesStable() {
+		if (!fitnessValuesStable()) {
+			return false;
+		}
+		for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
+			if (!f.fitnessValuesStable()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the cache of evaluation results, or null if caching is disabled.
+	 * 
+	 * @see FitnessCache#SIZE_KEY
+	 */
+	public FitnessCache getFitnessCache() {
+		return fitnessCache;
+	}
+
 	/**
 	 * Evaluate a set of chromosomes.
 	 * 
@@ -530,11 +578,23 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		
 		initialiseEvaluationOnAll();
 		
+		// Only use cached results if no fitness function will produce different results for the same individual.
+		List<Chromosome> toEvaluate = genotypes;
+		boolean useCache = fitnessCache != null && allFitnessValuesStable();
+		if (useCache) {
+			fitnessCache.newGeneration();
+			toEvaluate = fitnessCache.applyCached(genotypes);
+		}
+		
 		if (minions != null) {
-			evaluateFitnessViaMinions(genotypes);
+			evaluateFitnessViaMinions(toEvaluate);
 		}
 		else {
-			evaluateFitnessMT(genotypes);
+			evaluateFitnessMT(toEvaluate);
+		}
+		
+		if (useCache) {
+			fitnessCache.store(toEvaluate);
 		}
 		
 		if (noveltyArchives != null) {
@@ -569,6 +629,11 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 	}
 	
 	void evaluateFitnessMT(List<Chromosome> genotypes) {
+		if (engine != null) {
+			engine.evaluateFitness(this, genotypes);
+			return;
+		}
+		
 		// Evaluate fitness/performance over all individuals.
 		chromosomesIterator = genotypes.iterator();
 		evaluatorsFinishedCount = 0;
@@ -682,19 +747,23 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 			}
 		}
 		
-		chromosomesIterator = genotypes.iterator();
-		evaluatorsFinishedCount = 0;
-		for (Evaluator ev : evaluators)
-			ev.goNovelty();
-		while (true) {
-			try {
-				synchronized (this) {
-					if (evaluatorsFinishedCount == evaluators.length)
-						break;
-					wait();
+		if (engine != null) {
+			engine.evaluateNovelty(this, genotypes);
+		} else {
+			chromosomesIterator = genotypes.iterator();
+			evaluatorsFinishedCount = 0;
+			for (Evaluator ev : evaluators)
+				ev.goNovelty();
+			while (true) {
+				try {
+					synchronized (this) {
+						if (evaluatorsFinishedCount == evaluators.length)
+							break;
+						wait();
+					}
+				} catch (InterruptedException e) {
+					e.printStackTrace();
 				}
-			} catch (InterruptedException e) {
-				e.printStackTrace();
 			}
 		}
 
@@ -886,17 +955,184 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		notifyAll();
 	}
 
+	/**
+	 * Transcribe the given Chromosome and evaluate the resulting substrate on this and all secondary fitness functions,
+	 * using (and updating) the substrate and buffers held by the given worker state. Exceptions thrown during
+	 * transcription or evaluation are logged rather than propagated.
+	 */
+	void evaluateChromosome(Chromosome chrom, WorkerState state) {
+		try {
+			Activator previousSubstrate = state.substrate;
+			state.substrate = generateSubstrate(chrom, state.substrate);
+
+			// If a valid substrate could be generated.
+			if (state.substrate != null) {
+				evaluateSubstrate(chrom, state.substrate, state);
+			}
+			// If the transcriber decided the substrate decoding was a dud then still allow reusing
+			// the old substrate.
+			else {
+				state.substrate = previousSubstrate;
+			}
+		} catch (Exception e) {
+			logger.warn("Exception during transcription or evaluation: " + e.getMessage());
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Evaluate the given (already transcribed) substrate on this and all secondary fitness functions and assign the
+	 * resulting fitness values and behaviours to the given Chromosome. The fitness and behaviour buffers and thread
+	 * index of the given worker state are used.
+	 */
+	void evaluateSubstrate(Chromosome chrom, Activator substrate, WorkerState state) {
+		double[][] fitnessValues = state.fitnessValues;
+		Behaviour[][] behaviours = state.behaviours;
+		int id = state.id;
+
+		// Pull any stable (fixed) fitness values from chromosome.
+		for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
+			for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
+				fitnessValues[i][f] = chrom.getFitnessValue(fs);
+			}
+		}
+		for (int i = 0, fs = 0; i < behaviours.length; i++) {
+			for (int f = 0; f < behaviours[i].length; f++, fs++) {
+				behaviours[i][f] = chrom.behaviours[fs];
+			}
+		}
+		// Do secondary fitness functions first.
+		for (int i = 0; i < multiFitnessFunctions.length; i++) {
+			BulkFitnessFunctionMT func = multiFitnessFunctions[i];
+			// If the fitness values aren't stable for this function or they haven't been
+			// calculated yet for this chrom.
+			if (!func.fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues[i + 1])) || ArrayUtils.contains(behaviours[i + 1], null)) {
+				func.evaluate(chrom, substrate, id, fitnessValues[i + 1], behaviours[i + 1]);
+			}
+			if (func.fitnessValuesStable()) {
+				// At least some fitness values stable (this doesn't prevent the non-stable
+				// ones from being updated).
+				chrom.setEvaluationDataStable();
+			}
+		}
+
+		// If the fitness values aren't stable for the primary function or they haven't been
+		// calculated yet for this chrom.
+		if (!fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues[0]))) {
+			// Do primary fitness function.
+			evaluate(chrom, substrate, id, fitnessValues[0], behaviours[0]);
+		}
+		if (fitnessValuesStable()) {
+			chrom.setEvaluationDataStable();
+		}
+
+		// Assign fitness values to chromosome.
+		for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
+			for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
+				if (!Double.isNaN(fitnessValues[i][f])) {
+					chrom.setFitnessValue(fitnessValues[i][f], fs);
+				}
+			}
+		}
+		for (int i = 0, fs = 0; i < behaviours.length; i++) {
+			for (int f = 0; f < behaviours[i].length; f++, fs++) {
+				if (behaviours[i][f] != null) {
+					chrom.behaviours[fs] = behaviours[i][f];
+				}
+			}
+		}
+
+		postEvaluate(chrom, substrate, id);
+	}
+
+	/**
+	 * Determine the novelty of the given Chromosome against the novelty archive(s) and finalise its overall fitness.
+	 * {@link #evaluateChromosome(Chromosome, WorkerState)} must have been called for every member of the population
+	 * first.
+	 */
+	void evaluateNovelty(Chromosome chrom) {
+		int fitnessSlot = objectiveCount - noveltyArchives.length;
+		// May be empty if substrate decoding was a dud (see above).
+		if (chrom.behaviours != null) {
+			for (int n = 0; n < noveltyArchives.length; n++) {
+				chrom.setFitnessValue(noveltyArchives[n].testNovelty(chrom.behaviours[n]), fitnessSlot++);
+			}
+			finaliseEvaluation(chrom);
+		}
+	}
+
+	/**
+	 * Create a new worker state with the given evaluator thread index.
+	 */
+	WorkerState newWorkerState(int id) {
+		return new WorkerState(id);
+	}
+
+	/**
+	 * Deletes the current substrate held by every evaluator or engine worker, so that completely new ones will be
+	 * generated. This is useful for when a substrate can be reused by the Transcriber, but sometimes needs to be
+	 * completely regenerated, for example when the substrate dimensions change.
+	 */
+	protected void resetSubstrates() {
+		if (engine != null) {
+			engine.resetSubstrates();
+		}
+		if (evaluators != null) {
+			for (Evaluator ev : evaluators) {
+				ev.resetSubstrate();
+			}
+		}
+	}
+
+	/**
+	 * The state held by each worker performing transcriptions and evaluations: the (possibly reusable) substrate and
+	 * buffers for fitness values and behaviours for this and all secondary fitness functions. A worker state must only
+	 * be used by one thread at a time.
+	 */
+	protected class WorkerState {
+		/**
+		 * The evaluator thread index passed to {@link BulkFitnessFunctionMT#evaluate(Chromosome, Activator, int)}, in
+		 * the range [0, {@link BulkFitnessFunctionMT#numThreads}).
+		 */
+		protected final int id;
+		protected Activator substrate;
+		protected final double[][] fitnessValues;
+		protected final Behaviour[][] behaviours;
+
+		protected WorkerState(int id) {
+			this.id = id;
+			fitnessValues = new double[multiFitnessFunctions.length + 1][];
+			behaviours = new Behaviour[multiFitnessFunctions.length + 1][];
+			fitnessValues[0] = new double[fitnessObjectivesCount()];
+			behaviours[0] = new Behaviour[noveltyObjectiveCount()];
+			for (int i = 0; i < multiFitnessFunctions.length; i++) {
+				fitnessValues[i + 1] = new double[multiFitnessFunctions[i].fitnessObjectivesCount()];
+				behaviours[i + 1] = new Behaviour[multiFitnessFunctions[i].noveltyObjectiveCount()];
+			}
+		}
+
+		/**
+		 * Deletes the current substrate, a completely new one will be generated.
+		 */
+		protected void resetSubstrate() {
+			if (substrate != null) {
+				// Dispose of the old substrate.
+				substrate.dispose();
+			}
+			substrate = null;
+		}
+	}
+
 	protected class Evaluator extends Thread {
 		private volatile boolean go = false;
 		private volatile boolean finish = false;
 		private volatile boolean testingNovelty = false;
 		private int id;
-		private Activator substrate;
+		private WorkerState state;
 
 		protected Evaluator(int id, ThreadGroup tg) {
 			super(tg, "FF Evaluator " + id);
 			this.id = id;
-			substrate = null;
 		}
 
 		/**
@@ -906,114 +1142,28 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		 * @see Transcriber#transcribe(Chromosome, Activator)
 		 */
 		protected void resetSubstrate() {
-			if (substrate != null) {
-				// Dispose of the old substrate.
-				substrate.dispose();
+			if (state != null) {
+				state.resetSubstrate();
 			}
-			substrate = null;
 		}
 
 		/**
 		 * Internal use only
 		 */
 		public void run() {
-			double[][] fitnessValues = null;
-			Behaviour[][] behaviours = null;
-
 			while (!finish) {
 				while (go) {
-					if (fitnessValues == null) {
-						fitnessValues = new double[multiFitnessFunctions.length + 1][];
-						behaviours = new Behaviour[multiFitnessFunctions.length + 1][];
-						fitnessValues[0] = new double[fitnessObjectivesCount()];
-						behaviours[0] = new Behaviour[noveltyObjectiveCount()];
-						for (int i = 0; i < multiFitnessFunctions.length; i++) {
-							fitnessValues[i + 1] = new double[multiFitnessFunctions[i].fitnessObjectivesCount()];
-							behaviours[i + 1] = new Behaviour[multiFitnessFunctions[i].noveltyObjectiveCount()];
-						}
+					if (state == null) {
+						// Created lazily as the multi-objective set-up is not known when the thread is started.
+						state = new WorkerState(id);
 					}
 
 					Chromosome chrom;
 					while ((chrom = getNextChromosome()) != null) {
 						if (!testingNovelty) {
-							try {
-								Activator previousSubstrate = substrate;
-								substrate = generateSubstrate(chrom, substrate);
-
-								// If a valid substrate could be generated.
-								if (substrate != null) {
-									// Pull any stable (fixed) fitness values from chromosome.
-									for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
-										for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
-											fitnessValues[i][f] = chrom.getFitnessValue(fs);
-										}
-									}
-									for (int i = 0, fs = 0; i < behaviours.length; i++) {
-										for (int f = 0; f < behaviours[i].length; f++, fs++) {
-											behaviours[i][f] = chrom.behaviours[fs];
-										}
-									}
-									// Do secondary fitness functions first.
-									for (int i = 0; i < multiFitnessFunctions.length; i++) {
-										BulkFitnessFunctionMT func = multiFitnessFunctions[i];
-										// If the fitness values aren't stable for this function or they haven't been
-										// calculated yet for this chrom.
-										if (!func.fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues[i + 1])) || ArrayUtils.contains(behaviours[i + 1], null)) {
-											func.evaluate(chrom, substrate, id, fitnessValues[i + 1], behaviours[i + 1]);
-										}
-										if (func.fitnessValuesStable()) {
-											// At least some fitness values stable (this doesn't prevent the non-stable
-											// ones from being updated).
-											chrom.setEvaluationDataStable();
-										}
-									}
-
-									// If the fitness values aren't stable for the primary function or they haven't been
-									// calculated yet for this chrom.
-									if (!fitnessValuesStable() || Double.isNaN(ArrayUtil.sum(fitnessValues[0]))) {
-										// Do primary fitness function.
-										evaluate(chrom, substrate, id, fitnessValues[0], behaviours[0]);
-									}
-									if (fitnessValuesStable()) {
-										chrom.setEvaluationDataStable();
-									}
-
-									// Assign fitness values to chromosome.
-									for (int i = 0, fs = 0; i < fitnessValues.length; i++) {
-										for (int f = 0; f < fitnessValues[i].length; f++, fs++) {
-											if (!Double.isNaN(fitnessValues[i][f])) {
-												chrom.setFitnessValue(fitnessValues[i][f], fs);
-											}
-										}
-									}
-									for (int i = 0, fs = 0; i < behaviours.length; i++) {
-										for (int f = 0; f < behaviours[i].length; f++, fs++) {
-											if (behaviours[i][f] != null) {
-												chrom.behaviours[fs] = behaviours[i][f];
-											}
-										}
-									}
-
-									postEvaluate(chrom, substrate, id);
-								}
-								// If the transcriber decided the substrate decoding was a dud then still allow reusing
-								// the old substrate.
-								else {
-									substrate = previousSubstrate;
-								}
-							} catch (Exception e) {
-								logger.warn("Exception during transcription or evaluation: " + e.getMessage());
-								e.printStackTrace();
-							}
+							evaluateChromosome(chrom, state);
 						} else { // testingNovelty
-							int fitnessSlot = objectiveCount - noveltyArchives.length;
-							// May be empty if substrate decoding was a dud (see above).
-							if (chrom.behaviours != null) {
-								for (int n = 0; n < noveltyArchives.length; n++) {
-									chrom.setFitnessValue(noveltyArchives[n].testNovelty(chrom.behaviours[n]), fitnessSlot++);
-								}
-								finaliseEvaluation(chrom);
-							}
+							evaluateNovelty(chrom);
 						}
 					}
 
@@ -1044,8 +1194,8 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 		}
 
 		protected synchronized void dispose() {
-			if (substrate != null)
-				substrate.dispose();
+			if (state != null && state.substrate != null)
+				state.substrate.dispose();
 			finish = true;
 			notifyAll();
 		}
@@ -1121,6 +1271,9 @@ public abstract class BulkFitnessFunctionMT extends AHNIFitnessFunction implemen
 				e.dispose();
 			}
 		}
+		if (engine != null) {
+			engine.dispose();
+		}
 		if (multiFitnessFunctions != null) {
 			for (BulkFitnessFunctionMT f : multiFitnessFunctions) {
 				f.dispose();
@@ -0,0 +1,61 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.util.List;
+
+import org.jgapcustomised.Chromosome;
+
+import com.ojcoleman.ahni.hyperneat.Configurable;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * Base class for strategies that distribute the transcription and evaluation of a population over local worker threads
+ * for a {@link BulkFitnessFunctionMT}. An engine is selected via {@link BulkFitnessFunctionMT#ENGINE_KEY}; if none is
+ * specified the fitness function uses its own gang of {@link BulkFitnessFunctionMT.Evaluator} threads.
+ * </p>
+ * <p>
+ * Implementations must ensure that each {@link BulkFitnessFunctionMT.WorkerState} is only used by one thread at a
+ * time, and that there are never more than {@link BulkFitnessFunctionMT#getNumThreads()} worker states, so that the
+ * evaluator thread index passed to
+ * {@link BulkFitnessFunctionMT#evaluate(Chromosome, com.anji.integration.Activator, int, double[], com.ojcoleman.ahni.evaluation.novelty.Behaviour[])}
+ * may continue to be used by fitness functions to index per-thread state.
+ * </p>
+ * 
+ * @author Oliver Coleman
+ */
+public abstract class EvaluationEngine implements Configurable {
+	protected Properties props;
+
+	@Override
+	public void init(Properties props) {
+		this.props = props;
+	}
+
+	/**
+	 * Transcribe and evaluate the fitness of all the given Chromosomes. Must not return until all evaluations are
+	 * complete.
+	 * 
+	 * @param fitnessFunction The fitness function to perform the evaluations with.
+	 * @param genotypes The Chromosomes to evaluate.
+	 */
+	public abstract void evaluateFitness(BulkFitnessFunctionMT fitnessFunction, List<Chromosome> genotypes);
+
+	/**
+	 * Determine the novelty of all the given Chromosomes (see {@link BulkFitnessFunctionMT#evaluateNovelty(Chromosome)}).
+	 * Must not return until all evaluations are complete.
+	 * 
+	 * @param fitnessFunction The fitness function to perform the evaluations with.
+	 * @param genotypes The Chromosomes to evaluate.
+	 */
+	public abstract void evaluateNovelty(BulkFitnessFunctionMT fitnessFunction, List<Chromosome> genotypes);
+
+	/**
+	 * Delete any substrates held for reuse by workers, so that completely new ones will be generated.
+	 */
+	public abstract void resetSubstrates();
+
+	/**
+	 * Dispose of any threads and substrates held by this engine.
+	 */
+	public abstract void dispose();
+}
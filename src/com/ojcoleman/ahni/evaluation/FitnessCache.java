@@ -0,0 +1,232 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.ChromosomeMaterial;
+
+import com.ojcoleman.ahni.evaluation.novelty.Behaviour;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * A bounded cache of evaluation results (fitness values, performance values and behaviours) keyed by the fingerprint of
+ * the genetic material of a Chromosome (see {@link ChromosomeMaterial#getFingerprint()}). This allows skipping the
+ * transcription and evaluation of individuals that are identical to an individual that has already been evaluated, for
+ * example clones and unmutated offspring. A hit is confirmed with {@link ChromosomeMaterial#isEquivalent(ChromosomeMaterial)}
+ * so hash collisions can not produce incorrect results.
+ * </p>
+ * <p>
+ * The cache is only consulted by {@link BulkFitnessFunctionMT} when all fitness functions report that their fitness
+ * values are stable (see {@link BulkFitnessFunctionMT#fitnessValuesStable()}). Lookups are performed in the controlling
+ * instance before individuals are handed out to local threads or Minions, so only cache misses are sent to Minions.
+ * Note that {@link BulkFitnessFunctionMT#postEvaluate(Chromosome, com.anji.integration.Activator, int)} is not called
+ * for individuals whose results are taken from the cache.
+ * </p>
+ * 
+ * @author Oliver Coleman
+ */
+public class FitnessCache {
+	/**
+	 * Property key for the maximum number of entries in the fitness cache. If <= 0 (the default) the cache is disabled.
+	 */
+	public static final String SIZE_KEY = "fitness.cache.size";
+	/**
+	 * Property key for the eviction policy of the fitness cache, either "lru" (least recently used entries are evicted
+	 * when the cache is full) or "generational" (additionally, entries not used for {@link #MAX_AGE_KEY} generations
+	 * are evicted). Default is "lru".
+	 */
+	public static final String EVICTION_KEY = "fitness.cache.eviction";
+	/**
+	 * Property key for the number of generations an entry may go unused before it is evicted when
+	 * {@link #EVICTION_KEY} is "generational". Default is 5.
+	 */
+	public static final String MAX_AGE_KEY = "fitness.cache.maxage";
+
+	/**
+	 * Eviction policies.
+	 */
+	public enum Eviction {
+		LRU, GENERATIONAL
+	}
+
+	private final int maxSize;
+	private final Eviction eviction;
+	private final int maxAge;
+	private final LinkedHashMap<Long, CacheEntry> entries;
+	private int generation = 0;
+	private int hits;
+	private int misses;
+	private long totalHits;
+	private long totalMisses;
+
+	/**
+	 * Create a new FitnessCache configured by the given properties, or return null if the cache is disabled.
+	 */
+	public static FitnessCache create(Properties props) {
+		int size = props.getIntProperty(SIZE_KEY, 0);
+		if (size <= 0) {
+			return null;
+		}
+		return new FitnessCache(size, props.getEnumProperty(EVICTION_KEY, Eviction.class, Eviction.LRU), props.getIntProperty(MAX_AGE_KEY, 5));
+	}
+
+	/**
+	 * @param maxSize The maximum number of entries.
+	 * @param eviction The eviction policy.
+	 * @param maxAge The number of generations an entry may go unused before it is evicted when the eviction policy is
+	 *            {@link Eviction#GENERATIONAL}.
+	 */
+	public FitnessCache(final int maxSize, Eviction eviction, int maxAge) {
+		this.maxSize = maxSize;
+		this.eviction = eviction;
+		this.maxAge = maxAge;
+		entries = new LinkedHashMap<Long, CacheEntry>(Math.min(maxSize, 1 << 16), 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest) {
+				return size() > FitnessCache.this.maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Must be called at the start of each generation. Resets the per-generation hit/miss counters and, for
+	 * generational eviction, evicts entries that have not been used recently.
+	 */
+	public synchronized void newGeneration() {
+		generation++;
+		hits = 0;
+		misses = 0;
+		if (eviction == Eviction.GENERATIONAL) {
+			// Entries are in access order, so stop at the first recently used entry.
+			Iterator<CacheEntry> it = entries.values().iterator();
+			while (it.hasNext() && generation - it.next().lastUsedGeneration > maxAge) {
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * For each of the given Chromosomes for which there is a matching entry in the cache, set the fitness values,
+	 * performance values and behaviours from the cache entry, replacing any existing values.
+	 * 
+	 * @return The Chromosomes for which no matching entry was found and which still require evaluation.
+	 */
+	public synchronized List<Chromosome> applyCached(List<Chromosome> genotypes) {
+		List<Chromosome> misses = new ArrayList<Chromosome>(genotypes.size());
+		for (Chromosome chrom : genotypes) {
+			CacheEntry entry = entries.get(chrom.getFingerprint());
+			if (entry != null && entry.material.isEquivalent(chrom.getMaterial())) {
+				entry.lastUsedGeneration = generation;
+				entry.apply(chrom);
+				hits++;
+				totalHits++;
+			} else {
+				misses.add(chrom);
+				this.misses++;
+				totalMisses++;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * Store the evaluation results of the given Chromosomes. Chromosomes without valid fitness values (for example
+	 * because transcription failed) are ignored.
+	 */
+	public synchronized void store(List<Chromosome> evaluated) {
+		for (Chromosome chrom : evaluated) {
+			double[] fitness = chrom.getFitnessValues();
+			boolean valid = true;
+			for (int i = 0; i < fitness.length && valid; i++) {
+				valid = !Double.isNaN(fitness[i]);
+			}
+			// Novelty objectives are evaluated later, so just check that behaviours have been set.
+			if (chrom.behaviours != null && Arrays.asList(chrom.behaviours).contains(null)) {
+				valid = false;
+			}
+			if (valid) {
+				entries.put(chrom.getFingerprint(), new CacheEntry(chrom, generation));
+			}
+		}
+	}
+
+	/**
+	 * Remove all entries from the cache, for example because the evaluation conditions have changed.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cache hits in the current generation.
+	 */
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of cache misses in the current generation.
+	 */
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the total number of cache hits over all generations.
+	 */
+	public synchronized long getTotalHits() {
+		return totalHits;
+	}
+
+	/**
+	 * Returns the total number of cache misses over all generations.
+	 */
+	public synchronized long getTotalMisses() {
+		return totalMisses;
+	}
+
+	/**
+	 * Returns the current number of entries in the cache.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	private static class CacheEntry {
+		final ChromosomeMaterial material;
+		final double[] fitnessValues;
+		final Map<String, Double> performanceValues;
+		final Behaviour[] behaviours;
+		int lastUsedGeneration;
+
+		CacheEntry(Chromosome chrom, int generation) {
+			material = chrom.getMaterial();
+			fitnessValues = chrom.getFitnessValues().clone();
+			performanceValues = new HashMap<String, Double>(chrom.getAllPerformanceValues());
+			behaviours = chrom.behaviours == null ? null : chrom.behaviours.clone();
+			lastUsedGeneration = generation;
+		}
+
+		void apply(Chromosome chrom) {
+			for (int i = 0; i < fitnessValues.length; i++) {
+				if (!Double.isNaN(fitnessValues[i])) {
+					chrom.setFitnessValue(fitnessValues[i], i);
+				}
+			}
+			chrom.setPerformanceValues(performanceValues);
+			if (behaviours != null) {
+				System.arraycopy(behaviours, 0, chrom.behaviours, 0, behaviours.length);
+			}
+			chrom.setEvaluationDataStable();
+		}
+	}
+}
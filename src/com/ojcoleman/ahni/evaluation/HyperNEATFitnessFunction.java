@@ -147,8 +147,10 @@ public abstract class HyperNEATFitnessFunction extends BulkFitnessFunctionMT {
 			// allow sub-class to make necessary changes
 			HyperNEATTranscriber transcriber = (HyperNEATTranscriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
 			scale(scaleCount, scaleFactor, transcriber);
-			for (Evaluator ev : evaluators)
-				ev.resetSubstrate(); // don't reuse old size substrate
+			resetSubstrates(); // don't reuse old size substrate
+			if (fitnessCache != null) {
+				fitnessCache.clear(); // results for the old size substrate are no longer valid
+			}
 			HyperNEATTranscriber transcriberHN = (HyperNEATTranscriber) props.singletonObjectProperty(ActivatorTranscriber.TRANSCRIBER_KEY);
 			transcriberHN.resize(transcriberHN.getWidth(), transcriberHN.getHeight(), transcriberHN.getConnectionRange());
 
@@ -0,0 +1,340 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Chromosome;
+
+import com.anji.integration.Activator;
+import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.util.DaemonThreadFactory;
+
+/**
+ * <p>
+ * An {@link EvaluationEngine} that performs transcription and evaluation in two pipelined stages with separate thread
+ * pools. Transcriber threads generate substrates and put them in a bounded hand-off queue, from which evaluator threads
+ * take them for evaluation. This allows the number of threads devoted to each stage to be tuned independently, which is
+ * useful when transcription (for example HyperNEAT or ES-HyperNEAT substrate construction) and evaluation have very
+ * different costs. Substrates that have been evaluated are handed back to the transcribers for reuse.
+ * </p>
+ * <p>
+ * At the end of each generation the average occupancy of the hand-off queue, and the number of times a transcriber
+ * found the queue full or an evaluator found it empty, are logged. A queue that is usually full indicates that more
+ * evaluator threads are required, a queue that is usually empty indicates that more transcriber threads are required.
+ * </p>
+ * <p>
+ * To use, set <em>fitness.engine.class=com.ojcoleman.ahni.evaluation.PipelinedEvaluationEngine</em>.
+ * </p>
+ * 
+ * @author Oliver Coleman
+ */
+public class PipelinedEvaluationEngine extends EvaluationEngine {
+	private static Logger logger = Logger.getLogger(PipelinedEvaluationEngine.class);
+	private static NumberFormat nf = new DecimalFormat("0.00");
+
+	/**
+	 * Property key for the number of transcriber threads. Default is half of {@link BulkFitnessFunctionMT#getNumThreads()}
+	 * (at least 1).
+	 */
+	public static final String TRANSCRIBER_THREADS_KEY = "fitness.engine.pipeline.transcriber.threads";
+	/**
+	 * Property key for the number of evaluator threads. This may not be greater than
+	 * {@link BulkFitnessFunctionMT#getNumThreads()} as fitness functions may maintain per-thread state. Default is
+	 * {@link BulkFitnessFunctionMT#getNumThreads()} minus the number of transcriber threads (at least 1).
+	 */
+	public static final String EVALUATOR_THREADS_KEY = "fitness.engine.pipeline.evaluator.threads";
+	/**
+	 * Property key for the capacity of the queue of transcribed substrates waiting to be evaluated. Larger values
+	 * smooth out variations in transcription and evaluation time at the cost of holding more substrates in memory.
+	 * Default is twice the number of evaluator threads.
+	 */
+	public static final String QUEUE_SIZE_KEY = "fitness.engine.pipeline.queue.size";
+
+	private int transcriberThreads;
+	private int evaluatorThreads;
+	private int queueSize;
+	private ExecutorService transcriberPool;
+	private ExecutorService evaluatorPool;
+	private BulkFitnessFunctionMT fitnessFunction;
+	private BulkFitnessFunctionMT.WorkerState[] states;
+	private ArrayBlockingQueue<Job> queue;
+	private final ConcurrentLinkedQueue<Activator> recycledSubstrates = new ConcurrentLinkedQueue<Activator>();
+
+	private final AtomicLong queueOccupancySum = new AtomicLong();
+	private final AtomicLong queueOccupancySamples = new AtomicLong();
+	private final AtomicLong queueFullCount = new AtomicLong();
+	private final AtomicLong queueEmptyCount = new AtomicLong();
+
+	/**
+	 * Marks the end of the Chromosomes to evaluate.
+	 */
+	private static final Job END = new Job(null, null);
+
+	@Override
+	public void init(Properties props) {
+		super.init(props);
+		queueSize = props.getIntProperty(QUEUE_SIZE_KEY, 0);
+	}
+
+	private synchronized void setup(BulkFitnessFunctionMT ff) {
+		if (transcriberPool != null) {
+			if (ff != fitnessFunction) {
+				throw new IllegalStateException("A PipelinedEvaluationEngine may only be used by one fitness function.");
+			}
+			return;
+		}
+		fitnessFunction = ff;
+		int numThreads = ff.getNumThreads();
+		transcriberThreads = Math.max(1, props.getIntProperty(TRANSCRIBER_THREADS_KEY, numThreads / 2));
+		evaluatorThreads = props.getIntProperty(EVALUATOR_THREADS_KEY, Math.max(1, numThreads - transcriberThreads));
+		if (evaluatorThreads > numThreads) {
+			logger.warn("The number of pipeline evaluator threads may not exceed " + BulkFitnessFunctionMT.MAX_THREADS_KEY + " (" + numThreads + "), using " + numThreads + ".");
+			evaluatorThreads = numThreads;
+		}
+		evaluatorThreads = Math.max(1, evaluatorThreads);
+		if (queueSize <= 0) {
+			queueSize = evaluatorThreads * 2;
+		}
+
+		states = new BulkFitnessFunctionMT.WorkerState[evaluatorThreads];
+		for (int i = 0; i < evaluatorThreads; i++) {
+			states[i] = ff.newWorkerState(i);
+		}
+		queue = new ArrayBlockingQueue<Job>(queueSize);
+		String name = ff.getClass().getSimpleName();
+		transcriberPool = Executors.newFixedThreadPool(transcriberThreads, new DaemonThreadFactory(name + " transcriber"));
+		evaluatorPool = Executors.newFixedThreadPool(evaluatorThreads, new DaemonThreadFactory(name + " evaluator"));
+		logger.info("Created evaluation pipeline with " + transcriberThreads + " transcriber threads, " + evaluatorThreads + " evaluator threads and a queue size of " + queueSize + ".");
+	}
+
+	@Override
+	public void evaluateFitness(BulkFitnessFunctionMT ff, List<Chromosome> genotypes) {
+		if (genotypes.isEmpty()) {
+			return;
+		}
+		setup(ff);
+		// Discard anything left over if the last generation was abandoned.
+		queue.clear();
+		queueOccupancySum.set(0);
+		queueOccupancySamples.set(0);
+		queueFullCount.set(0);
+		queueEmptyCount.set(0);
+
+		final Chromosome[] chroms = genotypes.toArray(new Chromosome[genotypes.size()]);
+		final AtomicInteger nextChrom = new AtomicInteger();
+		final AtomicInteger liveEvaluators = new AtomicInteger(evaluatorThreads);
+
+		List<Callable<Void>> transcribers = new ArrayList<Callable<Void>>(transcriberThreads);
+		for (int t = 0; t < transcriberThreads; t++) {
+			transcribers.add(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					int i;
+					while ((i = nextChrom.getAndIncrement()) < chroms.length) {
+						Activator previousSubstrate = recycledSubstrates.poll();
+						Activator substrate = null;
+						try {
+							substrate = fitnessFunction.generateSubstrate(chroms[i], previousSubstrate);
+						} catch (Throwable e) {
+							logger.warn("Exception during transcription: " + e.getMessage());
+							e.printStackTrace();
+						}
+						if (substrate != null) {
+							Job job = new Job(chroms[i], substrate);
+							if (!queue.offer(job)) {
+								queueFullCount.incrementAndGet();
+								if (!put(job, liveEvaluators)) {
+									return null;
+								}
+							}
+						}
+						// If transcription failed or the transcriber decided the substrate decoding was a dud then
+						// still allow reusing the old substrate.
+						else if (previousSubstrate != null) {
+							recycledSubstrates.add(previousSubstrate);
+						}
+					}
+					return null;
+				}
+			});
+		}
+
+		List<Callable<Void>> evaluators = new ArrayList<Callable<Void>>(evaluatorThreads);
+		for (int e = 0; e < evaluatorThreads; e++) {
+			final BulkFitnessFunctionMT.WorkerState state = states[e];
+			evaluators.add(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					try {
+						evaluate(state);
+					} finally {
+						// Lets the transcribers know if there is no one left to take substrates from the queue.
+						liveEvaluators.decrementAndGet();
+					}
+					return null;
+				}
+
+				private void evaluate(BulkFitnessFunctionMT.WorkerState state) throws InterruptedException {
+					while (true) {
+						queueOccupancySum.addAndGet(queue.size());
+						queueOccupancySamples.incrementAndGet();
+						Job job = queue.poll();
+						if (job == null) {
+							queueEmptyCount.incrementAndGet();
+							job = queue.take();
+						}
+						if (job == END) {
+							return;
+						}
+						// Catch anything so that this evaluator keeps taking substrates, otherwise the transcribers
+						// could block forever on a full queue.
+						try {
+							fitnessFunction.evaluateSubstrate(job.chrom, job.substrate, state);
+						} catch (Throwable e) {
+							logger.warn("Exception during evaluation: " + e.getMessage());
+							e.printStackTrace();
+						} finally {
+							recycledSubstrates.add(job.substrate);
+						}
+					}
+				}
+			});
+		}
+
+		try {
+			List<Future<Void>> evaluatorFutures = new ArrayList<Future<Void>>(evaluatorThreads);
+			for (Callable<Void> c : evaluators) {
+				evaluatorFutures.add(evaluatorPool.submit(c));
+			}
+			// Wait for all transcriptions to finish, then tell the evaluators there's nothing more to come.
+			waitFor(transcriberPool.invokeAll(transcribers));
+			for (int e = 0; e < evaluatorThreads; e++) {
+				put(END, liveEvaluators);
+			}
+			waitFor(evaluatorFutures);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+
+		logger.info("Evaluation pipeline: average queue occupancy " + nf.format(getAverageQueueOccupancy()) + "/" + queueSize + ", queue full " + queueFullCount.get() + " times, queue empty " + queueEmptyCount.get() + " times.");
+	}
+
+	/**
+	 * Puts the given job in the queue, waiting for space if necessary. Gives up if all the evaluator threads have
+	 * terminated, as then space would never become available.
+	 * 
+	 * @return true iff the job was put in the queue.
+	 */
+	private boolean put(Job job, AtomicInteger liveEvaluators) throws InterruptedException {
+		while (!queue.offer(job, 100, TimeUnit.MILLISECONDS)) {
+			if (liveEvaluators.get() == 0) {
+				logger.error("All evaluator threads have terminated, abandoning evaluation.");
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void waitFor(List<Future<Void>> futures) throws InterruptedException {
+		for (Future<Void> f : futures) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				logger.error("Error in pipelined evaluation task.", e.getCause() != null ? e.getCause() : e);
+			}
+		}
+	}
+
+	@Override
+	public void evaluateNovelty(final BulkFitnessFunctionMT ff, List<Chromosome> genotypes) {
+		if (genotypes.isEmpty()) {
+			return;
+		}
+		setup(ff);
+		final Chromosome[] chroms = genotypes.toArray(new Chromosome[genotypes.size()]);
+		final AtomicInteger nextChrom = new AtomicInteger();
+		List<Callable<Void>> testers = new ArrayList<Callable<Void>>(evaluatorThreads);
+		for (int e = 0; e < evaluatorThreads; e++) {
+			testers.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					int i;
+					while ((i = nextChrom.getAndIncrement()) < chroms.length) {
+						ff.evaluateNovelty(chroms[i]);
+					}
+					return null;
+				}
+			});
+		}
+		try {
+			waitFor(evaluatorPool.invokeAll(testers));
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Returns the average number of substrates waiting in the hand-off queue, sampled each time an evaluator thread
+	 * took a substrate from it during the last generation.
+	 */
+	public double getAverageQueueOccupancy() {
+		long samples = queueOccupancySamples.get();
+		return samples == 0 ? 0 : (double) queueOccupancySum.get() / samples;
+	}
+
+	/**
+	 * Returns the number of times a transcriber thread had to wait for space in the hand-off queue during the last
+	 * generation.
+	 */
+	public long getQueueFullCount() {
+		return queueFullCount.get();
+	}
+
+	/**
+	 * Returns the number of times an evaluator thread had to wait for a substrate to become available in the hand-off
+	 * queue during the last generation.
+	 */
+	public long getQueueEmptyCount() {
+		return queueEmptyCount.get();
+	}
+
+	@Override
+	public synchronized void resetSubstrates() {
+		Activator substrate;
+		while ((substrate = recycledSubstrates.poll()) != null) {
+			substrate.dispose();
+		}
+	}
+
+	@Override
+	public synchronized void dispose() {
+		if (transcriberPool != null) {
+			transcriberPool.shutdownNow();
+			evaluatorPool.shutdownNow();
+		}
+		resetSubstrates();
+	}
+
+	private static class Job {
+		final Chromosome chrom;
+		final Activator substrate;
+
+		Job(Chromosome chrom, Activator substrate) {
+			this.chrom = chrom;
+			this.substrate = substrate;
+		}
+	}
+}
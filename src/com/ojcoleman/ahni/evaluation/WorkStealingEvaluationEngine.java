@@ -0,0 +1,196 @@
+package com.ojcoleman.ahni.evaluation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+import org.jgapcustomised.Chromosome;
+
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * An {@link EvaluationEngine} based on fork/join work stealing. The population is recursively split into chunks which
+ * are processed by the threads of a {@link ForkJoinPool}; idle threads steal unprocessed chunks from busy ones, so there
+ * is no shared iterator lock and no explicit barrier between the evaluator threads. The chunk size adapts to the
+ * population size (see {@link #CHUNKS_PER_THREAD_KEY}), and chunks are split further while other threads are starved
+ * for work (down to {@link #MIN_CHUNK_KEY}), which helps when evaluation times vary widely between individuals.
+ * </p>
+ * <p>
+ * Each chunk is processed using a {@link BulkFitnessFunctionMT.WorkerState} checked out from a fixed set of
+ * {@link BulkFitnessFunctionMT#getNumThreads()} states, so each worker keeps its own (reusable) substrate and fitness
+ * buffers and the evaluator thread index given to fitness functions remains in the usual range. States are reused most
+ * recently released first to improve the chance of reusing a warm substrate.
+ * </p>
+ * <p>
+ * To use, set <em>fitness.engine.class=com.ojcoleman.ahni.evaluation.WorkStealingEvaluationEngine</em>.
+ * </p>
+ * 
+ * @author Oliver Coleman
+ */
+public class WorkStealingEvaluationEngine extends EvaluationEngine {
+	private static Logger logger = Logger.getLogger(WorkStealingEvaluationEngine.class);
+
+	/**
+	 * Property key for the minimum number of Chromosomes processed by a single task. Default is 1.
+	 */
+	public static final String MIN_CHUNK_KEY = "fitness.engine.forkjoin.chunk.min";
+	/**
+	 * Property key for the number of chunks per thread the population is initially split into. Higher values give
+	 * better load balancing at the cost of more task overhead. Default is 4.
+	 */
+	public static final String CHUNKS_PER_THREAD_KEY = "fitness.engine.forkjoin.chunks_per_thread";
+
+	private int minChunk;
+	private int chunksPerThread;
+	private ForkJoinPool pool;
+	private BulkFitnessFunctionMT fitnessFunction;
+	private final LinkedBlockingDeque<BulkFitnessFunctionMT.WorkerState> idleStates = new LinkedBlockingDeque<BulkFitnessFunctionMT.WorkerState>();
+	private final List<BulkFitnessFunctionMT.WorkerState> allStates = new ArrayList<BulkFitnessFunctionMT.WorkerState>();
+
+	@Override
+	public void init(Properties props) {
+		super.init(props);
+		minChunk = Math.max(1, props.getIntProperty(MIN_CHUNK_KEY, 1));
+		chunksPerThread = Math.max(1, props.getIntProperty(CHUNKS_PER_THREAD_KEY, 4));
+	}
+
+	@Override
+	public void evaluateFitness(BulkFitnessFunctionMT fitnessFunction, List<Chromosome> genotypes) {
+		process(fitnessFunction, genotypes, false);
+	}
+
+	@Override
+	public void evaluateNovelty(BulkFitnessFunctionMT fitnessFunction, List<Chromosome> genotypes) {
+		process(fitnessFunction, genotypes, true);
+	}
+
+	private void process(BulkFitnessFunctionMT ff, List<Chromosome> genotypes, boolean novelty) {
+		if (genotypes.isEmpty()) {
+			return;
+		}
+		setup(ff);
+		Chromosome[] chroms = genotypes.toArray(new Chromosome[genotypes.size()]);
+		int grain = Math.max(minChunk, (int) Math.ceil((double) chroms.length / (pool.getParallelism() * chunksPerThread)));
+		pool.invoke(new ChunkTask(chroms, 0, chroms.length, grain, novelty));
+	}
+
+	private synchronized void setup(BulkFitnessFunctionMT ff) {
+		if (pool != null) {
+			if (ff != fitnessFunction) {
+				throw new IllegalStateException("A WorkStealingEvaluationEngine may only be used by one fitness function.");
+			}
+			return;
+		}
+		fitnessFunction = ff;
+		int threads = ff.getNumThreads();
+		for (int i = 0; i < threads; i++) {
+			BulkFitnessFunctionMT.WorkerState state = ff.newWorkerState(i);
+			allStates.add(state);
+			idleStates.addLast(state);
+		}
+		final String name = ff.getClass().getSimpleName() + " worker ";
+		pool = new ForkJoinPool(threads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+				t.setName(name + t.getPoolIndex());
+				t.setDaemon(true);
+				return t;
+			}
+		}, null, false);
+		logger.info("Created fork/join pool with parallelism " + threads + ", minimum chunk size " + minChunk + ", " + chunksPerThread + " chunks per thread.");
+	}
+
+	private BulkFitnessFunctionMT.WorkerState checkOutState() {
+		BulkFitnessFunctionMT.WorkerState state = idleStates.pollFirst();
+		while (state == null) {
+			// Only possible if the pool has created compensation threads, in which case another chunk will release a
+			// state shortly.
+			try {
+				state = idleStates.takeFirst();
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+		return state;
+	}
+
+	@Override
+	public synchronized void resetSubstrates() {
+		for (BulkFitnessFunctionMT.WorkerState state : allStates) {
+			state.resetSubstrate();
+		}
+	}
+
+	@Override
+	public synchronized void dispose() {
+		if (pool != null) {
+			pool.shutdownNow();
+		}
+		resetSubstrates();
+	}
+
+	/**
+	 * Processes the Chromosomes in a range of an array, forking off the upper part of the range while it is larger than
+	 * the grain size, or while there are too few queued tasks to keep idle threads busy.
+	 */
+	private class ChunkTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Chromosome[] chroms;
+		private final int start;
+		private int end;
+		private final int grain;
+		private final boolean novelty;
+
+		ChunkTask(Chromosome[] chroms, int start, int end, int grain, boolean novelty) {
+			this.chroms = chroms;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+			this.novelty = novelty;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<ChunkTask> forked = null;
+			while (end - start > minChunk && (end - start > grain || getSurplusQueuedTaskCount() <= 0)) {
+				int mid = (start + end) >>> 1;
+				ChunkTask right = new ChunkTask(chroms, mid, end, grain, novelty);
+				right.fork();
+				if (forked == null) {
+					forked = new ArrayList<ChunkTask>();
+				}
+				forked.add(right);
+				end = mid;
+			}
+
+			if (novelty) {
+				for (int i = start; i < end; i++) {
+					fitnessFunction.evaluateNovelty(chroms[i]);
+				}
+			} else {
+				BulkFitnessFunctionMT.WorkerState state = checkOutState();
+				try {
+					for (int i = start; i < end; i++) {
+						fitnessFunction.evaluateChromosome(chroms[i], state);
+					}
+				} finally {
+					idleStates.addFirst(state);
+				}
+			}
+
+			if (forked != null) {
+				// Join most recently forked (smallest) tasks first, these are the most likely to still be in our queue.
+				for (int i = forked.size() - 1; i >= 0; i--) {
+					forked.get(i).join();
+				}
+			}
+		}
+	}
+}
@@ -13,6 +13,6 @@ public class CPPNSizeCost extends BulkFitnessFunctionMT {
 	
 	@Override
 	protected double evaluate(Chromosome genotype, Activator substrate, int evalThreadIndex) {
-		return 1.0 / (1.0 + (genotype.getAlleles().size() * genotype.getAlleles().size()));
+		return 1.0 / (1.0 + (genotype.size() * genotype.size()));
 	}
 }
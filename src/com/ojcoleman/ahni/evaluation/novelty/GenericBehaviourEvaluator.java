@@ -9,7 +9,6 @@ import org.jgapcustomised.Chromosome;
 import com.anji.integration.Activator;
 import com.ojcoleman.ahni.evaluation.BulkFitnessFunctionMT;
 import com.ojcoleman.ahni.hyperneat.Properties;
-import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.util.ArrayUtil;
 
 public class GenericBehaviourEvaluator extends BulkFitnessFunctionMT {
@@ -98,7 +97,7 @@ public class GenericBehaviourEvaluator extends BulkFitnessFunctionMT {
 			}
 		}
 		
-		NNAdaptor nn = (NNAdaptor) substrate;
+		Activator nn = substrate;
 		ArrayRealVector behaviour = new ArrayRealVector(outputSize * sequenceCount * sampleCount);
 		int behaviorIndex = 0;
 		double[] output = new double[outputSize];
@@ -526,7 +526,7 @@ public class MDP extends BulkFitnessFunctionMT implements AHNIEventListener {
 					State currentState = env.states[0];
 					Transition transition = null;
 					trialRewardOrRMSE = 0;
-					double[] output = null;
+					double[] output = new double[substrate.getOutputDimension()[0]];
 					double[] previousOutput = new double[substrate.getOutputDimension()[0]];
 					int prevAction = -1;
 					State prevState = null;
@@ -566,7 +566,7 @@ public class MDP extends BulkFitnessFunctionMT implements AHNIEventListener {
 							
 							// Ask the network what it wants to do next, and let it know the reward for the previous state
 							// transition.
-							output = substrate.next(input);
+							substrate.next(input, output);
 							// The action to perform is the one corresponding to the output with the highest output value.
 							action = ArrayUtil.getMaxIndex(output);
 							prevAction = action;
@@ -649,7 +649,7 @@ public class MDP extends BulkFitnessFunctionMT implements AHNIEventListener {
 							input[currentActionIndex + action] = 1;
 							
 							// Ask the network what it thinks will happen next, and let it know the current state and next action.
-							output = substrate.next(input);
+							substrate.next(input, output);
 							
 							if (logText) {
 								boolean outputChanged = step > 0 && !ArrayUtils.isEquals(output, previousOutput);
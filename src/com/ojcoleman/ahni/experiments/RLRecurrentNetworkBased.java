@@ -36,7 +36,6 @@ import com.ojcoleman.ahni.experiments.mr2d.EnvironmentDescription;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.BainNN.Topology;
-import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.NiceWriter;
 import com.ojcoleman.ahni.util.Point;
@@ -288,7 +287,7 @@ public class RLRecurrentNetworkBased extends BulkFitnessFunctionMT implements AH
 	public void _evaluate(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage, double[] fitnessValues, Behaviour[] behaviours, Environment[] envs) {
 		int envCount = envs.length;
 		double reward = 0;
-		NNAdaptor nn = (NNAdaptor) substrate;
+		Activator nn = substrate;
 
 		if (substrate.getInputCount() != observable || 
 				(task == TASK_CONTROL && substrate.getOutputCount() != manipulable) ||
@@ -233,6 +233,7 @@ public class TMaze extends BulkFitnessFunctionMT {
 			int rewardSwitchTrialsIndex = 0;
 			int rewardHighIndex = rewardIndexForSwitch[0];
 			double[] input = new double[4];
+			double[] output = new double[substrate.getOutputCount()];
 			int[] walls = new int[4];
 			double reward = 0;
 			int correctTrialCount = 0, highRewardCount = 0, lowRewardCount = 0, crashCount = 0, failReturnHomeCount = 0;
@@ -327,7 +328,7 @@ public class TMaze extends BulkFitnessFunctionMT {
 	
 					// Ask the network what it wants to do next (and/or allow the agent to update itself given the reward
 					// received).
-					double[] output = substrate.next(input);
+					substrate.next(input, output);
 	
 					// Determine action to perform.
 					if (outputType == OutputType.MULTIPLE) {
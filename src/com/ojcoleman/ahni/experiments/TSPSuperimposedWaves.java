@@ -4,6 +4,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
@@ -20,7 +21,7 @@ import com.ojcoleman.ahni.event.AHNIEvent;
 import com.ojcoleman.ahni.event.AHNIEventListener;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
-import com.ojcoleman.ahni.nn.NNAdaptor;
+import com.ojcoleman.ahni.nn.BainNNLockstep;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.CircularFifoBuffer;
 import com.ojcoleman.ahni.util.NiceWriter;
@@ -117,6 +118,13 @@ public class TSPSuperimposedWaves extends BulkFitnessFunctionMT implements AHNIE
 	 * so that the same environments are used for calculating performance and novelty.
 	 */
 	public static final String NOVELTY_SEARCH_ONLY = "fitness.function.tspsw.noveltysearch.only";
+	/**
+	 * If true then, when the substrate is a {@link BainNN} supported by {@link BainNNLockstep}, all environments are
+	 * evaluated together with one instance of the network per environment. The results are identical to evaluating
+	 * them one after another if the Bain network is run in SEQ mode. Not used when logging the evaluation. Default is
+	 * false.
+	 */
+	public static final String LOCKSTEP = "fitness.function.tspsw.lockstep";
 	
 	public enum EvalType { REPRODUCE, PREDICT }
 	
@@ -141,11 +149,13 @@ public class TSPSuperimposedWaves extends BulkFitnessFunctionMT implements AHNIE
 	private int totalNSBehaviourSize;
 	private int nsRecordLength;
 	private int nsStartRecordAtStep;
+	private boolean lockstep;
 
 	@Override
 	public void init(Properties props) {
 		noveltySearchOnly = props.getBooleanProperty(NOVELTY_SEARCH_ONLY, false);
 		noveltySearchEnabled = noveltySearchOnly || props.getBooleanProperty(NOVELTY_SEARCH, false);
+		lockstep = props.getBooleanProperty(LOCKSTEP, false);
 		
 		environmentCount = props.getIntProperty(ENVIRONMENT_COUNT);
 		environmentReplaceProb = noveltySearchOnly ? 0 : props.getDoubleProperty(ENVIRONMENT_CHANGE_RATE);
@@ -260,12 +270,23 @@ public class TSPSuperimposedWaves extends BulkFitnessFunctionMT implements AHNIE
 		}
 		
 		double rmseAvg = 0;
-		NNAdaptor nn = (NNAdaptor) substrate;
+		Activator nn = substrate;
 		Range nnOutputRange = new Range(nn.getMinResponse(), nn.getMaxResponse());
 		boolean scaleOutputForNS = nnOutputRange.getRange() <= 2;
 		
 		ArrayRealVector behaviour = behaviours != null && behaviours.length > 0 ? new ArrayRealVector(totalNSBehaviourSize) : null;
 		
+		BainNNLockstep nnLockstep = (lockstep && !logText && nn instanceof BainNN) ? BainNNLockstep.create((BainNN) nn, envCount) : null;
+		if (nnLockstep != null) {
+			double[] envError = evaluateLockstep(nnLockstep, envs, behaviour, nnOutputRange, scaleOutputForNS);
+			for (int envIndex = 0; envIndex < numEnvsToUseForEval; envIndex++) {
+				rmseAvg += Math.sqrt(envError[envIndex] / phaseEvalLength);
+			}
+			rmseAvg /= numEnvsToUseForEval;
+			setResults(genotype, rmseAvg, fitnessValues, behaviour, behaviours);
+			return;
+		}
+		
 		try {
 			NiceWriter logOutput = !logText ? null : new NiceWriter(new FileWriter(baseFileName + ".txt"), "0.000");
 			
@@ -380,6 +401,13 @@ public class TSPSuperimposedWaves extends BulkFitnessFunctionMT implements AHNIE
 			e.printStackTrace();
 		}
 		
+		setResults(genotype, rmseAvg, fitnessValues, behaviour, behaviours);
+	}
+	
+	/**
+	 * Records the fitness, performance and behaviour resulting from an evaluation.
+	 */
+	private void setResults(Chromosome genotype, double rmseAvg, double[] fitnessValues, ArrayRealVector behaviour, Behaviour[] behaviours) {
 		if (fitnessValues != null && fitnessValues.length > 0) {
 			fitnessValues[0] = 1.0 / (1 + rmseAvg);
 			genotype.setPerformanceValue("0RMSE", rmseAvg);
@@ -390,6 +418,79 @@ public class TSPSuperimposedWaves extends BulkFitnessFunctionMT implements AHNIE
 		}
 	}
 	
+	/**
+	 * Evaluates all the given environments together with one instance of the network per environment, in the same way
+	 * as {@link #_evaluate(Chromosome, Activator, String, boolean, boolean, double[], Behaviour[], List, int)}.
+	 * 
+	 * @return The sum of squared errors during the evaluation phase for each environment.
+	 */
+	private double[] evaluateLockstep(BainNNLockstep nn, List<Environment> envs, ArrayRealVector behaviour, Range nnOutputRange, boolean scaleOutputForNS) {
+		int envCount = envs.size();
+		double[] envError = new double[envCount];
+		double[][] agentInput = new double[envCount][1];
+		double[][] agentOutput = new double[envCount][1];
+		
+		List<CircularFifoBuffer<Double>> agentOutputBuffer = null;
+		if (evalType == EvalType.PREDICT) {
+			agentOutputBuffer = new ArrayList<CircularFifoBuffer<Double>>(envCount);
+			for (int envIndex = 0; envIndex < envCount; envIndex++) {
+				agentOutputBuffer.add(new CircularFifoBuffer<Double>(evalPredictLookahead));
+			}
+		}
+		
+		// Learning phase. Agent output is only used in this phase to fill the buffer when evalType == PREDICT.
+		for (int step = 0; step < phaseLearnLength; step++) {
+			for (int envIndex = 0; envIndex < envCount; envIndex++) {
+				agentInput[envIndex][0] = envs.get(envIndex).getOutput(step);
+			}
+			nn.next(agentInput, agentOutput);
+			
+			if (evalType == EvalType.PREDICT) {
+				for (int envIndex = 0; envIndex < envCount; envIndex++) {
+					CircularFifoBuffer<Double> buffer = agentOutputBuffer.get(envIndex);
+					if (buffer.isFull()) {
+						buffer.remove();
+					}
+					buffer.add(agentOutput[envIndex][0]);
+				}
+			}
+		}
+		
+		// Evaluation phase.
+		if (evalType == EvalType.REPRODUCE) {
+			for (int envIndex = 0; envIndex < envCount; envIndex++) {
+				agentInput[envIndex][0] = -1; // -1 signals reproduce phase.
+			}
+		}
+		for (int step = phaseLearnLength; step < phaseLearnLength + phaseEvalLength; step++) {
+			nn.next(agentInput, agentOutput);
+			
+			for (int envIndex = 0; envIndex < envCount; envIndex++) {
+				double envOutput = envs.get(envIndex).getOutput(step);
+				double error;
+				if (evalType == EvalType.REPRODUCE) {
+					error = Math.abs(envOutput - agentOutput[envIndex][0]);
+				}
+				else {
+					error = 0;
+					CircularFifoBuffer<Double> buffer = agentOutputBuffer.get(envIndex);
+					if (buffer.isFull()) {
+						error = Math.abs(envOutput - buffer.remove());
+					}
+					buffer.add(agentOutput[envIndex][0]);
+				}
+				envError[envIndex] += error * error;
+				
+				if (envIndex < noveltySearchEnvCount && behaviour != null && step >= nsStartRecordAtStep) {
+					int behaviourIndex = (envIndex * nsRecordLength + (step-nsStartRecordAtStep));
+					double outputForB = scaleOutputForNS ? nnOutputRange.translateToUnit(agentOutput[envIndex][0]) : Range.UNIT.clamp(agentOutput[envIndex][0]);
+					behaviour.setEntry(behaviourIndex, outputForB);
+				}
+			}
+		}
+		return envError;
+	}
+	
 	@Override
 	public boolean evaluateGeneralisation(Chromosome genotype, Activator substrate, String baseFileName, boolean logText, boolean logImage, double[] fitnessValues) {
 		if (genEnvironments == null) {
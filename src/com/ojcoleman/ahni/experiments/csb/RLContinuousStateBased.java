@@ -39,7 +39,6 @@ import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
 import com.ojcoleman.ahni.hyperneat.Properties;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.BainNN.Topology;
-import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.NiceWriter;
 import com.ojcoleman.ahni.util.Point;
@@ -219,7 +218,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 		double fitness = 0;
 		double performance = 0;
 		ArrayRealVector[][] finalStates = new ArrayRealVector[environmentCount][trialCount];
-		NNAdaptor nn = (NNAdaptor) substrate;
+		Activator nn = substrate;
 		
 		if (nn.getInputCount() != environments[0].getOutputSize() || nn.getOutputCount() != environments[0].getInputSize()) {
 			throw new IllegalArgumentException("Substrate input (or output) size does not match number of outputSize (inputSize) environment nodes.");
@@ -502,7 +501,7 @@ public class RLContinuousStateBased extends BulkFitnessFunctionMT implements AHN
 	}
 	
 	// Used to determine behaviour when environments used to determine fitness will be replaced over the course of evolution.
-	private void getBehaviourForNovelty(Chromosome genotype, NNAdaptor nn, Behaviour[] behaviours) {
+	private void getBehaviourForNovelty(Chromosome genotype, Activator nn, Behaviour[] behaviours) {
 		//int trialCount = 1;
 		Range outputRange = new Range(nn.getMinResponse() < -1000 ? -1000 : nn.getMinResponse(), nn.getMaxResponse() > 1000 ? 1000 : nn.getMaxResponse());
 		
@@ -100,6 +100,7 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 		// Run the pole-balancing simulation.
 		int timestep = 0;
 		double[] input = new double[6 + (biasViaInput ? 1 : 0)];
+		double[] output = new double[substrate.getOutputCount()];
 		if (biasViaInput) input[6] = 0.5;
 		for (; timestep < _maxTimesteps; timestep++) {
 			// Provide state info to the network (normalised to +-1.0). Markovian (With velocity info)
@@ -117,7 +118,7 @@ public class DoublePoleBalancing extends BulkFitnessFunctionMT {
 			input[5] = state[5];
 			
 			// Activate the network.
-			double[] output = substrate.next(input);
+			substrate.next(input, output);
 			// Get network response and calc next timestep state.
 			performAction(state, output[0]);
 			// Check for failure state. Has the cart run off the ends of the track or has the pole
@@ -20,7 +20,6 @@ import org.apache.commons.math3.linear.ArrayRealVector;
 
 import com.anji.integration.Activator;
 import com.ojcoleman.ahni.hyperneat.Properties;
-import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.Range;
 
@@ -113,12 +112,7 @@ abstract class Environment {
 		input[mobileRobot2D.getAgentSensorCount()*2] = rewardFromLastStep;
 		
 		// Provide input to and get output from agent.
-		if (substrate instanceof NNAdaptor) {
-			((NNAdaptor) substrate).next(input, output);
-		}
-		else {
-			output = substrate.next(input);
-		}
+		substrate.next(input, output);
 		
 		rewardFromLastStep = 0;
 		
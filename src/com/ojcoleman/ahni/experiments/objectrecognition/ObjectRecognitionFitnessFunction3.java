@@ -17,7 +17,6 @@ import org.jgapcustomised.*;
 
 import com.anji.integration.Activator;
 import com.anji.integration.ActivatorTranscriber;
-import com.anji.integration.AnjiActivator;
 import com.anji.integration.AnjiNetTranscriber;
 import com.anji.integration.TranscriberException;
 import com.anji.neat.Evolver;
@@ -440,14 +439,14 @@ public class ObjectRecognitionFitnessFunction3 extends HyperNEATFitnessFunction
 				// calculate dimensions of this weight target matrix (bounded by grid edges)
 				int dy = Math.min(inputHeight - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
 				int dx = Math.min(inputWidth - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
-				double[][] w = substrate.getWeights()[0][ty][tx][0];
 
 				for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
 					for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
-						int color = (int) (((w[wy][wx] - connectionWeightMin) / weightRange) * 255);
+						double w = substrate.getWeight(1, ty, tx, 0, wy, wx);
+						int color = (int) (((w - connectionWeightMin) / weightRange) * 255);
 						canvas.setColor(new Color(color, color, color));
 						canvas.fill(new Rectangle(offset + sx * imageScale, sy * imageScale, imageScale, imageScale));
-						if (w[wy][wx] < 0) {
+						if (w < 0) {
 							canvas.setColor(Color.black);
 							canvas.fill(new Rectangle(offset + sx * imageScale + imageScale / 2 - negDotSize / 2, sy * imageScale + imageScale / 2 - negDotSize / 2, negDotSize, negDotSize));
 						}
@@ -477,7 +476,7 @@ public class ObjectRecognitionFitnessFunction3 extends HyperNEATFitnessFunction
 			// spit out CPPN
 			try {
 				AnjiNetTranscriber cppnTranscriber = (AnjiNetTranscriber) props.singletonObjectProperty(AnjiNetTranscriber.class);
-				AnjiNet cppn = ((AnjiActivator) cppnTranscriber.transcribe(genotype)).getAnjiNet();
+				AnjiNet cppn = cppnTranscriber.newAnjiNet(genotype);
 				BufferedWriter cppnFile = new BufferedWriter(new FileWriter(compositesImageDir + File.separatorChar + scaleCount + "-" + genotype.getId() + File.separatorChar + "cppn.xml"));
 				cppnFile.write(cppn.toXml());
 				cppnFile.close();
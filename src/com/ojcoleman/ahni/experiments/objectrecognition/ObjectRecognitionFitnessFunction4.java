@@ -470,15 +470,15 @@ public class ObjectRecognitionFitnessFunction4 extends HyperNEATFitnessFunction
 						// calculate dimensions of this weight target matrix (bounded by grid edges)
 						int dy = Math.min(height[tz - 1] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
 						int dx = Math.min(width[tz - 1] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
-						double[][] w = substrate.getWeights()[tz - 1][ty][tx][0];
 
 						for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
 							for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
-								int color = (int) (((w[wy][wx] - connectionWeightMin) / weightRange) * 255);
+								double w = substrate.getWeight(tz, ty, tx, 0, wy, wx);
+								int color = (int) (((w - connectionWeightMin) / weightRange) * 255);
 								g.setColor(new Color(color, color, color));
 								g.fillRect(xOffset + sx * imageScaleWeights[tz - 1], yOffset + sy * imageScaleWeights[tz - 1], imageScaleWeights[tz - 1], imageScaleWeights[tz - 1]);
 								// if weight value is negative indicate with a black dot
-								if (w[wy][wx] < 0) {
+								if (w < 0) {
 									g.setColor(Color.black);
 									g.fillRect(xOffset + sx * imageScaleWeights[tz - 1] + imageScaleWeights[tz - 1] / 2 - imageNegDotSize / 2, yOffset + sy * imageScaleWeights[tz - 1] + imageScaleWeights[tz - 1] / 2 - imageNegDotSize / 2, imageNegDotSize, imageNegDotSize);
 								}
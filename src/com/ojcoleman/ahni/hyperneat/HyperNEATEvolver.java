@@ -54,6 +54,8 @@ import com.anji.integration.PresentationEventListener;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.evaluation.AHNIFitnessFunction;
+import com.ojcoleman.ahni.evaluation.BulkFitnessFunctionMT;
+import com.ojcoleman.ahni.evaluation.FitnessCache;
 import com.ojcoleman.ahni.event.AHNIEvent;
 import com.ojcoleman.ahni.event.AHNIEventListener;
 import com.ojcoleman.ahni.nn.BainNN;
@@ -326,7 +328,7 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 			speciesInfoWriter.flush();
 		}
 
-		double avgGenTime = 0, cumulativeDurationBetweenLogging = 0;
+		double avgGenTime = 0, cumulativeDurationBetweenLogging = 0, cumulativeSpeciationDurationBetweenLogging = 0;
 		int previousSpeciesCount = 0;
 		TreeMap<Long, Species> allSpeciesEver = new TreeMap<Long, Species>();
 
@@ -413,9 +415,11 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 			else
 				avgGenTime = avgGenTime * 0.9 + duration * 0.1;
 			cumulativeDurationBetweenLogging += duration;
+			cumulativeSpeciationDurationBetweenLogging += genotype.getSpeciationTime();
 			
 			if (generation % logPerGenerations == 0) {
 				int objectiveCount = fittest.getFitnessValues().length;
+				FitnessCache fitnessCache = bulkFitnessFunc instanceof BulkFitnessFunctionMT ? ((BulkFitnessFunctionMT) bulkFitnessFunc).getFitnessCache() : null;
 				int avgSize = 0;
 				int maxSize = 0;
 				int minSize = Integer.MAX_VALUE;
@@ -460,7 +464,10 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 					m.append(fitLabels);
 					m.append(perfLabels);
 					
-					m.append("ZPC\tZFC\tSC\tNS\tES\tSCT\tSS\tSA    \tSNBP\tGS      \tTime\tETA      \tMem");
+					m.append("ZPC\tZFC\tSC\tNS\tES\tSCT\tSS\tSA    \tSNBP\tGS      \t");
+					if (fitnessCache != null)
+						m.append("FCH/M   \t");
+					m.append("SpTime\tTime\tETA      \tMem");
 					
 					logger.info(m);
 					m = new StringBuilder();
@@ -486,10 +493,14 @@ public class HyperNEATEvolver implements Configurable, GeneticEventListener {
 				//m.append(nf4.format(avgBestSpeciesPerformance) + "\t");
 				m.append(numSpecies + "\t" + numNewSpecies + "\t" + numExtinctSpecies + "\t" + nf1.format(speciationCompatThreshold) + "\t" + minSpeciesSize + "/" + maxSpeciesSize + "\t" + minSpeciesAge + "/" + maxSpeciesAge + "\t" + numSpeciesWithNewPerformance + "\t");
 				m.append(minSize + "/" + avgSize + "/" + maxSize + "\t");
+				if (fitnessCache != null)
+					m.append(fitnessCache.getHits() + "/" + fitnessCache.getMisses() + "\t");
+				m.append(nf3.format(cumulativeSpeciationDurationBetweenLogging / logPerGenerations) + "\t");
 				m.append(nf3.format(cumulativeDurationBetweenLogging / logPerGenerations) + "\t" + Misc.formatTimeInterval(eta) + "\t" + memUsed + "MB");
 				
 				logger.info(m);
 				cumulativeDurationBetweenLogging = 0;
+				cumulativeSpeciationDurationBetweenLogging = 0;
 			}
 		}
 		
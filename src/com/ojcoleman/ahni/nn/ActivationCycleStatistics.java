@@ -0,0 +1,135 @@
+package com.ojcoleman.ahni.nn;
+
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import com.ojcoleman.ahni.event.AHNIEvent;
+import com.ojcoleman.ahni.event.AHNIEventListener;
+import com.ojcoleman.ahni.hyperneat.Properties;
+
+/**
+ * <p>
+ * Collects a histogram of the number of activation cycles performed by recurrent networks that stop cycling once their
+ * activations have converged, see {@link com.anji.integration.AnjiActivator#setConvergence(double,
+ * ActivationCycleStatistics)} and {@link BainNN#setConvergence(double, ActivationCycleStatistics)}. The histogram for
+ * the evaluation of each generation is logged when the evaluation finishes, and the histogram for the whole run is
+ * logged when the run finishes.
+ * </p>
+ * <p>
+ * Each thread records into its own histogram so that activating networks in many threads does not cause contention.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class ActivationCycleStatistics implements AHNIEventListener {
+	private final static Logger logger = Logger.getLogger(ActivationCycleStatistics.class);
+	private final static DecimalFormat nf = new DecimalFormat("0.00");
+
+	private final String name;
+	// Histograms for each thread, counts[c] is the number of activations that performed c cycles.
+	private final List<long[][]> threadCounts = new ArrayList<long[][]>();
+	private final ThreadLocal<long[][]> counts = new ThreadLocal<long[][]>() {
+		@Override
+		protected long[][] initialValue() {
+			long[][] c = new long[][] { new long[16] };
+			synchronized (threadCounts) {
+				threadCounts.add(c);
+			}
+			return c;
+		}
+	};
+	private long[] runCounts = new long[0];
+
+	/**
+	 * Create a new ActivationCycleStatistics and, if the given properties are AHNI {@link Properties}, register it to
+	 * receive events from the evolver so that the histograms are logged.
+	 *
+	 * @param props The properties for the run.
+	 * @param name The name to identify the networks in the log, for example the name of the transcriber that creates
+	 *            them.
+	 */
+	public static ActivationCycleStatistics create(com.anji.util.Properties props, String name) {
+		ActivationCycleStatistics stats = new ActivationCycleStatistics(name);
+		if (props instanceof Properties) {
+			((Properties) props).getEvolver().addEventListener(stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Create a new ActivationCycleStatistics. The histograms are only logged if this is registered as an
+	 * {@link AHNIEventListener}, see {@link #create(com.anji.util.Properties, String)}.
+	 *
+	 * @param name The name to identify the networks in the log.
+	 */
+	public ActivationCycleStatistics(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Record that an activation performed the given number of cycles.
+	 */
+	public void record(int cycles) {
+		long[][] c = counts.get();
+		if (cycles >= c[0].length) {
+			c[0] = Arrays.copyOf(c[0], Math.max(cycles + 1, c[0].length * 2));
+		}
+		c[0][cycles]++;
+	}
+
+	/**
+	 * Returns the histogram of activation cycles recorded by all threads since the last call to this method and resets
+	 * the counts. This should only be called when no networks are being activated.
+	 *
+	 * @return An array in which element c is the number of activations that performed c cycles.
+	 */
+	public long[] collect() {
+		long[] total = new long[0];
+		synchronized (threadCounts) {
+			for (long[][] c : threadCounts) {
+				total = add(total, c[0]);
+				Arrays.fill(c[0], 0);
+			}
+		}
+		return total;
+	}
+
+	@Override
+	public void ahniEventOccurred(AHNIEvent event) {
+		if (event.getType() == AHNIEvent.Type.EVALUATION_END) {
+			long[] generation = collect();
+			runCounts = add(runCounts, generation);
+			log("this generation", generation);
+		} else if (event.getType() == AHNIEvent.Type.RUN_END) {
+			runCounts = add(runCounts, collect());
+			log("this run", runCounts);
+		}
+	}
+
+	private void log(String period, long[] histogram) {
+		long activations = 0, cycles = 0;
+		StringBuilder msg = new StringBuilder();
+		for (int c = 0; c < histogram.length; c++) {
+			if (histogram[c] > 0) {
+				activations += histogram[c];
+				cycles += c * histogram[c];
+				msg.append(" " + c + ":" + histogram[c]);
+			}
+		}
+		if (activations > 0) {
+			logger.info("Activation cycles for " + name + " networks for " + period + " (mean " + nf.format((double) cycles / activations) + ", cycles:count):" + msg);
+		}
+	}
+
+	private static long[] add(long[] a, long[] b) {
+		long[] sum = Arrays.copyOf(a, Math.max(a.length, b.length));
+		for (int i = 0; i < b.length; i++) {
+			sum[i] += b[i];
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,239 @@
+package com.ojcoleman.ahni.nn;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+import com.amd.aparapi.Kernel;
+import com.ojcoleman.ahni.evaluation.BulkFitnessFunctionMT;
+import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.transcriber.TranscriberAdaptor;
+import com.ojcoleman.bain.NeuralNetwork;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+
+/**
+ * <p>
+ * Determines the Aparapi execution mode to use for a Bain neural network, as specified by
+ * {@link BainNN#SUBSTRATE_EXECUTION_MODE}. If the property is set to {@link #AUTO} then the first time an execution
+ * mode is requested the sequential (SEQ) and Java thread pool (JTP) modes are benchmarked on this machine for networks
+ * of several sizes (see {@link #AUTO_SIZES_KEY}), with as many networks being simulated concurrently as there will be
+ * evaluator threads (see {@link #AUTO_CONCURRENCY_KEY}). Each network is then given the mode that was fastest for the
+ * size closest to its number of synapses.
+ * </p>
+ * <p>
+ * The calibration is performed once and shared by all transcribers in the JVM. The measured timings and the mode
+ * chosen for each size are logged. If neither mode could be benchmarked for a size then networks of that size are
+ * given the default mode (as if {@link BainNN#SUBSTRATE_EXECUTION_MODE} were not set).
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class BainExecutionModeSelector {
+	private final static Logger logger = Logger.getLogger(BainExecutionModeSelector.class);
+	private final static DecimalFormat nf = new DecimalFormat("0.000");
+
+	/**
+	 * The value for {@link BainNN#SUBSTRATE_EXECUTION_MODE} that enables automatic selection of the execution mode.
+	 */
+	public static final String AUTO = "AUTO";
+	/**
+	 * Comma-separated list of network sizes, in number of synapses, to benchmark the execution modes for when
+	 * {@link BainNN#SUBSTRATE_EXECUTION_MODE} is set to {@link #AUTO}. Default is "100, 1000, 10000, 100000".
+	 */
+	public static final String AUTO_SIZES_KEY = "ann.transcriber.bain.executionmode.auto.sizes";
+	/**
+	 * The number of networks to simulate concurrently when benchmarking the execution modes. Default is the number of
+	 * evaluator threads, as determined by {@link BulkFitnessFunctionMT#MIN_THREADS_KEY} and
+	 * {@link BulkFitnessFunctionMT#MAX_THREADS_KEY}.
+	 */
+	public static final String AUTO_CONCURRENCY_KEY = "ann.transcriber.bain.executionmode.auto.concurrency";
+	/**
+	 * The minimum time, in milliseconds, to simulate the networks for when benchmarking each execution mode for each
+	 * size. Default is 100.
+	 */
+	public static final String AUTO_TIME_KEY = "ann.transcriber.bain.executionmode.auto.time";
+
+	private static final Kernel.EXECUTION_MODE[] MODES = new Kernel.EXECUTION_MODE[] { Kernel.EXECUTION_MODE.SEQ, Kernel.EXECUTION_MODE.JTP };
+
+	private static BainExecutionModeSelector instance;
+
+	private final int[] sizes;
+	private final Kernel.EXECUTION_MODE[] modes;
+
+	/**
+	 * Get the execution mode to use for a Bain network of the given size, as specified by
+	 * {@link BainNN#SUBSTRATE_EXECUTION_MODE}.
+	 *
+	 * @param props The properties to read the execution mode (and calibration settings) from.
+	 * @param neuronCount The number of neurons in the network.
+	 * @param synapseCount The number of synapses in the network.
+	 * @return The execution mode to use, or null if the property is not set (allowing Bain to choose).
+	 */
+	public static Kernel.EXECUTION_MODE getExecutionMode(Properties props, int neuronCount, int synapseCount) {
+		String execModeName = props.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
+		if (execModeName == null) {
+			return null;
+		}
+		if (!execModeName.trim().equalsIgnoreCase(AUTO)) {
+			return Kernel.EXECUTION_MODE.valueOf(execModeName.trim());
+		}
+		Kernel.EXECUTION_MODE mode = getInstance(props).select(synapseCount);
+		if (logger.isDebugEnabled()) {
+			logger.debug("Selected execution mode " + mode + " for Bain network with " + neuronCount + " neurons and " + synapseCount + " synapses.");
+		}
+		return mode;
+	}
+
+	private static synchronized BainExecutionModeSelector getInstance(Properties props) {
+		if (instance == null) {
+			instance = new BainExecutionModeSelector(props);
+		}
+		return instance;
+	}
+
+	private BainExecutionModeSelector(Properties props) {
+		int[] s = props.getIntArrayProperty(AUTO_SIZES_KEY, new int[] { 100, 1000, 10000, 100000 });
+		sizes = Arrays.copyOf(s, s.length);
+		Arrays.sort(sizes);
+		modes = new Kernel.EXECUTION_MODE[sizes.length];
+
+		int concurrency = Runtime.getRuntime().availableProcessors();
+		int minThreads = props.getIntProperty(BulkFitnessFunctionMT.MIN_THREADS_KEY, 0);
+		int maxThreads = props.getIntProperty(BulkFitnessFunctionMT.MAX_THREADS_KEY, 0);
+		if (concurrency < minThreads)
+			concurrency = minThreads;
+		if (maxThreads > 0 && concurrency > maxThreads)
+			concurrency = maxThreads;
+		concurrency = props.getIntProperty(AUTO_CONCURRENCY_KEY, concurrency);
+		long time = props.getLongProperty(AUTO_TIME_KEY, 100);
+		String neuronModelClass = props.getProperty(TranscriberAdaptor.SUBSTRATE_NEURON_MODEL, "com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection");
+		String synapseModelClass = props.getProperty(TranscriberAdaptor.SUBSTRATE_SYNAPSE_MODEL, "com.ojcoleman.bain.synapse.rate.FixedSynapseCollection");
+
+		logger.info("Calibrating Bain execution mode with " + concurrency + " concurrent networks of " + neuronModelClass + " and " + synapseModelClass + ".");
+		for (int i = 0; i < sizes.length; i++) {
+			double[] stepTime = new double[MODES.length];
+			int best = -1;
+			for (int m = 0; m < MODES.length; m++) {
+				try {
+					stepTime[m] = benchmark(neuronModelClass, synapseModelClass, sizes[i], MODES[m], concurrency, time);
+				} catch (Exception e) {
+					logger.warn("Unable to benchmark Bain execution mode " + MODES[m] + ": " + e);
+					stepTime[m] = Double.POSITIVE_INFINITY;
+				}
+				if (stepTime[m] != Double.POSITIVE_INFINITY && (best == -1 || stepTime[m] < stepTime[best])) {
+					best = m;
+				}
+			}
+			modes[i] = best != -1 ? MODES[best] : null;
+			StringBuilder msg = new StringBuilder("Bain networks with about " + sizes[i] + " synapses: ");
+			for (int m = 0; m < MODES.length; m++) {
+				msg.append(MODES[m] + " " + nf.format(stepTime[m] / 1000) + "us/step, ");
+			}
+			msg.append("using " + (modes[i] != null ? modes[i] : "default mode") + ".");
+			logger.info(msg);
+		}
+	}
+
+	/**
+	 * Select the execution mode for the benchmarked size closest (on a log scale) to the given number of synapses.
+	 */
+	private Kernel.EXECUTION_MODE select(int synapseCount) {
+		double logSize = Math.log(Math.max(1, synapseCount));
+		int best = 0;
+		for (int i = 1; i < sizes.length; i++) {
+			if (Math.abs(Math.log(sizes[i]) - logSize) < Math.abs(Math.log(sizes[best]) - logSize)) {
+				best = i;
+			}
+		}
+		return modes[best];
+	}
+
+	/**
+	 * Simulate the given number of randomly connected networks concurrently with the given execution mode and return
+	 * the average time per simulation step for a network, in nanoseconds.
+	 *
+	 * @throws Exception If a network could not be created or simulated, or the simulation did not complete in a
+	 *             reasonable time.
+	 */
+	private static double benchmark(String neuronModelClass, String synapseModelClass, int synapseCount, Kernel.EXECUTION_MODE mode, int concurrency, final long time) throws Exception {
+		int neuronCount = Math.max(2, (int) Math.ceil(Math.sqrt(synapseCount)));
+		final NeuralNetwork[] networks = new NeuralNetwork[concurrency];
+		Random random = new Random(synapseCount);
+		for (int n = 0; n < concurrency; n++) {
+			NeuronCollection<?> neurons = BainNN.createNeuronCollection(neuronModelClass, neuronCount, false, false, false);
+			SynapseCollection<?> synapses = BainNN.createSynapseCollection(synapseModelClass, synapseCount, false, false, -1, 1);
+			for (int s = 0; s < synapseCount; s++) {
+				synapses.setPreAndPostNeurons(s, random.nextInt(neuronCount), random.nextInt(neuronCount));
+				synapses.setEfficacy(s, random.nextDouble() * 2 - 1);
+			}
+			networks[n] = new NeuralNetwork(1000, neurons, synapses, mode);
+		}
+
+		final long[] elapsed = new long[concurrency];
+		final long[] steps = new long[concurrency];
+		final CyclicBarrier barrier = new CyclicBarrier(concurrency);
+		// Generous limit on how long to wait for the other threads, so that a failed or stalled thread can't hang the
+		// calibration.
+		final long timeout = Math.max(10000, time * 20);
+		Thread[] threads = new Thread[concurrency];
+		for (int n = 0; n < concurrency; n++) {
+			final int index = n;
+			threads[n] = new Thread("Bain execution mode calibration " + n) {
+				@Override
+				public void run() {
+					try {
+						NeuralNetwork nn = networks[index];
+						// Warm up.
+						runFor(nn, time / 4);
+						barrier.await(timeout, TimeUnit.MILLISECONDS);
+						long start = System.nanoTime();
+						steps[index] = runFor(nn, time);
+						elapsed[index] = System.nanoTime() - start;
+					} catch (Throwable e) {
+						// Release any threads waiting on this one, steps[index] remains 0 to indicate failure.
+						barrier.reset();
+						logger.debug("Bain execution mode calibration thread failed: " + e);
+					}
+				}
+			};
+			threads[n].setDaemon(true);
+			threads[n].start();
+		}
+		double total = 0;
+		long deadline = System.currentTimeMillis() + timeout * 2;
+		for (int n = 0; n < concurrency; n++) {
+			threads[n].join(Math.max(1, deadline - System.currentTimeMillis()));
+			if (threads[n].isAlive()) {
+				// The threads are daemons so will not prevent the JVM from exiting.
+				throw new Exception("benchmark timed out");
+			}
+			if (steps[n] == 0) {
+				throw new Exception("benchmark thread failed");
+			}
+			total += (double) elapsed[n] / steps[n];
+		}
+		for (int n = 0; n < concurrency; n++) {
+			networks[n].dispose();
+		}
+		return total / concurrency;
+	}
+
+	/**
+	 * Step the given network repeatedly for at least the given number of milliseconds, returning the number of steps
+	 * performed.
+	 */
+	private static long runFor(NeuralNetwork nn, long time) {
+		long end = System.nanoTime() + time * 1000000;
+		long steps = 0;
+		do {
+			nn.step();
+			steps++;
+		} while (System.nanoTime() < end);
+		return steps;
+	}
+}
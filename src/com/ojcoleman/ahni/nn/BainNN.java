@@ -20,9 +20,6 @@ import org.apache.log4j.Logger;
 import com.anji.integration.Activator;
 import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.util.ArrayUtil;
-import com.ojcoleman.ahni.util.bellmanfordsp.BellmanFordSP;
-import com.ojcoleman.ahni.util.bellmanfordsp.DirectedEdge;
-import com.ojcoleman.ahni.util.bellmanfordsp.EdgeWeightedDigraph;
 import com.ojcoleman.bain.NeuralNetwork;
 import com.ojcoleman.bain.base.ComponentCollection;
 import com.ojcoleman.bain.base.ComponentConfiguration;
@@ -43,13 +40,35 @@ import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
  * {@link com.anji.integration.Activator#nextSequence(double[][])} are optimised to provide amortised performance over
  * the number of input sequences for layered feed-forward networks.
  * </p>
+ * <p>
+ * Many independent instances of a network can be run in lockstep with a {@link BainNNLockstep}.
+ * </p>
  */
 public class BainNN extends NNAdaptor {
 	private final static Logger logger = Logger.getLogger(BainNN.class);
 	private final static DecimalFormat nfInt = new DecimalFormat("0000");
 
+	/**
+	 * The Aparapi execution mode for Bain networks (SEQ, JTP or GPU), or "AUTO" to select the mode for each network
+	 * from a start-up benchmark, see {@link BainExecutionModeSelector}. If not set Bain selects a mode based on network
+	 * size.
+	 */
 	public static final String SUBSTRATE_EXECUTION_MODE = "ann.transcriber.bain.executionmode";
 	public static final String SUBSTRATE_SIMULATION_RESOLUTION = "ann.transcriber.bain.resolution";
+	/**
+	 * Whether the Bain transcribers should remove neurons and synapses that can not influence the output of the network
+	 * from the simulation, see {@link NetworkAnalysis}. This does not change the output of the network. Default is
+	 * true.
+	 */
+	public static final String SUBSTRATE_PRUNE = "ann.transcriber.bain.prune";
+	/**
+	 * If greater than 0, recurrent Bain networks stop performing simulation steps for an input once the maximum change
+	 * in the output of any neuron over a step is less than this value, see
+	 * {@link #setConvergence(double, ActivationCycleStatistics)}. The configured number of steps (cycles) per step is
+	 * still the maximum. A histogram of the number of steps performed is logged for each generation. Default is 0
+	 * (disabled).
+	 */
+	public static final String SUBSTRATE_CONVERGENCE_EPSILON = "ann.transcriber.bain.convergence.epsilon";
 
 	/**
 	 * Describes the basic topology of a network.
@@ -80,6 +99,12 @@ public class BainNN extends NNAdaptor {
 	private int[] inputDimensions;
 	private int[] outputDimensions;
 	private int inputSize, outputIndex, outputSize;
+	// Buffers for two dimensional input and output, created when first required.
+	private double[] packedInput, packedOutput;
+	private double convergenceEpsilon;
+	private ActivationCycleStatistics cycleStatistics;
+	// The neuron outputs before the current step, used to detect convergence.
+	private double[] previousOutputs;
 	int neuronCount;
 	double sumOfSquaredConnectionLengths;
 
@@ -139,8 +164,20 @@ public class BainNN extends NNAdaptor {
 		init(nn, inputDimensions, outputDimensions, stepsPerStep, topology, name);
 	}
 
+	/**
+	 * Same as {@link #BainNN(NeuralNetwork, int[], int[], int, Topology, String)} but for non-layered feed forward
+	 * networks the number of steps is taken from the given analysis of the network rather than calculated again, see
+	 * {@link #setStepsPerStepForNonLayeredFF(NetworkAnalysis)}.
+	 */
+	public BainNN(NeuralNetwork nn, int[] inputDimensions, int[] outputDimensions, int stepsPerStep, Topology topology, String name, NetworkAnalysis analysis) throws Exception {
+		init(nn, inputDimensions, outputDimensions, stepsPerStep, topology, name, analysis);
+	}
 
 	private void init(NeuralNetwork nn, int[] inputDimensions, int[] outputDimensions, int stepsPerStep, Topology topology, String name) throws Exception {
+		init(nn, inputDimensions, outputDimensions, stepsPerStep, topology, name, null);
+	}
+
+	private void init(NeuralNetwork nn, int[] inputDimensions, int[] outputDimensions, int stepsPerStep, Topology topology, String name, NetworkAnalysis analysis) throws Exception {
 		this.nn = nn;
 		this.stepsPerStep = stepsPerStep;
 		this.topology = topology;
@@ -161,7 +198,11 @@ public class BainNN extends NNAdaptor {
 		outputIndex = neuronCount - outputSize;
 		nnOutputs = nn.getNeurons().getOutputs();
 		neuronDisabled = new boolean[neuronCount];
-		setStepsPerStepForNonLayeredFF();
+		if (analysis != null) {
+			setStepsPerStepForNonLayeredFF(analysis);
+		} else {
+			setStepsPerStepForNonLayeredFF();
+		}
 	}
 
 	/**
@@ -175,6 +216,13 @@ public class BainNN extends NNAdaptor {
 		return topology;
 	}
 
+	/**
+	 * @return The number of simulation steps performed in the Bain neural network for each call to next(..).
+	 */
+	public int getStepsPerStep() {
+		return stepsPerStep;
+	}
+
 	@Override
 	public Object next() {
 		return next((double[]) null);
@@ -206,7 +254,11 @@ public class BainNN extends NNAdaptor {
 				System.arraycopy(stimuli, 0, nnOutputs, 0, stimuli.length);
 				nn.getNeurons().setOutputsModified(0, stimuli.length);
 			}
-			nn.run(stepsPerStep);
+			if (isConvergenceEnabled()) {
+				runUntilConverged();
+			} else {
+				nn.run(stepsPerStep);
+			}
 		}
 		
 		System.arraycopy(nn.getNeurons().getOutputs(), outputIndex, output, 0, outputSize);
@@ -238,7 +290,7 @@ public class BainNN extends NNAdaptor {
 			}
 		} else {
 			for (int s = 0; s < stimuliCount; s++) {
-				result[s] = next(stimuli[s]);
+				next(stimuli[s], result[s]);
 			}
 		}
 		checkExecMode();
@@ -253,8 +305,12 @@ public class BainNN extends NNAdaptor {
 
 	@Override
 	public void next(double[][] stimuli, double[][] output) {
-		// TODO avoid creating new array in call to pack.
-		ArrayUtil.unpack(next(ArrayUtil.pack(stimuli)), output, 0);
+		if (packedInput == null) {
+			packedInput = new double[inputSize];
+			packedOutput = new double[outputSize];
+		}
+		next(ArrayUtil.pack(stimuli, packedInput), packedOutput);
+		ArrayUtil.unpack(packedOutput, output, 0);
 	}
 
 	@Override
@@ -272,8 +328,7 @@ public class BainNN extends NNAdaptor {
 		if (topology == Topology.FEED_FORWARD_LAYERED) {
 			for (int stimuliIndex = 0, responseIndex = 1 - stepsPerStep; stimuliIndex < stimuliCount + stepsPerStep - 1; stimuliIndex++, responseIndex++) {
 				if (stimuliIndex < stimuliCount) {
-					double[] input = ArrayUtil.pack(stimuli[stimuliIndex]);
-					System.arraycopy(input, 0, nnOutputs, 0, input.length);
+					ArrayUtil.pack(stimuli[stimuliIndex], nnOutputs);
 				}
 				nn.step();
 				if (responseIndex >= 0) {
@@ -288,6 +343,56 @@ public class BainNN extends NNAdaptor {
 		checkExecMode();
 	}
 
+	/**
+	 * Perform simulation steps until the maximum change in the output of any neuron is less than the convergence
+	 * epsilon, or stepsPerStep steps have been performed.
+	 */
+	private void runUntilConverged() {
+		if (previousOutputs == null) {
+			previousOutputs = new double[neuronCount];
+		}
+		System.arraycopy(nn.getNeurons().getOutputs(), 0, previousOutputs, 0, neuronCount);
+		int step = 0;
+		double maxChange;
+		do {
+			nn.step();
+			step++;
+			double[] outputs = nn.getNeurons().getOutputs();
+			maxChange = 0;
+			for (int n = 0; n < neuronCount; n++) {
+				double change = Math.abs(outputs[n] - previousOutputs[n]);
+				if (change > maxChange) {
+					maxChange = change;
+				}
+				previousOutputs[n] = outputs[n];
+			}
+		} while (step < stepsPerStep && maxChange >= convergenceEpsilon);
+		if (cycleStatistics != null) {
+			cycleStatistics.record(step);
+		}
+	}
+
+	/**
+	 * Enable or disable convergence detection for recurrent networks. When enabled, simulation steps for an input stop
+	 * once the maximum change in the output of any neuron over a step is less than the given epsilon, or after
+	 * {@link #getStepsPerStep()} steps, whichever comes first. Has no effect on feed-forward networks.
+	 *
+	 * @param epsilon The convergence threshold, or 0 to always perform {@link #getStepsPerStep()} steps.
+	 * @param statistics If not null, the number of steps performed for each input is recorded here.
+	 */
+	public void setConvergence(double epsilon, ActivationCycleStatistics statistics) {
+		convergenceEpsilon = epsilon;
+		cycleStatistics = statistics;
+	}
+
+	/**
+	 * @return true iff convergence detection is in effect for this network, see
+	 *         {@link #setConvergence(double, ActivationCycleStatistics)}.
+	 */
+	public boolean isConvergenceEnabled() {
+		return convergenceEpsilon > 0 && topology == Topology.RECURRENT && stepsPerStep > 0;
+	}
+
 	private void checkExecMode() {
 		if (!reportedExecutionModeProblem && nn.getPreferredExecutionMode() != null && nn.getPreferredExecutionMode() != nn.getSynapses().getExecutionMode()) {
 			logger.warn("Preferred execution mode for Bain network unable to be used.");
@@ -371,44 +476,30 @@ public class BainNN extends NNAdaptor {
 	public void setStepsPerStepForNonLayeredFF() {
 		if (topology != Topology.FEED_FORWARD_NONLAYERED)
 			return;
-		
-		// To find the longest path from any output node to any input node
-		// create a directed acyclic graph representing the network where
-		// each edge has the opposite direction of the corresponding 
-		// connection and has weight/value = -1. Then use the Bellman-Ford 
-		// algorithm for finding the lowest value path starting from each 
-		// output node/vertex to each input node/vertex. The lowest value path
-		// corresponds to the longest path since the edges have value -1.
-		EdgeWeightedDigraph graph = new EdgeWeightedDigraph(neuronCount);
 		SynapseCollection<? extends ComponentConfiguration> synapses = nn.getSynapses();
-		for (int c = 0; c < synapses.getSizePopulated(); c++) {
-			graph.addEdge(new DirectedEdge(synapses.getPostNeuron(c), synapses.getPreNeuron(c), -1));
+		int synapseCount = synapses.getSizePopulated();
+		int[] pre = new int[synapseCount];
+		int[] post = new int[synapseCount];
+		for (int c = 0; c < synapseCount; c++) {
+			pre[c] = synapses.getPreNeuron(c);
+			post[c] = synapses.getPostNeuron(c);
 		}
+		setStepsPerStepForNonLayeredFF(new NetworkAnalysis(neuronCount, inputSize, outputSize, pre, post, synapseCount, null));
+	}
 
-		// Apply Bellman-Ford algo for each output neuron, query for lowest 
-		// value path to each input.
-		int maxDepth = 0;
-		boolean cyclic = false;
-		for (int o = outputIndex; o < neuronCount && !cyclic; o++) {
-			BellmanFordSP bfsp = new BellmanFordSP(graph, o);
-			
-			if (bfsp.hasNegativeCycle()) {
-				cyclic = true;
-				break;
-			}
-			
-			for (int i = 0; i < inputSize; i++) {
-				double dist = bfsp.distTo(i);
-				if (dist != Double.POSITIVE_INFINITY && -dist > maxDepth) {
-					maxDepth = (int) Math.round(-dist);
-				}
-			}
-		}
-		
-		//System.err.println("maxDepth " + maxDepth + "  cyclic " + (cyclic ? "T" : "F"));
+	/**
+	 * (Re)calculates the number of steps required to fully activate a non-layered feed-forward network from an
+	 * existing analysis of the network (or of a network that differs only in structure that can not influence the
+	 * output). If this network is not of type {@link BainNN.Topology#FEED_FORWARD_NONLAYERED} then this method does
+	 * nothing and returns immediately. If the network contains cycles that can influence the output then the topology
+	 * is switched to {@link BainNN.Topology#RECURRENT}.
+	 */
+	public void setStepsPerStepForNonLayeredFF(NetworkAnalysis analysis) {
+		if (topology != Topology.FEED_FORWARD_NONLAYERED)
+			return;
 		
-		if (!cyclic) {
-			stepsPerStep = maxDepth - 1;
+		if (!analysis.isRecurrent()) {
+			stepsPerStep = analysis.getDepth() - 1;
 		} else {
 			logger.warn("The Bain network marked as non-layered feed forward contains cycles. Switching to recurrent topology mode with " + stepsPerStep + " activation cycles per step.");
 			this.topology = Topology.RECURRENT;
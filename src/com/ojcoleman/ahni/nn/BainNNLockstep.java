@@ -0,0 +1,249 @@
+package com.ojcoleman.ahni.nn;
+
+import java.util.Arrays;
+
+import com.ojcoleman.ahni.nn.BainNN.Topology;
+import com.ojcoleman.bain.base.NeuronCollection;
+import com.ojcoleman.bain.base.SynapseCollection;
+import com.ojcoleman.bain.neuron.rate.ClampedLinearNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.LinearNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
+import com.ojcoleman.bain.neuron.rate.SigmoidBipolarNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SigmoidNeuronCollection;
+import com.ojcoleman.bain.neuron.rate.SigmoidNeuronConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
+
+/**
+ * <p>
+ * Runs multiple independent instances of the network of a {@link BainNN} in lockstep. This is useful for tasks that
+ * evaluate the same network over many independent trials or environments, which would otherwise be run one after
+ * another with a call to {@link BainNN#reset()} in between. All instances share the network structure and parameters,
+ * each has its own activation state. The state is stored in structure-of-arrays form, with the values for all
+ * instances of a neuron stored contiguously, so that each synapse and neuron is processed for all instances in one
+ * tight loop.
+ * </p>
+ * <p>
+ * The output for each instance is identical to that of the BainNN it was created from (when the Bain network is run
+ * in SEQ execution mode) given the same sequence of stimuli after a reset. Only stateless rate-based models are
+ * supported: the synapse model must be {@link FixedSynapseCollection} and the neuron model must be one of
+ * {@link ClampedLinearNeuronCollection}, {@link LinearNeuronCollection}, {@link SigmoidNeuronCollection} or
+ * {@link SigmoidBipolarNeuronCollection}. The synapse weights and neuron biases are copied when the instance is
+ * created, subsequent changes to the BainNN are not reflected. Networks using convergence detection (see
+ * {@link BainNN#setConvergence(double, ActivationCycleStatistics)}) are not supported, as each instance may converge
+ * after a different number of steps.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class BainNNLockstep {
+	private static final int CLAMPED_LINEAR = 0;
+	private static final int LINEAR = 1;
+	private static final int SIGMOID = 2;
+	private static final int SIGMOID_BIPOLAR = 3;
+
+	private final int instanceCount;
+	private final int neuronCount, synapseCount;
+	private final int inputSize, outputIndex, outputSize;
+	private final int stepsPerStep;
+	private final Topology topology;
+	private final int model;
+
+	private final int[] preIndexes, postIndexes;
+	private final double[] efficacies;
+	private final double[] bias;
+	private final double[] slope;
+
+	// Neuron state for all instances, [neuron * instanceCount + instance].
+	private final double[] outputs;
+	private final double[] inputs;
+
+	/**
+	 * Create a BainNNLockstep for the given BainNN.
+	 *
+	 * @param nn The network to run multiple instances of.
+	 * @param instanceCount The number of instances.
+	 * @return A new BainNNLockstep, or null if the neuron or synapse model of the given network is not supported or
+	 *         the network uses convergence detection.
+	 */
+	public static BainNNLockstep create(BainNN nn, int instanceCount) {
+		if (nn.isConvergenceEnabled()) {
+			return null;
+		}
+		NeuronCollection<?> neurons = nn.getNeuralNetwork().getNeurons();
+		SynapseCollection<?> synapses = nn.getNeuralNetwork().getSynapses();
+		if (synapses.getClass() != FixedSynapseCollection.class) {
+			return null;
+		}
+		int model;
+		if (neurons.getClass() == ClampedLinearNeuronCollection.class) {
+			model = CLAMPED_LINEAR;
+		} else if (neurons.getClass() == LinearNeuronCollection.class) {
+			model = LINEAR;
+		} else if (neurons.getClass() == SigmoidNeuronCollection.class) {
+			model = SIGMOID;
+		} else if (neurons.getClass() == SigmoidBipolarNeuronCollection.class) {
+			model = SIGMOID_BIPOLAR;
+		} else {
+			return null;
+		}
+		return new BainNNLockstep(nn, model, instanceCount);
+	}
+
+	private BainNNLockstep(BainNN nn, int model, int instanceCount) {
+		NeuronCollectionWithBias<?> neurons = (NeuronCollectionWithBias<?>) nn.getNeuralNetwork().getNeurons();
+		SynapseCollection<?> synapses = nn.getNeuralNetwork().getSynapses();
+		this.instanceCount = instanceCount;
+		this.model = model;
+		neuronCount = neurons.getSize();
+		synapseCount = synapses.getSize();
+		inputSize = nn.getInputCount();
+		outputSize = nn.getOutputCount();
+		outputIndex = neuronCount - outputSize;
+		stepsPerStep = nn.getStepsPerStep();
+		topology = nn.getTopology();
+
+		preIndexes = new int[synapseCount];
+		postIndexes = new int[synapseCount];
+		efficacies = Arrays.copyOf(synapses.getEfficacies(), synapseCount);
+		for (int s = 0; s < synapseCount; s++) {
+			preIndexes[s] = synapses.getPreNeuron(s);
+			postIndexes[s] = synapses.getPostNeuron(s);
+		}
+
+		bias = new double[neuronCount];
+		slope = (model == SIGMOID || model == SIGMOID_BIPOLAR) ? new double[neuronCount] : null;
+		for (int n = 0; n < neuronCount; n++) {
+			bias[n] = neurons.getBias(n);
+			if (slope != null) {
+				slope[n] = ((SigmoidNeuronConfiguration) neurons.getComponentConfiguration(n)).slope;
+			}
+		}
+
+		outputs = new double[neuronCount * instanceCount];
+		inputs = new double[neuronCount * instanceCount];
+	}
+
+	/**
+	 * @return The number of instances of the network.
+	 */
+	public int getInstanceCount() {
+		return instanceCount;
+	}
+
+	/**
+	 * @return The number of inputs to each instance.
+	 */
+	public int getInputCount() {
+		return inputSize;
+	}
+
+	/**
+	 * @return The number of outputs from each instance.
+	 */
+	public int getOutputCount() {
+		return outputSize;
+	}
+
+	/**
+	 * Activate all instances of the network, in the same way as {@link BainNN#next(double[], double[])}.
+	 *
+	 * @param stimuli The input for each instance, in the format [instance][input].
+	 * @param output Array to put the output of each instance in, in the format [instance][output].
+	 */
+	public void next(double[][] stimuli, double[][] output) {
+		if (topology == Topology.FEED_FORWARD_NONLAYERED) {
+			// Input neurons must maintain the stimuli values each step, see BainNN.next(double[], double[]).
+			for (int s = 0; s < stepsPerStep; s++) {
+				setStimuli(stimuli);
+				step();
+			}
+			setStimuli(stimuli);
+		} else {
+			setStimuli(stimuli);
+			for (int s = 0; s < stepsPerStep; s++) {
+				step();
+			}
+		}
+
+		for (int k = 0; k < instanceCount; k++) {
+			double[] out = output[k];
+			for (int o = 0, i = outputIndex * instanceCount + k; o < outputSize; o++, i += instanceCount) {
+				out[o] = outputs[i];
+			}
+		}
+	}
+
+	private void setStimuli(double[][] stimuli) {
+		for (int k = 0; k < instanceCount; k++) {
+			double[] in = stimuli[k];
+			for (int n = 0, i = k; n < in.length; n++, i += instanceCount) {
+				outputs[i] = in[n];
+			}
+		}
+	}
+
+	/**
+	 * Perform one simulation step for all instances. Synapses and neurons are processed in the same order as in the
+	 * Bain network, so the arithmetic for each instance matches a sequential Bain simulation exactly.
+	 */
+	private void step() {
+		final int N = instanceCount;
+		for (int s = 0; s < synapseCount; s++) {
+			double w = efficacies[s];
+			int pre = preIndexes[s] * N;
+			int post = postIndexes[s] * N;
+			for (int k = 0; k < N; k++) {
+				inputs[post + k] += outputs[pre + k] * w;
+			}
+		}
+
+		for (int n = 0, i = 0; n < neuronCount; n++) {
+			double b = bias[n];
+			int end = i + N;
+			switch (model) {
+			case CLAMPED_LINEAR:
+				for (; i < end; i++) {
+					outputs[i] = Math.max(Math.min(inputs[i] + b, 1), 0);
+					inputs[i] = 0;
+				}
+				break;
+			case LINEAR:
+				for (; i < end; i++) {
+					outputs[i] = inputs[i] + b;
+					inputs[i] = 0;
+				}
+				break;
+			case SIGMOID:
+				for (double sl = slope[n]; i < end; i++) {
+					outputs[i] = 1 / (1 + Math.exp(-((inputs[i] + b) * sl)));
+					inputs[i] = 0;
+				}
+				break;
+			case SIGMOID_BIPOLAR:
+				for (double sl = slope[n]; i < end; i++) {
+					outputs[i] = 2 / (1 + Math.exp(-((inputs[i] + b) * sl))) - 1;
+					inputs[i] = 0;
+				}
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Reset all instances to their initial state.
+	 */
+	public void reset() {
+		Arrays.fill(outputs, 0);
+		Arrays.fill(inputs, 0);
+	}
+
+	/**
+	 * Reset the given instance to its initial state, for example to begin a new trial in place of one that has ended.
+	 */
+	public void reset(int instance) {
+		for (int i = instance; i < outputs.length; i += instanceCount) {
+			outputs[i] = 0;
+			inputs[i] = 0;
+		}
+	}
+}
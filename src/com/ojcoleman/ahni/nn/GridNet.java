@@ -10,6 +10,12 @@
  * can be created.
  *
  * This implementation is designed to be fast and minimise memory consumption.
+ * The incoming connection weights of all the neurons in a layer are stored in
+ * a single flat array, the weights for each target neuron forming a contiguous
+ * block covering a box ("window") of source neurons. Feed-forward networks may
+ * optionally skip zero-weight connections (see {@link #setSparse(boolean)}) and
+ * update the neurons of large layers in parallel (see
+ * {@link #setParallel(ForkJoinPool, int)}).
  *
  * @author oliver
  */
@@ -17,6 +23,9 @@
 package com.ojcoleman.ahni.nn;
 
 import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import com.anji.integration.Activator;
 import com.anji.nn.activationfunction.ActivationFunction;
@@ -30,20 +39,47 @@ public class GridNet implements Activator {
 	 */
 	public final static String XML_TAG = "grid network";
 
+	// Layout of the window descriptor for each target neuron, see windows.
+	private static final int WINDOW_OFFSET = 0; // index of the first weight in the flat weights array for the layer
+	private static final int WINDOW_Z = 1; // coordinates of the first source neuron
+	private static final int WINDOW_Y = 2;
+	private static final int WINDOW_X = 3;
+	private static final int WINDOW_DZ = 4; // size of the window in each axis
+	private static final int WINDOW_DY = 5;
+	private static final int WINDOW_DX = 6;
+	private static final int WINDOW_STRIDE_Z = 7; // dy * dx, the stride between source layers (the stride between rows is dx)
+	private static final int WINDOW_SIZE = 8;
+
 	private ActivationFunction activationFunction;
 
 	private boolean isFeedForward;
 
 	// The maximum length/range of connections in either direction in the tx, ty and tz axes.
 	private int[][][] connectionMaxRanges; // [tz=0|ty=1|tx=2][negative=0|positive=1] = max range
-	private int[][] connectionTotalRanges; // [tz=0|ty=1|tx=2] = negative + positive max range
 
-	// connections weights, [z1][y1][x1][zR][yR][xR], where xR, yR, and zR are relative to x1, y1 and z1,
-	// and x1,y1,z1 is the target and xR, yR, and zR is the source, with the corresponding negative
-	// extents from connectionMaxRanges added to avoid negative array indices.
-	private double[][][][][][] weights; // z1,y1,x1,z2,y2,x2
+	// Connection weights, [tz-1][i], where tz is the target layer. The weights for a target neuron are stored
+	// contiguously starting at the offset given by its window descriptor, in the order [zR][yR][xR] where xR, yR and
+	// zR are relative to the first source neuron in the window.
+	private double[][] weights;
+	// Single-precision connection weights, used instead of weights when single-precision mode is enabled, see
+	// setSinglePrecision(). Exactly one of weights and weightsFloat is non-null.
+	private float[][] weightsFloat;
+
+	// Window descriptors, [tz-1][(ty * width[tz] + tx) * WINDOW_SIZE + WINDOW_*].
+	private int[][] windows;
+
+	private double[][] bias; // [tz-1][ty * width[tz] + tx]
+
+	// Compressed sparse row representation of the non-zero weights of a feed-forward network, see setSparse().
+	// The connections to target neuron t in layer tz are [sparseStart[tz-1][t], sparseStart[tz-1][t+1]).
+	private int[][] sparseStart;
+	private int[][] sparseSource; // index of source neuron in layerValues[tz-1]
+	private double[][] sparseWeight;
+	private float[][] sparseWeightFloat; // used instead of sparseWeight in single-precision mode
+	private double[][] layerValues; // flat copy of activation, [tz][ty * width[tz] + tx]
 
-	private double[][][] bias; // z,y,x
+	private ForkJoinPool parallelPool;
+	private int parallelMinNeurons;
 
 	private int depth;
 	private int[] width; // dimensions for each layer
@@ -72,7 +108,8 @@ public class GridNet implements Activator {
 	 *            grid, so the last three dimensions of the array must have differing sizes to account for this (except
 	 *            in the unlikely scenario that connections extend only straight down); also note that no connections
 	 *            may extend into the input layer so the connection matrices must also be circumscribed accordingly for
-	 *            this (thus the number of layers in the network including the input layer is weights.length+1).
+	 *            this (thus the number of layers in the network including the input layer is weights.length+1). The
+	 *            weights are copied into the internal representation.
 	 * @param bias the bias for each neuron not in the input layer, in the format [z][y][x] where z, y, and x are the
 	 *            coordinates of the neuron (as input neurons don't receive a bias bias.length should match
 	 *            weights.length).
@@ -86,26 +123,10 @@ public class GridNet implements Activator {
 		width = layerDimensions[0];
 		height = layerDimensions[1];
 
-		this.weights = weights;
-		this.bias = bias;
-		this.activationFunction = function;
 		this.connectionMaxRanges = connectionMaxRanges;
-		connectionTotalRanges = new int[depth - 1][connectionMaxRanges[0].length];
-		for (int l = 0; l < depth - 1; l++) {
-			for (int i = 0; i < connectionMaxRanges[l].length; i++) {
-				connectionTotalRanges[l][i] = connectionMaxRanges[l][i][0] + connectionMaxRanges[l][i][1] + 1;
-			}
-		}
-		activation = new double[depth][][];
-		activationNew = new double[depth][][];
-		for (int l = 0; l < depth; l++) {
-			activation[l] = new double[height[l]][width[l]];
-			activationNew[l] = new double[height[l]][width[l]];
-		}
-
-		this.cyclesPerStep = cyclesPerStep;
-		name = aName;
 		isFeedForward = (this.connectionMaxRanges[0][0][0] == -1 && this.connectionMaxRanges[0][0][1] == 1);
+		init(function, cyclesPerStep, aName);
+		setNestedWeights(weights, bias);
 	}
 
 	/**
@@ -120,7 +141,8 @@ public class GridNet implements Activator {
 	 *            grid, so the last three dimensions of the array must have differing sizes to account for this (except
 	 *            in the unlikely scenario that connections extend only straight down); also note that no connections
 	 *            may extend into the input layer so the connection matrices must also be circumscribed accordingly for
-	 *            this (thus the number of layers in the network including the input layer is weights.length+1).
+	 *            this (thus the number of layers in the network including the input layer is weights.length+1). The
+	 *            weights are copied into the internal representation.
 	 * @param bias the bias for each neuron not in the input layer, in the format [z][y][x] where z, y, and x are the
 	 *            coordinates of the neuron (as input neurons don't receive a bias bias.length should match
 	 *            weights.length).
@@ -134,8 +156,6 @@ public class GridNet implements Activator {
 		width = layerDimensions[0];
 		height = layerDimensions[1];
 
-		// System.out.println("GridNet dimensions (DxHxW): " + depth + " x " + height + " x " + width);
-
 		this.connectionMaxRanges = new int[depth - 1][3][2];
 		for (int l = 0; l < depth - 1; l++) {
 			this.connectionMaxRanges[l][0][0] = -1; // no connections to previous or own layer
@@ -146,24 +166,9 @@ public class GridNet implements Activator {
 			this.connectionMaxRanges[l][2][1] = connectionMaxRanges[l][1][1];
 		}
 
-		this.weights = weights;
-		this.bias = bias;
-		this.activationFunction = function;
-		connectionTotalRanges = new int[depth - 1][connectionMaxRanges[0].length];
-		for (int l = 0; l < depth - 1; l++) {
-			for (int i = 0; i < connectionMaxRanges[l].length; i++) {
-				connectionTotalRanges[l][i] = connectionMaxRanges[l][i][0] + connectionMaxRanges[l][i][1] + 1;
-			}
-		}
-		activation = new double[depth][][];
-		activationNew = new double[depth][][];
-		for (int l = 0; l < depth; l++) {
-			activation[l] = new double[height[l]][width[l]];
-			activationNew[l] = new double[height[l]][width[l]];
-		}
-		this.cyclesPerStep = cyclesPerStep;
-		name = aName;
 		isFeedForward = false;
+		init(function, cyclesPerStep, aName);
+		setNestedWeights(weights, bias);
 	}
 
 	/**
@@ -199,9 +204,8 @@ public class GridNet implements Activator {
 			this.connectionMaxRanges[l][2][0] = connectionMaxRanges[l][1][0];
 			this.connectionMaxRanges[l][2][1] = connectionMaxRanges[l][1][1];
 		}
-		this.bias = bias;
 
-		initFeedForward(this.connectionMaxRanges, weights, function, aName);
+		initFeedForward(weights, bias, function, aName);
 	}
 
 	/**
@@ -237,9 +241,8 @@ public class GridNet implements Activator {
 			this.connectionMaxRanges[l][2][0] = connectionMaxRanges[l][1][0];
 			this.connectionMaxRanges[l][2][1] = connectionMaxRanges[l][1][1];
 		}
-		this.bias = bias;
 
-		initFeedForward(this.connectionMaxRanges, weights, function, aName);
+		initFeedForward(weights, bias, function, aName);
 	}
 
 	/**
@@ -259,8 +262,6 @@ public class GridNet implements Activator {
 		width = layerDimensions[0];
 		height = layerDimensions[1];
 
-		// System.out.println("GridNet dimensions (DxHxW): " + depth + " x " + height + " x " + width);
-
 		// create standard feed-forward network fully connected from one layer to the nextSequence
 		this.connectionMaxRanges = new int[depth - 1][3][2];
 		for (int l = 0; l < depth - 1; l++) {
@@ -271,40 +272,164 @@ public class GridNet implements Activator {
 			this.connectionMaxRanges[l][2][0] = width[l] - 1;
 			this.connectionMaxRanges[l][2][1] = width[l] - 1;
 		}
-		this.bias = bias;
 
-		initFeedForward(connectionMaxRanges, weights, function, aName);
+		initFeedForward(weights, bias, function, aName);
 	}
 
-	private void initFeedForward(int[][][] connectionMaxRanges, double[][][][][] weights, ActivationFunction function, String aName) {
-		// System.out.println("GridNet dimensions (DxHxW): " + depth + " x " + height + " x " + width);
+	/**
+	 * Creates a GridNet with all connection weights and biases set to zero. The weights and biases are intended to be
+	 * set directly via {@link #getWeightData(int)} and {@link #getBiasData(int)}. Each target neuron receives
+	 * connections from the source neurons within connectionRange of it in each axis, bounded by the edges of the grid.
+	 * In a feed-forward network the source neurons for layer tz are in layer tz-1. In a recurrent network the source
+	 * neurons may be in any layer except the input layer, and the source window in the y and x axes is bounded by the
+	 * dimensions of the target layer.
+	 * 
+	 * @param layerDimensions The width and height of each layer, in the format [width=0|height=1][layer].
+	 * @param connectionRange The maximum length/range of connections in either direction in each axis.
+	 * @param feedForward Whether to create a feed-forward network.
+	 * @param function the ActivationFunction to use; only one type of activation function is used throughout the
+	 *            network.
+	 * @param cyclesPerStep Number of activation cycles to perform per step() in a recurrent network, must be >= 1.
+	 * @param aName Name of the network.
+	 */
+	public GridNet(int[][] layerDimensions, int connectionRange, boolean feedForward, ActivationFunction function, int cyclesPerStep, String aName) {
+		width = layerDimensions[0];
+		height = layerDimensions[1];
+		depth = width.length;
 
-		connectionTotalRanges = new int[depth - 1][connectionMaxRanges[0].length];
+		connectionMaxRanges = new int[depth - 1][3][2];
 		for (int l = 0; l < depth - 1; l++) {
-			for (int i = 0; i < connectionMaxRanges[l].length; i++) {
-				connectionTotalRanges[l][i] = connectionMaxRanges[l][i][0] + connectionMaxRanges[l][i][1] + 1;
+			for (int a = 0; a < 3; a++) {
+				connectionMaxRanges[l][a][0] = connectionRange;
+				connectionMaxRanges[l][a][1] = connectionRange;
+			}
+			if (feedForward) {
+				connectionMaxRanges[l][0][0] = -1; // no connections to previous or own layer
+				connectionMaxRanges[l][0][1] = 1;
 			}
 		}
 
+		isFeedForward = feedForward;
+		init(function, feedForward ? 1 : cyclesPerStep, aName);
+
+		weights = new double[depth - 1][];
+		windows = new int[depth - 1][];
+		bias = new double[depth - 1][];
+		for (int tz = 1; tz < depth; tz++) {
+			int[] win = new int[height[tz] * width[tz] * WINDOW_SIZE];
+			int size = 0;
+			for (int ty = 0, d = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++, d += WINDOW_SIZE) {
+					int z0, y0, x0, dz, dy, dx;
+					if (feedForward) {
+						z0 = tz - 1;
+						y0 = Math.max(0, ty - connectionRange);
+						x0 = Math.max(0, tx - connectionRange);
+						dz = 1;
+						dy = Math.min(height[tz - 1] - 1, ty + connectionRange) - y0 + 1;
+						dx = Math.min(width[tz - 1] - 1, tx + connectionRange) - x0 + 1;
+					} else {
+						z0 = Math.max(1, tz - connectionRange); // no connections from input layer
+						y0 = Math.max(0, ty - connectionRange);
+						x0 = Math.max(0, tx - connectionRange);
+						dz = Math.min(depth - 1, tz + connectionRange) - z0 + 1;
+						dy = Math.min(height[tz] - 1, ty + connectionRange) - y0 + 1;
+						dx = Math.min(width[tz] - 1, tx + connectionRange) - x0 + 1;
+					}
+					setWindow(win, d, size, z0, y0, x0, dz, dy, dx);
+					size += dz * dy * dx;
+				}
+			}
+			windows[tz - 1] = win;
+			weights[tz - 1] = new double[size];
+			bias[tz - 1] = new double[height[tz] * width[tz]];
+		}
+	}
+
+	private void initFeedForward(double[][][][][] weights, double[][][] bias, ActivationFunction function, String aName) {
 		double[][][][][][] w = new double[depth - 1][][][][][];
-		// for each neuron zyx
 		for (int z = 0; z < depth - 1; z++) {
-			w = new double[z][height[z + 1]][width[z + 1]][1][][];
+			w[z] = new double[height[z + 1]][width[z + 1]][1][][];
 			for (int y = 0; y < height[z + 1]; y++) {
 				for (int x = 0; x < width[z + 1]; x++) {
 					w[z][y][x][0] = weights[z][y][x];
 				}
 			}
 		}
-		this.weights = w;
+		isFeedForward = true;
+		init(function, 1, aName);
+		setNestedWeights(w, bias);
+	}
+
+	private void init(ActivationFunction function, int cyclesPerStep, String aName) {
 		activation = new double[depth][][];
 		for (int l = 0; l < depth; l++) {
 			activation[l] = new double[height[l]][width[l]];
 		}
+		if (!isFeedForward) {
+			activationNew = new double[depth][][];
+			for (int l = 0; l < depth; l++) {
+				activationNew[l] = new double[height[l]][width[l]];
+			}
+		}
 		this.activationFunction = function;
-		this.cyclesPerStep = 1;
+		this.cyclesPerStep = cyclesPerStep;
 		name = aName;
-		isFeedForward = true;
+	}
+
+	/**
+	 * Copies weights and biases in the nested formats accepted by the constructors into the flat layout. The first
+	 * source neuron of the window for target neuron t{z,y,x} is at s{z,y,x} = max(0, t{z,y,x} -
+	 * connectionMaxRanges[tz-1][{z,y,x}][0]), or in the previous layer for a feed-forward network.
+	 */
+	private void setNestedWeights(double[][][][][][] nestedWeights, double[][][] nestedBias) {
+		weights = new double[depth - 1][];
+		windows = new int[depth - 1][];
+		bias = new double[depth - 1][];
+		for (int tz = 1; tz < depth; tz++) {
+			int[][] cmr = connectionMaxRanges[tz - 1];
+			int[] win = new int[height[tz] * width[tz] * WINDOW_SIZE];
+			double[] b = new double[height[tz] * width[tz]];
+			int size = 0;
+			for (int ty = 0, t = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++, t++) {
+					double[][][] w = nestedWeights[tz - 1][ty][tx];
+					int dz = w.length;
+					int dy = dz > 0 ? w[0].length : 0;
+					int dx = dy > 0 ? w[0][0].length : 0;
+					int z0 = isFeedForward ? tz - 1 : Math.max(0, tz - cmr[0][0]);
+					setWindow(win, t * WINDOW_SIZE, size, z0, Math.max(0, ty - cmr[1][0]), Math.max(0, tx - cmr[2][0]), dz, dy, dx);
+					size += dz * dy * dx;
+					b[t] = nestedBias[tz - 1][ty][tx];
+				}
+			}
+			double[] flat = new double[size];
+			for (int ty = 0, i = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++) {
+					double[][][] w = nestedWeights[tz - 1][ty][tx];
+					for (int wz = 0; wz < w.length; wz++) {
+						for (int wy = 0; wy < w[wz].length; wy++) {
+							System.arraycopy(w[wz][wy], 0, flat, i, w[wz][wy].length);
+							i += w[wz][wy].length;
+						}
+					}
+				}
+			}
+			windows[tz - 1] = win;
+			weights[tz - 1] = flat;
+			bias[tz - 1] = b;
+		}
+	}
+
+	private static void setWindow(int[] win, int d, int offset, int z0, int y0, int x0, int dz, int dy, int dx) {
+		win[d + WINDOW_OFFSET] = offset;
+		win[d + WINDOW_Z] = z0;
+		win[d + WINDOW_Y] = y0;
+		win[d + WINDOW_X] = x0;
+		win[d + WINDOW_DZ] = dz;
+		win[d + WINDOW_DY] = dy;
+		win[d + WINDOW_DX] = dx;
+		win[d + WINDOW_STRIDE_Z] = dy * dx;
 	}
 
 	/**
@@ -361,75 +486,279 @@ public class GridNet implements Activator {
 	}
 
 	/**
-	 * Provides a reference to the internal weights array. Format is [z1][y1][x1][zR][yR][xR], where xR, yR, and zR are
-	 * relative to x1, y1 and z1, and with the corresponding negative direction ranges from connectionMaxRanges added to
-	 * avoid negative array indices. x1, y1, z1 is the target and xR, yR, zR is the source coordinates. Note that the
-	 * range of connections for neurons at or close to the edge of the grid are circumscribed by the edge of the grid,
-	 * so the last three dimensions of the array will have differing sizes to account for this (except in the unlikely
-	 * scenario that connections extend only straight down). Note that modifications to the returned array are reflected
-	 * in the operation of the GridNet.
+	 * Provides a copy of the weights in the format [z1][y1][x1][zR][yR][xR], where xR, yR, and zR are relative to the
+	 * first source neuron in the window of source neurons for target neuron x1, y1, z1. Note that the range of
+	 * connections for neurons at or close to the edge of the grid are circumscribed by the edge of the grid, so the
+	 * last three dimensions of the array will have differing sizes to account for this (except in the unlikely
+	 * scenario that connections extend only straight down). Modifications to the returned array are not reflected in
+	 * the operation of the GridNet, see {@link #getWeightData(int)}.
 	 * 
-	 * @return A reference to the weights array.
+	 * @return A copy of the weights.
 	 */
 	public double[][][][][][] getWeights() {
-		return weights;
+		double[][][][][][] nested = new double[depth - 1][][][][][];
+		for (int tz = 1; tz < depth; tz++) {
+			nested[tz - 1] = new double[height[tz]][width[tz]][][][];
+			int[] win = windows[tz - 1];
+			for (int ty = 0, d = 0; ty < height[tz]; ty++) {
+				for (int tx = 0; tx < width[tz]; tx++, d += WINDOW_SIZE) {
+					double[][][] w = new double[win[d + WINDOW_DZ]][win[d + WINDOW_DY]][win[d + WINDOW_DX]];
+					for (int wz = 0, i = win[d + WINDOW_OFFSET]; wz < w.length; wz++) {
+						for (int wy = 0; wy < w[wz].length; wy++) {
+							for (int wx = 0; wx < w[wz][wy].length; wx++, i++) {
+								w[wz][wy][wx] = getWeightAt(tz, i);
+							}
+						}
+					}
+					nested[tz - 1][ty][tx] = w;
+				}
+			}
+		}
+		return nested;
 	}
 
+	/**
+	 * Provides a copy of the biases in the format [z-1][y][x]. Modifications to the returned array are not reflected in
+	 * the operation of the GridNet, see {@link #getBiasData(int)}.
+	 */
 	public double[][][] getBias() {
-		return bias;
+		double[][][] nested = new double[depth - 1][][];
+		for (int tz = 1; tz < depth; tz++) {
+			nested[tz - 1] = new double[height[tz]][width[tz]];
+			for (int ty = 0; ty < height[tz]; ty++) {
+				System.arraycopy(bias[tz - 1], ty * width[tz], nested[tz - 1][ty], 0, width[tz]);
+			}
+		}
+		return nested;
 	}
 
 	/**
-	 * Perform one activation step, consisting of cyclesPerStep steps, calculating new activation for all neurons. For
-	 * feed-forward networks use stepFF.
+	 * Provides a reference to the internal flat weights array for the connections to the neurons in the given layer.
+	 * The weights for target neuron tx, ty start at {@link #getWeightOffset(int, int, int)} and are in the order
+	 * [zR][yR][xR], where xR, yR, and zR are relative to the first source neuron in the window of source neurons for the
+	 * target. Modifications to the returned array are reflected in the operation of the GridNet, however
+	 * {@link #setSparse(boolean)} must be called again if sparse mode is enabled.
+	 * 
+	 * @param tz The target layer, must be >= 1.
+	 * @return The weights array, or null if single-precision mode is enabled (see {@link #getWeightDataFloat(int)}).
 	 */
-	public void step() {
-		// the activationNew and activation arrays are swapped every step, so set
-		// the first/input layer (which doesn't changes during stepping) of
-		// activationNew to the same input layer array
-		activationNew[0] = activation[0];
-
-		for (int cycle = 0; cycle < cyclesPerStep; cycle++) {
-			// for each target neuron
-			for (int tz = 1; tz < depth; tz++) { // first layer is input layer, don't update it
-				for (int ty = 0; ty < height[tz]; ty++) {
-					for (int tx = 0; tx < width[tz]; tx++) {
+	public double[] getWeightData(int tz) {
+		return weights == null ? null : weights[tz - 1];
+	}
 
-						// System.out.println(tz + "," + ty + "," + tx);
+	/**
+	 * Provides a reference to the internal flat single-precision weights array for the connections to the neurons in
+	 * the given layer, see {@link #getWeightData(int)} and {@link #setSinglePrecision(boolean)}.
+	 * 
+	 * @param tz The target layer, must be >= 1.
+	 * @return The weights array, or null if single-precision mode is not enabled.
+	 */
+	public float[] getWeightDataFloat(int tz) {
+		return weightsFloat == null ? null : weightsFloat[tz - 1];
+	}
 
-						double[][][] w = weights[tz - 1][ty][tx];
-						double sum = bias[tz - 1][ty][tx];
+	/**
+	 * @return The number of weights in the flat weights array for the given target layer.
+	 */
+	private int getWeightCount(int tz) {
+		return weights != null ? weights[tz - 1].length : weightsFloat[tz - 1].length;
+	}
 
-						// for each source neuron for connections to zyx
-						// s{z,y,x} is an index into the activation matrix to the source neuron
-						// w{z,y,x} is an index into the weight matrix w for the connection from s{z,y,x} to zyx
-						for (int wz = 0, sz = Math.max(0, tz + wz - connectionMaxRanges[tz - 1][0][0]); wz < w.length; wz++, sz++) {
+	/**
+	 * @return The weight at the given index into the flat weights array for the given target layer, in either precision.
+	 */
+	private double getWeightAt(int tz, int i) {
+		return weights != null ? weights[tz - 1][i] : weightsFloat[tz - 1][i];
+	}
 
-							for (int wy = 0, sy = Math.max(0, ty + wy - connectionMaxRanges[tz - 1][1][0]); wy < w[wz].length; wy++, sy++) {
+	/**
+	 * @return The index into {@link #getWeightData(int)} of the first weight for the given target neuron.
+	 */
+	public int getWeightOffset(int tz, int ty, int tx) {
+		return windows[tz - 1][(ty * width[tz] + tx) * WINDOW_SIZE + WINDOW_OFFSET];
+	}
 
-								for (int wx = 0, sx = Math.max(0, tx + wx - connectionMaxRanges[tz - 1][2][0]); wx < w[wz][wy].length; wx++, sx++) {
+	/**
+	 * @return The weight of the connection to the given target neuron from the source neuron at the given position
+	 *         (relative to the first source neuron) in the window of source neurons for the target.
+	 */
+	public double getWeight(int tz, int ty, int tx, int wz, int wy, int wx) {
+		int d = (ty * width[tz] + tx) * WINDOW_SIZE;
+		int[] win = windows[tz - 1];
+		return getWeightAt(tz, win[d + WINDOW_OFFSET] + wz * win[d + WINDOW_STRIDE_Z] + wy * win[d + WINDOW_DX] + wx);
+	}
 
-									// System.out.println("\tw: " + wz + "," + wy + "," + wx + "\tt: " + tz + "," + ty +
-									// "," + tx);
+	/**
+	 * Provides a reference to the internal bias array for the neurons in the given layer, in the format [ty * width +
+	 * tx]. Modifications to the returned array are reflected in the operation of the GridNet.
+	 *
+	 * @param tz The layer, must be >= 1.
+	 */
+	public double[] getBiasData(int tz) {
+		return bias[tz - 1];
+	}
 
-									sum += activation[sz][sy][sx] * w[wz][wy][wx];
-								}
+	/**
+	 * Enable or disable the sparse representation of the weights of a feed-forward network. When enabled only the
+	 * connections with non-zero weight are evaluated (the weights of connections which are not expressed, for example
+	 * because the CPPN output is below the HyperNEAT connection expression threshold, are zero). The output is the
+	 * same as for the dense representation, except where non-finite activation values are multiplied by zero weights.
+	 * The sparse representation is built from the current weights, so this method must be called again if the weights
+	 * are modified. This setting has no effect on recurrent networks.
+	 */
+	public void setSparse(boolean sparse) {
+		if (!sparse || !isFeedForward) {
+			sparseStart = null;
+			sparseSource = null;
+			sparseWeight = null;
+			sparseWeightFloat = null;
+			layerValues = null;
+			return;
+		}
+		if (sparseStart == null) {
+			sparseStart = new int[depth - 1][];
+			sparseSource = new int[depth - 1][];
+			sparseWeight = new double[depth - 1][];
+			sparseWeightFloat = new float[depth - 1][];
+			layerValues = new double[depth][];
+			for (int l = 0; l < depth; l++) {
+				layerValues[l] = new double[height[l] * width[l]];
+			}
+		}
+		for (int tz = 1; tz < depth; tz++) {
+			int[] win = windows[tz - 1];
+			int count = 0;
+			for (int i = 0, n = getWeightCount(tz); i < n; i++) {
+				if (getWeightAt(tz, i) != 0) {
+					count++;
+				}
+			}
+			int targetCount = height[tz] * width[tz];
+			if (sparseStart[tz - 1] == null) {
+				sparseStart[tz - 1] = new int[targetCount + 1];
+			}
+			if (sparseSource[tz - 1] == null || sparseSource[tz - 1].length < count) {
+				sparseSource[tz - 1] = new int[count];
+				sparseWeight[tz - 1] = weights != null ? new double[count] : null;
+				sparseWeightFloat[tz - 1] = weights != null ? null : new float[count];
+			}
+			int[] start = sparseStart[tz - 1];
+			int[] source = sparseSource[tz - 1];
+			double[] sw = sparseWeight[tz - 1];
+			float[] swf = sparseWeightFloat[tz - 1];
+			int sourceWidth = width[tz - 1];
+			int c = 0;
+			for (int t = 0, d = 0; t < targetCount; t++, d += WINDOW_SIZE) {
+				start[t] = c;
+				int i = win[d + WINDOW_OFFSET];
+				for (int sy = win[d + WINDOW_Y], syEnd = sy + win[d + WINDOW_DY]; sy < syEnd; sy++) {
+					for (int sx = win[d + WINDOW_X], sxEnd = sx + win[d + WINDOW_DX]; sx < sxEnd; sx++, i++) {
+						double weight = getWeightAt(tz, i);
+						if (weight != 0) {
+							source[c] = sy * sourceWidth + sx;
+							if (sw != null) {
+								sw[c] = weight;
+							} else {
+								swf[c] = (float) weight;
 							}
+							c++;
 						}
+					}
+				}
+			}
+			start[targetCount] = c;
+		}
+	}
 
-						activationNew[tz][ty][tx] = activationFunction.apply(sum);
-
-						// System.out.println();
+	/**
+	 * @return True iff the sparse representation of the weights is enabled, see {@link #setSparse(boolean)}.
+	 */
+	public boolean isSparse() {
+		return sparseStart != null;
+	}
 
-						System.out.print("\t" + activationNew[tz][ty][tx]);
-					}
-					System.out.println();
+	/**
+	 * Enable or disable single-precision mode. In single-precision mode the connection weights are stored as floats
+	 * rather than doubles, halving the memory occupied by the weights and thus the memory bandwidth required to
+	 * activate the network, which dominates the time taken to activate large networks. Weighted sums are still
+	 * accumulated, and neuron activation values stored and provided, in double precision, so the only difference in
+	 * the output is due to rounding the weights to the nearest float (a relative error of at most about 6E-8 in each
+	 * weight). In runs of the GridNet experiments in the properties directory the champion fitness was identical for
+	 * at least the first two generations, after which the difference altered the course of evolution; the change in
+	 * final fitness was smaller than the variation between random seeds (see the documentation of
+	 * {@link com.ojcoleman.ahni.transcriber.HyperNEATTranscriberGridNet#SINGLE_PRECISION_KEY} in
+	 * test-pass-through-flip.properties for the measurements). The current weights are converted to the new precision;
+	 * the weights must be accessed via {@link #getWeightDataFloat(int)} while single-precision mode is enabled.
+	 */
+	public void setSinglePrecision(boolean singlePrecision) {
+		if (singlePrecision == (weightsFloat != null)) {
+			return;
+		}
+		if (singlePrecision) {
+			weightsFloat = new float[depth - 1][];
+			for (int tz = 1; tz < depth; tz++) {
+				double[] w = weights[tz - 1];
+				float[] f = new float[w.length];
+				for (int i = 0; i < w.length; i++) {
+					f[i] = (float) w[i];
+				}
+				weightsFloat[tz - 1] = f;
+			}
+			weights = null;
+		} else {
+			weights = new double[depth - 1][];
+			for (int tz = 1; tz < depth; tz++) {
+				float[] f = weightsFloat[tz - 1];
+				double[] w = new double[f.length];
+				for (int i = 0; i < f.length; i++) {
+					w[i] = f[i];
 				}
-				System.out.println();
+				weights[tz - 1] = w;
+			}
+			weightsFloat = null;
+		}
+		if (isSparse()) {
+			// Rebuild the sparse representation in the new precision.
+			setSparse(false);
+			setSparse(true);
+		}
+	}
+
+	/**
+	 * @return True iff single-precision mode is enabled, see {@link #setSinglePrecision(boolean)}.
+	 */
+	public boolean isSinglePrecision() {
+		return weightsFloat != null;
+	}
+
+	/**
+	 * Enable parallel update of the neurons in large layers. The rows of a layer are split amongst the threads of the
+	 * given pool, each row being computed exactly as in a sequential update, so the output does not depend on the
+	 * number of threads.
+	 *
+	 * @param pool The pool to use, or null to disable parallel update.
+	 * @param minNeurons The minimum number of neurons in a layer for the update of the layer to be split across
+	 *            threads.
+	 */
+	public void setParallel(ForkJoinPool pool, int minNeurons) {
+		parallelPool = pool;
+		parallelMinNeurons = minNeurons;
+	}
+
+	/**
+	 * Perform one activation step, consisting of cyclesPerStep steps, calculating new activation for all neurons. For
+	 * feed-forward networks use stepFF.
+	 */
+	public void step() {
+		// the activationNew and activation arrays are swapped every step, so set
+		// the first/input layer (which doesn't changes during stepping) of
+		// activationNew to the same input layer array
+		activationNew[0] = activation[0];
+
+		for (int cycle = 0; cycle < cyclesPerStep; cycle++) {
+			for (int tz = 1; tz < depth; tz++) { // first layer is input layer, don't update it
+				activateLayer(tz, activation, activationNew);
 			}
-			System.out.println();
-			System.out.println();
-			System.out.println();
 
 			double[][][] temp = activation;
 			activation = activationNew;
@@ -442,38 +771,144 @@ public class GridNet implements Activator {
 	 * activating each layer once in sequence (connections can only exist from layer n to layer n+1).
 	 */
 	public void stepFF() {
-		// for each target layer
-		for (int tz = 1, sz = 0; tz < depth; tz++, sz++) { // first layer is input layer, don't update it
-			for (int ty = 0; ty < height[tz]; ty++) {
-				for (int tx = 0; tx < width[tz]; tx++) {
-					// System.out.println(tz + "," + ty + "," + tx);
-
-					double[][] w = weights[tz - 1][ty][tx][0]; // weight matrix for connections from s{z,y,x} to
-																// t{z,y,x}
-					double sum = bias[tz - 1][ty][tx];
-
-					// for each source neuron for connections from zyx
-					// s{z,y,x} is an index into the activation matrix to the source neuron
-					// w{y,x} is an index into the weight matrix w for the connection from s{z,y,x} to t{z,y,x}
+		if (sparseStart != null) {
+			// the input layer may be replaced or modified externally, so take a flat copy of it each step
+			double[] input = layerValues[0];
+			for (int sy = 0; sy < height[0]; sy++) {
+				System.arraycopy(activation[0][sy], 0, input, sy * width[0], width[0]);
+			}
+		}
+		for (int tz = 1; tz < depth; tz++) { // first layer is input layer, don't update it
+			activateLayer(tz, activation, activation);
+		}
+	}
 
-					for (int wy = 0, sy = Math.max(0, ty + wy - connectionMaxRanges[tz - 1][1][0]); wy < w.length; wy++, sy++) {
+	/**
+	 * Calculate the new activation for the neurons in the given target layer, in parallel if enabled and the layer is
+	 * large enough.
+	 */
+	private void activateLayer(int tz, double[][][] in, double[][][] out) {
+		if (parallelPool != null && height[tz] > 1 && height[tz] * width[tz] >= parallelMinNeurons) {
+			int grain = Math.max(1, height[tz] / (parallelPool.getParallelism() * 4));
+			parallelPool.invoke(new RowTask(tz, in, out, 0, height[tz], grain));
+		} else {
+			activateRows(tz, in, out, 0, height[tz]);
+		}
+	}
 
-						for (int wx = 0, sx = Math.max(0, tx + wx - connectionMaxRanges[tz - 1][2][0]); wx < w[wy].length; wx++, sx++) {
+	/**
+	 * Calculate the new activation for the neurons in the rows [y0, y1) of the given target layer.
+	 *
+	 * @param in The activation values to read the source neuron values from.
+	 * @param out The activation values to write the new target neuron values to.
+	 */
+	private void activateRows(int tz, double[][][] in, double[][][] out, int y0, int y1) {
+		double[] b = bias[tz - 1];
+		int w = width[tz];
+
+		if (sparseStart != null) {
+			int[] start = sparseStart[tz - 1];
+			int[] source = sparseSource[tz - 1];
+			double[] sw = sparseWeight[tz - 1];
+			float[] swf = sparseWeightFloat[tz - 1];
+			double[] sourceValues = layerValues[tz - 1];
+			double[] targetValues = layerValues[tz];
+			for (int ty = y0; ty < y1; ty++) {
+				double[] outRow = out[tz][ty];
+				for (int tx = 0, t = ty * w; tx < w; tx++, t++) {
+					double sum = b[t];
+					if (sw != null) {
+						for (int i = start[t], end = start[t + 1]; i < end; i++) {
+							sum += sourceValues[source[i]] * sw[i];
+						}
+					} else {
+						for (int i = start[t], end = start[t + 1]; i < end; i++) {
+							sum += sourceValues[source[i]] * swf[i];
+						}
+					}
+					double v = activationFunction.apply(sum);
+					outRow[tx] = v;
+					targetValues[t] = v;
+				}
+			}
+			return;
+		}
 
-							// System.out.println("\tw: " + wz + "," + wy + "," + wx + "\tt: " + tz + "," + ty + "," +
-							// tx);
-							sum += activation[sz][sy][sx] * w[wy][wx];
+		double[] weightData = weights != null ? weights[tz - 1] : null;
+		float[] weightDataFloat = weightsFloat != null ? weightsFloat[tz - 1] : null;
+		int[] win = windows[tz - 1];
+		for (int ty = y0; ty < y1; ty++) {
+			double[] outRow = out[tz][ty];
+			for (int tx = 0, t = ty * w, d = t * WINDOW_SIZE; tx < w; tx++, t++, d += WINDOW_SIZE) {
+				double sum = b[t];
+				// for each source neuron s{z,y,x} in the window for t{z,y,x}, weights are consecutive in weightData
+				int i = win[d + WINDOW_OFFSET];
+				int sx0 = win[d + WINDOW_X];
+				int sxEnd = sx0 + win[d + WINDOW_DX];
+				int sy0 = win[d + WINDOW_Y];
+				int syEnd = sy0 + win[d + WINDOW_DY];
+				for (int sz = win[d + WINDOW_Z], szEnd = sz + win[d + WINDOW_DZ]; sz < szEnd; sz++) {
+					double[][] source = in[sz];
+					for (int sy = sy0; sy < syEnd; sy++) {
+						double[] sourceRow = source[sy];
+						if (weightData != null) {
+							for (int sx = sx0; sx < sxEnd; sx++) {
+								sum += sourceRow[sx] * weightData[i++];
+							}
+						} else {
+							for (int sx = sx0; sx < sxEnd; sx++) {
+								sum += sourceRow[sx] * weightDataFloat[i++];
+							}
 						}
 					}
-					activation[tz][ty][tx] = activationFunction.apply(sum);
+				}
+				outRow[tx] = activationFunction.apply(sum);
+			}
+		}
+	}
+
+	/**
+	 * Calculates the new activation for a range of rows of a layer, see {@link GridNet#setParallel(ForkJoinPool, int)}.
+	 * The range is split in half until it contains at most grain rows.
+	 */
+	private class RowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int tz;
+		private final double[][][] in, out;
+		private final int start;
+		private int end;
+		private final int grain;
+
+		RowTask(int tz, double[][][] in, double[][][] out, int start, int end, int grain) {
+			this.tz = tz;
+			this.in = in;
+			this.out = out;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<RowTask> forked = null;
+			while (end - start > grain) {
+				int mid = (start + end) >>> 1;
+				RowTask right = new RowTask(tz, in, out, mid, end, grain);
+				right.fork();
+				if (forked == null) {
+					forked = new ArrayList<RowTask>();
+				}
+				forked.add(right);
+				end = mid;
+			}
 
-					// System.out.println();
+			activateRows(tz, in, out, start, end);
 
-					// System.out.print("\t" + activation[tz][ty][tx]);
+			if (forked != null) {
+				for (int i = forked.size() - 1; i >= 0; i--) {
+					forked.get(i).join();
 				}
-				// System.out.println();
 			}
-			// System.out.println();
 		}
 	}
 
@@ -511,6 +946,14 @@ public class GridNet implements Activator {
 		return activation[depth - 1][0];
 	}
 
+	/**
+	 * @param stimuli first row of input layer, see {@link #next(double[])}.
+	 * @param output array to copy the first row of the output layer into.
+	 */
+	public void next(double[] stimuli, double[] output) {
+		System.arraycopy(next(stimuli), 0, output, 0, width[depth - 1]);
+	}
+
 	/**
 	 * @param stimuli sequence of first row of input layer. The stimuli arrays are copied by reference, replacing the
 	 *            original first layer array. Changes to the last stimuli array after this call outside of this network
@@ -519,15 +962,18 @@ public class GridNet implements Activator {
 	 */
 	public double[][] nextSequence(double[][] stimuli) {
 		double[][] response = new double[stimuli.length][width[depth - 1]];
+		nextSequence(stimuli, response);
+		return response;
+	}
+
+	/**
+	 * @param stimuli sequence of first row of input layer, see {@link #nextSequence(double[][])}.
+	 * @param output arrays to copy the sequence of first row of output values into.
+	 */
+	public void nextSequence(double[][] stimuli, double[][] output) {
 		for (int seq = 0; seq < stimuli.length; seq++) {
-			activation[0][0] = stimuli[seq];
-			if (isFeedForward)
-				stepFF();
-			else
-				step();
-			System.arraycopy(activation[depth - 1][0], 0, response[seq], 0, width[depth - 1]);
+			next(stimuli[seq], output[seq]);
 		}
-		return response;
 	}
 
 	/**
@@ -545,6 +991,17 @@ public class GridNet implements Activator {
 		return getOutputs();
 	}
 
+	/**
+	 * @param stimuli input layer, see {@link #next(double[][])}.
+	 * @param output array to copy the output layer values into.
+	 */
+	public void next(double[][] stimuli, double[][] output) {
+		double[][] outputLayer = next(stimuli);
+		for (int y = 0; y < height[depth - 1]; y++) {
+			System.arraycopy(outputLayer[y], 0, output[y], 0, width[depth - 1]);
+		}
+	}
+
 	/**
 	 * @param stimuli sequence of input layer values. The stimuli arrays are copied by reference, replacing the original
 	 *            first layer array. Changes to the last stimuli array after this call outside of this network will be
@@ -554,19 +1011,18 @@ public class GridNet implements Activator {
 	 */
 	public double[][][] nextSequence(double[][][] stimuli) {
 		double[][][] response = new double[stimuli.length][height[depth - 1]][width[depth - 1]];
+		nextSequence(stimuli, response);
+		return response;
+	}
+
+	/**
+	 * @param stimuli sequence of input layer values, see {@link #nextSequence(double[][][])}.
+	 * @param output arrays to copy the sequence of output values into.
+	 */
+	public void nextSequence(double[][][] stimuli, double[][][] output) {
 		for (int seq = 0; seq < stimuli.length; seq++) {
-			activation[0] = stimuli[seq];
-			if (isFeedForward)
-				stepFF();
-			else
-				step();
-			for (int y = 0; y < height[depth - 1]; y++) {
-				for (int x = 0; x < width[depth - 1]; x++) {
-					response[seq][y][x] = activation[depth - 1][y][x];
-				}
-			}
+			next(stimuli[seq], output[seq]);
 		}
-		return response;
 	}
 
 	/**
@@ -662,18 +1118,18 @@ public class GridNet implements Activator {
 				for (int tx = 0; tx < width[tz]; tx++) {
 					output += "t " + tz + "," + ty + "," + tx + "\n";
 
-					double[][] w = weights[tz - 1][ty][tx][0]; // weight matrix for connections from s{z,y,x} to
-																// t{z,y,x}
+					int d = (ty * width[tz] + tx) * WINDOW_SIZE;
+					int[] win = windows[tz - 1];
 
-					// for each source neuron for connections from zyx
-					// s{z,y,x} is an index into the activation matrix to the source neuron
-					// w{y,x} is an index into the weight matrix w for the connection from s{z,y,x} to t{z,y,x}
+					// for each source neuron for connections from zyx (in the first source layer of the window)
+					// s{y,x} is the coordinate of the source neuron
+					// i is the index into the weights array for the connection from s{z,y,x} to t{z,y,x}
 
-					for (int wy = 0, sy = Math.max(0, ty + wy - connectionMaxRanges[tz - 1][1][0]); wy < w.length; wy++, sy++) {
+					for (int sy = win[d + WINDOW_Y], i = win[d + WINDOW_OFFSET]; sy < win[d + WINDOW_Y] + win[d + WINDOW_DY]; sy++) {
 
-						for (int wx = 0, sx = Math.max(0, tx + wx - connectionMaxRanges[tz - 1][2][0]); wx < w[wy].length; wx++, sx++) {
+						for (int sx = win[d + WINDOW_X]; sx < win[d + WINDOW_X] + win[d + WINDOW_DX]; sx++, i++) {
 
-							output += "\t" + (int) (100 * w[wy][wx]) + (sy == ty && sx == tx ? "*" : "");
+							output += "\t" + (int) (100 * getWeightAt(tz, i)) + (sy == ty && sx == tx ? "*" : "");
 						}
 						output += "\n";
 					}
@@ -694,11 +1150,7 @@ public class GridNet implements Activator {
 	public int getConnectionCount(boolean includeBias) {
 		int connectionCount = 0;
 		for (int tz = 1; tz < depth; tz++) {
-			for (int ty = 0; ty < height[tz]; ty++)
-				for (int tx = 0; tx < width[tz]; tx++)
-					for (int sz = 0; sz < weights[tz - 1][ty][tx].length; sz++)
-						for (int sy = 0; sy < weights[tz - 1][ty][tx][sz].length; sy++)
-							connectionCount += weights[tz - 1][ty][tx][sz][sy].length;
+			connectionCount += getWeightCount(tz);
 			if (includeBias)
 				connectionCount += height[tz] * width[tz];
 		}
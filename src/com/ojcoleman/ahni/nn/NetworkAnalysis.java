@@ -0,0 +1,303 @@
+package com.ojcoleman.ahni.nn;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Analyses the connectivity of a neural network given as a list of synapses (pre and post neuron indices). The neurons
+ * are assumed to be ordered with the input neurons first and the output neurons last, as in a {@link BainNN}. The
+ * analysis is performed once, in time linear in the number of neurons and synapses, and determines:
+ * <ul>
+ * <li>which neurons are reachable from an input neuron;</li>
+ * <li>which neurons can reach (influence) an output neuron;</li>
+ * <li>the strongly connected components of the network, and from these whether the network contains any cycles that
+ * can influence the output;</li>
+ * <li>for networks without such cycles, the length of the longest path from an input neuron to an output neuron.</li>
+ * </ul>
+ * </p>
+ * <p>
+ * A hidden neuron that can not reach an output neuron, and any synapse whose post neuron can not reach an output
+ * neuron, have no effect on the output of the network and may be removed, see {@link #isNeuronLive(int)} and
+ * {@link #isSynapseLive(int)}. Note that a neuron that is not reachable from any input may still influence the output
+ * (for example via its bias), so it is not considered dead.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class NetworkAnalysis {
+	private final int neuronCount, inputCount, outputIndex;
+	private final int[] pre, post;
+	private final boolean[] synapseEnabled;
+	private final boolean[] reachableFromInput;
+	private final boolean[] reachesOutput;
+	private final int[] component;
+	private int componentCount;
+	private boolean recurrent;
+	private int depth;
+	private int liveNeuronCount, liveSynapseCount;
+
+	/**
+	 * Analyse the given network.
+	 *
+	 * @param neuronCount The number of neurons in the network.
+	 * @param inputCount The number of input neurons, these are the first inputCount neurons.
+	 * @param outputCount The number of output neurons, these are the last outputCount neurons.
+	 * @param pre The index of the pre (source) neuron for each synapse.
+	 * @param post The index of the post (target) neuron for each synapse.
+	 * @param synapseCount The number of synapses, only the first synapseCount elements of pre and post are used.
+	 * @param efficacies If not null then synapses with an efficacy of zero are treated as absent.
+	 */
+	public NetworkAnalysis(int neuronCount, int inputCount, int outputCount, int[] pre, int[] post, int synapseCount, double[] efficacies) {
+		this.neuronCount = neuronCount;
+		this.inputCount = inputCount;
+		this.pre = pre;
+		this.post = post;
+		outputIndex = neuronCount - outputCount;
+
+		synapseEnabled = new boolean[synapseCount];
+		for (int s = 0; s < synapseCount; s++) {
+			synapseEnabled[s] = efficacies == null || efficacies[s] != 0;
+		}
+
+		// Build forward and reverse adjacency lists in compressed form with a counting sort.
+		int[] outStart = new int[neuronCount + 1];
+		int[] inStart = new int[neuronCount + 1];
+		for (int s = 0; s < synapseCount; s++) {
+			if (synapseEnabled[s]) {
+				outStart[pre[s] + 1]++;
+				inStart[post[s] + 1]++;
+			}
+		}
+		for (int n = 0; n < neuronCount; n++) {
+			outStart[n + 1] += outStart[n];
+			inStart[n + 1] += inStart[n];
+		}
+		int edgeCount = outStart[neuronCount];
+		int[] outTarget = new int[edgeCount];
+		int[] inSource = new int[edgeCount];
+		int[] outPos = Arrays.copyOf(outStart, neuronCount);
+		int[] inPos = Arrays.copyOf(inStart, neuronCount);
+		for (int s = 0; s < synapseCount; s++) {
+			if (synapseEnabled[s]) {
+				outTarget[outPos[pre[s]]++] = post[s];
+				inSource[inPos[post[s]]++] = pre[s];
+			}
+		}
+
+		int[] queue = new int[neuronCount];
+		reachableFromInput = new boolean[neuronCount];
+		search(0, inputCount, outStart, outTarget, reachableFromInput, queue);
+		reachesOutput = new boolean[neuronCount];
+		search(outputIndex, neuronCount, inStart, inSource, reachesOutput, queue);
+
+		component = new int[neuronCount];
+		int[] order = findComponents(outStart, outTarget);
+
+		// The network is recurrent if a synapse connects two neurons in the same component (including a neuron to
+		// itself) and the cycle this synapse belongs to can influence the output.
+		recurrent = false;
+		for (int n = 0; n < neuronCount && !recurrent; n++) {
+			if (reachesOutput[n]) {
+				for (int e = outStart[n]; e < outStart[n + 1]; e++) {
+					if (component[outTarget[e]] == component[n]) {
+						recurrent = true;
+						break;
+					}
+				}
+			}
+		}
+
+		// Determine the longest path from an input to an output. The components are found in reverse topological
+		// order, and if the network is not recurrent then every neuron that can reach an output is in its own
+		// component.
+		depth = -1;
+		if (!recurrent) {
+			int[] dist = new int[neuronCount];
+			Arrays.fill(dist, -1);
+			Arrays.fill(dist, 0, inputCount, 0);
+			for (int i = neuronCount - 1; i >= 0; i--) {
+				int n = order[i];
+				if (dist[n] == -1 || !reachesOutput[n])
+					continue;
+				for (int e = outStart[n]; e < outStart[n + 1]; e++) {
+					int t = outTarget[e];
+					if (dist[t] < dist[n] + 1) {
+						dist[t] = dist[n] + 1;
+					}
+				}
+			}
+			depth = 0;
+			for (int n = outputIndex; n < neuronCount; n++) {
+				depth = Math.max(depth, dist[n]);
+			}
+		}
+
+		liveNeuronCount = 0;
+		for (int n = 0; n < neuronCount; n++) {
+			if (isNeuronLive(n))
+				liveNeuronCount++;
+		}
+		liveSynapseCount = 0;
+		for (int s = 0; s < synapseCount; s++) {
+			if (isSynapseLive(s))
+				liveSynapseCount++;
+		}
+	}
+
+	/**
+	 * Breadth-first search from the neurons in the range [start, end), marking all neurons reached.
+	 */
+	private void search(int start, int end, int[] edgeStart, int[] edgeTarget, boolean[] reached, int[] queue) {
+		int head = 0, tail = 0;
+		for (int n = start; n < end; n++) {
+			reached[n] = true;
+			queue[tail++] = n;
+		}
+		while (head < tail) {
+			int n = queue[head++];
+			for (int e = edgeStart[n]; e < edgeStart[n + 1]; e++) {
+				int t = edgeTarget[e];
+				if (!reached[t]) {
+					reached[t] = true;
+					queue[tail++] = t;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tarjan's strongly connected components algorithm, implemented iteratively so that deep networks do not overflow
+	 * the call stack. Sets the component for each neuron and returns the neurons in the order their component was
+	 * completed, which is a reverse topological order of the components.
+	 */
+	private int[] findComponents(int[] edgeStart, int[] edgeTarget) {
+		int[] index = new int[neuronCount];
+		int[] low = new int[neuronCount];
+		boolean[] onStack = new boolean[neuronCount];
+		int[] stack = new int[neuronCount];
+		int[] callStack = new int[neuronCount];
+		int[] edgePos = new int[neuronCount];
+		int[] order = new int[neuronCount];
+		Arrays.fill(index, -1);
+		int nextIndex = 0, stackSize = 0, orderSize = 0;
+		componentCount = 0;
+
+		for (int root = 0; root < neuronCount; root++) {
+			if (index[root] != -1)
+				continue;
+			int callSize = 0;
+			callStack[callSize++] = root;
+			index[root] = low[root] = nextIndex++;
+			edgePos[root] = edgeStart[root];
+			stack[stackSize++] = root;
+			onStack[root] = true;
+
+			while (callSize > 0) {
+				int n = callStack[callSize - 1];
+				if (edgePos[n] < edgeStart[n + 1]) {
+					int t = edgeTarget[edgePos[n]++];
+					if (index[t] == -1) {
+						index[t] = low[t] = nextIndex++;
+						edgePos[t] = edgeStart[t];
+						stack[stackSize++] = t;
+						onStack[t] = true;
+						callStack[callSize++] = t;
+					} else if (onStack[t] && index[t] < low[n]) {
+						low[n] = index[t];
+					}
+				} else {
+					callSize--;
+					if (low[n] == index[n]) {
+						int m;
+						do {
+							m = stack[--stackSize];
+							onStack[m] = false;
+							component[m] = componentCount;
+							order[orderSize++] = m;
+						} while (m != n);
+						componentCount++;
+					}
+					if (callSize > 0) {
+						int parent = callStack[callSize - 1];
+						if (low[n] < low[parent]) {
+							low[parent] = low[n];
+						}
+					}
+				}
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * @return true iff the given neuron is reachable from an input neuron (input neurons are always reachable).
+	 */
+	public boolean isReachableFromInput(int neuron) {
+		return reachableFromInput[neuron];
+	}
+
+	/**
+	 * @return true iff the given neuron can influence an output neuron (output neurons always can).
+	 */
+	public boolean reachesOutput(int neuron) {
+		return reachesOutput[neuron];
+	}
+
+	/**
+	 * @return true iff the given neuron is an input or output neuron or can influence an output neuron.
+	 */
+	public boolean isNeuronLive(int neuron) {
+		return neuron < inputCount || reachesOutput[neuron];
+	}
+
+	/**
+	 * @return true iff the given synapse is present and its post neuron can influence an output neuron.
+	 */
+	public boolean isSynapseLive(int synapse) {
+		return synapseEnabled[synapse] && reachesOutput[post[synapse]];
+	}
+
+	/**
+	 * @return The number of neurons for which {@link #isNeuronLive(int)} is true.
+	 */
+	public int getLiveNeuronCount() {
+		return liveNeuronCount;
+	}
+
+	/**
+	 * @return The number of synapses for which {@link #isSynapseLive(int)} is true.
+	 */
+	public int getLiveSynapseCount() {
+		return liveSynapseCount;
+	}
+
+	/**
+	 * @return The index of the strongly connected component the given neuron belongs to.
+	 */
+	public int getComponent(int neuron) {
+		return component[neuron];
+	}
+
+	/**
+	 * @return The number of strongly connected components in the network.
+	 */
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	/**
+	 * @return true iff the network contains a cycle (including a synapse from a neuron to itself) that can influence
+	 *         an output neuron.
+	 */
+	public boolean isRecurrent() {
+		return recurrent;
+	}
+
+	/**
+	 * @return The number of synapses in the longest path from an input neuron to an output neuron, 0 if there is no
+	 *         such path, or -1 if the network is recurrent (see {@link #isRecurrent()}).
+	 */
+	public int getDepth() {
+		return depth;
+	}
+}
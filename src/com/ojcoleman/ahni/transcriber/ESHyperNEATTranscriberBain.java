@@ -2,15 +2,15 @@ package com.ojcoleman.ahni.transcriber;
 
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 import java.lang.Math;
 import javax.imageio.ImageIO;
 
@@ -30,6 +30,7 @@ import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.event.*;
 import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
 import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.nn.BainExecutionModeSelector;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.NNAdaptor;
 import com.ojcoleman.ahni.transcriber.HyperNEATTranscriber.CPPN;
@@ -62,6 +63,21 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	public static final String ES_HYPERNEAT_INPUT_POSITIONS = "ann.eshyperneat.input.positions";
 	public static final String ES_HYPERNEAT_OUTPUT_POSITIONS = "ann.eshyperneat.output.positions";
 	public static final String ES_HYPERNEAT_RECORD_COORDINATES = "ann.eshyperneat.record.coordinates";
+	/**
+	 * The number of threads used to explore the quadtrees of the seed neurons (inputs, hidden neurons discovered in
+	 * each iteration, and outputs) when generating a single substrate. Each thread uses its own copy of the CPPN and
+	 * its own reusable storage for quadtree points. The resulting substrate does not depend on the number of threads.
+	 * Default is 1 (disabled).
+	 */
+	public static final String ES_HYPERNEAT_PARALLEL_THREADS = "ann.eshyperneat.parallel.threads";
+	/**
+	 * The maximum number of CPPN results to memoise per thread when generating a substrate. The same source and target
+	 * coordinate pairs are queried repeatedly when exploring quadtrees and determining if points are in bands, and
+	 * when hidden neurons are explored more than once. Results are keyed by the source and target coordinates quantised
+	 * to a resolution of 2^-32. The table is cleared for each genome, or when it becomes full. The hit rate is logged
+	 * for each generation. Default is 0 (disabled).
+	 */
+	public static final String ES_HYPERNEAT_MEMO_SIZE = "ann.eshyperneat.memo.size";
 	
 	/**
 	 * If true then the substrate is considered as occupying a 3D space, with the 
@@ -86,6 +102,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	double runningAvgHiddenNeuronCount = 16;
 	double runningAvgSynapseCount = 160;
 	int maxQuadTreeSize = 1;
+	int memoSize = 0;
 	
 	int maxNeuronCount = 0;
 	int maxSynapseCount = 0;
@@ -93,6 +110,19 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	int avgSynapseCount = 0;
 	int noPathFromInputToOutputCount = 0;
 	int popSize = 0;
+	AtomicLong memoQueryCount = new AtomicLong();
+	AtomicLong memoHitCount = new AtomicLong();
+
+	private ForkJoinPool parallelPool;
+	/**
+	 * Reusable storage for quadtree exploration, one per thread.
+	 */
+	private final ThreadLocal<QuadTreeArena> arenas = new ThreadLocal<QuadTreeArena>() {
+		@Override
+		protected QuadTreeArena initialValue() {
+			return new QuadTreeArena();
+		}
+	};
 
 	public ESHyperNEATTranscriberBain() {
 	}
@@ -196,6 +226,22 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		
 		maxQuadTreeSize = (int) Math.pow(4, maxDepth+0.25);
 		
+		memoSize = props.getIntProperty(ES_HYPERNEAT_MEMO_SIZE, 0);
+		
+		int parallelThreads = props.getIntProperty(ES_HYPERNEAT_PARALLEL_THREADS, 1);
+		if (parallelThreads > 1) {
+			parallelPool = new ForkJoinPool(parallelThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+					t.setName("ES-HyperNEAT explorer " + t.getPoolIndex());
+					t.setDaemon(true);
+					return t;
+				}
+			}, null, false);
+			logger.info("Quadtrees will be explored in parallel with " + parallelThreads + " threads.");
+		}
+		
 		((Properties) props).getEvolver().addEventListener(this);
 	}
 
@@ -292,83 +338,70 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		}
 		
 		// Use a hash map to be able to quickly find if a node already exists at a given location.
-		Map<Neuron, Neuron> hiddenNeurons = new HashMap<Neuron, Neuron>((int) runningAvgHiddenNeuronCount);
+		HiddenNeuronMap hiddenNeuronMap = new HiddenNeuronMap((int) runningAvgHiddenNeuronCount);
 		List<Connection> connections = new ArrayList<Connection>((int) runningAvgSynapseCount);
-		List<TempConnection> tempConnections = new ArrayList<TempConnection>((int) runningAvgSynapseCount);
 		
-		// This list is passed to the quadTreeInitialisation and pruneAndExpress methods to be reused for performance reasons.
-		double[] tempStorageForCPPNValues = new double[maxQuadTreeSize];
+		// The batch used to query the CPPN for all the points in a level of a quadtree at once.
+		CPPN.Batch batch = cppn.createBatch(maxQuadTreeSize);
+		// Identifies this transcription so that worker threads can reuse their copy of the CPPN for it.
+		Object transcriptionToken = new Object();
 		
 		// Generate connections from input nodes.
-		for (Neuron input : inputNeuronPositionsCopy) {
-			// Analyse outgoing connectivity pattern from this input.		
-			QuadPoint root = quadTreeInitialisation(cppn, input, true, tempStorageForCPPNValues);
-			
-			// Traverse quad tree and retrieve connections.
-			tempConnections.clear();
-			pruneAndExpress(cppn, input, tempConnections, root, true, tempStorageForCPPNValues);
-			
-			for (TempConnection tempCon : tempConnections) {
-				Neuron newHidden = new Neuron(tempCon.targetPoint.x, tempCon.targetPoint.y, tempCon.targetPoint.z, Neuron.HIDDEN);
-				if (hiddenNeurons.containsKey(newHidden)) {
-					newHidden = hiddenNeurons.get(newHidden);
-				} else {
-					hiddenNeurons.put(newHidden, newHidden);
-				}
-				double weight = tempCon.weight < 0 ? tempCon.weight * connectionWeightMin : tempCon.weight * connectionWeightMax;
+		// Analyse outgoing connectivity pattern from each input.
+		double[][] found = explore(genotype, transcriptionToken, cppn, batch, inputNeuronPositionsCopy, true);
+		for (int ni = 0; ni < inputCount; ni++) {
+			Neuron input = inputNeuronPositionsCopy.get(ni);
+			double[] points = found[ni];
+			for (int pi = 0; pi < points.length; pi += 4) {
+				Neuron newHidden = hiddenNeuronMap.getOrAdd(points[pi], points[pi + 1], points[pi + 2]);
+				double weight = points[pi + 3] < 0 ? points[pi + 3] * connectionWeightMin : points[pi + 3] * connectionWeightMax;
 				connections.add(new Connection(input, newHidden, weight));
 			}
 		}
-		tempConnections.clear();
 		
 		// Iteratively search for hidden nodes from those already found.
-		Map<Neuron, Neuron> unexploredHiddenNodes = new HashMap<Neuron, Neuron>(hiddenNeurons); // Use a hash map to quickly be able to find and remove a node.
+		List<Neuron> unexploredHiddenNodes = new ArrayList<Neuron>(hiddenNeuronMap.getNeurons());
 		for (int step = 0; step < esIterations; step++) {
-			for (Neuron hiddenNeuron : unexploredHiddenNodes.values()) {
-				// Analyse outgoing connectivity pattern from hidden neuron.
-				QuadPoint root = quadTreeInitialisation(cppn, hiddenNeuron, true, tempStorageForCPPNValues);
-				
-				// Traverse quad tree and retrieve connections.
-				tempConnections.clear();
-				pruneAndExpress(cppn, hiddenNeuron, tempConnections, root, true, tempStorageForCPPNValues);
-				
-				for (TempConnection tempCon : tempConnections) {
-					Neuron newHidden = new Neuron(tempCon.targetPoint.x, tempCon.targetPoint.y, tempCon.targetPoint.z, Neuron.HIDDEN);
-					if (hiddenNeurons.containsKey(newHidden)) {
-						newHidden = hiddenNeurons.get(newHidden);
-					} else {
-						hiddenNeurons.put(newHidden, newHidden);
-					}
-					double weight = tempCon.weight < 0 ? tempCon.weight * connectionWeightMin : tempCon.weight * connectionWeightMax;
+			// Analyse outgoing connectivity pattern from each hidden neuron.
+			found = explore(genotype, transcriptionToken, cppn, batch, unexploredHiddenNodes, true);
+			for (int ni = 0; ni < unexploredHiddenNodes.size(); ni++) {
+				Neuron hiddenNeuron = unexploredHiddenNodes.get(ni);
+				double[] points = found[ni];
+				for (int pi = 0; pi < points.length; pi += 4) {
+					Neuron newHidden = hiddenNeuronMap.getOrAdd(points[pi], points[pi + 1], points[pi + 2]);
+					double weight = points[pi + 3] < 0 ? points[pi + 3] * connectionWeightMin : points[pi + 3] * connectionWeightMax;
 					connections.add(new Connection(hiddenNeuron, newHidden, weight));
 				}
 			}
 			// Remove the just explored nodes.
-			Map<Neuron, Neuron> temp = new HashMap<Neuron, Neuron>(hiddenNeurons);
-			for (Neuron f : unexploredHiddenNodes.values())
-				temp.remove(f);
-
+			for (Neuron f : unexploredHiddenNodes)
+				f.explored = true;
+			List<Neuron> temp = new ArrayList<Neuron>();
+			for (Neuron h : hiddenNeuronMap.getNeurons()) {
+				if (!h.explored)
+					temp.add(h);
+				h.explored = false;
+			}
 			unexploredHiddenNodes = temp;
 		}
-		tempConnections.clear();
 		
 		// Connect discovered hidden neurons to output neurons.
-		for (Neuron outputPos : outputNeuronPositionsCopy) {
-			// Analyse incoming connectivity pattern to this output
-			QuadPoint root = quadTreeInitialisation(cppn, outputPos, false, tempStorageForCPPNValues);
-			tempConnections.clear();
-			pruneAndExpress(cppn, outputPos, tempConnections, root, false, tempStorageForCPPNValues);
-
-			for (TempConnection tempCon : tempConnections) {
-				Neuron source = new Neuron(tempCon.sourcePoint.x, tempCon.sourcePoint.y, tempCon.sourcePoint.z, Neuron.HIDDEN);
+		// Analyse incoming connectivity pattern to each output.
+		found = explore(genotype, transcriptionToken, cppn, batch, outputNeuronPositionsCopy, false);
+		for (int ni = 0; ni < outputCount; ni++) {
+			Neuron outputPos = outputNeuronPositionsCopy.get(ni);
+			double[] points = found[ni];
+			for (int pi = 0; pi < points.length; pi += 4) {
 				// New nodes not created here because all the hidden nodes that are connected to an input/hidden node
 				// are already expressed.
-				if (hiddenNeurons.containsKey(source)) { // only connect if hidden neuron already exists
-					double weight = tempCon.weight < 0 ? tempCon.weight * connectionWeightMin : tempCon.weight * connectionWeightMax;
-					connections.add(new Connection(hiddenNeurons.get(source), outputPos, weight));
+				Neuron source = hiddenNeuronMap.get(points[pi], points[pi + 1], points[pi + 2]);
+				if (source != null) { // only connect if hidden neuron already exists
+					double weight = points[pi + 3] < 0 ? points[pi + 3] * connectionWeightMin : points[pi + 3] * connectionWeightMax;
+					connections.add(new Connection(source, outputPos, weight));
 				}
 			}
 		}
+		List<Neuron> hiddenNeurons = new ArrayList<Neuron>(hiddenNeuronMap.getNeurons());
 		runningAvgHiddenNeuronCount = runningAvgHiddenNeuronCount * 0.9 + hiddenNeurons.size() * 0.1;
 		runningAvgSynapseCount = runningAvgSynapseCount * 0.9 + connections.size() * 0.1;
 		
@@ -378,7 +411,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		boolean removedAllDeadEnds = false;
 		while (!removedAllDeadEnds) {
 			// Reset marker for each hidden neuron.
-			for (Neuron hidden : hiddenNeurons.values()) {
+			for (Neuron hidden : hiddenNeurons) {
 				hidden.hasOutgoingConnection = false;
 			}
 			// Mark the source neuron for each connection as having an outgoing connection.
@@ -387,13 +420,15 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			}
 			removedAllDeadEnds = true;
 			// Remove hidden neurons with no outgoing connections.
-			Iterator<Neuron> hiddenNeuronsIterator = hiddenNeurons.values().iterator();
-			while (hiddenNeuronsIterator.hasNext()) {
-				if (!hiddenNeuronsIterator.next().hasOutgoingConnection) {
-					hiddenNeuronsIterator.remove();
+			int kept = 0;
+			for (Neuron hidden : hiddenNeurons) {
+				if (hidden.hasOutgoingConnection) {
+					hiddenNeurons.set(kept++, hidden);
+				} else {
 					removedAllDeadEnds = false; // We might need to do another iteration to remove dead-end chains.
 				}
 			}
+			hiddenNeurons.subList(kept, hiddenNeurons.size()).clear();
 		}
 		
 		int hiddenCount = hiddenNeurons.size();
@@ -472,7 +507,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			setNeuronParameters(point, neurons, indexInBainNN, cppn, true);
 			indexInBainNN++;
 		}
-		for (Neuron point : hiddenNeurons.values()) {
+		for (Neuron point : hiddenNeurons) {
 			point.indexInBainNN = indexInBainNN;
 			setNeuronParameters(point, neurons, indexInBainNN, cppn, true);
 			indexInBainNN++;
@@ -492,18 +527,29 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			assert (c.target.indexInBainNN < neuronCount);
 			synapses.setPreAndPostNeurons(ci, c.source.indexInBainNN, c.target.indexInBainNN);
 			synapseWeights[ci] = c.weight;
-			if (synapseParamsEnabled || synapseTypesEnabled) {
-				cppn.query(c.source, c.target);
-				setSynapseParameters(synapses, ci, cppn, false, true);
-			}
 			ci++;
 		}
 		assert (ci == synapseCount);
+		if (synapseParamsEnabled || synapseTypesEnabled) {
+			// Query the CPPN for the synapse parameters in batches.
+			for (int start = 0; start < synapseCount; start += batch.capacity()) {
+				int end = Math.min(start + batch.capacity(), synapseCount);
+				batch.clear();
+				for (ci = start; ci < end; ci++) {
+					Connection c = connections.get(ci);
+					batch.add(c.source, c.target);
+				}
+				cppn.query(batch);
+				for (ci = start; ci < end; ci++) {
+					batch.select(ci - start);
+					setSynapseParameters(synapses, ci, cppn, false, true);
+				}
+			}
+		}
 		synapses.setEfficaciesModified();
 
 		int simRes = properties.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
-		String execModeName = properties.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
+		Kernel.EXECUTION_MODE execMode = BainExecutionModeSelector.getExecutionMode(properties, neurons.getSize(), synapses.getSize());
 		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
 		int[] inputDims = new int[] { inputCount, 1 };
 		int[] outputDims = new int[] { outputCount, 1 };
@@ -513,6 +559,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			if (feedForward && network.getTopology().equals(BainNN.Topology.RECURRENT)) {
 				return null;
 			}
+			network.setConvergence(convergenceEpsilon, cycleStatistics);
 			if (properties.getBooleanProperty(ES_HYPERNEAT_RECORD_COORDINATES, false)) {
 				network.enableCoords();
 				int neuronIndex = 0;
@@ -521,7 +568,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 						network.setCoords(neuronIndex, point.x, point.z, point.y);
 						neuronIndex++;
 					}
-					for (Neuron point : hiddenNeurons.values()) {
+					for (Neuron point : hiddenNeurons) {
 						network.setCoords(neuronIndex, point.x, point.z, point.y);
 						neuronIndex++;
 					}
@@ -535,7 +582,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 						network.setCoords(neuronIndex, point.x, point.y);
 						neuronIndex++;
 					}
-					for (Neuron point : hiddenNeurons.values()) {
+					for (Neuron point : hiddenNeurons) {
 						network.setCoords(neuronIndex, point.x, point.y);
 						neuronIndex++;
 					}
@@ -570,6 +617,7 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 		public int type;
 		public int indexInBainNN;
 		public boolean hasOutgoingConnection;
+		public boolean explored;
 		public List<Neuron> targets = new ArrayList<Neuron>();
 
 		public Neuron(double x, double y, double z, int type) {
@@ -591,6 +639,18 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			this.level = level;
 			children = new QuadPoint[4];
 		}
+
+		/**
+		 * Reinitialise this QuadPoint so that it may be reused.
+		 */
+		public void set(double x, double y, double z, double width, int level) {
+			setCoordinates(x, y, z);
+			this.width = width;
+			this.level = level;
+			cppnValue = 0;
+			leo = false;
+			children[0] = children[1] = children[2] = children[3] = null;
+		}
 		
 		public String toString() {
 			return super.toString() + ": " + (float) cppnValue;
@@ -680,15 +740,19 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	 * with arguments (a, b, x, y) and the resulting connection weight value w is stored.
 	 * 
 	 * @param cppn The CPPN to use.
+	 * @param batch The batch to use to query the CPPN for each level of the quadtree. Must have a capacity of at least 4^maxDepth.
 	 * @param n The source or target neuron position.
 	 * @param outgoing Specifies whether the connection is for a source (outgoing = true) or target node (outgoing = false).
-	 * @param tempStorageForCPPNValues A list store the CPPN value for each node in the quadtree. Allows reuse of same list for performance reasons.
+	 * @param arena The storage to allocate QuadPoints from. The QuadPoints remain valid until the arena is reset.
 	 * @return The root of the generated quadtree, each QuadPoint stores CPPN activation level for its position.
 	 */
-	public QuadPoint quadTreeInitialisation(CPPN cppn, Point n, boolean outgoing, double[] tempStorageForCPPNValues) {
-		QuadPoint root = new QuadPoint(0.5, 0.5, 0.5, 1, 1); // x, y, z, width, level
-		ArrayDeque<QuadPoint> queue = new ArrayDeque<QuadPoint>(maxQuadTreeSize);
-		queue.add(root);
+	public QuadPoint quadTreeInitialisation(CPPN cppn, CPPN.Batch batch, Point n, boolean outgoing, QuadTreeArena arena) {
+		QuadPoint root = arena.newQuadPoint(0.5, 0.5, 0.5, 1, 1); // x, y, z, width, level
+		// The tree is built a level at a time so that the CPPN can be queried for all the points in a level in one batch.
+		ArrayList<QuadPoint> level = arena.level;
+		ArrayList<QuadPoint> nextLevel = arena.nextLevel;
+		level.clear();
+		level.add(root);
 
 		//DecimalFormat nf1 = new DecimalFormat("###0.0##");
 		/*BufferedImage image = null;
@@ -700,60 +764,73 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			g = image.createGraphics();
 		}*/
 		
-		while (!queue.isEmpty()) {
-			QuadPoint parent = queue.removeFirst();
-
-			// Divide into sub-regions and assign children to parent.
-			int childLevel = parent.level+1;
-			double childWidth = parent.width * 0.5;
-			double offset = childWidth * 0.5;
-			if (pseudo3D ) {
-				// Hidden nodes located on XZ plane at y = 0.5.
-				parent.children[0] = new QuadPoint(parent.x - offset, 0.5, parent.z - offset, childWidth, childLevel);
-				parent.children[1] = new QuadPoint(parent.x - offset, 0.5, parent.z + offset, childWidth, childLevel);
-				parent.children[2] = new QuadPoint(parent.x + offset, 0.5, parent.z - offset, childWidth, childLevel);
-				parent.children[3] = new QuadPoint(parent.x + offset, 0.5, parent.z + offset, childWidth, childLevel);
-			}
-			else {
-				// Hidden nodes located on XY plane.
-				parent.children[0] = new QuadPoint(parent.x - offset, parent.y - offset, 0, childWidth, childLevel);
-				parent.children[1] = new QuadPoint(parent.x - offset, parent.y + offset, 0, childWidth, childLevel);
-				parent.children[2] = new QuadPoint(parent.x + offset, parent.y - offset, 0, childWidth, childLevel);
-				parent.children[3] = new QuadPoint(parent.x + offset, parent.y + offset, 0, childWidth, childLevel);
-			}
-			
-			// Get CPPN output for each child.
-			for (int ci = 0; ci < 4; ci++) {
-				QuadPoint child = parent.children[ci];
-				if (outgoing) { // Querying connection from input or hidden node.
-					child.cppnValue = cppn.query(n, child); // Outgoing connectivity pattern.
-					//child.cppnValue = cppn.getRangedWeight();
+		while (!level.isEmpty()) {
+			batch.clear();
+			for (QuadPoint parent : level) {
+				// Divide into sub-regions and assign children to parent.
+				int childLevel = parent.level+1;
+				double childWidth = parent.width * 0.5;
+				double offset = childWidth * 0.5;
+				if (pseudo3D ) {
+					// Hidden nodes located on XZ plane at y = 0.5.
+					parent.children[0] = arena.newQuadPoint(parent.x - offset, 0.5, parent.z - offset, childWidth, childLevel);
+					parent.children[1] = arena.newQuadPoint(parent.x - offset, 0.5, parent.z + offset, childWidth, childLevel);
+					parent.children[2] = arena.newQuadPoint(parent.x + offset, 0.5, parent.z - offset, childWidth, childLevel);
+					parent.children[3] = arena.newQuadPoint(parent.x + offset, 0.5, parent.z + offset, childWidth, childLevel);
 				}
-				else { // Querying connection to output node.
-					child.cppnValue = cppn.query(child, n); // Incoming connectivity pattern.
-					//child.cppnValue = cppn.getRangedWeight();
+				else {
+					// Hidden nodes located on XY plane.
+					parent.children[0] = arena.newQuadPoint(parent.x - offset, parent.y - offset, 0, childWidth, childLevel);
+					parent.children[1] = arena.newQuadPoint(parent.x - offset, parent.y + offset, 0, childWidth, childLevel);
+					parent.children[2] = arena.newQuadPoint(parent.x + offset, parent.y - offset, 0, childWidth, childLevel);
+					parent.children[3] = arena.newQuadPoint(parent.x + offset, parent.y + offset, 0, childWidth, childLevel);
 				}
 				
-				child.leo = cppn.getLEO();
-				
-				/*if (firstTime) {
-					int hwI = (int) Math.round(childWidth * w);
-					int x = (int) Math.round(child.x * w) - hwI/2;
-					int y = (int) Math.round((pseudo3D ? child.z : child.y) * h) - hwI/2;
-					int c = Math.min((int) Math.round(child.cppnValue * 0.5 * 255), 255);
-					g.setColor(new Color(c, c, c));
-					g.fillRect(x, y, hwI, hwI);*/
-					//logger.info(child.level + " : " + child.width + " : " + nf1.format(n.x) + ", " + nf1.format(n.y) + ", " + nf1.format(n.z) +  " -> " + nf1.format(child.x) + ", " + nf1.format(child.y) + ", " + nf1.format(child.z) + " : " + nf1.format(child.cppnValue));
-				//}
-			}
-
-			// Divide if minimum resolution hasn't been reached or variance is above threshold and maximum resolution hasn't been reached.
-			if (parent.level < initialDepth || (parent.level < maxDepth && variance(parent, tempStorageForCPPNValues) > divisionThreshold)) {
 				for (int ci = 0; ci < 4; ci++) {
-					queue.add(parent.children[ci]);
+					if (outgoing) { // Querying connection from input or hidden node.
+						batch.add(n, parent.children[ci]); // Outgoing connectivity pattern.
+					}
+					else { // Querying connection to output node.
+						batch.add(parent.children[ci], n); // Incoming connectivity pattern.
+					}
+				}
+			}
+			
+			// Get CPPN output for each child.
+			query(cppn, batch, arena);
+			int i = 0;
+			for (QuadPoint parent : level) {
+				for (int ci = 0; ci < 4; ci++, i++) {
+					QuadPoint child = parent.children[ci];
+					child.cppnValue = batch.getWeight(i);
+					child.leo = batch.getLEO(i);
+					
+					/*if (firstTime) {
+						int hwI = (int) Math.round(child.width * w);
+						int x = (int) Math.round(child.x * w) - hwI/2;
+						int y = (int) Math.round((pseudo3D ? child.z : child.y) * h) - hwI/2;
+						int c = Math.min((int) Math.round(child.cppnValue * 0.5 * 255), 255);
+						g.setColor(new Color(c, c, c));
+						g.fillRect(x, y, hwI, hwI);*/
+						//logger.info(child.level + " : " + child.width + " : " + nf1.format(n.x) + ", " + nf1.format(n.y) + ", " + nf1.format(n.z) +  " -> " + nf1.format(child.x) + ", " + nf1.format(child.y) + ", " + nf1.format(child.z) + " : " + nf1.format(child.cppnValue));
+					//}
+				}
+			}
+
+			nextLevel.clear();
+			for (QuadPoint parent : level) {
+				// Divide if minimum resolution hasn't been reached or variance is above threshold and maximum resolution hasn't been reached.
+				if (parent.level < initialDepth || (parent.level < maxDepth && variance(parent, arena.cppnValues) > divisionThreshold)) {
+					for (int ci = 0; ci < 4; ci++) {
+						nextLevel.add(parent.children[ci]);
+					}
 				}
 			}
+			ArrayList<QuadPoint> swap = level;
+			level = nextLevel;
+			nextLevel = swap;
 		}
+		level.clear();
 		
 		/*if (firstTime) {
 			//firstTime = false;
@@ -777,65 +854,521 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 	 * cross-section of the hypercube containing the source or target node to the connections list.
 	 * 
 	 * @param cppn The CPPN to use.
+	 * @param batch The batch to use to query the CPPN for the neighbours of the children of each node.
 	 * @param neuron The source or target neuron (position).
 	 * @param connections The list to add new connections to.
 	 * @param root The root of the quadtree.
 	 * @param outgoing Specifies whether the connection is for a source (outgoing = true) or target node (outgoing = false).
-	 * @param tempStorageForCPPNValues A list store the CPPN value for each node in the quadtree. Allows reuse of same list for performance reasons.
+	 * @param arena The storage to allocate TempConnections from. The TempConnections remain valid until the arena is reset.
 	 */
-	protected void pruneAndExpress(CPPN cppn, Point neuron, List<TempConnection> connections, QuadPoint root, boolean outgoing, double[] tempStorageForCPPNValues) {
-		double left = 0, right = 0, top = 0, bottom = 0;
-
+	protected void pruneAndExpress(CPPN cppn, CPPN.Batch batch, Point neuron, List<TempConnection> connections, QuadPoint root, boolean outgoing, QuadTreeArena arena) {
 		if (root.children[0] == null)
 			return;
 
-		// Traverse quadtree depth-first.
+		// Query the CPPN for the neighbours of all children that may be expressed in one batch, before any recursion 
+		// (which reuses the batch). Whether a child is in a band is recorded in inBand.
+		double width = root.width;
+		boolean[] recurse = new boolean[4];
+		boolean[] inBand = new boolean[4];
+		batch.clear();
 		for (int ci = 0; ci < 4; ci++) {
 			QuadPoint child = root.children[ci];
-			double childVariance = variance(child, tempStorageForCPPNValues);
+			double childVariance = variance(child, arena.cppnValues);
 			if (childVariance >= varianceThreshold) {
-				pruneAndExpress(cppn, neuron, connections, child, outgoing, tempStorageForCPPNValues);
+				recurse[ci] = true;
 			} else if (child.leo) { // If LEO disabled this should always happen for at least the leaf nodes because their variance is zero.
 				// Determine if point is in a band by checking neighbour CPPN values.
-				double width = root.width;
 				if (outgoing) {
-					left = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x - width, child.y, child.z));
-					right = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x + width, child.y, child.z));
+					batch.add(neuron.x, neuron.y, neuron.z, child.x - width, child.y, child.z); // left
+					batch.add(neuron.x, neuron.y, neuron.z, child.x + width, child.y, child.z); // right
 					if (pseudo3D) { // Hidden nodes located on XZ plane.
-						top = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z - width));
-						bottom = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z + width));
+						batch.add(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z - width); // top
+						batch.add(neuron.x, neuron.y, neuron.z, child.x, child.y, child.z + width); // bottom
 					}
 					else { // Hidden nodes located on XY plane.
-						top = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y - width, child.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(neuron.x, neuron.y, neuron.z, child.x, child.y + width, child.z));
+						batch.add(neuron.x, neuron.y, neuron.z, child.x, child.y - width, child.z); // top
+						batch.add(neuron.x, neuron.y, neuron.z, child.x, child.y + width, child.z); // bottom
 					}
 				} else {
-					left = Math.abs(child.cppnValue - cppn.query(child.x - width, child.y, child.z, neuron.x, neuron.y, neuron.z));
-					right = Math.abs(child.cppnValue - cppn.query(child.x + width, child.y, child.z, neuron.x, neuron.y, neuron.z));
+					batch.add(child.x - width, child.y, child.z, neuron.x, neuron.y, neuron.z); // left
+					batch.add(child.x + width, child.y, child.z, neuron.x, neuron.y, neuron.z); // right
 					if (pseudo3D) { // Hidden nodes located on XZ plane.
-						top = Math.abs(child.cppnValue - cppn.query(child.x, child.y, child.z - width, neuron.x, neuron.y, neuron.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(child.x, child.y, child.z + width, neuron.x, neuron.y, neuron.z));
+						batch.add(child.x, child.y, child.z - width, neuron.x, neuron.y, neuron.z); // top
+						batch.add(child.x, child.y, child.z + width, neuron.x, neuron.y, neuron.z); // bottom
 					}
 					else { // Hidden nodes located on XY plane.
-						top = Math.abs(child.cppnValue - cppn.query(child.x, child.y - width, child.z, neuron.x, neuron.y, neuron.z));
-						bottom = Math.abs(child.cppnValue - cppn.query(child.x, child.y + width, child.z, neuron.x, neuron.y, neuron.z));
+						batch.add(child.x, child.y - width, child.z, neuron.x, neuron.y, neuron.z); // top
+						batch.add(child.x, child.y + width, child.z, neuron.x, neuron.y, neuron.z); // bottom
 					}
 				}
-				
-				if (Math.max(Math.min(top, bottom), Math.min(left, right)) > bandThrehold) {
-					TempConnection tc;
-					if (outgoing) {
-						tc = new TempConnection(neuron, child, child.cppnValue);
-					} else {
-						tc = new TempConnection(child, neuron, child.cppnValue);
-					}
-					connections.add(tc);
+			}
+		}
+		if (batch.size() > 0) {
+			query(cppn, batch, arena);
+			int i = 0;
+			for (int ci = 0; ci < 4; ci++) {
+				QuadPoint child = root.children[ci];
+				if (!recurse[ci] && child.leo) {
+					double left = Math.abs(child.cppnValue - batch.getWeight(i++));
+					double right = Math.abs(child.cppnValue - batch.getWeight(i++));
+					double top = Math.abs(child.cppnValue - batch.getWeight(i++));
+					double bottom = Math.abs(child.cppnValue - batch.getWeight(i++));
+					inBand[ci] = Math.max(Math.min(top, bottom), Math.min(left, right)) > bandThrehold;
 				}
+			}
+		}
 
+		// Traverse quadtree depth-first.
+		for (int ci = 0; ci < 4; ci++) {
+			QuadPoint child = root.children[ci];
+			if (recurse[ci]) {
+				pruneAndExpress(cppn, batch, neuron, connections, child, outgoing, arena);
+			} else if (inBand[ci]) {
+				TempConnection tc;
+				if (outgoing) {
+					tc = arena.newTempConnection(neuron, child, child.cppnValue);
+				} else {
+					tc = arena.newTempConnection(child, neuron, child.cppnValue);
+				}
+				connections.add(tc);
 			}
 		}
 	}
 
+	/**
+	 * Explore the quadtree for each of the given seed neurons and extract the points that should be connected to them,
+	 * see {@link #quadTreeInitialisation} and {@link #pruneAndExpress}. If {@link #ES_HYPERNEAT_PARALLEL_THREADS} is
+	 * greater than 1 then the seeds are divided amongst the threads of the pool.
+	 * 
+	 * @param outgoing Specifies whether the connections are from (outgoing = true) or to the seed neurons (outgoing = false).
+	 * @return For each seed, the coordinates and CPPN value for each point to connect to, as x, y, z, value tuples.
+	 */
+	private double[][] explore(Chromosome genotype, Object transcriptionToken, CPPN cppn, CPPN.Batch batch, List<Neuron> seeds, boolean outgoing) throws TranscriberException {
+		double[][] found = new double[seeds.size()][];
+		if (parallelPool != null && seeds.size() > 1) {
+			int grain = Math.max(1, seeds.size() / (parallelPool.getParallelism() * 4));
+			try {
+				parallelPool.invoke(new ExploreTask(genotype, transcriptionToken, cppn, seeds, outgoing, found, 0, seeds.size(), grain));
+			} catch (RuntimeException e) {
+				if (e.getCause() instanceof TranscriberException) {
+					throw (TranscriberException) e.getCause();
+				}
+				throw e;
+			}
+		} else {
+			QuadTreeArena arena = arenas.get();
+			arena.setTranscription(transcriptionToken);
+			for (int i = 0; i < found.length; i++) {
+				found[i] = explore(cppn, batch, arena, seeds.get(i), outgoing);
+			}
+		}
+		return found;
+	}
+
+	private double[] explore(CPPN cppn, CPPN.Batch batch, QuadTreeArena arena, Neuron seed, boolean outgoing) {
+		arena.reset();
+		QuadPoint root = quadTreeInitialisation(cppn, batch, seed, outgoing, arena);
+		// Traverse quad tree and retrieve connections.
+		pruneAndExpress(cppn, batch, seed, arena.connections, root, outgoing, arena);
+		double[] found = new double[arena.connections.size() * 4];
+		int i = 0;
+		for (TempConnection tc : arena.connections) {
+			Point p = outgoing ? tc.targetPoint : tc.sourcePoint;
+			found[i++] = p.x;
+			found[i++] = p.y;
+			found[i++] = p.z;
+			found[i++] = tc.weight;
+		}
+		return found;
+	}
+
+	/**
+	 * Perform the queries in the given batch, using the memoised results in the given arena where available (if
+	 * {@link #ES_HYPERNEAT_MEMO_SIZE} is greater than 0).
+	 */
+	private void query(CPPN cppn, CPPN.Batch batch, QuadTreeArena arena) {
+		CPPNMemo memo = arena.memo;
+		if (memo == null) {
+			cppn.query(batch);
+			return;
+		}
+		CPPN.Batch misses = arena.getMissBatch(cppn);
+		misses.clear();
+		int size = batch.size();
+		for (int i = 0; i < size; i++) {
+			batch.getCoordinates(i, arena.coords);
+			memo.setKey(arena.coords, arena.keys, i * 6);
+			int slot = memo.find(arena.keys, i * 6);
+			if (memo.contains(slot)) {
+				memo.getOutputs(slot, batch, i);
+			} else {
+				arena.missIndex[misses.size()] = i;
+				misses.add(batch, i);
+			}
+		}
+		int missCount = misses.size();
+		if (missCount > 0) {
+			cppn.query(misses);
+			for (int m = 0; m < missCount; m++) {
+				int i = arena.missIndex[m];
+				int slot = memo.put(arena.keys, i * 6, misses, m);
+				memo.getOutputs(slot, batch, i);
+			}
+		}
+		memoQueryCount.addAndGet(size);
+		memoHitCount.addAndGet(size - missCount);
+	}
+
+	/**
+	 * Open-addressing hash table from quantised source and target coordinates to CPPN output values. When the maximum
+	 * number of entries is reached the table is cleared.
+	 */
+	private class CPPNMemo {
+		private static final double QUANTISATION_SCALE = 4294967296.0; // 2^32
+		private final int maxEntries;
+		private final long[] keys;
+		private final double[] values;
+		/**
+		 * An entry is present in a slot if its generation is equal to the current generation, allowing the table to
+		 * be cleared without visiting every slot.
+		 */
+		private final int[] slotGeneration;
+		private int generation = 1;
+		private int size;
+
+		CPPNMemo(int maxEntries) {
+			this.maxEntries = maxEntries;
+			int capacity = 16;
+			while (capacity < maxEntries * 2) {
+				capacity <<= 1;
+			}
+			keys = new long[capacity * 6];
+			values = new double[capacity * cppnOutputCount];
+			slotGeneration = new int[capacity];
+		}
+
+		public void clear() {
+			generation++;
+			size = 0;
+		}
+
+		/**
+		 * Set the key for the given coordinates (sx, sy, sz, tx, ty, tz) in the given array at the given offset.
+		 */
+		public void setKey(double[] coords, long[] key, int offset) {
+			for (int c = 0; c < 6; c++) {
+				key[offset + c] = Math.round(coords[c] * QUANTISATION_SCALE);
+			}
+		}
+
+		/**
+		 * Find the slot for the given key: either the slot containing it or the empty slot it should be put in.
+		 */
+		public int find(long[] key, int offset) {
+			long h = 17;
+			for (int c = 0; c < 6; c++) {
+				h = h * 31 + key[offset + c];
+			}
+			h *= 0x9E3779B97F4A7C15L;
+			int mask = slotGeneration.length - 1;
+			int slot = (int) (h >>> 32) & mask;
+			while (slotGeneration[slot] == generation && !keyEquals(slot, key, offset)) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private boolean keyEquals(int slot, long[] key, int offset) {
+			int k = slot * 6;
+			for (int c = 0; c < 6; c++) {
+				if (keys[k + c] != key[offset + c])
+					return false;
+			}
+			return true;
+		}
+
+		public boolean contains(int slot) {
+			return slotGeneration[slot] == generation;
+		}
+
+		/**
+		 * Store the outputs of query i in the given batch for the given key.
+		 * 
+		 * @return The slot the outputs were stored in.
+		 */
+		public int put(long[] key, int offset, CPPN.Batch batch, int i) {
+			int slot = find(key, offset);
+			if (!contains(slot)) {
+				if (size == maxEntries) {
+					clear();
+					slot = find(key, offset);
+				}
+				System.arraycopy(key, offset, keys, slot * 6, 6);
+				slotGeneration[slot] = generation;
+				size++;
+			}
+			batch.copyOutputs(i, values, slot * cppnOutputCount);
+			return slot;
+		}
+
+		/**
+		 * Set the outputs of query i in the given batch from the given slot.
+		 */
+		public void getOutputs(int slot, CPPN.Batch batch, int i) {
+			batch.setOutputs(i, values, slot * cppnOutputCount);
+		}
+	}
+
+	/**
+	 * Explores the quadtrees for a range of seed neurons. The range is split recursively down to the grain size.
+	 */
+	private class ExploreTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Chromosome genotype;
+		private final Object transcriptionToken;
+		private final CPPN cppn;
+		private final List<Neuron> seeds;
+		private final boolean outgoing;
+		private final double[][] found;
+		private final int start;
+		private int end;
+		private final int grain;
+
+		ExploreTask(Chromosome genotype, Object transcriptionToken, CPPN cppn, List<Neuron> seeds, boolean outgoing, double[][] found, int start, int end, int grain) {
+			this.genotype = genotype;
+			this.cppn = cppn;
+			this.transcriptionToken = transcriptionToken;
+			this.seeds = seeds;
+			this.outgoing = outgoing;
+			this.found = found;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<ExploreTask> forked = null;
+			while (end - start > grain) {
+				int mid = (start + end) >>> 1;
+				ExploreTask right = new ExploreTask(genotype, transcriptionToken, cppn, seeds, outgoing, found, mid, end, grain);
+				right.fork();
+				if (forked == null) {
+					forked = new ArrayList<ExploreTask>();
+				}
+				forked.add(right);
+				end = mid;
+			}
+
+			QuadTreeArena arena = arenas.get();
+			arena.setTranscription(transcriptionToken);
+			try {
+				arena.setCPPN(transcriptionToken, cppn, genotype);
+			} catch (TranscriberException e) {
+				throw new RuntimeException(e);
+			}
+			for (int i = start; i < end; i++) {
+				found[i] = explore(arena.cppn, arena.batch, arena, seeds.get(i), outgoing);
+			}
+
+			if (forked != null) {
+				// Join most recently forked (smallest) tasks first, these are the most likely to still be in our queue.
+				for (int i = forked.size() - 1; i >= 0; i--) {
+					forked.get(i).join();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reusable storage for exploring quadtrees, one instance is used per thread (see {@link #arenas}). QuadPoints and
+	 * TempConnections are allocated from pools which are reset before each exploration.
+	 */
+	protected class QuadTreeArena {
+		private final ArrayList<QuadPoint> quadPoints = new ArrayList<QuadPoint>();
+		private int quadPointCount;
+		private final ArrayList<TempConnection> tempConnections = new ArrayList<TempConnection>();
+		private int tempConnectionCount;
+		/**
+		 * The connections found by {@link ESHyperNEATTranscriberBain#pruneAndExpress} for the current exploration.
+		 */
+		final List<TempConnection> connections = new ArrayList<TempConnection>();
+		/**
+		 * Storage for the CPPN value for each node in a quadtree.
+		 */
+		final double[] cppnValues = new double[maxQuadTreeSize];
+		final ArrayList<QuadPoint> level = new ArrayList<QuadPoint>();
+		final ArrayList<QuadPoint> nextLevel = new ArrayList<QuadPoint>();
+		/**
+		 * The copy of the CPPN used by this thread for the transcription identified by cppnToken.
+		 */
+		private Object cppnToken;
+		private CPPN cppn;
+		private CPPN.Batch batch;
+		/**
+		 * Memoised CPPN results for the transcription identified by memoToken, or null if memoisation is disabled.
+		 */
+		final CPPNMemo memo = memoSize > 0 ? new CPPNMemo(memoSize) : null;
+		private Object memoToken;
+		private CPPN missBatchCPPN;
+		private CPPN.Batch missBatch;
+		final double[] coords = new double[6];
+		final long[] keys = memoSize > 0 ? new long[maxQuadTreeSize * 6] : null;
+		final int[] missIndex = memoSize > 0 ? new int[maxQuadTreeSize] : null;
+
+		/**
+		 * Make all QuadPoints and TempConnections previously allocated from this arena available for reuse.
+		 */
+		public void reset() {
+			quadPointCount = 0;
+			tempConnectionCount = 0;
+			connections.clear();
+		}
+
+		public QuadPoint newQuadPoint(double x, double y, double z, double width, int level) {
+			if (quadPointCount == quadPoints.size()) {
+				quadPoints.add(new QuadPoint(x, y, z, width, level));
+				return quadPoints.get(quadPointCount++);
+			}
+			QuadPoint p = quadPoints.get(quadPointCount++);
+			p.set(x, y, z, width, level);
+			return p;
+		}
+
+		public TempConnection newTempConnection(Point source, Point target, double weight) {
+			if (tempConnectionCount == tempConnections.size()) {
+				tempConnections.add(new TempConnection(source, target, weight));
+				return tempConnections.get(tempConnectionCount++);
+			}
+			TempConnection tc = tempConnections.get(tempConnectionCount++);
+			tc.sourcePoint = source;
+			tc.targetPoint = target;
+			tc.weight = weight;
+			return tc;
+		}
+
+		/**
+		 * Clear the memoised CPPN results if the given token does not identify the transcription they were obtained
+		 * for.
+		 */
+		public void setTranscription(Object token) {
+			if (memo != null && memoToken != token) {
+				memo.clear();
+				memoToken = token;
+			}
+		}
+
+		/**
+		 * Get a batch for the given CPPN to hold the queries not answered by the memo table.
+		 */
+		private CPPN.Batch getMissBatch(CPPN cppn) {
+			if (missBatchCPPN != cppn) {
+				missBatch = cppn.createBatch(maxQuadTreeSize);
+				missBatchCPPN = cppn;
+			}
+			return missBatch;
+		}
+
+		/**
+		 * Set the CPPN used by this arena's thread for the given transcription to a copy of the given CPPN, see
+		 * {@link CPPN#copy(Chromosome)}.
+		 */
+		private void setCPPN(Object token, CPPN source, Chromosome genotype) throws TranscriberException {
+			if (cppnToken != token) {
+				cppn = source.copy(genotype);
+				batch = cppn.createBatch(maxQuadTreeSize);
+				cppnToken = token;
+			}
+		}
+	}
+
+	/**
+	 * Open-addressing hash map from coordinates to hidden neurons. Lookups use the primitive coordinate values so no
+	 * Point needs to be created to perform a lookup. The neurons are also kept in the order in which they were added,
+	 * which determines their order in the substrate.
+	 */
+	private class HiddenNeuronMap {
+		private double[] keyX, keyY, keyZ;
+		/**
+		 * Index of the neuron in each slot plus one, or 0 for an empty slot.
+		 */
+		private int[] slots;
+		private final ArrayList<Neuron> neurons;
+
+		HiddenNeuronMap(int expectedSize) {
+			int capacity = 16;
+			while (capacity < expectedSize * 2) {
+				capacity <<= 1;
+			}
+			allocate(capacity);
+			neurons = new ArrayList<Neuron>(expectedSize);
+		}
+
+		private void allocate(int capacity) {
+			keyX = new double[capacity];
+			keyY = new double[capacity];
+			keyZ = new double[capacity];
+			slots = new int[capacity];
+		}
+
+		private int slot(double x, double y, double z) {
+			// Adding 0 converts -0 to 0, as these are equal for the purpose of comparing coordinates.
+			long h = Double.doubleToLongBits(x + 0.0);
+			h = h * 31 + Double.doubleToLongBits(y + 0.0);
+			h = h * 31 + Double.doubleToLongBits(z + 0.0);
+			h *= 0x9E3779B97F4A7C15L;
+			int mask = slots.length - 1;
+			int s = (int) (h >>> 32) & mask;
+			while (slots[s] != 0 && (keyX[s] != x || keyY[s] != y || keyZ[s] != z)) {
+				s = (s + 1) & mask;
+			}
+			return s;
+		}
+
+		/**
+		 * Get the hidden neuron at the given coordinates, or null if there is none.
+		 */
+		public Neuron get(double x, double y, double z) {
+			int s = slots[slot(x, y, z)];
+			return s == 0 ? null : neurons.get(s - 1);
+		}
+
+		/**
+		 * Get the hidden neuron at the given coordinates, creating it if necessary.
+		 */
+		public Neuron getOrAdd(double x, double y, double z) {
+			int s = slot(x, y, z);
+			if (slots[s] != 0) {
+				return neurons.get(slots[s] - 1);
+			}
+			Neuron n = new Neuron(x, y, z, Neuron.HIDDEN);
+			neurons.add(n);
+			keyX[s] = x;
+			keyY[s] = y;
+			keyZ[s] = z;
+			slots[s] = neurons.size();
+			if (neurons.size() * 2 > slots.length) {
+				allocate(slots.length * 2);
+				for (int i = 0; i < neurons.size(); i++) {
+					Neuron h = neurons.get(i);
+					int hs = slot(h.x, h.y, h.z);
+					keyX[hs] = h.x;
+					keyY[hs] = h.y;
+					keyZ[hs] = h.z;
+					slots[hs] = i + 1;
+				}
+			}
+			return n;
+		}
+
+		/**
+		 * The hidden neurons in the order they were added.
+		 */
+		public List<Neuron> getNeurons() {
+			return neurons;
+		}
+	}
+
 	/**
 	 * Determine the variance of a given region.
 	 * @param p The root of the quadtree.  
@@ -896,8 +1429,15 @@ public class ESHyperNEATTranscriberBain extends HyperNEATTranscriberBainBase imp
 			avgSynapseCount = 0;
 			noPathFromInputToOutputCount = 0;
 			popSize = 0;
+			memoQueryCount.set(0);
+			memoHitCount.set(0);
 		}
 		else if (event.getType() == AHNIEvent.Type.EVALUATION_END) {
+			if (memoSize > 0 && memoQueryCount.get() > 0) {
+				long queries = memoQueryCount.get();
+				long hits = memoHitCount.get();
+				logger.info("CPPN memo table answered " + hits + " of " + queries + " quadtree queries (" + (Math.round(1000.0 * hits / queries) / 10.0) + "% hit rate).");
+			}
 			avgNeuronCount /= popSize;
 			avgSynapseCount /= popSize;
 			//logger.info("Network size (average / maximum) (neurons, synapses): " + avgNeuronCount + ", " + avgSynapseCount + " / " + maxNeuronCount + ", " + maxSynapseCount + ".   " + (noPathFromInputToOutputCount > 0 ? (noPathFromInputToOutputCount + " networks have no path from the input layer to the output layer.") : ""));
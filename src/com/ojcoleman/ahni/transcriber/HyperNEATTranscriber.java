@@ -8,6 +8,7 @@ import org.jgapcustomised.Chromosome;
 
 import com.anji.integration.Activator;
 import com.anji.integration.AnjiActivator;
+import com.anji.integration.CompiledActivator;
 import com.anji.integration.AnjiNetTranscriber;
 import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
@@ -179,6 +180,24 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 	 */
 	public static final String HYPERNEAT_NEO_THRESHOLD = "ann.hyperneat.neo.threshold";
 
+	/**
+	 * Enable or disable compiling feed-forward CPPNs to a flat, array-based form (see {@link com.anji.nn.CompiledNet}) that is
+	 * faster to query. The output of a compiled CPPN is identical to that of the original, so this should only need to
+	 * be disabled for debugging purposes. CPPNs containing recurrent connections are never compiled. Default is "true".
+	 */
+	public static final String HYPERNEAT_CPPN_COMPILE = "ann.hyperneat.cppn.compile";
+
+	/**
+	 * The maximum number of source/target neuron pairs for which the CPPN inputs derived from the positions of the
+	 * neurons (the delta, angle and synapse length values, see {@link #HYPERNEAT_INCLUDE_DELTA},
+	 * {@link #HYPERNEAT_INCLUDE_ANGLE} and {@link #HYPERNEAT_LEO_THRESHOLD_DISTANCE}) are precomputed. These values are
+	 * stored for each pair of layers that is queried, until the limit is reached. Each pair requires up to 5 doubles.
+	 * Set to 0 to disable. Default is 1000000.
+	 * 
+	 * @see SubstrateGeometry
+	 */
+	public static final String HYPERNEAT_GEOMETRY_TABLE_MAX = "ann.hyperneat.geometry.table.max";
+
 	/**
 	 * The width of each layer in the substrate.
 	 */
@@ -277,6 +296,22 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 	 * Threshold for the Neuron Expression Output.
 	 */
 	protected double neoThreshold = 0;
+	/**
+	 * If true indicates that feed-forward CPPNs are compiled.
+	 * 
+	 * @see #HYPERNEAT_CPPN_COMPILE
+	 */
+	protected boolean compileCPPN = true;
+	/**
+	 * The maximum number of source/target neuron pairs for which derived CPPN inputs are precomputed.
+	 * 
+	 * @see #HYPERNEAT_GEOMETRY_TABLE_MAX
+	 */
+	protected int geometryTableMax = 1000000;
+	/**
+	 * Precomputed CPPN inputs for the current substrate dimensions, see {@link #getSubstrateGeometry()}.
+	 */
+	private SubstrateGeometry substrateGeometry;
 	/**
 	 * The number of inputs to the CPPN.
 	 * 
@@ -367,6 +402,8 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		leoThresholdFactorDirection = props.getDoubleArrayProperty(HYPERNEAT_LEO_THRESHOLD_DIRECTION, leoThresholdFactorDirection);
 		enableNEO = props.getBooleanProperty(HYPERNEAT_NEO, enableNEO);
 		neoThreshold = props.getDoubleProperty(HYPERNEAT_NEO_THRESHOLD, neoThreshold);
+		compileCPPN = props.getBooleanProperty(HYPERNEAT_CPPN_COMPILE, compileCPPN);
+		geometryTableMax = props.getIntProperty(HYPERNEAT_GEOMETRY_TABLE_MAX, geometryTableMax);
 
 		if (enableLEO && connectionExprThresh != 0) {
 			logger.warn("LEO is enabled but the connection expression threshold is not 0. It is recommended to set the connection expression threshold to 0 when LEO is enabled.");
@@ -679,7 +716,18 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		this.width = width;
 		this.height = height;
 		this.connectionRange = connectionRange;
-		
+		getSubstrateGeometry(); // Rebuild if the dimensions have changed.
+	}
+
+	/**
+	 * Get the precomputed CPPN inputs for the current substrate dimensions. The tables are rebuilt if the dimensions
+	 * have changed since they were last built.
+	 */
+	public synchronized SubstrateGeometry getSubstrateGeometry() {
+		if (substrateGeometry == null || !substrateGeometry.matches(width, height)) {
+			substrateGeometry = new SubstrateGeometry();
+		}
+		return substrateGeometry;
 	}
 
 	/**
@@ -716,11 +764,165 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		return new CPPN(genotype);
 	}
 
+	/**
+	 * Immutable tables of the CPPN inputs that depend only on the geometry of the substrate, shared by all CPPNs. The
+	 * (translated) coordinates of every neuron are computed when the tables are created. The inputs derived from a
+	 * pair of neurons (delta, angle and synapse length values) are computed the first time a pair of layers is
+	 * requested via {@link #getLayerPair(int, int)}, up to a total of {@link HyperNEATTranscriber#geometryTableMax}
+	 * neuron pairs. The values are calculated in exactly the same way as in {@link CPPN#query()}.
+	 */
+	public class SubstrateGeometry {
+		private final int[] layerWidth, layerHeight;
+		/**
+		 * The coordinates of each neuron, x[layer][y * width + x], as would be set by
+		 * {@link CPPN#setSourceCoordinatesFromGridIndices(int, int, int)}.
+		 */
+		protected final double[][] x, y, z;
+		private final LayerPair[][] layerPairs;
+		private int layerPairEntryCount = 0;
+		/**
+		 * Set to true when no further layer pairs will be created (because they are not used or the limit on the
+		 * number of precomputed neuron pairs has been reached).
+		 */
+		private volatile boolean noNewLayerPairs;
+
+		protected SubstrateGeometry() {
+			layerWidth = width.clone();
+			layerHeight = height.clone();
+			x = new double[depth][];
+			y = new double[depth][];
+			z = new double[depth][];
+			for (int l = 0; l < depth; l++) {
+				int size = width[l] * height[l];
+				x[l] = new double[size];
+				y[l] = new double[size];
+				z[l] = new double[size];
+				for (int iy = 0, i = 0; iy < height[l]; iy++) {
+					for (int ix = 0; ix < width[l]; ix++, i++) {
+						if (neuronPositionsForLayer[l] == null) {
+							x[l][i] = rangeX.translateFromUnit(width[l] > 1 ? (double) ix / (width[l] - 1) : 0.5);
+							y[l][i] = rangeY.translateFromUnit(height[l] > 1 ? (double) iy / (height[l] - 1) : 0.5);
+							z[l][i] = rangeZ.translateFromUnit(depth > 1 ? (double) l / (depth - 1) : 0);
+						} else {
+							Point p = neuronPositionsForLayer[l][i];
+							x[l][i] = p.x;
+							y[l][i] = p.y;
+							z[l][i] = p.z;
+						}
+					}
+				}
+			}
+			layerPairs = newLayerPairArray(depth);
+			noNewLayerPairs = !(includeDelta || includeAngle || leoThresholdFactorDistance);
+		}
+
+		@SuppressWarnings("unchecked")
+		private LayerPair[][] newLayerPairArray(int size) {
+			// Arrays of inner classes of a generic class must be created via the wildcard type.
+			return (LayerPair[][]) new HyperNEATTranscriber<?>.SubstrateGeometry.LayerPair[size][size];
+		}
+
+		/**
+		 * Returns true iff these tables were created for the given layer dimensions.
+		 */
+		public boolean matches(int[] width, int[] height) {
+			return Arrays.equals(layerWidth, width) && Arrays.equals(layerHeight, height);
+		}
+
+		/**
+		 * Returns the index of the neuron at the given grid indices in the coordinate arrays, or -1 if the indices are
+		 * outside of the layer.
+		 */
+		protected int getIndex(int x, int y, int z) {
+			if (x < 0 || y < 0 || x >= layerWidth[z] || y >= layerHeight[z])
+				return -1;
+			return y * layerWidth[z] + x;
+		}
+
+		/**
+		 * Get the derived CPPN inputs for all pairs of neurons from the given source layer to the given target layer.
+		 * 
+		 * @return The inputs for the layer pair, or null if no derived inputs are used by the CPPN or the limit on
+		 *         the number of precomputed neuron pairs has been reached.
+		 */
+		public LayerPair getLayerPair(int sourceLayer, int targetLayer) {
+			// LayerPair only has final fields, so it is safe to read a reference to one without synchronisation.
+			LayerPair pair = layerPairs[sourceLayer][targetLayer];
+			if (pair != null || noNewLayerPairs) {
+				return pair;
+			}
+			synchronized (this) {
+				pair = layerPairs[sourceLayer][targetLayer];
+				if (pair == null) {
+					int size = x[sourceLayer].length * x[targetLayer].length;
+					if (layerPairEntryCount + size <= geometryTableMax) {
+						pair = new LayerPair(sourceLayer, targetLayer);
+						layerPairs[sourceLayer][targetLayer] = pair;
+						layerPairEntryCount += size;
+					} else {
+						noNewLayerPairs = true;
+					}
+				}
+			}
+			return pair;
+		}
+
+		/**
+		 * The derived CPPN inputs for every pair of neurons from a source layer to a target layer, indexed by
+		 * [target neuron index * source layer size + source neuron index]. Arrays for inputs that are not used by the
+		 * CPPN are null.
+		 */
+		public class LayerPair {
+			protected final int sourceLayerSize;
+			protected final double[] dx, dy, dz, angle, length;
+
+			private LayerPair(int sourceLayer, int targetLayer) {
+				double[] sxs = x[sourceLayer], sys = y[sourceLayer], szs = z[sourceLayer];
+				double[] txs = x[targetLayer], tys = y[targetLayer], tzs = z[targetLayer];
+				sourceLayerSize = sxs.length;
+				int size = sourceLayerSize * txs.length;
+				dx = includeDelta ? new double[size] : null;
+				dy = includeDelta ? new double[size] : null;
+				dz = includeDelta && cppnIdxDZ != -1 ? new double[size] : null;
+				angle = includeAngle ? new double[size] : null;
+				length = leoThresholdFactorDistance ? new double[size] : null;
+				for (int t = 0, i = 0; t < txs.length; t++) {
+					for (int s = 0; s < sourceLayerSize; s++, i++) {
+						double ddx = sxs[s] - txs[t];
+						double ddy = sys[s] - tys[t];
+						double ddz = cppnIdxDZ != -1 ? szs[s] - tzs[t] : 0;
+						if (length != null) {
+							length[i] = Math.sqrt(ddx * ddx + ddy * ddy + ddz * ddz);
+						}
+						if (dx != null) {
+							dx[i] = ddx;
+							dy[i] = ddy;
+							if (dz != null) {
+								dz[i] = ddz;
+							}
+						}
+						if (angle != null) {
+							double a = Math.atan2(ddy, ddx);
+							a /= 2 * Math.PI;
+							if (a < 0)
+								a += 1;
+							angle[i] = a;
+						}
+					}
+				}
+			}
+		}
+	}
+
 	/**
 	 * Provides a wrapper for an {@link com.anji.integration.Activator} that represents a CPPN.
 	 */
 	public class CPPN {
 		protected Activator cppnActivator;
+		/**
+		 * The compiled version of the CPPN, or null if the CPPN could not be compiled or compilation is disabled.
+		 */
+		protected CompiledActivator cppnCompiled;
 		protected double[] cppnInput = new double[cppnInputCount];
 		protected double[] cppnOutput;
 		protected double cppnMin, cppnMax, cppnRange;
@@ -730,10 +932,28 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		 * Squared length of the current synapse (set when query() called).
 		 */
 		protected double synapseLength = 0;
+		/**
+		 * The precomputed inputs for the substrate dimensions at the time this CPPN was created.
+		 */
+		protected final SubstrateGeometry geometry = getSubstrateGeometry();
 
 		public CPPN(Chromosome genotype) throws TranscriberException {
 			cppnActivator = cppnTranscriber.transcribe(genotype);
+			if (cppnActivator instanceof CompiledActivator) {
+				// The CPPN transcriber may have already compiled the CPPN.
+				CompiledActivator compiled = (CompiledActivator) cppnActivator;
+				cppnActivator = compiled.getSource();
+				if (compileCPPN && !compiled.isRecurrent()) {
+					cppnCompiled = compiled;
+				}
+			} else if (compileCPPN && !cppnActivator.isRecurrent()) {
+				cppnCompiled = CompiledActivator.compile((AnjiActivator) cppnActivator);
+			}
 			((AnjiActivator) cppnActivator).setName("CPPN-" + genotype.getId());
+			if (cppnCompiled != null) {
+				cppnActivator = cppnCompiled;
+				cppnOutput = new double[cppnCompiled.getOutputCount()];
+			}
 			if (cppnIdxBiasInput != -1) {
 				cppnInput[cppnIdxBiasInput] = 1; // Bias.
 			}
@@ -744,6 +964,34 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 			cppnOutputPlusMinusUnitBounded = cppnMin == -1 && cppnMax == 1;
 		}
 
+		/**
+		 * Create a copy of the given compiled CPPN that shares its compiled program but has its own working memory.
+		 */
+		private CPPN(CPPN source) {
+			cppnCompiled = source.cppnCompiled.copy();
+			cppnActivator = cppnCompiled;
+			cppnOutput = new double[cppnCompiled.getOutputCount()];
+			if (cppnIdxBiasInput != -1) {
+				cppnInput[cppnIdxBiasInput] = 1; // Bias.
+			}
+			cppnMin = source.cppnMin;
+			cppnMax = source.cppnMax;
+			cppnRange = source.cppnRange;
+			cppnOutputUnitBounded = source.cppnOutputUnitBounded;
+			cppnOutputPlusMinusUnitBounded = source.cppnOutputPlusMinusUnitBounded;
+		}
+
+		/**
+		 * Returns a CPPN equivalent to this one that may be used concurrently with it. If this CPPN is compiled the
+		 * copy shares the compiled program (see {@link com.anji.nn.CompiledNet#copy()}), otherwise the CPPN is
+		 * transcribed again from the given genotype.
+		 * 
+		 * @param genotype The genotype this CPPN was transcribed from.
+		 */
+		public CPPN copy(Chromosome genotype) throws TranscriberException {
+			return cppnCompiled != null ? new CPPN(this) : new CPPN(genotype);
+		}
+
 		/**
 		 * Set the inputs to the CPPN for the source coordinates to 0. This is useful when querying the CPPN for a
 		 * single point in the substrate rather than for a connection (which is from one point to another). The
@@ -815,17 +1063,17 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		public void setSourceCoordinatesFromGridIndices(int x, int y, int z) {
 			if (depth == 1)
 				z = 0;
-			if (neuronPositionsForLayer[z] == null) {
-				// This will translate from unit ranges.
-				setSourceCoordinates(width[z] > 1 ? (double) x / (width[z] - 1) : 0.5, height[z] > 1 ? (double) y / (height[z] - 1) : 0.5, depth > 1 ? (double) z / (depth - 1) : 0);
-			} else {
-				Point p = neuronPositionsForLayer[z][y * width[z] + x];
-				// Don't use setSourceCoordinates(Point) as the Points are already translated from unit.
-				cppnInput[cppnIdxSX] = p.x;
-				cppnInput[cppnIdxSY] = p.y;
+			int i = geometry.getIndex(x, y, z);
+			if (i != -1) {
+				// The coordinates are already translated from unit.
+				cppnInput[cppnIdxSX] = geometry.x[z][i];
+				cppnInput[cppnIdxSY] = geometry.y[z][i];
 				if (cppnIdxSZ != -1) {
-					cppnInput[cppnIdxSZ] = p.z;
+					cppnInput[cppnIdxSZ] = geometry.z[z][i];
 				}
+			} else {
+				// This will translate from unit ranges.
+				setSourceCoordinates(width[z] > 1 ? (double) x / (width[z] - 1) : 0.5, height[z] > 1 ? (double) y / (height[z] - 1) : 0.5, depth > 1 ? (double) z / (depth - 1) : 0);
 			}
 		}
 
@@ -887,17 +1135,17 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		public void setTargetCoordinatesFromGridIndices(int x, int y, int z) {
 			if (depth == 1)
 				z = 0;
-			if (neuronPositionsForLayer[z] == null) {
-				// This will translate from unit ranges.
-				setTargetCoordinates(width[z] > 1 ? (double) x / (width[z] - 1) : 0.5, height[z] > 1 ? (double) y / (height[z] - 1) : 0.5, depth > 1 ? (double) z / (depth - 1) : 0);
-			} else {
-				Point p = neuronPositionsForLayer[z][y * width[z] + x];
-				// Don't use setTargetCoordinates(Point) as the Points are already translated from unit.
-				cppnInput[cppnIdxTX] = p.x;
-				cppnInput[cppnIdxTY] = p.y;
+			int i = geometry.getIndex(x, y, z);
+			if (i != -1) {
+				// The coordinates are already translated from unit.
+				cppnInput[cppnIdxTX] = geometry.x[z][i];
+				cppnInput[cppnIdxTY] = geometry.y[z][i];
 				if (cppnIdxTZ != -1) {
-					cppnInput[cppnIdxTZ] = p.z;
+					cppnInput[cppnIdxTZ] = geometry.z[z][i];
 				}
+			} else {
+				// This will translate from unit ranges.
+				setTargetCoordinates(width[z] > 1 ? (double) x / (width[z] - 1) : 0.5, height[z] > 1 ? (double) y / (height[z] - 1) : 0.5, depth > 1 ? (double) z / (depth - 1) : 0);
 			}
 		}
 
@@ -923,12 +1171,12 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 				p = new Point(0, 0, 0);
 			if (depth == 1)
 				z = 0;
-			if (neuronPositionsForLayer[z] == null) {
+			int i = geometry.getIndex(x, y, z);
+			if (i != -1) {
+				p.setCoordinates(geometry.x[z][i], geometry.y[z][i], geometry.z[z][i]);
+			} else {
 				p.setCoordinates(width[z] > 1 ? (double) x / (width[z] - 1) : 0.5, height[z] > 1 ? (double) y / (height[z] - 1) : 0.5, depth > 1 ? (double) z / (depth - 1) : 0);
 				p.translateFromUnit(rangeX, rangeY, rangeZ);
-			} else {
-				Point cp = neuronPositionsForLayer[z][y * width[z] + x];
-				p.setCoordinates(cp.x, cp.y, cp.z);
 			}
 			return p;
 		}
@@ -967,8 +1215,22 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 				cppnInput[cppnIdxAn] = angle;
 			}
 
-			cppnActivator.reset();
-			cppnOutput = cppnActivator.next(cppnInput);
+			return activate();
+		}
+
+		/**
+		 * Activate the CPPN with the current input values, without calculating the derived inputs.
+		 * 
+		 * @return The value of the (first) weight output.
+		 */
+		private double activate() {
+			if (cppnCompiled != null) {
+				// Compiled CPPNs are feed-forward and so have no state to reset.
+				cppnCompiled.next(cppnInput, cppnOutput);
+			} else {
+				cppnActivator.reset();
+				cppnOutput = cppnActivator.next(cppnInput);
+			}
 			return getWeight();
 		}
 
@@ -1020,6 +1282,41 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 			return query();
 		}
 
+		/**
+		 * Create a new {@link Batch} for this CPPN that can hold up to the specified number of queries.
+		 */
+		public Batch createBatch(int capacity) {
+			return new Batch(capacity);
+		}
+
+		/**
+		 * Perform all the queries in the given batch. The outputs for each query can then be retrieved with the
+		 * various get methods of the batch. The results are identical to those obtained by performing each query
+		 * individually with {@link #query()}. This method overwrites the current inputs and outputs of this CPPN.
+		 * 
+		 * @param batch The batch of queries to perform, must have been created by this CPPN.
+		 */
+		public void query(Batch batch) {
+			final int size = batch.size;
+			final double[][] in = batch.input;
+
+			// The derived inputs were calculated when the queries were added to the batch.
+			if (cppnCompiled != null) {
+				cppnCompiled.getCompiledNet().activate(in, batch.output, size);
+			} else {
+				// Perform each query individually.
+				for (int i = 0; i < size; i++) {
+					for (int c = 0; c < cppnInputCount; c++) {
+						cppnInput[c] = in[c][i];
+					}
+					activate();
+					for (int o = 0; o < cppnOutput.length; o++) {
+						batch.output[o][i] = cppnOutput[o];
+					}
+				}
+			}
+		}
+
 		/**
 		 * Get the value of the weight. Should be called after calling {@link #query()}.
 		 */
@@ -1109,8 +1406,20 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		public boolean getLEO(int index) {
 			if (!enableLEO) return true;
 			double direction = cppnIdxSZ != -1 ? (cppnInput[cppnIdxTZ] - cppnInput[cppnIdxSZ]) : 1;
+			return isLEOExpressed(cppnOutput[cppnIdxLEO[index]], direction, synapseLength);
+		}
+
+		/**
+		 * Determine whether a link expression output value indicates the link should be expressed.
+		 * 
+		 * @param leo The LEO output value.
+		 * @param direction The difference between the target and source z coordinates (or 1 if there is no z
+		 *            coordinate).
+		 * @param length The length of the synapse (only used if {@link #leoThresholdFactorDistance} is true).
+		 */
+		protected boolean isLEOExpressed(double leo, double direction, double length) {
 			int dirIndex = direction < 0 ? 0 : (direction == 0 ? 1 : 2);
-			return cppnOutput[cppnIdxLEO[index]] > leoThreshold * (leoThresholdFactorDistance ? synapseLength : 1) * leoThresholdFactorDirection[dirIndex];
+			return leo > leoThreshold * (leoThresholdFactorDistance ? length : 1) * leoThresholdFactorDirection[dirIndex];
 		}
 
 		/**
@@ -1202,10 +1511,17 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		 * optionally have a threshold applied.
 		 */
 		public double getRangedOutput(int index, double minValue, double maxValue, double valueRange, double threshold) {
-			double output = cppnOutput[index];
-			
-			//assert !Double.isNaN(output) : Arrays.toString(cppnOutput) + "\n" + cppnActivator.toString();
-			
+			double output = getRangedValue(cppnOutput[index], minValue, maxValue, valueRange, threshold);
+			assert !Double.isNaN(output) : Arrays.toString(cppnOutput) + "\n" + cppnActivator.toString();
+			return output;
+		}
+
+		/**
+		 * Transform the given CPPN output value to be within the specified range, optionally applying a threshold.
+		 * 
+		 * @see #getRangedOutput(int, double, double, double, double)
+		 */
+		protected double getRangedValue(double output, double minValue, double maxValue, double valueRange, double threshold) {
 			if (cppnOutputUnitBounded) {
 				// Scale to range [minValue, maxValue].
 				output = output * valueRange + minValue;
@@ -1216,8 +1532,6 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 				// Truncate to range [minValue, maxValue].
 				output = Math.min(maxValue, Math.max(minValue, output));
 			}
-			
-			//assert !Double.isNaN(output) : cppnOutput + "\n" + cppnActivator.toString();
 
 			// If thresholding is to be applied.
 			if (threshold > 0) {
@@ -1231,8 +1545,6 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 				}
 			}
 			
-			assert !Double.isNaN(output) : Arrays.toString(cppnOutput) + "\n" + cppnActivator.toString();
-			
 			return output;
 		}
 
@@ -1279,9 +1591,18 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 						hi = i;
 				return hi;
 			}
+			return getBinarySelectorValue(getOutput(indices[0]));
+		}
+
+		/**
+		 * Interpret a single CPPN output value as a binary selector value.
+		 * 
+		 * @see #getSelectorValue(int[])
+		 */
+		protected int getBinarySelectorValue(double output) {
 			if (cppnActivator.getMinResponse() < 0)
-				return getOutput(indices[0]) > 0 ? 1 : 0;
-			return getOutput(indices[0]) >= (cppnActivator.getMaxResponse() / 2) ? 1 : 0;
+				return output > 0 ? 1 : 0;
+			return output >= (cppnActivator.getMaxResponse() / 2) ? 1 : 0;
 		}
 		
 		public double getSynapseLength() {
@@ -1298,6 +1619,461 @@ public abstract class HyperNEATTranscriber<T extends Activator> extends Transcri
 		public String toString() {
 			return cppnActivator.toString();
 		}
+
+		/**
+		 * Stores the inputs and outputs for a batch of CPPN queries in structure-of-arrays form, see
+		 * {@link CPPN#query(Batch)}. Queries are added with the add methods, which accept coordinates in the same form
+		 * as the corresponding set[Source|Target]Coordinates methods of {@link CPPN}. After the batch has been queried
+		 * the outputs for query i can be retrieved with the get methods, which mirror those of {@link CPPN}, or the
+		 * raw output values for all queries can be retrieved with {@link #getOutputs(int)}. A batch may be reused by
+		 * calling {@link #clear()}.
+		 */
+		public class Batch {
+			/**
+			 * The CPPN input values, input[cppn input index][query index].
+			 */
+			protected final double[][] input;
+			/**
+			 * The CPPN output values, output[cppn output index][query index].
+			 */
+			protected final double[][] output;
+			/**
+			 * The length of the synapse for each query, or -1 if not yet calculated.
+			 */
+			protected final double[] synapseLength;
+			protected final int capacity;
+			protected int size;
+			private final Point tempPoint = new Point();
+
+			protected Batch(int capacity) {
+				this.capacity = capacity;
+				input = new double[cppnInputCount][capacity];
+				output = new double[cppnOutputCount][capacity];
+				synapseLength = new double[capacity];
+				if (cppnIdxBiasInput != -1) {
+					Arrays.fill(input[cppnIdxBiasInput], 1); // Bias.
+				}
+			}
+
+			/**
+			 * Remove all queries from this batch.
+			 */
+			public void clear() {
+				size = 0;
+			}
+
+			/**
+			 * @return The number of queries in this batch.
+			 */
+			public int size() {
+				return size;
+			}
+
+			/**
+			 * @return The maximum number of queries this batch can hold.
+			 */
+			public int capacity() {
+				return capacity;
+			}
+
+			/**
+			 * Add a query with the given (already translated) coordinates. If the z coordinates are not required they
+			 * will be ignored. The derived inputs are calculated in the same way as in {@link CPPN#query()}.
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			protected int addTranslated(double sx, double sy, double sz, double tx, double ty, double tz) {
+				int i = addCoordinates(sx, sy, sz, tx, ty, tz);
+				synapseLength[i] = -1;
+				if (includeDelta || leoThresholdFactorDistance) {
+					double dx = 0, dy = 0, dz = 0;
+					dx = input[cppnIdxSX][i] - input[cppnIdxTX][i];
+					dy = input[cppnIdxSY][i] - input[cppnIdxTY][i];
+					dz = cppnIdxDZ != -1 ? input[cppnIdxSZ][i] - input[cppnIdxTZ][i] : 0;
+
+					if (leoThresholdFactorDistance) {
+						synapseLength[i] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+					}
+
+					if (includeDelta) {
+						input[cppnIdxDX][i] = dx;
+						input[cppnIdxDY][i] = dy;
+						if (cppnIdxDZ != -1) {
+							input[cppnIdxDZ][i] = dz;
+						}
+					}
+				}
+				if (includeAngle) {
+					double angle = Math.atan2(input[cppnIdxSY][i] - input[cppnIdxTY][i], input[cppnIdxSX][i] - input[cppnIdxTX][i]);
+					angle /= 2 * Math.PI;
+					if (angle < 0)
+						angle += 1;
+					input[cppnIdxAn][i] = angle;
+				}
+				return i;
+			}
+
+			/**
+			 * Add a query with the given (already translated) coordinates without setting the derived inputs.
+			 */
+			private int addCoordinates(double sx, double sy, double sz, double tx, double ty, double tz) {
+				if (size == capacity) {
+					throw new IllegalStateException("CPPN query batch is full (capacity is " + capacity + ").");
+				}
+				input[cppnIdxSX][size] = sx;
+				input[cppnIdxSY][size] = sy;
+				if (cppnIdxSZ != -1) {
+					input[cppnIdxSZ][size] = sz;
+				}
+				input[cppnIdxTX][size] = tx;
+				input[cppnIdxTY][size] = ty;
+				if (cppnIdxTZ != -1) {
+					input[cppnIdxTZ][size] = tz;
+				}
+				return size++;
+			}
+
+			/**
+			 * Copy the derived inputs for the given range of entries in a layer pair table to the given range of
+			 * queries in this batch.
+			 */
+			private void copyDerived(SubstrateGeometry.LayerPair pair, int pairIndex, int batchIndex, int count) {
+				if (pair.dx != null) {
+					System.arraycopy(pair.dx, pairIndex, input[cppnIdxDX], batchIndex, count);
+					System.arraycopy(pair.dy, pairIndex, input[cppnIdxDY], batchIndex, count);
+					if (pair.dz != null) {
+						System.arraycopy(pair.dz, pairIndex, input[cppnIdxDZ], batchIndex, count);
+					}
+				}
+				if (pair.angle != null) {
+					System.arraycopy(pair.angle, pairIndex, input[cppnIdxAn], batchIndex, count);
+				}
+				if (pair.length != null) {
+					System.arraycopy(pair.length, pairIndex, synapseLength, batchIndex, count);
+				} else {
+					Arrays.fill(synapseLength, batchIndex, batchIndex + count, -1);
+				}
+			}
+
+			/**
+			 * Add a query with the given source and target coordinates in the range [0, 1] (see
+			 * {@link CPPN#setSourceCoordinates(double, double, double)}).
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			public int add(double sx, double sy, double sz, double tx, double ty, double tz) {
+				return addTranslated(rangeX.translateFromUnit(sx), rangeY.translateFromUnit(sy), rangeZ.translateFromUnit(sz), rangeX.translateFromUnit(tx), rangeY.translateFromUnit(ty), rangeZ.translateFromUnit(tz));
+			}
+
+			/**
+			 * Add a query with the given source and target coordinates in the range [0, 1] (see
+			 * {@link CPPN#setSourceCoordinates(Point)}).
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			public int add(Point source, Point target) {
+				return add(source.x, source.y, source.z, target.x, target.y, target.z);
+			}
+
+			/**
+			 * Add a query for the given source and target grid indices (see
+			 * {@link CPPN#setSourceCoordinatesFromGridIndices(int, int, int)}).
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			public int addWithGridIndices(int sx, int sy, int sz, int tx, int ty, int tz) {
+				if (depth == 1) {
+					sz = 0;
+					tz = 0;
+				}
+				int si = geometry.getIndex(sx, sy, sz), ti = geometry.getIndex(tx, ty, tz);
+				SubstrateGeometry.LayerPair pair = si != -1 && ti != -1 ? geometry.getLayerPair(sz, tz) : null;
+				if (pair == null) {
+					Point p = getCoordinatesForGridIndices(sx, sy, sz, tempPoint);
+					double x = p.x, y = p.y, z = p.z;
+					p = getCoordinatesForGridIndices(tx, ty, tz, tempPoint);
+					return addTranslated(x, y, z, p.x, p.y, p.z);
+				}
+				int i = addCoordinates(geometry.x[sz][si], geometry.y[sz][si], geometry.z[sz][si], geometry.x[tz][ti], geometry.y[tz][ti], geometry.z[tz][ti]);
+				copyDerived(pair, ti * pair.sourceLayerSize + si, i, 1);
+				return i;
+			}
+
+			/**
+			 * Add a query from every neuron in the given source layer to the target neuron with the given grid
+			 * indices. The queries are added in the order of the source neuron grid indices, with the x index varying
+			 * fastest, so that the query for the source neuron at (sx, sy) has index
+			 * <code>start + sy * width[sourceLayer] + sx</code>, where start is the return value.
+			 * 
+			 * @return The index of the first query added to this batch.
+			 */
+			public int addLayerWithGridIndices(int sourceLayer, int tx, int ty, int tz) {
+				if (depth == 1) {
+					sourceLayer = 0;
+					tz = 0;
+				}
+				int ti = geometry.getIndex(tx, ty, tz);
+				SubstrateGeometry.LayerPair pair = ti != -1 ? geometry.getLayerPair(sourceLayer, tz) : null;
+				int start = size;
+				if (pair == null) {
+					for (int sy = 0; sy < height[sourceLayer]; sy++) {
+						for (int sx = 0; sx < width[sourceLayer]; sx++) {
+							addWithGridIndices(sx, sy, sourceLayer, tx, ty, tz);
+						}
+					}
+					return start;
+				}
+				int count = pair.sourceLayerSize;
+				if (size + count > capacity) {
+					throw new IllegalStateException("CPPN query batch is full (capacity is " + capacity + ").");
+				}
+				System.arraycopy(geometry.x[sourceLayer], 0, input[cppnIdxSX], start, count);
+				System.arraycopy(geometry.y[sourceLayer], 0, input[cppnIdxSY], start, count);
+				if (cppnIdxSZ != -1) {
+					System.arraycopy(geometry.z[sourceLayer], 0, input[cppnIdxSZ], start, count);
+				}
+				Arrays.fill(input[cppnIdxTX], start, start + count, geometry.x[tz][ti]);
+				Arrays.fill(input[cppnIdxTY], start, start + count, geometry.y[tz][ti]);
+				if (cppnIdxTZ != -1) {
+					Arrays.fill(input[cppnIdxTZ], start, start + count, geometry.z[tz][ti]);
+				}
+				copyDerived(pair, ti * count, start, count);
+				size += count;
+				return start;
+			}
+
+			/**
+			 * Add a query for the given target coordinates in the range [0, 1] with the source coordinates set to 0
+			 * (see {@link CPPN#resetSourceCoordinates()}). This is useful for querying neuron parameters.
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			public int addTarget(Point target) {
+				return addTranslated(0, 0, 0, rangeX.translateFromUnit(target.x), rangeY.translateFromUnit(target.y), rangeZ.translateFromUnit(target.z));
+			}
+
+			/**
+			 * Add a query for the given target grid indices with the source coordinates set to 0 (see
+			 * {@link CPPN#resetSourceCoordinates()}). This is useful for querying neuron parameters.
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			public int addTargetWithGridIndices(int tx, int ty, int tz) {
+				Point p = getCoordinatesForGridIndices(tx, ty, tz, tempPoint);
+				return addTranslated(0, 0, 0, p.x, p.y, p.z);
+			}
+
+			/**
+			 * Add a copy of query i in the given batch to this batch. The batches must have been created by CPPNs for
+			 * the same transcriber.
+			 * 
+			 * @return The index of the query in this batch.
+			 */
+			public int add(Batch from, int i) {
+				if (size == capacity) {
+					throw new IllegalStateException("CPPN query batch is full (capacity is " + capacity + ").");
+				}
+				for (int c = 0; c < cppnInputCount; c++) {
+					input[c][size] = from.input[c][i];
+				}
+				synapseLength[size] = from.synapseLength[i];
+				return size++;
+			}
+
+			/**
+			 * Get the (translated) source and target coordinates of query i, in the order sx, sy, sz, tx, ty, tz. The z
+			 * coordinates are 0 if they are not CPPN inputs.
+			 * 
+			 * @param coords Array of length at least 6 to put the coordinates in.
+			 */
+			public void getCoordinates(int i, double[] coords) {
+				coords[0] = input[cppnIdxSX][i];
+				coords[1] = input[cppnIdxSY][i];
+				coords[2] = cppnIdxSZ != -1 ? input[cppnIdxSZ][i] : 0;
+				coords[3] = input[cppnIdxTX][i];
+				coords[4] = input[cppnIdxTY][i];
+				coords[5] = cppnIdxTZ != -1 ? input[cppnIdxTZ][i] : 0;
+			}
+
+			/**
+			 * Copy the values of all CPPN outputs for query i to the given array, starting at the given offset.
+			 */
+			public void copyOutputs(int i, double[] dest, int offset) {
+				for (int o = 0; o < output.length; o++) {
+					dest[offset + o] = output[o][i];
+				}
+			}
+
+			/**
+			 * Set the values of all CPPN outputs for query i from the given array, starting at the given offset. This
+			 * allows results obtained elsewhere (for example from a cache) to be used instead of querying the CPPN.
+			 */
+			public void setOutputs(int i, double[] src, int offset) {
+				for (int o = 0; o < output.length; o++) {
+					output[o][i] = src[offset + o];
+				}
+			}
+
+			/**
+			 * Get the raw values of a CPPN output for all queries in this batch. The returned array should not be
+			 * modified, and its length may be greater than {@link #size()}.
+			 */
+			public double[] getOutputs(int index) {
+				return output[index];
+			}
+
+			/**
+			 * Get the value of the output with the given index for query i.
+			 */
+			public double getOutput(int i, int index) {
+				return output[index][i];
+			}
+
+			/**
+			 * Get the value of the output with the given index for query i, transformed to be within the specified
+			 * range and optionally with a threshold applied.
+			 * 
+			 * @see CPPN#getRangedOutput(int, double, double, double, double)
+			 */
+			public double getRangedOutput(int i, int index, double minValue, double maxValue, double valueRange, double threshold) {
+				return getRangedValue(output[index][i], minValue, maxValue, valueRange, threshold);
+			}
+
+			/**
+			 * @see CPPN#getWeight()
+			 */
+			public double getWeight(int i) {
+				return output[cppnIdxWeight[0]][i];
+			}
+
+			/**
+			 * @see CPPN#getWeight(int)
+			 */
+			public double getWeight(int i, int index) {
+				return output[cppnIdxWeight[index]][i];
+			}
+
+			/**
+			 * @see CPPN#getRangedWeight(int)
+			 */
+			public double getRangedWeight(int i, int index) {
+				return getRangedOutput(i, cppnIdxWeight[index], connectionWeightMin, connectionWeightMax, connectionWeightRange, connectionExprThresh);
+			}
+
+			/**
+			 * @see CPPN#getBiasWeight(int)
+			 */
+			public double getBiasWeight(int i, int index) {
+				return output[cppnIdxBias[index]][i];
+			}
+
+			/**
+			 * @see CPPN#getRangedBiasWeight(int)
+			 */
+			public double getRangedBiasWeight(int i, int index) {
+				return getRangedOutput(i, cppnIdxBias[index], connectionWeightMin, connectionWeightMax, connectionWeightRange, connectionExprThresh);
+			}
+
+			/**
+			 * @see CPPN#getLEO()
+			 */
+			public boolean getLEO(int i) {
+				return getLEO(i, 0);
+			}
+
+			/**
+			 * @see CPPN#getLEO(int)
+			 */
+			public boolean getLEO(int i, int index) {
+				if (!enableLEO) return true;
+				double direction = cppnIdxSZ != -1 ? (input[cppnIdxTZ][i] - input[cppnIdxSZ][i]) : 1;
+				return isLEOExpressed(output[cppnIdxLEO[index]][i], direction, synapseLength[i]);
+			}
+
+			/**
+			 * @see CPPN#getNEO(int)
+			 */
+			public boolean getNEO(int i, int index) {
+				return !enableNEO || output[cppnIdxNEO[index]][i] > neoThreshold;
+			}
+
+			/**
+			 * @see CPPN#getSynapseLength()
+			 */
+			public double getSynapseLength(int i) {
+				if (synapseLength[i] == -1) {
+					double dx = input[cppnIdxSX][i] - input[cppnIdxTX][i];
+					double dy = input[cppnIdxSY][i] - input[cppnIdxTY][i];
+					double dz = cppnIdxDZ != -1 ? input[cppnIdxSZ][i] - input[cppnIdxTZ][i] : 0;
+					synapseLength[i] = Math.sqrt(dx * dx + dy * dy + dz * dz);
+				}
+				return synapseLength[i];
+			}
+
+			/**
+			 * @see CPPN#getSelectorValue(int[])
+			 */
+			public int getSelectorValue(int i, int[] indices) {
+				if (indices.length > 1) {
+					int hi = 0;
+					for (int k = 1; k < indices.length; k++)
+						if (output[indices[k]][i] > output[indices[hi]][i])
+							hi = k;
+					return hi;
+				}
+				return getBinarySelectorValue(output[indices[0]][i]);
+			}
+
+			/**
+			 * @see CPPN#getNeuronTypeIndex()
+			 */
+			public int getNeuronTypeIndex(int i) {
+				return neuronModelTypeCount > 1 ? getSelectorValue(i, cppnIDXNeuronTypeSelector) : 0;
+			}
+
+			/**
+			 * @see CPPN#getSynapseTypeIndex()
+			 */
+			public int getSynapseTypeIndex(int i) {
+				return synapseModelTypeCount > 1 ? getSelectorValue(i, cppnIDXSynapseTypeSelector) : 0;
+			}
+
+			/**
+			 * @see CPPN#getNeuronParamClassIndex()
+			 */
+			public int getNeuronParamClassIndex(int i) {
+				return neuronModelParamClassCount > 1 ? getSelectorValue(i, cppnIDXNeuronParamClassSelector) : 0;
+			}
+
+			/**
+			 * @see CPPN#getSynapseParamClassIndex()
+			 */
+			public int getSynapseParamClassIndex(int i) {
+				return synapseModelParamClassCount > 1 ? getSelectorValue(i, cppnIDXSynapseParamClassSelector) : 0;
+			}
+
+			/**
+			 * Load the coordinates and outputs of query i into the CPPN this batch belongs to, so that the get methods
+			 * of the CPPN return the values for that query. This is useful for passing results to methods that accept
+			 * a CPPN, for example {@link HyperNEATTranscriberBainBase#setSynapseParameters}.
+			 */
+			public void select(int i) {
+				cppnInput[cppnIdxSX] = input[cppnIdxSX][i];
+				cppnInput[cppnIdxSY] = input[cppnIdxSY][i];
+				cppnInput[cppnIdxTX] = input[cppnIdxTX][i];
+				cppnInput[cppnIdxTY] = input[cppnIdxTY][i];
+				if (cppnIdxSZ != -1)
+					cppnInput[cppnIdxSZ] = input[cppnIdxSZ][i];
+				if (cppnIdxTZ != -1)
+					cppnInput[cppnIdxTZ] = input[cppnIdxTZ][i];
+				if (cppnOutput == null)
+					cppnOutput = new double[cppnOutputCount];
+				for (int o = 0; o < cppnOutputCount; o++) {
+					cppnOutput[o] = output[o][i];
+				}
+				CPPN.this.synapseLength = synapseLength[i];
+			}
+		}
 	}
 
 	/**
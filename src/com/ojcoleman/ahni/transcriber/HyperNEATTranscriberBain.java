@@ -11,12 +11,16 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
 
 import com.ojcoleman.bain.NeuralNetwork;
 import com.ojcoleman.bain.base.ComponentConfiguration;
 import com.ojcoleman.bain.base.NeuronCollection;
 import com.ojcoleman.bain.base.SynapseCollection;
 import com.ojcoleman.bain.base.SynapseConfiguration;
+import com.ojcoleman.bain.synapse.rate.FixedSynapseCollection;
 
 import org.apache.log4j.Logger;
 import org.jgapcustomised.*;
@@ -26,7 +30,9 @@ import com.anji.integration.Transcriber;
 import com.anji.integration.TranscriberException;
 import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
 import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.nn.BainExecutionModeSelector;
 import com.ojcoleman.ahni.nn.BainNN;
+import com.ojcoleman.ahni.nn.NetworkAnalysis;
 import com.ojcoleman.ahni.util.ArrayUtil;
 import com.ojcoleman.ahni.util.Point;
 
@@ -49,6 +55,19 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 	 * network is used for any given network.
 	 */
 	public static final String SUBSTRATE_MAX_RECURRENT_CYCLE = "ann.transcriber.bain.maxrecurrentcyclesearchlength";
+	/**
+	 * The number of threads used to construct the synapses of a single substrate. The rows of target neurons are
+	 * split amongst the threads of a pool shared by all transcriptions, each thread using its own copy of the CPPN.
+	 * The resulting network is identical to that produced by a sequential build. Parallel construction is not used if
+	 * synapse parameters or types are enabled (as setting these is not thread-safe). This is useful for very large
+	 * substrates where transcription of a single individual takes longer than evaluating it. Default is 1 (disabled).
+	 */
+	public static final String SUBSTRATE_PARALLEL_THREADS = "ann.transcriber.bain.parallel.threads";
+	/**
+	 * The minimum number of synapses in the substrate for parallel construction to be used, see
+	 * {@link #SUBSTRATE_PARALLEL_THREADS}. Default is 1000000.
+	 */
+	public static final String SUBSTRATE_PARALLEL_MIN_SYNAPSES = "ann.transcriber.bain.parallel.minsynapses";
 
 	private final static Logger logger = Logger.getLogger(HyperNEATTranscriberBain.class);
 	private final static DecimalFormat nf = new DecimalFormat(" 0.00;-0.00");
@@ -58,6 +77,9 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 	// ff = feed-forward
 	private int[] neuronLayerSize, bainIndexForNeuronLayer, ffSynapseLayerSize, bainIndexForFFSynapseLayer;
 	private int neuronCount, synapseCount;
+	private int parallelMinSynapses = 1000000;
+	private ForkJoinPool parallelPool;
+	private boolean prune = true;
 	
 
 	public HyperNEATTranscriberBain() {
@@ -79,6 +101,24 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 			bainIndexForFFSynapseLayer = new int[depth - 1];
 		}
 		resize(width, height, -1); // Initialise above arrays.
+		
+		// Synapse parameters may allow a synapse with zero efficacy to become active, so only prune if these are disabled.
+		prune = props.getBooleanProperty(BainNN.SUBSTRATE_PRUNE, prune) && !synapseParamsEnabled && !synapseTypesEnabled;
+		
+		int parallelThreads = props.getIntProperty(SUBSTRATE_PARALLEL_THREADS, 1);
+		parallelMinSynapses = props.getIntProperty(SUBSTRATE_PARALLEL_MIN_SYNAPSES, parallelMinSynapses);
+		if (parallelThreads > 1) {
+			parallelPool = new ForkJoinPool(parallelThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+					t.setName("Substrate builder " + t.getPoolIndex());
+					t.setDaemon(true);
+					return t;
+				}
+			}, null, false);
+			logger.info("Substrate synapses will be constructed in parallel with " + parallelThreads + " threads for substrates with at least " + parallelMinSynapses + " synapses.");
+		}
 	}
 
 	/**
@@ -205,39 +245,45 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 			}
 		}
 		
-		double[] synapseWeights = synapses.getEfficacies();
-		double sumOfSquaredConnectionLengths = 0;
-		
-		int synapseIndex = 0;
+		// Queries are performed in batches of up to one layer at a time.
+		CPPN.Batch batch = cppn.createBatch(getMaxLayerSize());
 		
 		// query CPPN for substrate neuron parameters.
 		boolean[] neuronDisabled = new boolean[neuronCount];
 		for (int z = 0; z < depth; z++) {
+			batch.clear();
 			for (int y = 0; y < height[z]; y++) {
 				for (int x = 0; x < width[z]; x++) {
-					cppn.resetSourceCoordinates();
-					cppn.setTargetCoordinatesFromGridIndices(x, y, z);
-					cppn.query();
-					
+					batch.addTargetWithGridIndices(x, y, z);
+				}
+			}
+			cppn.query(batch);
+			
+			int i = 0;
+			for (int y = 0; y < height[z]; y++) {
+				for (int x = 0; x < width[z]; x++, i++) {
 					int bainNeuronIndex = getBainNeuronIndex(x, y, z);
 					int neuronType = 0;
 					if (neuronTypesEnabled) {
 						if (neuronModelParamClassCount > 0) {
-							int classIndex = cppn.getNeuronParamClassIndex();
+							int classIndex = batch.getNeuronParamClassIndex(i);
 							ComponentConfiguration c = neurons.getConfiguration(classIndex);
 							neuronType = (int) c.getParameterValue(neuronModelTypeParam);
 						}
 						else {
-							neuronType = cppn.getNeuronTypeIndex();
+							neuronType = batch.getNeuronTypeIndex(i);
 						}
 					}
 
 					int outputIndex = layerEncodingIsInput ? neuronType : z;
 					
-					setNeuronParameters(neurons, bainNeuronIndex, cppn, createNewSubstrate && neuronModelParamClassCount == 0);
+					if (enableBias || neuronTypesEnabled || neuronParamsEnabled) {
+						batch.select(i);
+						setNeuronParameters(neurons, bainNeuronIndex, cppn, createNewSubstrate && neuronModelParamClassCount == 0);
+					}
 					
 					// Only allow disabling hidden neurons.
-					neuronDisabled[bainNeuronIndex] = z > 0 && z < depth-1 && !cppn.getNEO(outputIndex);
+					neuronDisabled[bainNeuronIndex] = z > 0 && z < depth-1 && !batch.getNEO(i, outputIndex);
 					
 					// If substrate is null then this is set below after we create the initial substrate.
 					if (substrate != null) {
@@ -248,72 +294,40 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		}
 		
 		// Query CPPN for substrate synapse parameters.
-		// Start at tz=1: don't allow connections to inputs.
-		for (int tz = 1; tz < depth; tz++) {
-			for (int ty = 0; ty < height[tz]; ty++) {
-				for (int tx = 0; tx < width[tz]; tx++) {
-					int bainNeuronIndexTarget = getBainNeuronIndex(tx, ty, tz);
-					
-					cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
-					
-					// Iteration over layers for the source neuron is only used for recurrent networks.
-					for (int sz = (feedForward ? tz - 1 : 0); sz < (feedForward ? tz : depth); sz++) {
-						for (int sy = 0; sy < height[sz]; sy++) {
-							for (int sx = 0; sx < width[sz]; sx++) {
-								cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
-								cppn.query();
-								int bainNeuronIndexSource = getBainNeuronIndex(sx, sy, sz);
-								int synapseType = 0;
-								if (synapseTypesEnabled) {
-									if (synapseModelParamClassCount > 0) {
-										int classIndex = cppn.getSynapseParamClassIndex();
+		// The synapses are constructed a row of target neurons at a time. Start at tz=1: don't allow connections to inputs.
+		SynapseRows rows = new SynapseRows();
+		boolean addNewSynapseConfig = createNewSubstrate && synapseModelParamClassCount == 0;
+		if (parallelPool != null && synapseCount >= parallelMinSynapses && !synapseParamsEnabled && !synapseTypesEnabled && rows.count > 1) {
+			int grain = Math.max(1, rows.count / (parallelPool.getParallelism() * 4));
+			try {
+				parallelPool.invoke(new SynapseRowTask(genotype, cppn, rows, synapses, neuronDisabled, addNewSynapseConfig, 0, rows.count, grain));
+			} catch (RuntimeException e) {
+				if (e.getCause() instanceof TranscriberException) {
+					throw (TranscriberException) e.getCause();
+				}
+				throw e;
+			}
+		} else {
+			newSynapses(cppn, batch, rows, synapses, neuronDisabled, addNewSynapseConfig, 0, rows.count);
+		}
+		// Sum in row order so that the result does not depend on how the rows were divided amongst threads.
+		double sumOfSquaredConnectionLengths = 0;
+		for (int r = 0; r < rows.count; r++) {
+			sumOfSquaredConnectionLengths += rows.sumOfSquaredConnectionLengths[r];
+		}
 
-										ComponentConfiguration c = synapses.getConfiguration(classIndex);
-										synapseType = (int) c.getParameterValue(synapseModelTypeParam);
-									}
-									else {
-										synapseType = cppn.getSynapseTypeIndex();
-									}
-								}
-																
-								int outputIndex = layerEncodingIsInput ? synapseType : sz;
-								
-								synapses.setPreAndPostNeurons(synapseIndex, bainNeuronIndexSource, bainNeuronIndexTarget);
-								
-								// Synapse is disabled if the source and target are the same neuron, 
-								// or source or target neurons are disabled, or if the LEO specifies it.
-								boolean disabled = tz==sz && ty==sy && tx==sx || neuronDisabled[bainNeuronIndexTarget] || neuronDisabled[bainNeuronIndexSource] || !cppn.getLEO(outputIndex);
-								
-								// Determine weight for synapse from source to target.
-								synapseWeights[synapseIndex] = disabled ? 0 : cppn.getRangedWeight(outputIndex);
-								
-								// If we're not using LEO to explicitly enable synapses, then consider a synapse disabled if the weight is zero.
-								if (!enableLEO && synapseWeights[synapseIndex] == 0) {
-									disabled = true;
-								}
-								
-								setSynapseParameters(synapses, synapseIndex, cppn, disabled, createNewSubstrate && synapseModelParamClassCount == 0);
-								
-								if (!disabled) {
-									sumOfSquaredConnectionLengths += cppn.getSynapseLength() * cppn.getSynapseLength();
-								}
-								synapseIndex++;
-							} // sx
-						} // sy
-					} // sz
-				} // tx
-			} // ty
-		} // tz
+		// Remove synapses that can not influence the output from simulation calculations.
+		//synapses.compress();
+		if (prune && synapses.getClass() == FixedSynapseCollection.class) {
+			pruneSynapses(synapses);
+		}
 
 		synapses.setEfficaciesModified();
 		
-		// Remove unused synapses from simulation calculations.
-		//synapses.compress();
-		
+		// If pruning is enabled the number of synapses simulated may differ for each network.
+		Kernel.EXECUTION_MODE execMode = BainExecutionModeSelector.getExecutionMode(properties, neurons.getSize(), synapses.getSizePopulated());
 		if (createNewSubstrate) {
 			int simRes = properties.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
-			String execModeName = properties.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-			Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
 			NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
 			int[] outputDims = new int[] { width[depth - 1], height[depth - 1] };
 			int[] inputDims = new int[] { width[0], height[0] };
@@ -323,6 +337,7 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 			} catch (Exception e) {
 				throw new TranscriberException(e);
 			}
+			substrate.setConvergence(convergenceEpsilon, cycleStatistics);
 			if (recordCoords) {
 				substrate.enableCoords();
 			}
@@ -343,6 +358,7 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 			
 		} else {
 			substrate.setName("network " + genotype.getId());
+			substrate.getNeuralNetwork().setPreferredExecutionMode(execMode);
 			substrate.setStepsPerStepForNonLayeredFF();
 		}
 		
@@ -355,6 +371,216 @@ public class HyperNEATTranscriberBain extends HyperNEATTranscriberBainBase {
 		return substrate;
 	}
 
+	private int getMaxLayerSize() {
+		int maxLayerSize = 0;
+		for (int z = 0; z < depth; z++) {
+			maxLayerSize = Math.max(maxLayerSize, width[z] * height[z]);
+		}
+		return maxLayerSize;
+	}
+
+	/**
+	 * Set the pre and post neurons, weight and (if enabled) parameters of the synapses for the given range of rows
+	 * of target neurons. Only the synapses belonging to the given rows are modified, so disjoint ranges of rows may
+	 * be processed concurrently (if synapse parameters and types are disabled).
+	 */
+	private void newSynapses(CPPN cppn, CPPN.Batch batch, SynapseRows rows, SynapseCollection<?> synapses, boolean[] neuronDisabled, boolean addNewConfig, int startRow, int endRow) {
+		double[] synapseWeights = synapses.getEfficacies();
+		for (int r = startRow; r < endRow; r++) {
+			int tz = rows.layer[r];
+			int ty = rows.y[r];
+			int synapseIndex = rows.synapseIndex[r];
+			double sumOfSquaredConnectionLengths = 0;
+			for (int tx = 0; tx < width[tz]; tx++) {
+				int bainNeuronIndexTarget = getBainNeuronIndex(tx, ty, tz);
+				
+				// Iteration over layers for the source neuron is only used for recurrent networks.
+				for (int sz = (feedForward ? tz - 1 : 0); sz < (feedForward ? tz : depth); sz++) {
+					// Query the CPPN for all synapses from the source layer to the target neuron.
+					batch.clear();
+					batch.addLayerWithGridIndices(sz, tx, ty, tz);
+					cppn.query(batch);
+					
+					int i = 0;
+					for (int sy = 0; sy < height[sz]; sy++) {
+						for (int sx = 0; sx < width[sz]; sx++, i++) {
+							int bainNeuronIndexSource = getBainNeuronIndex(sx, sy, sz);
+							int synapseType = 0;
+							if (synapseTypesEnabled) {
+								if (synapseModelParamClassCount > 0) {
+									int classIndex = batch.getSynapseParamClassIndex(i);
+
+									ComponentConfiguration c = synapses.getConfiguration(classIndex);
+									synapseType = (int) c.getParameterValue(synapseModelTypeParam);
+								}
+								else {
+									synapseType = batch.getSynapseTypeIndex(i);
+								}
+							}
+															
+							int outputIndex = layerEncodingIsInput ? synapseType : sz;
+							
+							synapses.setPreAndPostNeurons(synapseIndex, bainNeuronIndexSource, bainNeuronIndexTarget);
+							
+							// Synapse is disabled if the source and target are the same neuron, 
+							// or source or target neurons are disabled, or if the LEO specifies it.
+							boolean disabled = tz==sz && ty==sy && tx==sx || neuronDisabled[bainNeuronIndexTarget] || neuronDisabled[bainNeuronIndexSource] || !batch.getLEO(i, outputIndex);
+							
+							// Determine weight for synapse from source to target.
+							synapseWeights[synapseIndex] = disabled ? 0 : batch.getRangedWeight(i, outputIndex);
+							
+							// If we're not using LEO to explicitly enable synapses, then consider a synapse disabled if the weight is zero.
+							if (!enableLEO && synapseWeights[synapseIndex] == 0) {
+								disabled = true;
+							}
+							
+							if (synapseParamsEnabled || synapseTypesEnabled) {
+								batch.select(i);
+								setSynapseParameters(synapses, synapseIndex, cppn, disabled, addNewConfig);
+							}
+							
+							if (!disabled) {
+								sumOfSquaredConnectionLengths += batch.getSynapseLength(i) * batch.getSynapseLength(i);
+							}
+							synapseIndex++;
+						} // sx
+					} // sy
+				} // sz
+			} // tx
+			rows.sumOfSquaredConnectionLengths[r] = sumOfSquaredConnectionLengths;
+		}
+	}
+
+	/**
+	 * Move the synapses that are enabled and can influence the output of the network to the front of the synapse
+	 * collection and limit the simulation to these, see {@link BainNN#SUBSTRATE_PRUNE}. The relative order of the
+	 * synapses is preserved (unlike {@link SynapseCollection#compress()}), so the inputs to each neuron are summed in
+	 * the same order and the output of the network is unchanged. The remaining synapses are retained after the
+	 * simulated range.
+	 */
+	private void pruneSynapses(SynapseCollection<?> synapses) {
+		int size = synapses.getSize();
+		double[] efficacies = synapses.getEfficacies();
+		int[] pre = new int[size];
+		int[] post = new int[size];
+		for (int s = 0; s < size; s++) {
+			pre[s] = synapses.getPreNeuron(s);
+			post[s] = synapses.getPostNeuron(s);
+		}
+		NetworkAnalysis analysis = new NetworkAnalysis(neuronCount, neuronLayerSize[0], neuronLayerSize[depth - 1], pre, post, size, efficacies);
+		double[] weights = Arrays.copyOf(efficacies, size);
+		int live = 0, dead = analysis.getLiveSynapseCount();
+		for (int s = 0; s < size; s++) {
+			int target = analysis.isSynapseLive(s) ? live++ : dead++;
+			synapses.setPreAndPostNeurons(target, pre[s], post[s]);
+			efficacies[target] = weights[s];
+		}
+		// Bain requires at least one component to be simulated.
+		synapses.setSizePopulated(Math.max(1, live));
+	}
+
+	/**
+	 * The rows of target neurons in the substrate, see {@link HyperNEATTranscriberBain#newSynapses}. A row is
+	 * specified by the layer and y index of the target neurons in it.
+	 */
+	private class SynapseRows {
+		final int count;
+		final int[] layer, y;
+		/**
+		 * The index of the first synapse for each row in the synapse collection.
+		 */
+		final int[] synapseIndex;
+		/**
+		 * The sum of the squared lengths of the enabled synapses in each row.
+		 */
+		final double[] sumOfSquaredConnectionLengths;
+
+		SynapseRows() {
+			int c = 0;
+			for (int tz = 1; tz < depth; tz++) {
+				c += height[tz];
+			}
+			count = c;
+			layer = new int[count];
+			y = new int[count];
+			synapseIndex = new int[count];
+			sumOfSquaredConnectionLengths = new double[count];
+			int r = 0, si = 0;
+			for (int tz = 1; tz < depth; tz++) {
+				int sourceCount = 0;
+				for (int sz = (feedForward ? tz - 1 : 0); sz < (feedForward ? tz : depth); sz++) {
+					sourceCount += width[sz] * height[sz];
+				}
+				for (int ty = 0; ty < height[tz]; ty++, r++) {
+					layer[r] = tz;
+					y[r] = ty;
+					synapseIndex[r] = si;
+					si += width[tz] * sourceCount;
+				}
+			}
+			assert si == synapseCount;
+		}
+	}
+
+	/**
+	 * Constructs the synapses for a range of rows of target neurons, see {@link #SUBSTRATE_PARALLEL_THREADS}. The range
+	 * is split recursively down to the grain size, each sub-range then being processed with its own copy of the CPPN
+	 * (see {@link CPPN#copy(Chromosome)}).
+	 */
+	private class SynapseRowTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Chromosome genotype;
+		private final CPPN cppn;
+		private final SynapseRows rows;
+		private final SynapseCollection<?> synapses;
+		private final boolean[] neuronDisabled;
+		private final boolean addNewConfig;
+		private final int start;
+		private int end;
+		private final int grain;
+
+		SynapseRowTask(Chromosome genotype, CPPN cppn, SynapseRows rows, SynapseCollection<?> synapses, boolean[] neuronDisabled, boolean addNewConfig, int start, int end, int grain) {
+			this.genotype = genotype;
+			this.cppn = cppn;
+			this.rows = rows;
+			this.synapses = synapses;
+			this.neuronDisabled = neuronDisabled;
+			this.addNewConfig = addNewConfig;
+			this.start = start;
+			this.end = end;
+			this.grain = grain;
+		}
+
+		@Override
+		protected void compute() {
+			ArrayList<SynapseRowTask> forked = null;
+			while (end - start > grain) {
+				int mid = (start + end) >>> 1;
+				SynapseRowTask right = new SynapseRowTask(genotype, cppn, rows, synapses, neuronDisabled, addNewConfig, mid, end, grain);
+				right.fork();
+				if (forked == null) {
+					forked = new ArrayList<SynapseRowTask>();
+				}
+				forked.add(right);
+				end = mid;
+			}
+
+			try {
+				CPPN taskCPPN = cppn.copy(genotype);
+				newSynapses(taskCPPN, taskCPPN.createBatch(getMaxLayerSize()), rows, synapses, neuronDisabled, addNewConfig, start, end);
+			} catch (TranscriberException e) {
+				throw new RuntimeException(e);
+			}
+
+			if (forked != null) {
+				// Join most recently forked (smallest) tasks first, these are the most likely to still be in our queue.
+				for (int i = forked.size() - 1; i >= 0; i--) {
+					forked.get(i).join();
+				}
+			}
+		}
+	}
+
 	@Override
 	public void resize(int[] width, int[] height, int connectionRange) {
 		this.width = width;
@@ -6,6 +6,8 @@ import com.ojcoleman.bain.base.SynapseCollection;
 import com.ojcoleman.bain.base.SynapseConfiguration;
 import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 
+import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.nn.ActivationCycleStatistics;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.util.Point;
 
@@ -24,6 +26,26 @@ public abstract class HyperNEATTranscriberBainBase extends HyperNEATTranscriber<
 	 */ 
 	protected int synapseDisableParamClassIndex = -1;
 	
+	/**
+	 * The convergence threshold for recurrent substrates, see {@link BainNN#SUBSTRATE_CONVERGENCE_EPSILON}.
+	 */
+	protected double convergenceEpsilon;
+	
+	/**
+	 * Records the number of activation cycles performed by recurrent substrates if {@link #convergenceEpsilon} is
+	 * greater than 0, otherwise null.
+	 */
+	protected ActivationCycleStatistics cycleStatistics;
+	
+	@Override
+	public void init(Properties props) {
+		super.init(props);
+		convergenceEpsilon = props.getDoubleProperty(BainNN.SUBSTRATE_CONVERGENCE_EPSILON, 0);
+		if (convergenceEpsilon > 0) {
+			cycleStatistics = ActivationCycleStatistics.create(props, getClass().getSimpleName());
+		}
+	}
+	
 	/**
 	 * Set the parameters for a neuron, specifying the neuron coordinates directly (see
 	 * {@link HyperNEATTranscriber.CPPN#setTargetCoordinates(double, double, double)}).
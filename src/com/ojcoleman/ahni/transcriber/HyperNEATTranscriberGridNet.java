@@ -1,11 +1,13 @@
 package com.ojcoleman.ahni.transcriber;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
 import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 
 import org.apache.log4j.Logger;
 import org.jgapcustomised.*;
 
-import com.anji.integration.Activator;
 import com.anji.integration.ActivatorTranscriber;
 import com.anji.integration.AnjiActivator;
 import com.anji.integration.AnjiNetTranscriber;
@@ -28,13 +30,41 @@ import com.ojcoleman.ahni.nn.GridNet;
  * 
  * @author Oliver Coleman
  */
-public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
+public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber<GridNet> {
 	public static final String HYPERNEAT_ACTIVATION_FUNCTION_KEY = "ann.hyperneat.activation.function";
+	/**
+	 * If true then feed-forward substrate networks only evaluate connections with a non-zero weight, skipping
+	 * connections which are not expressed (see {@link GridNet#setSparse(boolean)}). This is faster when most
+	 * connections are not expressed. Default is false.
+	 */
+	public static final String SPARSE_KEY = "ann.transcriber.gridnet.sparse";
+	/**
+	 * The number of threads used to update the neurons of each layer of a substrate network. The rows of a layer are
+	 * split amongst the threads of a pool shared by all substrates; the output does not depend on the number of
+	 * threads. This is useful for very large substrates where activating a single network is slow. Default is 1
+	 * (disabled).
+	 */
+	public static final String PARALLEL_THREADS_KEY = "ann.transcriber.gridnet.parallel.threads";
+	/**
+	 * The minimum number of neurons in a layer for the update of the layer to be split across threads, see
+	 * {@link #PARALLEL_THREADS_KEY}. Default is 10000.
+	 */
+	public static final String PARALLEL_MIN_NEURONS_KEY = "ann.transcriber.gridnet.parallel.minneurons";
+	/**
+	 * If true then the connection weights of substrate networks are stored in single precision, halving the memory
+	 * bandwidth required to activate large substrates (see {@link GridNet#setSinglePrecision(boolean)}). Activation
+	 * values are still computed and provided in double precision. Default is false.
+	 */
+	public static final String SINGLE_PRECISION_KEY = "ann.transcriber.gridnet.singleprecision";
 
 	private final static Logger logger = Logger.getLogger(HyperNEATTranscriberGridNet.class);
 
 	private ActivationFunction activationFunction;
 	private boolean layerEncodingIsInput = false;
+	private boolean sparse;
+	private boolean singlePrecision;
+	private int parallelMinNeurons = 10000;
+	private ForkJoinPool parallelPool;
 
 	public HyperNEATTranscriberGridNet() {
 	}
@@ -46,6 +76,23 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 	public void init(com.ojcoleman.ahni.hyperneat.Properties props) {
 		super.init(props);
 		activationFunction = ActivationFunctionFactory.getInstance().get(props.getProperty(HYPERNEAT_ACTIVATION_FUNCTION_KEY));
+		sparse = props.getBooleanProperty(SPARSE_KEY, false);
+		singlePrecision = props.getBooleanProperty(SINGLE_PRECISION_KEY, false);
+
+		int parallelThreads = props.getIntProperty(PARALLEL_THREADS_KEY, 1);
+		parallelMinNeurons = props.getIntProperty(PARALLEL_MIN_NEURONS_KEY, parallelMinNeurons);
+		if (parallelThreads > 1) {
+			parallelPool = new ForkJoinPool(parallelThreads, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+				@Override
+				public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+					ForkJoinWorkerThread t = new ForkJoinWorkerThread(pool) {};
+					t.setName("GridNet activator " + t.getPoolIndex());
+					t.setDaemon(true);
+					return t;
+				}
+			}, null, false);
+			logger.info("Substrate layers will be updated in parallel with " + parallelThreads + " threads for layers with at least " + parallelMinNeurons + " neurons.");
+		}
 	}
 
 	/**
@@ -55,8 +102,8 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 		return newGridNet(genotype, null);
 	}
 
-	public GridNet transcribe(Chromosome genotype, Activator substrate) throws TranscriberException {
-		return newGridNet(genotype, (GridNet) substrate);
+	public GridNet transcribe(Chromosome genotype, GridNet substrate) throws TranscriberException {
+		return newGridNet(genotype, substrate);
 	}
 
 	/**
@@ -71,153 +118,92 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 
 		int connectionRange = this.connectionRange == -1 ? Integer.MAX_VALUE / 4 : this.connectionRange;
 
-		double[][][][][][] weights;
-		double[][][] bias;
 		boolean createNewPhenotype = (phenotype == null);
+		
+		int maxLayerSize = 0;
+		for (int l = 0; l < depth; l++) {
+			maxLayerSize = Math.max(maxLayerSize, width[l] * height[l]);
+		}
 
 		if (createNewPhenotype) {
-			bias = new double[depth - 1][][];
-			for (int l = 1; l < depth; l++)
-				bias[l - 1] = new double[height[l]][width[l]];
+			int[][] layerDimensions = new int[2][depth];
+			for (int l = 0; l < depth; l++) {
+				layerDimensions[0][l] = width[l];
+				layerDimensions[1][l] = height[l];
+			}
+			phenotype = new GridNet(layerDimensions, connectionRange, feedForward, activationFunction, cyclesPerStep, "network " + genotype.getId());
+			phenotype.setParallel(parallelPool, parallelMinNeurons);
+			phenotype.setSinglePrecision(singlePrecision);
 			// logger.info("Creating new substrate.");
 		} else {
-			bias = phenotype.getBias();
+			phenotype.setName("network " + genotype.getId());
 		}
 
 		if (feedForward) {
-			if (createNewPhenotype) {
-				weights = new double[depth - 1][][][][][];
-				for (int l = 1; l < depth; l++)
-					weights[l - 1] = new double[height[l]][width[l]][1][][];
-			} else {
-				weights = phenotype.getWeights();
-			}
-
+			// The bias and all weights for a target neuron are queried in one batch.
+			CPPN.Batch batch = cppn.createBatch(maxLayerSize + 1);
+			
 			// query CPPN for substrate connection weights
 			for (int tz = 1; tz < depth; tz++) {
+				double[] w = phenotype.getWeightData(tz);
+				float[] wf = phenotype.getWeightDataFloat(tz);
+				double[] bias = phenotype.getBiasData(tz);
+				int cppnOutputIndex = layerEncodingIsInput ? 0 : tz-1;
 				for (int ty = 0; ty < height[tz]; ty++) {
 					for (int tx = 0; tx < width[tz]; tx++) {
-						cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
-
-						// bias
-						if (enableBias) {
-							cppn.setSourceCoordinatesFromGridIndices(tx, ty, tz);
-							cppn.query();
-							int cppnOutputIndex = layerEncodingIsInput ? 0 : tz-1;
-							bias[tz - 1][ty][tx] = cppn.getRangedBiasWeight(cppnOutputIndex);
-									
-							/* below now handled by getRangedBiasWeight
-							double biasVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, cppn.getBiasWeight(cppnOutputIndex)));
-							if (Math.abs(biasVal) > connectionExprThresh) {
-								if (biasVal > 0)
-									biasVal = (biasVal - connectionExprThresh) * (connectionWeightMax / (connectionWeightMax - connectionExprThresh));
-								else
-									biasVal = (biasVal + connectionExprThresh) * (connectionWeightMin / (connectionWeightMin + connectionExprThresh));
-
-								bias[tz - 1][ty][tx] = biasVal;
-							} else {
-								bias[tz - 1][ty][tx] = 0;
-							}
-							*/
-						}
-
 						// calculate dimensions of this weight target matrix
 						// (bounded by grid edges)
 						int dy = Math.min(height[tz - 1] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
 						int dx = Math.min(width[tz - 1] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
-
-						// if (createNewPhenotype)
-						// System.out.println(tz + "," + ty + "," + tx + "  dy = " + dy + "  dx = " + dx);
-
-						if (createNewPhenotype)
-							weights[tz - 1][ty][tx][0] = new double[dy][dx];
-						double[][] w = weights[tz - 1][ty][tx][0];
-
-						// System.out.println("\tsy0 = " + Math.max(0,
-						// ty-connectionRange) + ", sx0 = " + Math.max(0,
-						// tx-connectionRange));
-
-						// for each connection to zyx
-						// w{y,x} is index into weight matrix
-						// s{y,x} is index of source neuron
+						
+						batch.clear();
+						if (enableBias) {
+							batch.addWithGridIndices(tx, ty, tz, tx, ty, tz);
+						}
 						for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
 							for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
-								cppn.setSourceCoordinatesFromGridIndices(sx, sy, tz-1);
-
-								cppn.query();
+								batch.addWithGridIndices(sx, sy, tz-1, tx, ty, tz);
+							}
+						}
+						cppn.query(batch);
+						int i = 0;
+						
+						// bias
+						if (enableBias) {
+							bias[ty * width[tz] + tx] = batch.getRangedBiasWeight(i++, cppnOutputIndex);
+						}
 
-								// Determine weight for synapse from source to target.
-								int cppnOutputIndex = layerEncodingIsInput ? 0 : tz-1;
-								
-								w[wy][wx] = cppn.getLEO(cppnOutputIndex) ? cppn.getRangedWeight(cppnOutputIndex) : 0;
-								
-								/* below now handled by getRangedWeight
-								double weightVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, cppn.getWeight(cppnOutputIndex)));
-								
-								if (enableLEO) {
-									weightVal = cppn.getLEO(cppnOutputIndex) ? weightVal : 0; 
-								}
-								// Otherwise use conventional thresholding.
-								else if (Math.abs(weightVal) > connectionExprThresh) {
-									if (weightVal > 0)
-										weightVal = (weightVal - connectionExprThresh) * (connectionWeightMax / (connectionWeightMax - connectionExprThresh));
-									else
-										weightVal = (weightVal + connectionExprThresh) * (connectionWeightMin / (connectionWeightMin + connectionExprThresh));
-								}
-								else {
-									weightVal = 0;
-								}
-								w[wy][wx] = weightVal;
-								*/
-								// System.out.print("\t" + w[wy][wx]);
+						// for each connection to zyx, the weights are consecutive in w starting at o
+						for (int o = phenotype.getWeightOffset(tz, ty, tx), end = o + dy * dx; o < end; o++, i++) {
+							// Determine weight for synapse from source to target.
+							double weightVal = batch.getLEO(i, cppnOutputIndex) ? batch.getRangedWeight(i, cppnOutputIndex) : 0;
+							if (wf == null) {
+								w[o] = weightVal;
+							} else {
+								wf[o] = (float) weightVal;
 							}
-							// System.out.println();
 						}
-						// System.out.println();
 					}
 				}
-
-				// System.out.println();
 			}
-			// System.out.println();
-			// System.out.println();
 
-			int[][][] connectionMaxRanges = new int[depth - 1][3][2];
-			for (int l = 0; l < depth - 1; l++) {
-				connectionMaxRanges[l][0][0] = -1; // no connections to previous or own layer
-				connectionMaxRanges[l][0][1] = 1;
-				connectionMaxRanges[l][1][0] = connectionRange;
-				connectionMaxRanges[l][1][1] = connectionRange;
-				connectionMaxRanges[l][2][0] = connectionRange;
-				connectionMaxRanges[l][2][1] = connectionRange;
+			if (sparse) {
+				phenotype.setSparse(true);
 			}
-			int[][] layerDimensions = new int[2][depth];
-			for (int l = 0; l < depth; l++) {
-				layerDimensions[0][l] = width[l];
-				layerDimensions[1][l] = height[l];
-			}
-
 			if (createNewPhenotype) {
-				phenotype = new GridNet(connectionMaxRanges, layerDimensions, weights, bias, activationFunction, 1, "network " + genotype.getId());
 				logger.info("New substrate has input size " + width[0] + "x" + height[0] + " and " + phenotype.getConnectionCount(true) + " connections.");
-			} else {
-				phenotype.setName("network " + genotype.getId());
 			}
 		} else { // RECURRENT
-			if (createNewPhenotype) {
-				weights = new double[depth - 1][][][][][];
-				for (int l = 1; l < depth; l++)
-					weights[l - 1] = new double[height[l]][width[l]][][][];
-			} else {
-				weights = phenotype.getWeights();
-			}
-
+			// All weights for a target neuron are queried in one batch.
+			CPPN.Batch batch = cppn.createBatch((depth - 1) * maxLayerSize);
+			
 			// query CPPN for substrate connection weights
 			for (int tz = 1; tz < depth; tz++) {
+				double[] w = phenotype.getWeightData(tz);
+				float[] wf = phenotype.getWeightDataFloat(tz);
+				double[] bias = phenotype.getBiasData(tz);
 				for (int ty = 0; ty < height[tz]; ty++) {
 					for (int tx = 0; tx < width[tz]; tx++) {
-						cppn.setTargetCoordinatesFromGridIndices(tx, ty, tz);
-
 						// calculate dimensions of this weight matrix (bounded by grid edges)
 						int dz = Math.min(depth - 1, tz + connectionRange) - Math.max(1, tz - connectionRange) + 1; // no
 																													// connections
@@ -227,70 +213,56 @@ public class HyperNEATTranscriberGridNet extends HyperNEATTranscriber {
 						int dy = Math.min(height[tz] - 1, ty + connectionRange) - Math.max(0, ty - connectionRange) + 1;
 						int dx = Math.min(width[tz] - 1, tx + connectionRange) - Math.max(0, tx - connectionRange) + 1;
 
-						// System.out.println(z + "," + y + "," + x + "  dz = "
-						// + dz + "  dy = " + dy + "  dx = " + dx);
-
-						weights[tz - 1][ty][tx] = new double[dz][dy][dx];
-						double[][][] w = weights[tz - 1][ty][tx];
-
-						// for each connection to t{zyx}
-						// w{z,y,x} is index into weight matrix
-						// s{z,y,x} is index of source neuron
+						batch.clear();
 						for (int wz = 0, sz = Math.max(1, tz - connectionRange); wz < dz; wz++, sz++) {
 							for (int wy = 0, sy = Math.max(0, ty - connectionRange); wy < dy; wy++, sy++) {
 								for (int wx = 0, sx = Math.max(0, tx - connectionRange); wx < dx; wx++, sx++) {
-									cppn.setSourceCoordinatesFromGridIndices(sx, sy, sz);
-
-									cppn.query();
-
-									// weight
-									double weightVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, cppn.getWeight()));
-									if (Math.abs(weightVal) > connectionExprThresh) {
-										if (weightVal > 0)
-											weightVal = (weightVal - connectionExprThresh) * (connectionWeightMax / (connectionWeightMax - connectionExprThresh));
-										else
-											weightVal = (weightVal + connectionExprThresh) * (connectionWeightMin / (connectionWeightMin + connectionExprThresh));
-
-										w[wz][wy][wx] = weightVal;
-									} else {
-										w[wz][wy][wx] = 0;
-									}
-
-									// bias
-									if (enableBias && wz == 0 && wy == 0 && wx == 0) {
-										double biasVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, cppn.getBiasWeight()));
-										if (Math.abs(biasVal) > connectionExprThresh) {
-											if (biasVal > 0)
-												biasVal = (biasVal - connectionExprThresh) * (connectionWeightMax / (connectionWeightMax - connectionExprThresh));
-											else
-												biasVal = (biasVal + connectionExprThresh) * (connectionWeightMin / (connectionWeightMin + connectionExprThresh));
+									batch.addWithGridIndices(sx, sy, sz, tx, ty, tz);
+								}
+							}
+						}
+						cppn.query(batch);
+
+						// for each connection to t{zyx}, the weights are consecutive in w starting at o, in the
+						// order [wz][wy][wx] where w{z,y,x} is the index into the weight matrix
+						for (int i = 0, o = phenotype.getWeightOffset(tz, ty, tx); i < dz * dy * dx; i++, o++) {
+							// weight
+							double weightVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, batch.getWeight(i)));
+							if (Math.abs(weightVal) > connectionExprThresh) {
+								if (weightVal > 0)
+									weightVal = (weightVal - connectionExprThresh) * (connectionWeightMax / (connectionWeightMax - connectionExprThresh));
+								else
+									weightVal = (weightVal + connectionExprThresh) * (connectionWeightMin / (connectionWeightMin + connectionExprThresh));
+							} else {
+								weightVal = 0;
+							}
+							if (wf == null) {
+								w[o] = weightVal;
+							} else {
+								wf[o] = (float) weightVal;
+							}
 
-											bias[tz - 1][ty][tx] = biasVal;
-										} else {
-											bias[tz - 1][ty][tx] = 0;
-										}
-									}
+							// bias
+							if (enableBias && i == 0) {
+								double biasVal = Math.min(connectionWeightMax, Math.max(connectionWeightMin, batch.getBiasWeight(i, 0)));
+								if (Math.abs(biasVal) > connectionExprThresh) {
+									if (biasVal > 0)
+										biasVal = (biasVal - connectionExprThresh) * (connectionWeightMax / (connectionWeightMax - connectionExprThresh));
+									else
+										biasVal = (biasVal + connectionExprThresh) * (connectionWeightMin / (connectionWeightMin + connectionExprThresh));
 
+									bias[ty * width[tz] + tx] = biasVal;
+								} else {
+									bias[ty * width[tz] + tx] = 0;
 								}
-								// System.out.println();
 							}
 						}
-						// System.out.println();
 					}
 				}
 			}
 
 			if (createNewPhenotype) {
-				int[][] layerDimensions = new int[2][depth];
-				for (int l = 0; l < depth; l++) {
-					layerDimensions[0][l] = width[l];
-					layerDimensions[1][l] = height[l];
-				}
-
-				phenotype = new GridNet(connectionRange, layerDimensions, weights, bias, activationFunction, cyclesPerStep, "network " + genotype.getId());
 				logger.info("New substrate has " + phenotype.getConnectionCount(true) + " connections.");
-			} else {
-				phenotype.setName("network " + genotype.getId());
 			}
 		}
 
@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.SortedSet;
 import java.util.concurrent.ConcurrentHashMap;
 
 import com.ojcoleman.bain.NeuralNetwork;
@@ -23,6 +24,7 @@ import com.ojcoleman.bain.base.SynapseConfiguration;
 import com.ojcoleman.bain.neuron.rate.NeuronCollectionWithBias;
 
 import org.apache.log4j.Logger;
+import org.jgapcustomised.Allele;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.Chromosome;
 
@@ -41,8 +43,11 @@ import com.ojcoleman.ahni.hyperneat.Configurable;
 import com.ojcoleman.ahni.hyperneat.HyperNEATConfiguration;
 import com.ojcoleman.ahni.hyperneat.HyperNEATEvolver;
 import com.ojcoleman.ahni.hyperneat.Properties;
+import com.ojcoleman.ahni.nn.ActivationCycleStatistics;
+import com.ojcoleman.ahni.nn.BainExecutionModeSelector;
 import com.ojcoleman.ahni.nn.BainNN;
 import com.ojcoleman.ahni.nn.NNAdaptor;
+import com.ojcoleman.ahni.nn.NetworkAnalysis;
 
 /**
  * <p>
@@ -71,6 +76,9 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 
 	private Properties props;
 	private RecurrencyPolicy recurrencyPolicy = RecurrencyPolicy.BEST_GUESS;
+	private boolean prune = true;
+	private double convergenceEpsilon;
+	private ActivationCycleStatistics cycleStatistics;
 	
 	private int inputSize = -1, outputSize = -1;
 	
@@ -92,6 +100,11 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 		
 		this.props = props;
 		recurrencyPolicy = RecurrencyPolicy.load(props);
+		prune = props.getBooleanProperty(BainNN.SUBSTRATE_PRUNE, prune);
+		convergenceEpsilon = props.getDoubleProperty(BainNN.SUBSTRATE_CONVERGENCE_EPSILON, 0);
+		if (convergenceEpsilon > 0) {
+			cycleStatistics = ActivationCycleStatistics.create(props, getClass().getSimpleName());
+		}
 		
 		// If this appears to be a "HyperNEAT compatible" properties file, attempt to determine substrate 
 		// input and output size from layer dimensions unless these are explicitly specified in properties. 
@@ -152,20 +165,42 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 	 * @throws TranscriberException
 	 */
 	public BainNN newBainNN(Chromosome genotype) throws TranscriberException {
+		// Compact chromosomes create a new set of alleles for each call to getAlleles(), so only call it once.
+		SortedSet<Allele> alleles = genotype.getAlleles();
 		List<NeuronAllele> neuronAlleles = new LinkedList<NeuronAllele>();
-		List<NeuronAllele> inputNeuronAlleles = NeatChromosomeUtility.getNeuronList(genotype.getAlleles(), NeuronType.INPUT);
-		List<NeuronAllele> outputNeuronAlleles = NeatChromosomeUtility.getNeuronList(genotype.getAlleles(), NeuronType.OUTPUT);
+		List<NeuronAllele> inputNeuronAlleles = NeatChromosomeUtility.getNeuronList(alleles, NeuronType.INPUT);
+		List<NeuronAllele> outputNeuronAlleles = NeatChromosomeUtility.getNeuronList(alleles, NeuronType.OUTPUT);
 		
 		// Collect together all neuron alleles, with input first, hidden next, and output last (this is the order than Bain networks should be in).
 		neuronAlleles.addAll(inputNeuronAlleles);
-		neuronAlleles.addAll(NeatChromosomeUtility.getNeuronList(genotype.getAlleles(), NeuronType.HIDDEN));
+		neuronAlleles.addAll(NeatChromosomeUtility.getNeuronList(alleles, NeuronType.HIDDEN));
 		neuronAlleles.addAll(outputNeuronAlleles);
 		
 		// Get all connection alleles.
-		List<ConnectionAllele> remainingConnAlleles = NeatChromosomeUtility.getConnectionList(genotype.getAlleles());
+		List<ConnectionAllele> connAlleles = NeatChromosomeUtility.getConnectionList(alleles);
+		
+		// Map from innovation ID to neuron index in the complete network.
+		Map<Long, Integer> allNeurons = new HashMap<Long, Integer>();
+		int index = 0;
+		for (NeuronAllele neuronAllele : neuronAlleles) {
+			allNeurons.put(neuronAllele.getInnovationId(), index++);
+		}
+		int[] pre = new int[connAlleles.size()];
+		int[] post = new int[connAlleles.size()];
+		index = 0;
+		for (ConnectionAllele connAllele : connAlleles) {
+			pre[index] = allNeurons.get(connAllele.getSrcNeuronId());
+			post[index] = allNeurons.get(connAllele.getDestNeuronId());
+			index++;
+		}
 		
-		int neuronCount = neuronAlleles.size();
-		int synapseCount = remainingConnAlleles.size();
+		// Determine which neurons and connections can influence the output, and the depth and recurrence of the network.
+		NetworkAnalysis analysis = new NetworkAnalysis(neuronAlleles.size(), inputNeuronAlleles.size(), outputNeuronAlleles.size(), pre, post, pre.length, null);
+		
+		// Connections that can not influence the output are always omitted. Neurons that can not influence the 
+		// output are omitted if pruning is enabled.
+		int neuronCount = prune ? analysis.getLiveNeuronCount() : neuronAlleles.size();
+		int synapseCount = analysis.getLiveSynapseCount();
 		
 		NeuronCollection neurons = null;
 		SynapseCollection synapses = null;
@@ -184,52 +219,34 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 			throw new TranscriberException("Error creating synapses for Bain neural network. Have you specified the name of the synapse collection class correctly, including the containing packages?", e);
 		}
 
-		Map<Long, Integer> allNeurons = new HashMap<Long, Integer>(); // Map from innovation ID to neuron ID in Bain network, and get bias values.
-		Collection<Long> outputInnoIDs = new ArrayList<Long>(); // Collect a list of output neuron innovation IDs for later use.
+		// Map from neuron index in the complete network to neuron ID in Bain network, and set bias values.
+		int[] bainNeuronIDs = new int[neuronAlleles.size()];
 		int bainNeuronID = 0;
-		Iterator<NeuronAllele> nit = neuronAlleles.iterator();
+		index = 0;
 		boolean biasNeuronModel = neurons instanceof NeuronCollectionWithBias;
-		while (nit.hasNext()) {
-			NeuronAllele neuronAllele = nit.next();
-			allNeurons.put(neuronAllele.getInnovationId(), bainNeuronID);
-
-			if (biasNeuronModel) {
-				((NeuronCollectionWithBias) neurons).setBias(bainNeuronID, neuronAllele.getBias());
-			}
-			
-			if (neuronAllele.getType() == NeuronType.OUTPUT) {
-				outputInnoIDs.add(neuronAllele.getInnovationId());
+		for (NeuronAllele neuronAllele : neuronAlleles) {
+			if (!prune || analysis.isNeuronLive(index)) {
+				if (biasNeuronModel) {
+					((NeuronCollectionWithBias) neurons).setBias(bainNeuronID, neuronAllele.getBias());
+				}
+				bainNeuronIDs[index] = bainNeuronID++;
+			} else {
+				bainNeuronIDs[index] = -1;
 			}
-			
-			bainNeuronID++;
+			index++;
 		}
 
-		// Connections.
-		Set<Long> currentNeuronInnovationIds = new HashSet<Long>(outputInnoIDs);
-		Set<Long> nextNeuronInnovationIds = new HashSet<Long>();
-		Iterator<ConnectionAllele> cit;
+		// Connections. These are added in the order they appear in the genome, so the inputs to each neuron are
+		// always summed in the same order.
 		int bainConnectionID = 0;
-
-		while (!remainingConnAlleles.isEmpty() && !currentNeuronInnovationIds.isEmpty()) {
-			nextNeuronInnovationIds.clear();
-			Collection<ConnectionAllele> connAlleles = NeatChromosomeUtility.extractConnectionAllelesForDestNeurons(remainingConnAlleles, currentNeuronInnovationIds);
-			cit = connAlleles.iterator();
-			while (cit.hasNext()) {
-				ConnectionAllele connAllele = cit.next();
-				int src = allNeurons.get(connAllele.getSrcNeuronId());
-				int dest = allNeurons.get(connAllele.getDestNeuronId());
-				synapses.setPreAndPostNeurons(bainConnectionID, src, dest);
+		index = 0;
+		for (ConnectionAllele connAllele : connAlleles) {
+			if (analysis.isSynapseLive(index)) {
+				synapses.setPreAndPostNeurons(bainConnectionID, bainNeuronIDs[pre[index]], bainNeuronIDs[post[index]]);
 				synapses.setEfficacy(bainConnectionID, connAllele.getWeight());
-				nextNeuronInnovationIds.add(connAllele.getSrcNeuronId());
 				bainConnectionID++;
 			}
-			currentNeuronInnovationIds.clear();
-			currentNeuronInnovationIds.addAll(nextNeuronInnovationIds);
-			remainingConnAlleles.removeAll(connAlleles);
-		}
-
-		if (!remainingConnAlleles.isEmpty()) {
-			logger.warn("Not all connection genes handled: " + genotype.toString());
+			index++;
 		}
 
 		int cyclesPerStep = 0;
@@ -245,13 +262,13 @@ public class NEATTranscriberBain extends TranscriberAdaptor<BainNN> implements C
 
 		int simRes = props.getIntProperty(BainNN.SUBSTRATE_SIMULATION_RESOLUTION, 1000);
 		// If feed-forward, cycles per step is depth-1.
-		String execModeName = props.getProperty(BainNN.SUBSTRATE_EXECUTION_MODE, null);
-		Kernel.EXECUTION_MODE execMode = execModeName == null ? null : Kernel.EXECUTION_MODE.valueOf(execModeName);
+		Kernel.EXECUTION_MODE execMode = BainExecutionModeSelector.getExecutionMode(props, neuronCount, synapseCount);
 		NeuralNetwork nn = new NeuralNetwork(simRes, neurons, synapses, execMode);
 		int[] inputDims = new int[] { inputNeuronAlleles.size() };
 		int[] outputDims = new int[] { outputNeuronAlleles.size() };
 		try {
-			BainNN substrate = new BainNN(nn, inputDims, outputDims, cyclesPerStep, topology, "network " + genotype.getId(), 1000);
+			BainNN substrate = new BainNN(nn, inputDims, outputDims, cyclesPerStep, topology, "network " + genotype.getId(), analysis);
+			substrate.setConvergence(convergenceEpsilon, cycleStatistics);
 			
 			// See if transcriptions differ for same Chromosome.
 //			String dbg2 = "" + genotype.getMaterial();
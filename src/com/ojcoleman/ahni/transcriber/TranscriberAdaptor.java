@@ -10,6 +10,7 @@ import org.apache.commons.lang3.ArrayUtils;
 import org.jgapcustomised.Allele;
 import org.jgapcustomised.BulkFitnessFunction;
 import org.jgapcustomised.Chromosome;
+import org.jgapcustomised.CompactAlleles;
 import org.jgapcustomised.InvalidConfigurationException;
 import org.jgapcustomised.MutationOperator;
 
@@ -539,23 +540,40 @@ public abstract class TranscriberAdaptor<T extends Activator> implements Transcr
 	
 	protected int getParameterValuesForCollection(Chromosome chrom, ParamCollection collection, double[][] values) {
 		int foundCount = 0;
+		CompactAlleles compact = chrom.getCompactAlleles();
+		if (compact != null) {
+			// Read the genes and values directly rather than creating new Allele objects for the whole chromosome.
+			for (int i = 0; i < compact.size(); i++) {
+				if (compact.getGene(i) instanceof ParamGene && setParameterValue((ParamGene) compact.getGene(i), compact.getValue(i), collection, values)) {
+					foundCount++;
+				}
+			}
+			return foundCount;
+		}
 		for (Allele a : chrom.getAlleles()) {
 			if (a instanceof ParamAllele) {
 				ParamAllele allele = (ParamAllele) a;
-				ParamCollection type = allele.getGene().getCollection().getSuperCollection();
-				if (type == collection) {
-					int param = allele.getGene().getIndexWithinCollection();
-					int clazz = allele.getGene().getCollection().getIndexWithinSuperCollection();
-					values[clazz][param] = allele.getValue();
+				if (setParameterValue(allele.getGene(), allele.getValue(), collection, values)) {
 					foundCount++;
-					
-					//if (Math.random() < 0.001) System.err.println(clazz + ":" + param + ":" + allele.getValue());
 				}
 			}
 		}
 		return foundCount;
 	}
 
+	private static boolean setParameterValue(ParamGene gene, double value, ParamCollection collection, double[][] values) {
+		ParamCollection type = gene.getCollection().getSuperCollection();
+		if (type == collection) {
+			int param = gene.getIndexWithinCollection();
+			int clazz = gene.getCollection().getIndexWithinSuperCollection();
+			values[clazz][param] = value;
+			
+			//if (Math.random() < 0.001) System.err.println(clazz + ":" + param + ":" + value);
+			return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Returns a list of {@link Allele}s, or more importantly {@link org.jgapcustomised.Gene}s referenced by the Alleles, that this
 	 * transcriber knows what to do with. This default implementation adds {@link ParamAllele}s for each neuron and
@@ -0,0 +1,223 @@
+package com.ojcoleman.ahni.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A concurrent map from pairs of primitive longs to non-negative primitive longs, which supports adding entries but not
+ * removing them (other than by clearing the map). Entries are stored in a single open-addressing hash table (an
+ * {@link AtomicLongArray} holding the two keys and the value of each entry) so no objects are created per entry, and
+ * the memory required per entry is a small fraction of that required by a {@link java.util.HashMap} with boxed keys and
+ * values.
+ * </p>
+ * <p>
+ * Lookups never take a lock. Entries are added with a compare-and-set on the slot they occupy, so threads adding
+ * different entries do not block each other, except while the table is being resized (when it is half full), during
+ * which threads adding entries wait for the resize to complete.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public class ConcurrentLongPairLongMap {
+	/**
+	 * Returned by {@link #get(long, long)} and {@link #putIfAbsent(long, long, long)} when there is no value for the
+	 * given keys.
+	 */
+	public static final long NO_VALUE = -1;
+
+	private static final int INITIAL_CAPACITY = 1024;
+
+	// The value slot of an entry holds EMPTY if the entry is unused, RESERVED while the keys are being written by the
+	// thread adding the entry, or otherwise the value plus one.
+	private static final long EMPTY = 0;
+	private static final long RESERVED = Long.MIN_VALUE;
+
+	private volatile Table table = new Table(INITIAL_CAPACITY);
+
+	/**
+	 * @return The value for the given keys, or {@link #NO_VALUE} if there is none.
+	 */
+	public long get(long key1, long key2) {
+		Table t = table;
+		for (int i = t.index(key1, key2);; i = (i + 1) & t.mask) {
+			long state = t.waitForValue(i);
+			if (state == EMPTY) {
+				return NO_VALUE;
+			}
+			if (t.slots.get(i * 3) == key1 && t.slots.get(i * 3 + 1) == key2) {
+				return state - 1;
+			}
+		}
+	}
+
+	/**
+	 * Adds the given value for the given keys if there is no value for them already.
+	 *
+	 * @param value The value, which must not be negative.
+	 * @return The existing value for the given keys, or {@link #NO_VALUE} if there was none and the given value was
+	 *         added.
+	 */
+	public long putIfAbsent(long key1, long key2, long value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Values must not be negative.");
+		}
+		while (true) {
+			Table t = table;
+			if (t.frozen) {
+				// The table is being replaced, wait for the new one.
+				awaitResize();
+				continue;
+			}
+			int i = t.index(key1, key2);
+			while (true) {
+				long state = t.slots.get(i * 3 + 2);
+				if (state == EMPTY) {
+					if (t.slots.compareAndSet(i * 3 + 2, EMPTY, RESERVED)) {
+						t.slots.set(i * 3, key1);
+						t.slots.set(i * 3 + 1, key2);
+						t.slots.set(i * 3 + 2, value + 1);
+						int size = t.size.incrementAndGet();
+						if (t.frozen) {
+							// The table was frozen while the entry was being added, so the entry may not have been
+							// copied to the new table. Add it to the new table (if it is not there already).
+							awaitResize();
+							long existing = putIfAbsent(key1, key2, value);
+							return existing == value ? NO_VALUE : existing;
+						}
+						if (size > t.threshold) {
+							resize(t);
+						}
+						return NO_VALUE;
+					}
+					// Another thread claimed this slot, check whether it added the same keys.
+				}
+				state = t.waitForValue(i);
+				if (t.slots.get(i * 3) == key1 && t.slots.get(i * 3 + 1) == key2) {
+					return state - 1;
+				}
+				i = (i + 1) & t.mask;
+			}
+		}
+	}
+
+	/**
+	 * @return The number of entries.
+	 */
+	public int size() {
+		return table.size.get();
+	}
+
+	/**
+	 * Removes all entries. Entries added concurrently with this call may or may not be retained.
+	 */
+	public synchronized void clear() {
+		Table t = table;
+		t.frozen = true;
+		table = new Table(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Writes the entries to the given output, as the number of entries followed by the keys and value of each entry.
+	 * Should not be called concurrently with {@link #putIfAbsent(long, long, long)}.
+	 */
+	public void write(DataOutput out) throws IOException {
+		Table t = table;
+		out.writeInt(t.size.get());
+		for (int i = 0; i <= t.mask; i++) {
+			long state = t.slots.get(i * 3 + 2);
+			if (state != EMPTY) {
+				out.writeLong(t.slots.get(i * 3));
+				out.writeLong(t.slots.get(i * 3 + 1));
+				out.writeLong(state - 1);
+			}
+		}
+	}
+
+	/**
+	 * Adds the entries written by {@link #write(DataOutput)} to this map.
+	 */
+	public void read(DataInput in) throws IOException {
+		int size = in.readInt();
+		for (int i = 0; i < size; i++) {
+			long key1 = in.readLong();
+			long key2 = in.readLong();
+			putIfAbsent(key1, key2, in.readLong());
+		}
+	}
+
+	/**
+	 * Waits until any resize or clear in progress has completed (these hold the lock on this map).
+	 */
+	private synchronized void awaitResize() {
+	}
+
+	private synchronized void resize(Table t) {
+		if (table != t) {
+			// Another thread has already resized it.
+			return;
+		}
+		// Threads adding entries check the frozen flag after adding an entry, so either the entry is copied below or
+		// the thread adds it to the new table.
+		t.frozen = true;
+		Table newTable = new Table((t.mask + 1) * 2);
+		for (int i = 0; i <= t.mask; i++) {
+			long state = t.waitForValue(i);
+			if (state != EMPTY) {
+				newTable.add(t.slots.get(i * 3), t.slots.get(i * 3 + 1), state);
+			}
+		}
+		table = newTable;
+	}
+
+	private static class Table {
+		final AtomicLongArray slots;
+		final int mask;
+		final int threshold;
+		final AtomicInteger size = new AtomicInteger();
+		volatile boolean frozen;
+
+		Table(int capacity) {
+			slots = new AtomicLongArray(capacity * 3);
+			mask = capacity - 1;
+			threshold = capacity / 2;
+		}
+
+		int index(long key1, long key2) {
+			// SplitMix64 finaliser.
+			long z = key1 * 0x9E3779B97F4A7C15L + key2;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return (int) (z ^ (z >>> 31)) & mask;
+		}
+
+		/**
+		 * Returns the state of the given slot, waiting for the keys to be written if it has just been claimed.
+		 */
+		long waitForValue(int i) {
+			long state = slots.get(i * 3 + 2);
+			while (state == RESERVED) {
+				Thread.yield();
+				state = slots.get(i * 3 + 2);
+			}
+			return state;
+		}
+
+		/**
+		 * Adds an entry while the table is not visible to other threads.
+		 */
+		void add(long key1, long key2, long state) {
+			int i = index(key1, key2);
+			while (slots.get(i * 3 + 2) != EMPTY) {
+				i = (i + 1) & mask;
+			}
+			slots.set(i * 3, key1);
+			slots.set(i * 3 + 1, key2);
+			slots.set(i * 3 + 2, state);
+			size.incrementAndGet();
+		}
+	}
+}
@@ -146,6 +146,37 @@ public abstract class Allele implements Comparable, Serializable {
 	 */
 	public abstract boolean isEquivalent(Allele otherAllele);
 
+	/**
+	 * Returns true iff this allele is completely described by its gene and {@link #getValue()}, such that an
+	 * equivalent allele can be created with {@link Gene#newAllele(double)}. Only such alleles may be stored in a
+	 * {@link CompactAlleles}. This implementation returns false.
+	 */
+	public boolean isDescribedByValue() {
+		return false;
+	}
+
+	/**
+	 * Returns a hash of the parameters of this allele. The hash is stable across runs and JVM instances, and alleles
+	 * for which {@link #isEquivalent(Allele)} is true have the same hash. The innovation ID is not included, as
+	 * isEquivalent does not compare it. This implementation incorporates the class and {@link #getValue()}; subclasses
+	 * defining other parameters should override this method and mix into the hash returned by this implementation,
+	 * with {@link #mixHash(long, long)}, exactly those parameters compared by their implementation of isEquivalent.
+	 */
+	public long contentHash() {
+		long h = getClass().getName().hashCode();
+		double v = getValue();
+		// Ensure 0.0 and -0.0 (which are equivalent) hash identically.
+		return mixHash(h, v == 0 ? 0 : Double.doubleToLongBits(v));
+	}
+
+	/**
+	 * Mixes the given value into the given hash.
+	 */
+	protected static long mixHash(long hash, long value) {
+		long h = (hash ^ value) * 0x9E3779B97F4A7C15L;
+		return h ^ (h >>> 32);
+	}
+
 	/**
 	 * Generic method for setting the value of an allele. If not required then this method should be overridden with a method returning 0.
 	 */
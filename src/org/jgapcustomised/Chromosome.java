@@ -98,7 +98,9 @@ public class Chromosome extends EvaluationData implements Comparable, Serializab
 
 		setId(an_id);
 		m_material = a_material;
-		m_alleles = Collections.unmodifiableSortedSet(m_material.getAlleles());
+		if (!m_material.isCompact()) {
+			m_alleles = Collections.unmodifiableSortedSet(m_material.getAlleles());
+		}
 		m_fitnessValue = new double[objectiveCount];
 		Arrays.fill(m_fitnessValue, Double.NaN);
 		if (behaviourCount > 0) {
@@ -145,7 +147,7 @@ public class Chromosome extends EvaluationData implements Comparable, Serializab
 	 * @return The number of alleles contained within this Chromosome instance.
 	 */
 	public int size() {
-		return m_alleles.size();
+		return m_material.size();
 	}
 
 	/**
@@ -156,18 +158,50 @@ public class Chromosome extends EvaluationData implements Comparable, Serializab
 	}
 
 	/**
-	 * @return SortedSet alleles, sorted by innovation ID
+	 * @return SortedSet alleles, sorted by innovation ID. If the genetic material is in the compact representation (see
+	 *         {@link #compactAlleles()}) then a new set of new Allele objects is created by each call, so callers
+	 *         making repeated use of the alleles should retain the returned set.
 	 */
 	public SortedSet<Allele> getAlleles() {
+		if (m_material.isCompact()) {
+			return Collections.unmodifiableSortedSet(m_material.readAlleles());
+		}
+		if (m_alleles == null) {
+			m_alleles = Collections.unmodifiableSortedSet(m_material.getAlleles());
+		}
 		return m_alleles;
 	}
 
+	/**
+	 * Converts the genetic material of this Chromosome to the compact representation, see
+	 * {@link ChromosomeMaterial#compact()}.
+	 */
+	public void compactAlleles() {
+		if (m_material.compact()) {
+			m_alleles = null;
+		}
+	}
+
+	/**
+	 * @return The compact representation of the genetic material of this Chromosome, or null if it is not in the
+	 *         compact representation (see {@link #compactAlleles()}). Allows the alleles to be read without creating
+	 *         a new set of Allele objects, see {@link #getAlleles()}.
+	 */
+	public CompactAlleles getCompactAlleles() {
+		return m_material.getCompactAlleles();
+	}
+
 	/**
 	 * @param alleleToMatch
 	 * @return Gene gene with same innovation ID as <code>geneToMatch</code, or <code>null</code> if none match
 	 */
 	public Allele findMatchingGene(Allele alleleToMatch) {
-		Iterator iter = m_alleles.iterator();
+		CompactAlleles compact = m_material.getCompactAlleles();
+		if (compact != null) {
+			int index = compact.indexOf(alleleToMatch.getInnovationId());
+			return index >= 0 ? compact.newAllele(index) : null;
+		}
+		Iterator iter = getAlleles().iterator();
 		while (iter.hasNext()) {
 			Allele allele = (Allele) iter.next();
 			if (allele.equals(alleleToMatch))
@@ -241,6 +275,13 @@ public class Chromosome extends EvaluationData implements Comparable, Serializab
 		return m_material.isEquivalent(c2.m_material);
 	}
 
+	/**
+	 * @return The fingerprint of the genetic material of this Chromosome, see {@link ChromosomeMaterial#getFingerprint()}.
+	 */
+	public long getFingerprint() {
+		return m_material.getFingerprint();
+	}
+
 	/**
 	 * Sets whether this Chromosome has been selected by the natural selector to continue to the next generation.
 	 * 
@@ -21,6 +21,7 @@ package org.jgapcustomised;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
@@ -34,6 +35,12 @@ import com.thoughtworks.xstream.XStream;
  * before creating the Chromosome object. Also enables us to handle special cases, like sample chromosome, where you
  * don't need a Configuration or fitness value. Also, made methods not synchronized, since only Genotype.evolve() should
  * be modifying this object.
+ * 
+ * The alleles are normally stored as a sorted set of {@link Allele} objects. Material that will no longer be modified
+ * may be converted to the more memory-efficient {@link CompactAlleles} representation with {@link #compact()}; the
+ * distance, equivalence, hash and clone operations work directly on the compact representation, and
+ * {@link #getAlleles()} converts the material back to the sorted set representation so that genetic operators may
+ * modify it.
  */
 public class ChromosomeMaterial implements Comparable, Serializable {
 	private static final long serialVersionUID = 1L;
@@ -41,6 +48,10 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	private Long primaryParentId = null;
 	private Long secondaryParentId = null;
 	private SortedSet<Allele> m_alleles = null;
+	private CompactAlleles compactAlleles = null; // if not null then m_alleles is null, see compact()
+	// Cached value of contentHash() for the sorted set representation, see getFingerprint().
+	private transient long fingerprint;
+	private transient boolean fingerprintValid = false;
 	private boolean shouldMutate = true;
 	
 	public boolean pruned;
@@ -95,6 +106,15 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		this(a_initialAlleles, null, null);
 	}
 
+	/**
+	 * Create chromosome with one parent from a compact representation of the alleles. Used for cloning compact
+	 * material.
+	 */
+	private ChromosomeMaterial(CompactAlleles compactAlleles, Long aPrimaryParentId) {
+		setPrimaryParentId(aPrimaryParentId);
+		this.compactAlleles = compactAlleles;
+	}
+
 	/**
 	 * for hibernate
 	 */
@@ -111,6 +131,12 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * @return copy of this object
 	 */
 	public ChromosomeMaterial clone(Long parentId) {
+		Long cloneParentId = (parentId == null) ? getPrimaryParentId() : parentId;
+		if (compactAlleles != null) {
+			// The compact representation is immutable so may be shared.
+			return new ChromosomeMaterial(compactAlleles, cloneParentId);
+		}
+
 		// First we make a copy of each of the Genes. We explicity use the Gene
 		// at each respective gene location (locus) to create the new Gene that
 		// is to occupy that same locus in the new Chromosome.
@@ -123,7 +149,6 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 
 		// Now construct a new Chromosome with the copies of the genes and return it.
 		// ---------------------------------------------------------------
-		Long cloneParentId = (parentId == null) ? getPrimaryParentId() : parentId;
 		return new ChromosomeMaterial(copyOfAlleles, cloneParentId);
 	}
 	
@@ -133,19 +158,73 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * @return The number of alleles contained within this ChromosomeMaterial instance.
 	 */
 	public int size() {
-		return m_alleles.size();
+		return compactAlleles != null ? compactAlleles.size() : m_alleles.size();
 	}
 
 	/**
 	 * Retrieves the set of genes. This method exists primarily for the benefit of GeneticOperators that require the
-	 * ability to manipulate Chromosomes at a low level.
+	 * ability to manipulate Chromosomes at a low level. If this material is in the compact representation it is
+	 * converted back to the sorted set representation, see {@link #compact()}; use {@link #readAlleles()} if the
+	 * alleles will not be modified.
 	 * 
 	 * @return an array of the Genes contained within this Chromosome.
 	 */
 	public SortedSet<Allele> getAlleles() {
+		if (compactAlleles != null) {
+			m_alleles = compactAlleles.toAlleles();
+			compactAlleles = null;
+		}
+		// The caller may modify the alleles.
+		fingerprintValid = false;
 		return m_alleles;
 	}
 
+	/**
+	 * Retrieves the set of genes for reading only, without changing the representation of this material. If this
+	 * material is in the compact representation then a new set of new Allele objects is returned, so modifications to
+	 * it are not reflected in this material, and callers making repeated use of the alleles should retain the returned
+	 * set rather than calling this method repeatedly.
+	 */
+	public SortedSet<Allele> readAlleles() {
+		return compactAlleles != null ? compactAlleles.toAlleles() : m_alleles;
+	}
+
+	/**
+	 * Converts this material to the compact representation, {@link CompactAlleles}, if it is not already and all of
+	 * its alleles support it (see {@link Allele#isDescribedByValue()}). The compact representation requires a fraction
+	 * of the memory and allows faster {@link #distance(ChromosomeMaterial, SpeciationParms)},
+	 * {@link #isEquivalent(ChromosomeMaterial)}, {@link #contentHash()} and {@link #clone(Long)} operations, but
+	 * {@link #getAlleles()} must recreate the Allele objects. It is intended for material that will no longer be
+	 * modified, such as that of a {@link Chromosome} in the population. Any set previously returned by
+	 * {@link #getAlleles()} is no longer associated with this material.
+	 * 
+	 * @return true iff this material is now in the compact representation.
+	 */
+	public boolean compact() {
+		if (compactAlleles == null) {
+			compactAlleles = CompactAlleles.create(m_alleles, getFingerprint());
+			if (compactAlleles != null) {
+				m_alleles = null;
+			}
+		}
+		return compactAlleles != null;
+	}
+
+	/**
+	 * @return true iff this material is in the compact representation, see {@link #compact()}.
+	 */
+	public boolean isCompact() {
+		return compactAlleles != null;
+	}
+
+	/**
+	 * @return The compact representation of this material, or null if it is not in the compact representation (see
+	 *         {@link #compact()}).
+	 */
+	public CompactAlleles getCompactAlleles() {
+		return compactAlleles;
+	}
+
 	/**
 	 * Returns a string representation of this Chromosome, useful for some display purposes.
 	 * 
@@ -157,7 +236,7 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 
 		// Append the representations of each of the gene Alleles.
 		// -------------------------------------------------------
-		Iterator iter = m_alleles.iterator();
+		Iterator iter = readAlleles().iterator();
 		if (iter.hasNext()) {
 			Allele allele = (Allele) iter.next();
 			representation.append(allele.toString());
@@ -176,8 +255,15 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * Returns an XML representation of this Chromosome. Useful for exporting.
 	 */
 	public String toXML() {
+		ChromosomeMaterial material = this;
+		if (compactAlleles != null) {
+			// Always export the sorted set representation.
+			material = new ChromosomeMaterial(compactAlleles.toAlleles(), primaryParentId, secondaryParentId);
+			material.shouldMutate = shouldMutate;
+			material.pruned = pruned;
+		}
 		XStream xstream = new XStream();
-		return xstream.toXML(this);
+		return xstream.toXML(material);
 	}
 	
 	public static ChromosomeMaterial fromXML(String xml) {
@@ -255,20 +341,24 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		}
 
 		ChromosomeMaterial otherChromosome = (ChromosomeMaterial) other;
-		SortedSet otherAlleles = otherChromosome.m_alleles;
 
 		// If the other Chromosome doesn't have the same number of genes,
 		// then whichever has more is the "greater" Chromosome.
 		// --------------------------------------------------------------
-		if (otherAlleles.size() != m_alleles.size()) {
+		if (otherChromosome.size() != size()) {
 			return false;
 		}
 
+		if (compactAlleles != null && otherChromosome.compactAlleles != null) {
+			return compactAlleles.isEquivalent(otherChromosome.compactAlleles);
+		}
+		SortedSet otherAlleles = otherChromosome.readAlleles();
+
 		// Next, compare the gene values (alleles) for differences. If
 		// one of the genes is not equal, then we return the result of its
 		// comparison.
 		// ---------------------------------------------------------------
-		Iterator iter = m_alleles.iterator();
+		Iterator iter = readAlleles().iterator();
 		Iterator otherIter = otherAlleles.iterator();
 		while (iter.hasNext() && otherIter.hasNext()) {
 			Allele allele = (Allele) iter.next();
@@ -279,6 +369,47 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		return true;
 	}
 
+	/**
+	 * Returns a hash of the parameters of all the alleles in this ChromosomeMaterial, in innovation ID order. The hash
+	 * is stable across runs and JVM instances, and ChromosomeMaterials for which {@link #isEquivalent(ChromosomeMaterial)}
+	 * is true have the same hash (like isEquivalent, it does not depend on the innovation IDs themselves).
+	 * 
+	 * @see Allele#contentHash()
+	 */
+	public long contentHash() {
+		if (compactAlleles != null) {
+			return compactAlleles.getContentHash();
+		}
+		long h = m_alleles.size();
+		for (Allele allele : m_alleles) {
+			h = Allele.mixHash(h, allele.contentHash());
+		}
+		return h;
+	}
+
+	/**
+	 * Returns a fingerprint of this material: a hash of the structure (the parameters that identify each allele, for
+	 * example the source and target of connections and the activation function of neurons) and the parameter values
+	 * (for example connection weights and neuron biases) of all of the alleles. This is the
+	 * value of {@link #contentHash()}, but it is calculated at most once while the material is not modified (it is kept
+	 * by the compact representation, and otherwise cached until {@link #getAlleles()} or
+	 * {@link #setAlleles(SortedSet)} is called), so it may be used freely as a key for clone detection, caches or
+	 * de-duplication of persisted material. The fingerprint only depends on what isEquivalent compares (not on the
+	 * innovation IDs of the alleles), so materials for which {@link #isEquivalent(ChromosomeMaterial)} is true always
+	 * have the same fingerprint and grouping materials by fingerprint never separates equivalent materials; the
+	 * converse is almost always but not necessarily true, so consumers should confirm matches with isEquivalent.
+	 */
+	public long getFingerprint() {
+		if (compactAlleles != null) {
+			return compactAlleles.getContentHash();
+		}
+		if (!fingerprintValid) {
+			fingerprint = contentHash();
+			fingerprintValid = true;
+		}
+		return fingerprint;
+	}
+
 	/**
 	 * Compares the given Chromosome to this Chromosome. This chromosome is considered to be "less than" the given
 	 * chromosome if it has a fewer number of genes or if any of its gene values (alleles) are less than their
@@ -298,20 +429,20 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		}
 
 		ChromosomeMaterial otherChromosome = (ChromosomeMaterial) other;
-		SortedSet otherAlleles = otherChromosome.m_alleles;
 
 		// If the other Chromosome doesn't have the same number of genes,
 		// then whichever has more is the "greater" Chromosome.
 		// --------------------------------------------------------------
-		if (otherAlleles.size() != m_alleles.size()) {
-			return m_alleles.size() - otherAlleles.size();
+		if (otherChromosome.size() != size()) {
+			return size() - otherChromosome.size();
 		}
+		SortedSet otherAlleles = otherChromosome.readAlleles();
 
 		// Next, compare the gene values (alleles) for differences. If
 		// one of the genes is not equal, then we return the result of its
 		// comparison.
 		// ---------------------------------------------------------------
-		Iterator iter = m_alleles.iterator();
+		Iterator iter = readAlleles().iterator();
 		Iterator otherIter = otherAlleles.iterator();
 		while (iter.hasNext() && otherIter.hasNext()) {
 			Allele allele = (Allele) iter.next();
@@ -383,15 +514,126 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	}
 	
 	public long getMinInnovationID() {
-		if (m_alleles.isEmpty()) return -1;
+		if (size() == 0) return -1;
+		if (compactAlleles != null) return compactAlleles.getInnovationIds()[0];
 		return m_alleles.first().getInnovationId();
 	}
 	
 	public long getMaxInnovationID() {
-		if (m_alleles.isEmpty()) return -1;
+		if (size() == 0) return -1;
+		if (compactAlleles != null) return compactAlleles.getInnovationIds()[compactAlleles.size() - 1];
 		return m_alleles.last().getInnovationId();
 	}
 
+	/**
+	 * @return The smallest and largest values of the alleles (see {@link Allele#getValue()}) as a two element array, or
+	 *         null if there are no alleles.
+	 */
+	public double[] getValueRange() {
+		if (size() == 0) return null;
+		double min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+		if (compactAlleles != null) {
+			for (double v : compactAlleles.getValues()) {
+				if (v < min) min = v;
+				if (v > max) max = v;
+			}
+		} else {
+			for (Allele allele : m_alleles) {
+				double v = allele.getValue();
+				if (v < min) min = v;
+				if (v > max) max = v;
+			}
+		}
+		return new double[] { min, max };
+	}
+
+	/**
+	 * Calculates the component-wise mean of the given materials: the result contains an allele for every innovation ID
+	 * that occurs in any of the materials, with value equal to the sum of the values of the alleles with that ID
+	 * divided by the number of materials (so a material without an allele for an ID contributes zero to the mean for
+	 * that ID). The other parameters of each allele are copied from the first material containing it. Values are
+	 * summed in the order the materials are given. The result is in the compact representation if the first material
+	 * is.
+	 * 
+	 * @param materials The materials to average, must not be empty.
+	 * @return A new ChromosomeMaterial, or the only element of <code>materials</code> if it contains one element.
+	 */
+	public static ChromosomeMaterial mean(List<ChromosomeMaterial> materials) {
+		if (materials.size() == 1) {
+			return materials.get(0);
+		}
+
+		// Determine the sorted set of all innovation IDs, which is used to map IDs to indices in the arrays of totals.
+		int total = 0;
+		for (ChromosomeMaterial m : materials) {
+			total += m.size();
+		}
+		long[] ids = new long[total];
+		int offset = 0;
+		for (ChromosomeMaterial m : materials) {
+			if (m.compactAlleles != null) {
+				System.arraycopy(m.compactAlleles.getInnovationIds(), 0, ids, offset, m.compactAlleles.size());
+				offset += m.compactAlleles.size();
+			} else {
+				for (Allele allele : m.m_alleles) {
+					ids[offset++] = allele.getInnovationId();
+				}
+			}
+		}
+		Arrays.sort(ids);
+		int count = 0;
+		for (int i = 0; i < total; i++) {
+			if (i == 0 || ids[i] != ids[i - 1]) {
+				ids[count++] = ids[i];
+			}
+		}
+
+		// Sum the values for each ID. The IDs of each material are sorted so their indices can be found by merging.
+		double[] totals = new double[count];
+		Allele[] alleles = new Allele[count];
+		for (ChromosomeMaterial m : materials) {
+			int k = 0;
+			if (m.compactAlleles != null) {
+				long[] mIds = m.compactAlleles.getInnovationIds();
+				double[] mValues = m.compactAlleles.getValues();
+				for (int i = 0; i < mIds.length; i++) {
+					while (ids[k] != mIds[i]) k++;
+					if (alleles[k] == null) {
+						alleles[k] = m.compactAlleles.newAllele(i);
+						totals[k] = mValues[i];
+					} else {
+						totals[k] += mValues[i];
+					}
+				}
+			} else {
+				for (Allele allele : m.m_alleles) {
+					long id = allele.getInnovationId();
+					while (ids[k] != id) k++;
+					if (alleles[k] == null) {
+						alleles[k] = allele.cloneAllele();
+						totals[k] = allele.getValue();
+					} else {
+						totals[k] += allele.getValue();
+					}
+				}
+			}
+		}
+
+		// For speed we multiply by the reciprocal instead of dividing by the number of materials.
+		double reciprocal = 1.0 / materials.size();
+		List<Allele> meanAlleles = new ArrayList<Allele>(count);
+		for (int k = 0; k < count; k++) {
+			alleles[k].setValue(totals[k] * reciprocal);
+			meanAlleles.add(alleles[k]);
+		}
+		ChromosomeMaterial mean = new ChromosomeMaterial(meanAlleles);
+		if (materials.get(0).isCompact()) {
+			// Allow distances to the mean to be computed directly from the compact representations.
+			mean.compact();
+		}
+		return mean;
+	}
+
 	/**
 	 * returns excess alleles, defined as those alleles whose innovation ID is greater than <code>threshold</code>;
 	 * also, removes excess alleles from <code>alleles</code>
@@ -424,15 +666,113 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 * @see Allele#distance(Allele)
 	 */
 	public double distance(ChromosomeMaterial target, SpeciationParms speciationParms) {
+		return distance(target, speciationParms, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Calculates compatibility distance between this and <code>target</code> as for
+	 * {@link #distance(ChromosomeMaterial, SpeciationParms)}, but stops as soon as it is certain that the distance
+	 * exceeds the given bound. This is useful when the caller only needs to know whether the distance is within some
+	 * threshold, or less than the smallest distance found so far. Stopping early is only possible when mismatched
+	 * genes are counted rather than their values summed (see {@link SpeciationParms#specieCompatMismatchUseValues()})
+	 * and the compatibility coefficients are non-negative; otherwise the full distance is always calculated.
+	 * 
+	 * @param target
+	 * @param speciationParms
+	 * @param bound The distance beyond which the exact distance is not required.
+	 * @return the distance between this object and <code>target</code> if it is less than or equal to
+	 *         <code>bound</code>, otherwise a value greater than <code>bound</code> which is no greater than the
+	 *         distance.
+	 */
+	public double distance(ChromosomeMaterial target, SpeciationParms speciationParms, double bound) {
 		//boolean log = Math.random() < 0.01;
 		boolean log = false;
 		
 		boolean useValues = speciationParms.specieCompatMismatchUseValues();
 		double disjointCountOrValueSum = 0, excessCountOrValueSum = 0, commonCount = 0;
 		double weightDifference = 0;
-		int maxSize = Math.max(this.getAlleles().size(), target.getAlleles().size());
+		int maxSize = Math.max(this.size(), target.size());
+		
+		boolean bounded = bound < Double.POSITIVE_INFINITY && !useValues && speciationParms.getSpecieCompatExcessCoeff() >= 0 && speciationParms.getSpecieCompatDisjointCoeff() >= 0 && speciationParms.getSpecieCompatCommonCoeff() >= 0;
+		if (bounded) {
+			// At least as many genes as the difference in size are mismatched (excess or disjoint).
+			double minMismatchCoeff = Math.min(speciationParms.getSpecieCompatExcessCoeff(), speciationParms.getSpecieCompatDisjointCoeff());
+			double mismatched = Math.abs(this.size() - target.size());
+			if (speciationParms.specieCompatNormalise()) mismatched /= maxSize;
+			// Allow for rounding error, the bound must not exceed the distance.
+			double lowerBound = minMismatchCoeff * mismatched * (1 - 1e-12);
+			if (lowerBound > bound) {
+				return lowerBound;
+			}
+		}
 		
-		if (m_alleles.isEmpty() || target.m_alleles.isEmpty()) {
+		if (compactAlleles != null || target.compactAlleles != null) {
+			// Merge the sorted innovation IDs and values directly, in the same order as the iteration below.
+			long[] thisIds, targetIds;
+			double[] thisValues, targetValues;
+			if (compactAlleles != null) {
+				thisIds = compactAlleles.getInnovationIds();
+				thisValues = compactAlleles.getValues();
+			} else {
+				thisIds = new long[m_alleles.size()];
+				thisValues = new double[m_alleles.size()];
+				CompactAlleles.extract(m_alleles, thisIds, thisValues);
+			}
+			if (target.compactAlleles != null) {
+				targetIds = target.compactAlleles.getInnovationIds();
+				targetValues = target.compactAlleles.getValues();
+			} else {
+				targetIds = new long[target.m_alleles.size()];
+				targetValues = new double[target.m_alleles.size()];
+				CompactAlleles.extract(target.m_alleles, targetIds, targetValues);
+			}
+			int thisSize = thisIds.length, targetSize = targetIds.length;
+			int i = 0, j = 0;
+			if (thisSize > 0 && targetSize > 0) {
+				do {
+					if (thisIds[i] == targetIds[j]) {
+						commonCount++;
+						weightDifference += Math.abs(thisValues[i] - targetValues[j]);
+						i++;
+						j++;
+					} else if (thisIds[i] < targetIds[j]) {
+						disjointCountOrValueSum += useValues ? thisValues[i] : 1;
+						i++;
+					} else {
+						disjointCountOrValueSum += useValues ? targetValues[j] : 1;
+						j++;
+					}
+					if (bounded) {
+						double lowerBound = distanceLowerBound(disjointCountOrValueSum, weightDifference, maxSize, speciationParms);
+						if (lowerBound > bound) {
+							return lowerBound;
+						}
+					}
+				} while (i < thisSize && j < targetSize);
+
+				// The first remaining gene is excess if it is out of the range of innovation IDs of the other set.
+				if (i < thisSize) {
+					if (thisIds[i] > targetIds[targetSize - 1]) {
+						excessCountOrValueSum += useValues ? thisValues[i] : 1;
+					}
+					i++;
+				}
+				if (j < targetSize) {
+					if (targetIds[j] > thisIds[thisSize - 1]) {
+						excessCountOrValueSum += useValues ? targetValues[j] : 1;
+					}
+					j++;
+				}
+			}
+			// Count up any remaining excess genes.
+			for (; i < thisSize; i++) {
+				excessCountOrValueSum += useValues ? thisValues[i] : 1;
+			}
+			for (; j < targetSize; j++) {
+				excessCountOrValueSum += useValues ? targetValues[j] : 1;
+			}
+		}
+		else if (m_alleles.isEmpty() || target.m_alleles.isEmpty()) {
 			if (log) System.err.println("empty");
 			
 			ChromosomeMaterial m = m_alleles.isEmpty() ? target : this;
@@ -446,7 +786,7 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 			long thisMaxInnoID = this.getMaxInnovationID(), targetMaxInnoID = target.getMaxInnovationID();
 			// Iterate through this and target alleles counting up common and disjoint genes as we go.
 			do {
-				if (thisCurrent.getInnovationId() == targetCurrent.getInnovationId()) {
+				if (thisCurrent.getInnovationId().equals(targetCurrent.getInnovationId())) {
 					commonCount++;
 					weightDifference += thisCurrent.distance(targetCurrent);
 					thisCurrent = thisIter.hasNext() ? thisIter.next() : null;
@@ -463,6 +803,12 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 						targetCurrent = targetIter.hasNext() ? targetIter.next() : null;
 					}
 				}
+				if (bounded) {
+					double lowerBound = distanceLowerBound(disjointCountOrValueSum, weightDifference, maxSize, speciationParms);
+					if (lowerBound > bound) {
+						return lowerBound;
+					}
+				}
 			} while (thisCurrent != null && targetCurrent != null);
 			
 			// If the last gene pulled from this set of genes is out of the range of innovation IDs of the target, add it to excess.
@@ -507,6 +853,18 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 		return result2;
 	}
 	
+	// A lower bound on the distance given the disjoint gene count and weight difference so far, for a bounded distance
+	// calculation. Excess genes are only counted after all common and disjoint genes have been found. Every term of
+	// the final distance is at least its partial value (with the common gene term taken as zero if it is normalised, as
+	// the final common gene count is not yet known), and rounding preserves this ordering as all terms are
+	// non-negative and calculated in the same way.
+	private static double distanceLowerBound(double disjointCount, double weightDifference, int maxSize, SpeciationParms speciationParms) {
+		if (speciationParms.specieCompatNormalise()) {
+			return speciationParms.getSpecieCompatDisjointCoeff() * (disjointCount / maxSize);
+		}
+		return (speciationParms.getSpecieCompatDisjointCoeff() * disjointCount) + (speciationParms.getSpecieCompatCommonCoeff() * weightDifference);
+	}
+	
 	// Distance value of a mismatched allele as determined by whether we're using a constant value (1), 
 	// or the stored value of the allele (eg the connection weight or neuron bias).
 	private double getMismatchValue(Allele a, boolean useValues) {
@@ -520,6 +878,8 @@ public class ChromosomeMaterial implements Comparable, Serializable {
 	 */
 	public void setAlleles(SortedSet<Allele> aAlleles) {
 		m_alleles = aAlleles;
+		compactAlleles = null;
+		fingerprintValid = false;
 	}
 	
 
@@ -0,0 +1,171 @@
+package org.jgapcustomised;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * <p>
+ * A compact, immutable representation of the alleles of a {@link ChromosomeMaterial}, used in place of a sorted set of
+ * {@link Allele} objects when {@link Genotype#COMPACT_CHROMOSOMES_KEY} is enabled. The alleles are stored as parallel
+ * arrays sorted by innovation ID: the innovation ID and value (eg connection weight or neuron bias, see
+ * {@link Allele#getValue()}) of each allele, and a reference to its {@link Gene}. The genes hold the remaining,
+ * immutable, parameters of the alleles (for example the source and destination neuron IDs of connections and the
+ * activation function type of neurons) and are shared by all the chromosomes that inherited the gene, so the memory
+ * required per allele is a small fraction of that required by an Allele object and its entry in a sorted set.
+ * </p>
+ * <p>
+ * Only alleles for which {@link Allele#isDescribedByValue()} is true may be stored in this form; the alleles are
+ * recreated when required with {@link Gene#newAllele(double)}.
+ * </p>
+ *
+ * @author Oliver Coleman
+ */
+public final class CompactAlleles implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private final long[] innovationIds;
+	private final double[] values;
+	private final Gene[] genes;
+	private final long contentHash;
+
+	/**
+	 * Creates a compact representation of the given alleles.
+	 *
+	 * @param alleles The alleles, sorted by innovation ID.
+	 * @param contentHash The hash of the alleles as computed by {@link ChromosomeMaterial#contentHash()}.
+	 * @return the compact representation, or null if any of the alleles can not be stored in compact form (see
+	 *         {@link Allele#isDescribedByValue()}).
+	 */
+	static CompactAlleles create(SortedSet<Allele> alleles, long contentHash) {
+		int size = alleles.size();
+		long[] innovationIds = new long[size];
+		double[] values = new double[size];
+		Gene[] genes = new Gene[size];
+		int i = 0;
+		for (Allele allele : alleles) {
+			if (!allele.isDescribedByValue()) {
+				return null;
+			}
+			innovationIds[i] = allele.getInnovationId();
+			values[i] = allele.getValue();
+			genes[i] = allele.getGene();
+			i++;
+		}
+		return new CompactAlleles(innovationIds, values, genes, contentHash);
+	}
+
+	private CompactAlleles(long[] innovationIds, double[] values, Gene[] genes, long contentHash) {
+		this.innovationIds = innovationIds;
+		this.values = values;
+		this.genes = genes;
+		this.contentHash = contentHash;
+	}
+
+	/**
+	 * @return The number of alleles.
+	 */
+	public int size() {
+		return innovationIds.length;
+	}
+
+	/**
+	 * @return The innovation IDs of the alleles, in ascending order. The returned array must not be modified.
+	 */
+	long[] getInnovationIds() {
+		return innovationIds;
+	}
+
+	/**
+	 * @return The values of the alleles, in the same order as {@link #getInnovationIds()}. The returned array must not
+	 *         be modified.
+	 */
+	double[] getValues() {
+		return values;
+	}
+
+	/**
+	 * @return The hash of the alleles as computed by {@link ChromosomeMaterial#contentHash()}.
+	 */
+	long getContentHash() {
+		return contentHash;
+	}
+
+	/**
+	 * @return The gene of the allele at the given index.
+	 */
+	public Gene getGene(int index) {
+		return genes[index];
+	}
+
+	/**
+	 * @return The value of the allele at the given index, see {@link Allele#getValue()}.
+	 */
+	public double getValue(int index) {
+		return values[index];
+	}
+
+	/**
+	 * @return The index of the allele with the given innovation ID, or a negative number if there is none.
+	 */
+	public int indexOf(long innovationId) {
+		return Arrays.binarySearch(innovationIds, innovationId);
+	}
+
+	/**
+	 * @return A new Allele object for the allele at the given index.
+	 */
+	public Allele newAllele(int index) {
+		return genes[index].newAllele(values[index]);
+	}
+
+	/**
+	 * @return A new set containing new Allele objects for all of the alleles.
+	 */
+	public SortedSet<Allele> toAlleles() {
+		SortedSet<Allele> alleles = new TreeSet<Allele>();
+		for (int i = 0; i < innovationIds.length; i++) {
+			alleles.add(newAllele(i));
+		}
+		return alleles;
+	}
+
+	/**
+	 * Returns true iff the alleles of this and the given compact representation are pairwise equivalent, see
+	 * {@link Allele#isEquivalent(Allele)}. Equivalent alleles have equal values, and alleles of the same gene only
+	 * differ in their value, so Allele objects are only created to compare alleles with equal values of different
+	 * genes.
+	 */
+	public boolean isEquivalent(CompactAlleles other) {
+		if (other.innovationIds.length != innovationIds.length) {
+			return false;
+		}
+		for (int i = 0; i < innovationIds.length; i++) {
+			if (values[i] != other.values[i]) {
+				return false;
+			}
+			if (genes[i] != other.genes[i] && !newAllele(i).isEquivalent(other.newAllele(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Extracts the innovation IDs and values of the given alleles.
+	 *
+	 * @param alleles The alleles, sorted by innovation ID.
+	 * @param innovationIds Array to put the innovation IDs in, must be at least as long as the number of alleles.
+	 * @param values Array to put the values in, must be at least as long as the number of alleles.
+	 */
+	static void extract(Collection<Allele> alleles, long[] innovationIds, double[] values) {
+		int i = 0;
+		for (Allele allele : alleles) {
+			innovationIds[i] = allele.getInnovationId();
+			values[i] = allele.getValue();
+			i++;
+		}
+	}
+}
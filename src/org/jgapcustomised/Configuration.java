@@ -110,6 +110,12 @@ public class Configuration implements java.io.Serializable {
 	 */
 	private Random m_randomGenerator = null;
 
+	/**
+	 * The random number generators for the offspring being produced or mutated by each thread, if any. See
+	 * {@link #setOffspringRandomGenerator(Random)}.
+	 */
+	private static final ThreadLocal<Random> offspringRandomGenerator = new ThreadLocal<Random>();
+
 	/**
 	 * References the EventManager that is to be used for the notification of genetic events and the management of event
 	 * subscribers.
@@ -315,12 +321,77 @@ public class Configuration implements java.io.Serializable {
 	}
 
 	/**
-	 * Retrieves the random generator setup in this Configuration instance.
-	 * 
+	 * Retrieves the random generator setup in this Configuration instance, or, if the calling thread is currently
+	 * producing or mutating an offspring, the random generator for that offspring (see
+	 * {@link #setOffspringRandomGenerator(Random)}).
+	 *
 	 * @return The random generator.
 	 */
 	public Random getRandomGenerator() {
-		return m_randomGenerator;
+		Random offspringRandom = offspringRandomGenerator.get();
+		return offspringRandom != null ? offspringRandom : m_randomGenerator;
+	}
+
+	/**
+	 * Sets the random generator returned by {@link #getRandomGenerator()} to the calling thread. This allows offspring
+	 * to be produced and mutated concurrently, each with its own random number stream, so that the results do not
+	 * depend on the number of threads or the order in which they are scheduled.
+	 *
+	 * @param generator The random generator for the offspring being produced or mutated by the calling thread, or null
+	 *            to revert to the random generator setup in this Configuration.
+	 */
+	static void setOffspringRandomGenerator(Random generator) {
+		if (generator == null) {
+			offspringRandomGenerator.remove();
+		} else {
+			offspringRandomGenerator.set(generator);
+		}
+	}
+
+	/**
+	 * Derives the seed for the random number stream of an offspring (or group of offspring) from a seed drawn from the
+	 * main random generator and the index of the offspring. The seeds for consecutive indices are decorrelated with
+	 * the SplitMix64 finaliser.
+	 */
+	static long offspringSeed(long seed, int index) {
+		long z = seed + (index + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Called by {@link Genotype#evolve()} before the offspring are mutated concurrently (see
+	 * {@link Genotype#PARALLEL_OFFSPRING_KEY}). Configurations that assign innovation IDs during mutation should
+	 * override this and the other concurrent mutation methods so that the IDs assigned do not depend on the order in
+	 * which offspring are mutated. The default implementation does nothing.
+	 *
+	 * @param offspringCount The number of offspring that will be mutated.
+	 */
+	public void startConcurrentMutation(int offspringCount) {
+	}
+
+	/**
+	 * Called by the thread about to mutate the offspring with the given index during concurrent mutation. The default
+	 * implementation does nothing.
+	 */
+	public void startOffspringMutation(int index) {
+	}
+
+	/**
+	 * Called by the thread that has finished mutating the offspring with the given index during concurrent mutation.
+	 * The default implementation does nothing.
+	 */
+	public void finishOffspringMutation(int index) {
+	}
+
+	/**
+	 * Called by {@link Genotype#evolve()} after all offspring have been mutated concurrently. The default
+	 * implementation does nothing.
+	 *
+	 * @param offspring The offspring, in index order.
+	 */
+	public void finishConcurrentMutation(List<ChromosomeMaterial> offspring) {
 	}
 
 	/**
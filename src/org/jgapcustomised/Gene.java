@@ -93,6 +93,16 @@ public class Gene implements Comparable, Serializable {
 		innovationId = aInnovationId;
 	}
 
+	/**
+	 * Creates a new allele of this gene with the given value (see {@link Allele#getValue()}). This is used to recreate
+	 * alleles stored in a {@link CompactAlleles}, and is only supported by genes whose alleles are completely described
+	 * by their value (see {@link Allele#isDescribedByValue()}). This implementation throws an
+	 * UnsupportedOperationException.
+	 */
+	public Allele newAllele(double value) {
+		throw new UnsupportedOperationException(getClass().getName() + " does not support creating alleles from a value.");
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
@@ -26,6 +26,8 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.jgapcustomised.event.GeneticEvent;
 
@@ -39,6 +41,7 @@ import com.anji.neat.NeatConfiguration;
 import com.anji.neat.SpeciationStrategyOriginal;
 import com.anji.util.Properties;
 import com.ojcoleman.ahni.util.ArrayUtil;
+import com.ojcoleman.ahni.util.Parallel;
 
 /**
  * Genotypes are fixed-length populations of chromosomes. As an instance of a <code>Genotype</code> is evolved, all of
@@ -56,6 +59,21 @@ public class Genotype implements Serializable {
 	private static Logger logger = Logger.getLogger(Genotype.class);
 	
 	public static final String SPECIATION_STRATEGY_CLASS_KEY = "speciation.class";
+	/**
+	 * If true then the genetic material of the chromosomes in the population is stored in a compact form, which
+	 * requires a fraction of the memory and allows faster speciation, see {@link ChromosomeMaterial#compact()}. This is
+	 * worthwhile for large populations of large genomes. Default is false.
+	 */
+	public static final String COMPACT_CHROMOSOMES_KEY = "chromosome.compact";
+	/**
+	 * If true then offspring are produced and mutated concurrently, each species (for reproduction) and each offspring
+	 * (for mutation) getting its own random number stream derived from the main random number generator, so that
+	 * results are reproducible whatever the number of threads used. Innovation IDs for new genes are assigned in
+	 * offspring order once all offspring have been mutated (see
+	 * {@link Configuration#startConcurrentMutation(int)}). Note that the results differ from those obtained when this
+	 * is disabled, even with the same random seed. Default is false.
+	 */
+	public static final String PARALLEL_OFFSPRING_KEY = "reproduction.parallel";
 	
 	/**
 	 * The current active Configuration instance.
@@ -85,6 +103,12 @@ public class Genotype implements Serializable {
 	Chromosome previousBestPerforming = null;
 
 	protected int maxSpeciesSize, minSpeciesSize;
+	
+	protected long speciationTime;
+	
+	protected boolean compactChromosomes;
+	
+	protected boolean parallelOffspring;
 
 	/**
 	 * This constructor is used for random initial Genotypes. Note that the Configuration object must be in a valid
@@ -116,6 +140,8 @@ public class Genotype implements Serializable {
 		}
 
 		this.props = props;
+		compactChromosomes = props.getBooleanProperty(COMPACT_CHROMOSOMES_KEY, false);
+		parallelOffspring = props.getBooleanProperty(PARALLEL_OFFSPRING_KEY, false);
 
 		targetPerformanceType = props.getProperty(Evolver.PERFORMANCE_TARGET_TYPE_KEY, "higher").toLowerCase().trim().equals("higher") ? 1 : 0;
 
@@ -178,6 +204,9 @@ public class Genotype implements Serializable {
 		Iterator<Chromosome> iter = chromosomes.iterator();
 		while (iter.hasNext()) {
 			Chromosome c = iter.next();
+			if (compactChromosomes) {
+				c.compactAlleles();
+			}
 			m_chromosomes.add(c);
 		}
 	}
@@ -192,6 +221,9 @@ public class Genotype implements Serializable {
 		while (iter.hasNext()) {
 			ChromosomeMaterial cMat = iter.next();
 			Chromosome chrom = new Chromosome(cMat, m_activeConfiguration.nextChromosomeId(), m_activeConfiguration.getObjectiveCount(), m_activeConfiguration.getNoveltyObjectiveCount());
+			if (compactChromosomes) {
+				chrom.compactAlleles();
+			}
 			m_chromosomes.add(chrom);
 		}
 	}
@@ -336,7 +368,9 @@ public class Genotype implements Serializable {
 			}
 			
 			// Speciate population.
+			long speciationStart = System.nanoTime();
 			m_specStrategy.speciate(m_chromosomes, m_species, this);
+			speciationTime = System.nanoTime() - speciationStart;
 			// Update originalSize for each species.
 			for (Species species : m_species) {
 				species.originalSize = species.size();
@@ -446,13 +480,21 @@ public class Genotype implements Serializable {
 			// -------------------------------------
 			List<ChromosomeMaterial> offspring = new ArrayList<ChromosomeMaterial>();
 			for (ReproductionOperator operator : m_activeConfiguration.getReproductionOperators()) {
-				operator.reproduce(m_activeConfiguration, m_species, offspring);
+				if (parallelOffspring) {
+					operator.reproduce(m_activeConfiguration, m_species, offspring, m_activeConfiguration.getRandomGenerator().nextLong());
+				} else {
+					operator.reproduce(m_activeConfiguration, m_species, offspring);
+				}
 			}
 			
 			// Execute Mutation Operators.
 			// -------------------------------------
-			for (MutationOperator operator : m_activeConfiguration.getMutationOperators()) {
-				operator.mutate(m_activeConfiguration, offspring);
+			if (parallelOffspring) {
+				mutateConcurrently(offspring);
+			} else {
+				for (MutationOperator operator : m_activeConfiguration.getMutationOperators()) {
+					operator.mutate(m_activeConfiguration, offspring);
+				}
 			}
 			
 
@@ -511,6 +553,51 @@ public class Genotype implements Serializable {
 		return fittest;
 	}
 
+	/**
+	 * Applies all the mutation operators to each offspring, mutating the offspring concurrently. Each offspring is
+	 * mutated with its own random number stream derived from the main random number generator and the index of the
+	 * offspring, and innovation IDs are assigned by the Configuration in offspring order (see
+	 * {@link Configuration#startConcurrentMutation(int)}), so the results do not depend on the number of threads.
+	 * 
+	 * @throws InvalidConfigurationException If a mutation operator throws it for any offspring (the first such
+	 *             exception is rethrown once all offspring have been processed).
+	 */
+	private void mutateConcurrently(final List<ChromosomeMaterial> offspring) throws InvalidConfigurationException {
+		final long seed = m_activeConfiguration.getRandomGenerator().nextLong();
+		final List<MutationOperator> operators = m_activeConfiguration.getMutationOperators();
+		List<Integer> indices = new ArrayList<Integer>(offspring.size());
+		for (int i = 0; i < offspring.size(); i++) {
+			indices.add(i);
+		}
+
+		final AtomicReference<InvalidConfigurationException> failure = new AtomicReference<InvalidConfigurationException>();
+		m_activeConfiguration.startConcurrentMutation(offspring.size());
+		Parallel.foreach(indices, 0, new Parallel.Operation<Integer>() {
+			public void perform(Integer index) {
+				ChromosomeMaterial material = offspring.get(index);
+				if (!material.shouldMutate()) {
+					return;
+				}
+				Configuration.setOffspringRandomGenerator(new Random(Configuration.offspringSeed(seed, index)));
+				m_activeConfiguration.startOffspringMutation(index);
+				try {
+					for (MutationOperator operator : operators) {
+						operator.mutate(m_activeConfiguration, material);
+					}
+				} catch (InvalidConfigurationException e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					m_activeConfiguration.finishOffspringMutation(index);
+					Configuration.setOffspringRandomGenerator(null);
+				}
+			}
+		});
+		m_activeConfiguration.finishConcurrentMutation(offspring);
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+	}
+
 	public Chromosome getFittest() {
 		return fittest;
 	}
@@ -539,6 +626,13 @@ public class Genotype implements Serializable {
 		return minSpeciesSize;
 	}
 	
+	/**
+	 * @return The time taken to speciate the population in the most recent generation, in seconds.
+	 */
+	public double getSpeciationTime() {
+		return speciationTime / 1e9;
+	}
+	
 	public Configuration getConfiguration() {
 		return m_activeConfiguration;
 	}
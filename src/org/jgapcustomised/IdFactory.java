@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -50,21 +51,21 @@ public class IdFactory {
 	 */
 	public final static String XML_TAG = "id";
 
-	private long nextId = DEFAULT_BASE_ID;
+	private final AtomicLong nextId = new AtomicLong(DEFAULT_BASE_ID);
 	private String fileName = null;
 
 	/**
-	 * @return long next unique ID
+	 * @return long next unique ID. Safe to call concurrently without locking.
 	 */
-	public synchronized long next() {
-		return nextId++;
+	public long next() {
+		return nextId.getAndIncrement();
 	}
 	
 	/**
 	 * @return long next unique ID, without incrementing the ID.
 	 */
-	public synchronized long nextNoIncrement() {
-		return nextId;
+	public long nextNoIncrement() {
+		return nextId.get();
 	}
 
 	/**
@@ -87,7 +88,7 @@ public class IdFactory {
 			File f = new File(aFileName);
 			if (f.exists()) {
 				in = new FileInputStream(fileName);
-				nextId = fromXml(in);
+				nextId.set(fromXml(in));
 			}
 		} finally {
 			if (in != null)
@@ -138,7 +139,7 @@ public class IdFactory {
 	 */
 	public String toXml() {
 		StringBuffer result = new StringBuffer();
-		result.append("<id>").append(nextId).append("</id>");
+		result.append("<id>").append(nextId.get()).append("</id>");
 		return result.toString();
 	}
 
@@ -165,6 +166,6 @@ public class IdFactory {
 	 * Set the next ID to the given value.
 	 */
 	public void resetID(long newID) {
-		nextId = newID;
+		nextId.set(newID);
 	}
 }
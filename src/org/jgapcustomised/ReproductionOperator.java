@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 
 import org.jgapcustomised.impl.CloneReproductionOperator;
 
@@ -60,6 +61,28 @@ public abstract class ReproductionOperator {
 	 * @see ReproductionOperator#reproduce(Configuration, List, int, List)
 	 */
 	final public void reproduce(final Configuration config, final List<Species> parentSpecies, List<ChromosomeMaterial> offspring) throws InvalidConfigurationException {
+		reproduce(config, parentSpecies, offspring, null);
+	}
+
+	/**
+	 * As for {@link #reproduce(Configuration, List, List)}, except that the offspring of each species are produced
+	 * with a random number stream derived from the given seed and the index of the species in
+	 * <code>parentSpecies</code>, and are added to <code>offspring</code> in species order, so that the offspring
+	 * produced do not depend on the number of threads used or the order in which they are scheduled.
+	 * 
+	 * @param config The current active genetic configuration.
+	 * @param parentSpecies <code>List</code> contains <code>Species</code> objects containing parent chromosomes from
+	 *            which to produce offspring.
+	 * @param offspring <code>List</code> contains offspring <code>ChromosomeMaterial</code> objects; this method adds
+	 *            new offspring to this list
+	 * @param seed The seed from which the random number stream for each species is derived.
+	 * @throws InvalidConfigurationException
+	 */
+	final public void reproduce(final Configuration config, final List<Species> parentSpecies, List<ChromosomeMaterial> offspring, long seed) throws InvalidConfigurationException {
+		reproduce(config, parentSpecies, offspring, Long.valueOf(seed));
+	}
+
+	private void reproduce(final Configuration config, final List<Species> parentSpecies, List<ChromosomeMaterial> offspring, final Long seed) throws InvalidConfigurationException {
 		// Calculate total fitness and number of elites
 		int totalEliteCount = 0;
 		//double totalSpeciesFitnessTemp = 0;
@@ -103,26 +126,35 @@ public abstract class ReproductionOperator {
 			final List<ChromosomeMaterial> newOffspring = Collections.synchronizedList(new ArrayList<ChromosomeMaterial>(targetNewOffspringCount));
 			
 			// Reproduce from each species relative to its percentage of total fitness
-			Parallel.foreach(parentSpecies, 0, new Parallel.Operation<Species>() {
-				public void perform(Species species) {
-					if (!species.isEmpty()) {
-						double percentFitness = species.getAverageFitnessValue() / species.newProportionalSize;
-						int numSpecieOffspring =  (int) Math.round(species.newProportionalSize * targetNewOffspringCount) - species.getEliteCount();
-						// Always create at least one offspring with the clone operator, or any operator if it has more than 50% of the slice.
-						// (Otherwise there's no point hanging on to a species).
-						if (numSpecieOffspring <= 0 && (getSlice() > 0.5 || getClass().equals(CloneReproductionOperator.class)))
-							numSpecieOffspring = 1;
-						
-						if (numSpecieOffspring > 0)
-							try {
-								reproduce(config, species.getChromosomes(), numSpecieOffspring, newOffspring);
-							} catch (InvalidConfigurationException e) {
-								e.printStackTrace();
-							}
+			if (seed == null) {
+				Parallel.foreach(parentSpecies, 0, new Parallel.Operation<Species>() {
+					public void perform(Species species) {
+						reproduceSpecies(config, species, targetNewOffspringCount, newOffspring);
 					}
+				});
+			} else {
+				// Each species gets its own random number stream and list of offspring, and the lists are combined in
+				// species order.
+				final List<List<ChromosomeMaterial>> speciesOffspring = new ArrayList<List<ChromosomeMaterial>>(parentSpecies.size());
+				List<Integer> speciesIndices = new ArrayList<Integer>(parentSpecies.size());
+				for (int i = 0; i < parentSpecies.size(); i++) {
+					speciesOffspring.add(new ArrayList<ChromosomeMaterial>());
+					speciesIndices.add(i);
 				}
-				
-			});
+				Parallel.foreach(speciesIndices, 0, new Parallel.Operation<Integer>() {
+					public void perform(Integer index) {
+						Configuration.setOffspringRandomGenerator(new Random(Configuration.offspringSeed(seed, index)));
+						try {
+							reproduceSpecies(config, parentSpecies.get(index), targetNewOffspringCount, speciesOffspring.get(index));
+						} finally {
+							Configuration.setOffspringRandomGenerator(null);
+						}
+					}
+				});
+				for (List<ChromosomeMaterial> o : speciesOffspring) {
+					newOffspring.addAll(o);
+				}
+			}
 			
 			// Remove random offspring if we have too many.
 			while (newOffspring.size() > targetNewOffspringCount) {
@@ -151,6 +183,23 @@ public abstract class ReproductionOperator {
 		}
 	}
 
+	private void reproduceSpecies(Configuration config, Species species, int targetNewOffspringCount, List<ChromosomeMaterial> newOffspring) {
+		if (!species.isEmpty()) {
+			int numSpecieOffspring =  (int) Math.round(species.newProportionalSize * targetNewOffspringCount) - species.getEliteCount();
+			// Always create at least one offspring with the clone operator, or any operator if it has more than 50% of the slice.
+			// (Otherwise there's no point hanging on to a species).
+			if (numSpecieOffspring <= 0 && (getSlice() > 0.5 || getClass().equals(CloneReproductionOperator.class)))
+				numSpecieOffspring = 1;
+			
+			if (numSpecieOffspring > 0)
+				try {
+					reproduce(config, species.getChromosomes(), numSpecieOffspring, newOffspring);
+				} catch (InvalidConfigurationException e) {
+					e.printStackTrace();
+				}
+		}
+	}
+
 	/**
 	 * @param config
 	 * @param parents List contains chromosome objects
@@ -23,9 +23,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Species are reproductively isolated segments of a population. They are used to ensure diversity in the population.
@@ -70,6 +74,10 @@ public class Species {
 	private List<Chromosome> chromosomes = Collections.synchronizedList(new LinkedList<Chromosome>());
 
 	private ChromosomeMaterial representative = null;
+	
+	// Distances from the representative to chromosomes, by chromosome ID. Only exact distances are stored. Cleared when
+	// the representative changes and at the start of each generation.
+	private Map<Long, Double> distanceCache = new ConcurrentHashMap<Long, Double>();
 
 	private SpeciationParms speciationParms = null;
 
@@ -160,6 +168,31 @@ public class Species {
 	 */
 	public void setRepresentative(ChromosomeMaterial material) {
 		representative = material.clone(null);
+		distanceCache.clear();
+	}
+
+	/**
+	 * Returns the compatibility distance between the representative of this species and the given chromosome, see
+	 * {@link ChromosomeMaterial#distance(ChromosomeMaterial, SpeciationParms, double)}. Distances are cached until the
+	 * representative changes or a new generation begins, so that the speciation strategy may ask for the same
+	 * distance several times in one generation without recalculating it.
+	 * 
+	 * @param chromosome The chromosome to calculate the distance to.
+	 * @param parms The speciation parameters.
+	 * @param bound The distance beyond which the exact distance is not required.
+	 * @return the distance if it is less than or equal to <code>bound</code>, otherwise a value greater than
+	 *         <code>bound</code>.
+	 */
+	public double getDistance(Chromosome chromosome, SpeciationParms parms, double bound) {
+		Double cached = distanceCache.get(chromosome.getId());
+		if (cached != null) {
+			return cached;
+		}
+		double distance = representative.distance(chromosome.getMaterial(), parms, bound);
+		if (distance <= bound) {
+			distanceCache.put(chromosome.getId(), distance);
+		}
+		return distance;
 	}
 
 	/**
@@ -295,6 +328,7 @@ public class Species {
 	 */
 	public void newGeneration() {
 		age++;
+		distanceCache.clear();
 
 		if (!chromosomes.isEmpty())
 			getBestPerforming();
@@ -552,22 +586,38 @@ public class Species {
 			chromosomesArr.add(0, bestPerforming);
 		}
 		
+		// Keep the first chromosome of each set of equivalent chromosomes. Only chromosomes with the same fingerprint
+		// can be equivalent, so each chromosome is only compared with those kept so far with the same fingerprint.
 		List<Chromosome> toRemove = new ArrayList<Chromosome>();
-		for (int i = 0; i < chromosomesArr.size(); i++) {
-			Chromosome c1 = chromosomesArr.get(i);
-			for (int j = i+1; j < chromosomesArr.size(); j++) {
-				Chromosome c2 = chromosomesArr.get(j);
-				if (!toRemove.contains(c2) && c1.isEquivalent(c2)) {
-					assert (c2 != bestPerforming) : "shouldn't remove best performing, index is " + j + "\n" + chromosomesArr + "\n" + chromosomes;
-					toRemove.add(c2);
-					originalSize--;
+		Map<Long, List<Chromosome>> kept = new HashMap<Long, List<Chromosome>>();
+		for (Chromosome c : chromosomesArr) {
+			Long fingerprint = c.getFingerprint();
+			List<Chromosome> bucket = kept.get(fingerprint);
+			if (bucket == null) {
+				bucket = new ArrayList<Chromosome>(1);
+				kept.put(fingerprint, bucket);
+			}
+			boolean clone = false;
+			for (Chromosome k : bucket) {
+				if (k.isEquivalent(c)) {
+					clone = true;
+					break;
 				}
 			}
+			if (clone) {
+				assert (c != bestPerforming) : "shouldn't remove best performing\n" + chromosomesArr + "\n" + chromosomes;
+				toRemove.add(c);
+				originalSize--;
+			} else {
+				bucket.add(c);
+			}
 		}
 		
 		for (Chromosome c : toRemove) {
 			c.resetSpecie();
-			chromosomes.remove(c);
+		}
+		if (!toRemove.isEmpty()) {
+			chromosomes.removeAll(new HashSet<Chromosome>(toRemove));
 		}
 		return toRemove;
 	}